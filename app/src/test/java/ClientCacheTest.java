@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ClientCacheTest.java
+ *
+ * Recovery and format paths of the desktop cache file: reopening, a torn final record,
+ * compaction, clear() and a file written in another format.
+ */
+class ClientCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenKeepsLatestValuesAndRemovals() throws Exception {
+        Path file = dir.resolve("client.cache");
+        try (ClientCache cache = ClientCache.open(file)) {
+            cache.put("profile", "v1");
+            cache.put("match/1", "a");
+            cache.put("match/2", "b");
+            cache.put("profile", "v2");
+            cache.remove("match/1");
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals("v2", cache.get("profile"));
+            assertNull(cache.get("match/1"));
+            assertEquals(Collections.singletonList("match/2"), cache.keys("match/"));
+        }
+    }
+
+    @Test
+    void tornFinalRecordIsDropped() throws Exception {
+        Path file = dir.resolve("client.cache");
+        try (ClientCache cache = ClientCache.open(file)) {
+            cache.put("a", "1");
+            cache.put("b", "2");
+        }
+        corruptLastRecord(file);
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals("1", cache.get("a"));
+            assertNull(cache.get("b"));
+            cache.put("c", "3");
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals(Arrays.asList("a", "c"), cache.keys(""));
+        }
+    }
+
+    @Test
+    void compactionAndGrowthKeepLiveRecords() throws Exception {
+        Path file = dir.resolve("client.cache");
+        char[] filler = new char[3000];
+        Arrays.fill(filler, 'x');
+        String big = new String(filler);
+        try (ClientCache cache = ClientCache.open(file)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 300; i++) cache.put("k/" + i, big + round);
+            }
+            for (int i = 0; i < 150; i++) cache.remove("k/" + i);
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals(150, cache.keys("k/").size());
+            for (int i = 150; i < 300; i++) assertEquals(big + 4, cache.get("k/" + i));
+        }
+    }
+
+    @Test
+    void reopenAfterClearStartsEmpty() throws Exception {
+        Path file = dir.resolve("client.cache");
+        try (ClientCache cache = ClientCache.open(file)) {
+            for (int i = 0; i < 100; i++) cache.put("message/" + i, "text " + i);
+            cache.clear();
+            cache.put("source", "local");
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals(Collections.singletonList("source"), cache.keys(""));
+        }
+    }
+
+    @Test
+    void fileFromAnotherFormatIsDiscarded() throws Exception {
+        Path file = dir.resolve("client.cache");
+        try (ClientCache cache = ClientCache.open(file)) {
+            cache.put("profile", "old");
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(4).putInt(0, ClientCache.FORMAT + 1), 4);
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertTrue(cache.keys("").isEmpty());
+            cache.put("profile", "new");
+        }
+        try (ClientCache cache = ClientCache.open(file)) {
+            assertEquals("new", cache.get("profile"));
+        }
+    }
+
+    // Flips a byte inside the last record's body, as a crash mid-write would leave it
+    private static void corruptLastRecord(Path file) throws Exception {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            int pos = 8, last = pos;
+            while (b.getInt(pos) != 0) {
+                last = pos;
+                pos += 8 + b.getInt(pos);
+            }
+            b.put(last + 9, (byte) (b.get(last + 9) ^ 0x7f));
+            b.force();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JdbcRepositoryTest.java
+ *
+ * The batch contract of SkillBarterRepository over JDBC, on an in-memory H2 database (the
+ * SQL:2003 MERGE upsert): batches larger than one JDBC batch commit once, a failure rolls the
+ * whole call back, and an update keeps the account's created_at.
+ */
+class JdbcRepositoryTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private static JdbcRepository open() throws IOException {
+        return new JdbcRepository("jdbc:h2:mem:repo" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "", 2);
+    }
+
+    @Test
+    void largeBatchIsStoredAndUpserted() throws Exception {
+        try (JdbcRepository repo = open()) {
+            repo.saveUsers(users(2500, "Member"));
+            repo.saveUser(new SkillBarterRepository.User("m7@x.org", "Renamed", "hash", Collections.singletonList("Go"),
+                    Collections.<String>emptyList(), 999));
+            AtomicInteger count = new AtomicInteger();
+            repo.forEachUser(u -> count.incrementAndGet());
+            assertEquals(2500, count.get());
+            SkillBarterRepository.User u = repo.findUser("m7@x.org");
+            assertEquals("Renamed", u.name);
+            assertEquals(Collections.singletonList("Go"), u.teaches);
+            assertEquals(7, u.createdAt);
+        }
+    }
+
+    @Test
+    void failedBatchStoresNothing() throws Exception {
+        try (JdbcRepository repo = open()) {
+            List<SkillBarterRepository.User> batch = users(1500, "Member");
+            // name is NOT NULL; this row fails after the first JDBC batch was sent
+            batch.add(new SkillBarterRepository.User("bad@x.org", null, "hash", Collections.<String>emptyList(),
+                    Collections.<String>emptyList(), 0));
+            assertThrows(IOException.class, () -> repo.saveUsers(batch));
+            assertNull(repo.findUser("m0@x.org"));
+            repo.saveUser(users(1, "Again").get(0));
+            assertEquals("Again 0", repo.findUser("m0@x.org").name);
+        }
+    }
+
+    private static List<SkillBarterRepository.User> users(int n, String name) {
+        List<SkillBarterRepository.User> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(new SkillBarterRepository.User("m" + i + "@x.org", name + " " + i, "hash", Arrays.asList("Java", "SQL"),
+                    Collections.singletonList("Go"), i));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * LocalFileRepositoryTest.java
+ *
+ * The batch contract of SkillBarterRepository on the local store: a batch is stored entirely
+ * or not at all, the latest version of a user wins, and a torn record is cut off on open.
+ */
+class LocalFileRepositoryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void latestVersionWinsAcrossReopen() throws Exception {
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            repo.saveUsers(Arrays.asList(user("a@x.org", "A"), user("b@x.org", "B")));
+            repo.saveUser(user("a@x.org", "A2"));
+        }
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            assertEquals("A2", repo.findUser("a@x.org").name);
+            List<String> names = new ArrayList<>();
+            repo.forEachUser(u -> names.add(u.name));
+            Collections.sort(names);
+            assertEquals(Arrays.asList("A2", "B"), names);
+        }
+    }
+
+    @Test
+    void rejectedBatchStoresNothing() throws Exception {
+        List<String> tooMany = Collections.nCopies(0x10000, "Java");
+        SkillBarterRepository.User bad = new SkillBarterRepository.User("c@x.org", "C", "", tooMany,
+                Collections.<String>emptyList(), 0);
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            assertThrows(IllegalArgumentException.class, () -> repo.saveUsers(Arrays.asList(user("b@x.org", "B"), bad)));
+            assertNull(repo.findUser("b@x.org"));
+        }
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            assertNull(repo.findUser("b@x.org"));
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOff() throws Exception {
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            repo.saveUser(user("a@x.org", "A"));
+        }
+        try (FileChannel log = FileChannel.open(dir.resolve("users.log"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 50, 9, 9, 9, 9, 1, 2}));
+        }
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            assertEquals("A", repo.findUser("a@x.org").name);
+            repo.saveUser(user("b@x.org", "B"));
+        }
+        try (LocalFileRepository repo = new LocalFileRepository(dir)) {
+            assertEquals("B", repo.findUser("b@x.org").name);
+        }
+    }
+
+    static SkillBarterRepository.User user(String email, String name) {
+        return new SkillBarterRepository.User(email, name, "hash", Arrays.asList("Java", "SQL"), Collections.singletonList("Go"), 1L);
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ReviewServiceTest.java
+ *
+ * The review log round-trips every field, keeps one rating per reviewer, member and skill,
+ * and drops a torn final record.
+ */
+class ReviewServiceTest {
+    private static final SkillBarterRepository.User ASHA = user("asha@x.org", "Asha");
+    private static final SkillBarterRepository.User RAVI = user("ravi@x.org", "Ravi");
+    private static final SkillBarterRepository.User LEENA = user("leena@x.org", "Leena");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenRebuildsAggregatesAndNames() throws Exception {
+        try (ReviewService reviews = ReviewService.open(dir)) {
+            reviews.submit(RAVI, ASHA, "Figma", 3, "ok");
+            reviews.submit(RAVI, ASHA, "Figma", 5, "great after all");
+            reviews.submit(LEENA, ASHA, "", 4, "");
+        }
+        try (ReviewService reviews = ReviewService.open(dir)) {
+            assertEquals(2, reviews.member("asha@x.org").count);
+            assertEquals(4.5, reviews.member("asha@x.org").mean(), 1e-9);
+            assertEquals(1, reviews.skill("asha@x.org", "figma").count);
+            assertEquals(2, reviews.listed("Asha").count);
+            List<ReviewService.Review> recent = reviews.recent("Asha");
+            assertEquals("Leena", recent.get(0).reviewerName);
+            assertEquals("great after all", recent.get(1).text);
+        }
+    }
+
+    @Test
+    void tornFinalRecordIsDropped() throws Exception {
+        try (ReviewService reviews = ReviewService.open(dir)) {
+            reviews.submit(RAVI, ASHA, "Figma", 5, "great");
+        }
+        // A crash mid-append: a length and checksum but only part of the record
+        try (FileChannel log = FileChannel.open(dir.resolve("reviews.log"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 0, 0, 0}));
+        }
+        try (ReviewService reviews = ReviewService.open(dir)) {
+            assertEquals(1, reviews.member("asha@x.org").count);
+            reviews.submit(LEENA, ASHA, "", 1, "late");
+        }
+        try (ReviewService reviews = ReviewService.open(dir)) {
+            assertEquals(2, reviews.member("asha@x.org").count);
+            assertEquals(3.0, reviews.member("asha@x.org").mean(), 1e-9);
+        }
+    }
+
+    @Test
+    void handedOverReviewsAreStoredOnce() throws Exception {
+        Map<String, List<ReviewService.Review>> about;
+        try (ReviewService reviews = ReviewService.open(dir.resolve("old"))) {
+            reviews.submit(RAVI, ASHA, "Figma", 2, "first");
+            reviews.submit(RAVI, ASHA, "Figma", 4, "second");
+            reviews.submit(ASHA, RAVI, "", 5, "");
+            about = reviews.about(Collections.singletonList("asha@x.org"));
+        }
+        assertEquals(1, about.size());
+        ReviewService.Review latest = about.get("asha@x.org").get(0);
+        assertEquals("second", latest.text);
+        try (ReviewService reviews = ReviewService.open(dir.resolve("new"))) {
+            assertTrue(reviews.accept(latest));
+            assertFalse(reviews.accept(latest));
+            assertEquals(4.0, reviews.member("asha@x.org").mean(), 1e-9);
+        }
+    }
+
+    private static SkillBarterRepository.User user(String email, String name) {
+        return new SkillBarterRepository.User(email, name, "", Collections.<String>emptyList(), Collections.<String>emptyList(), 0);
+    }
+}
@@ -0,0 +1,208 @@
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.swing.SwingUtilities;
+
+/**
+ * BenchmarkFixtures.java
+ *
+ * Workloads for the JMH benchmarks in skillbarter.bench. JMH rejects benchmarks in the default
+ * package, where the app's classes live, so each workload is set up here and handed over as a
+ * {@link Workload}; the benchmark finds it by name once and then only calls {@code call()}.
+ *
+ * Every workload runs the same code as the UI path it stands for, on synthetic members built
+ * from a fixed seed so runs are comparable between releases.
+ */
+public final class BenchmarkFixtures {
+    private BenchmarkFixtures() {}
+
+    /** One benchmark operation; close() releases what the fixture opened. */
+    public abstract static class Workload implements Callable<Object>, AutoCloseable {
+        @Override
+        public void close() throws Exception {
+        }
+    }
+
+    private static final String[] SKILLS = {
+            "Java", "Java Swing", "Python", "Data Analysis", "Machine Learning", "SQL", "JavaScript", "React",
+            "UI Design", "Figma", "Photography", "Lightroom", "Video Editing", "Guitar", "Piano", "Music Theory",
+            "Singing", "Spanish", "French", "German", "Japanese", "Cooking", "Baking", "Yoga", "Public Speaking",
+            "Copywriting", "Marketing", "Excel", "Accounting", "Drawing", "Watercolor", "Knitting", "Chess",
+            "Woodworking", "Gardening", "3D Modeling", "Blender", "Rust", "Go", "Kotlin"};
+    private static final String[] TOPICS = {"Programming", "Design", "Music", "Languages", "Art", "Life skills", "Business"};
+    private static final String[] QUERIES = {"java", "ui design", "guitar lessons", "photo", "spanish", "machine learning python", "member-42"};
+
+    private static List<String> pick(Random random, String[] from, int n) {
+        List<String> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(from[random.nextInt(from.length)]);
+        return out;
+    }
+
+    // ----- Search (showSearchDialog) -----
+    public static Workload search(int listings) {
+        SkillSearchIndex index = new SkillSearchIndex();
+        Random random = new Random(42);
+        for (int i = 0; i < listings; i++) {
+            index.add("member-" + i, pick(random, SKILLS, 1 + random.nextInt(3)), pick(random, TOPICS, 1 + random.nextInt(2)));
+        }
+        return new Workload() {
+            private int next;
+
+            @Override
+            public Object call() {
+                return index.search(QUERIES[next++ % QUERIES.length], 10);
+            }
+        };
+    }
+
+    // ----- Matchmaking (showMatchmakingDialog, without the review weighting) -----
+    public static Workload matchmaking(int members) {
+        SkillMatchEngine engine = new SkillMatchEngine(new SkillInterner());
+        Random random = new Random(42);
+        for (int i = 0; i < members; i++) {
+            engine.addMember("member-" + i, pick(random, SKILLS, 1 + random.nextInt(3)), pick(random, SKILLS, 1 + random.nextInt(2)));
+        }
+        List<List<String>> asks = new ArrayList<>();
+        for (int i = 0; i < 16; i++) asks.add(pick(random, SKILLS, 2));
+        return new Workload() {
+            private int next;
+
+            @Override
+            public Object call() {
+                List<String> teaches = asks.get(next++ % asks.size()), learns = asks.get(next % asks.size());
+                List<SkillMatchEngine.Match> pairs = engine.topMatches(teaches, learns, 10, engine.weighted(SkillMatchEngine.RECIPROCAL, name -> 1.0));
+                List<String[]> cycles = engine.barterCycles("You", teaches, learns, 5);
+                return pairs.size() + cycles.size();
+            }
+        };
+    }
+
+    // ----- Skill autocomplete (RegisterDialog, per keystroke) -----
+    public static Workload skillAutocomplete(int skills) {
+        SkillTaxonomy taxonomy = SkillTaxonomy.withDefaults();
+        Random random = new Random(42);
+        String[] syllables = {"ka", "ro", "mi", "tel", "an", "sur", "bo", "qua", "lin", "dex", "pho", "gra", "vi", "zen"};
+        while (taxonomy.size() < skills) {
+            StringBuilder name = new StringBuilder();
+            for (int j = 2 + random.nextInt(4); j > 0; j--) name.append(syllables[random.nextInt(syllables.length)]);
+            taxonomy.define(name.toString(), name + " " + syllables[random.nextInt(syllables.length)]);
+        }
+        for (int i = 0; i < skills; i++) taxonomy.intern(taxonomy.name(random.nextInt(taxonomy.size())));
+        taxonomy.rebuild();
+        String[] typed = {"j", "java s", "py", "ml", "kar", "zenlin", "Machine   L", "quabo"};
+        int[] out = new int[SkillTaxonomy.TOP_K];
+        return new Workload() {
+            private int next;
+
+            @Override
+            public Object call() {
+                String prefix = typed[next++ % typed.length];
+                return taxonomy.complete(prefix, 0, prefix.length(), out);
+            }
+        };
+    }
+
+    // ----- Rate limit check (LoginDialog and the API, before any password hashing) -----
+    public static Workload rateLimit(int keys) {
+        // Limits high enough that every check passes, so each call reads and writes all three sketches
+        RateLimiter.Policy policy = new RateLimiter.Policy("sign-in attempts",
+                new RateLimiter("bench.account", 1 << 30, 1, TimeUnit.SECONDS, 1 << 14),
+                new RateLimiter("bench.client", 1 << 30, 1, TimeUnit.SECONDS, 1 << 14),
+                new RateLimiter("bench.all", 1 << 30, 1, TimeUnit.SECONDS, 1));
+        Random random = new Random(42);
+        String[] accounts = new String[keys], clients = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            accounts[i] = "member-" + i + "@example.com";
+            clients[i] = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+        }
+        return new Workload() {
+            private int next;
+
+            @Override
+            public Object call() throws Exception {
+                int i = next++ % keys;
+                policy.check(accounts[i], clients[i]);
+                return i;
+            }
+        };
+    }
+
+    // ----- Ledger transfers (showPointsDialog) -----
+    public static Workload ledgerTransfer(int accounts) throws IOException {
+        Path dir = Files.createTempDirectory("skillbarter-bench-ledger");
+        PointsLedger ledger = PointsLedger.open(dir, 200);
+        String[] names = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            names[i] = "member-" + i + "@example.com";
+            ledger.earn(names[i], Long.MAX_VALUE / (4L * accounts));
+        }
+        return new Workload() {
+            private int next;
+
+            @Override
+            public Object call() throws Exception {
+                int i = next++;
+                ledger.transfer(names[i % accounts], names[(i * 31 + 7) % accounts], 1);
+                return i;
+            }
+
+            @Override
+            public void close() throws IOException {
+                ledger.close();
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+                }
+            }
+        };
+    }
+
+    // ----- NeonButton.paintComponent into an offscreen image -----
+    public static Workload neonButtonPaint(boolean hovered) {
+        MainWindow.NeonButton button = new MainWindow.NeonButton("Join Now");
+        button.setSize(160, 40);
+        if (hovered) {
+            MouseEvent enter = new MouseEvent(button, MouseEvent.MOUSE_ENTERED, 0, 0, 10, 10, 0, false);
+            for (MouseListener l : button.getMouseListeners()) l.mouseEntered(enter);
+        }
+        BufferedImage image = new BufferedImage(160, 40, BufferedImage.TYPE_INT_ARGB);
+        return new Workload() {
+            @Override
+            public Object call() {
+                Graphics2D g = image.createGraphics();
+                try {
+                    button.paintComponent(g);
+                } finally {
+                    g.dispose();
+                }
+                return image;
+            }
+        };
+    }
+
+    // ----- MainWindow construction (needs a display: JFrame refuses to exist in headless mode) -----
+    public static Workload mainWindow() {
+        SkillBarter_Website_Desktop.installLookAndFeel();
+        return new Workload() {
+            @Override
+            public Object call() throws Exception {
+                MainWindow[] built = new MainWindow[1];
+                SwingUtilities.invokeAndWait(() -> {
+                    built[0] = new MainWindow();
+                    built[0].dispose();
+                });
+                return built[0];
+            }
+        };
+    }
+}
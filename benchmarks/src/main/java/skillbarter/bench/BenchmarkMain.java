@@ -0,0 +1,44 @@
+package skillbarter.bench;
+
+import java.awt.GraphicsEnvironment;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH options, but writes results as JSON to
+ * jmh-result.json unless -rf/-rff say otherwise, so each release can keep its file and diff
+ * the scores against the previous one. Without a display the MainWindow benchmark is skipped.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar -rff results/1.0.json
+ *   java -jar benchmarks/target/benchmarks.jar Search -p listings=100000
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd;
+        try {
+            cmd = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue()) options.result("jmh-result.json");
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("No display: skipping " + MainWindowBenchmark.class.getSimpleName() + " (run under xvfb-run to include it)");
+            options.exclude(MainWindowBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
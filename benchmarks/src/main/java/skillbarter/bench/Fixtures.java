@@ -0,0 +1,31 @@
+package skillbarter.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+/**
+ * Looks up workloads in the default-package {@code BenchmarkFixtures}, which code in a named
+ * package cannot reference directly. Reflection is only used at setup; the measured call is a
+ * plain interface call.
+ */
+final class Fixtures {
+    private Fixtures() {}
+
+    static Callable<?> workload(String name, Object... args) throws Exception {
+        for (Method m : Class.forName("BenchmarkFixtures").getMethods()) {
+            if (m.getName().equals(name) && m.getParameterCount() == args.length) {
+                try {
+                    return (Callable<?>) m.invoke(null, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No fixture named " + name);
+    }
+
+    static void close(Callable<?> workload) throws Exception {
+        if (workload instanceof AutoCloseable) ((AutoCloseable) workload).close();
+    }
+}
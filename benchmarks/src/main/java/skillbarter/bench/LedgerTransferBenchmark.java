@@ -0,0 +1,34 @@
+package skillbarter.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** One points transfer between two of the given number of accounts, logged to a temporary ledger. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerTransferBenchmark {
+    @Param({"1000"})
+    public int accounts;
+
+    private Callable<?> workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Fixtures.workload("ledgerTransfer", accounts);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.call();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(workload);
+    }
+}
@@ -0,0 +1,31 @@
+package skillbarter.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Building (and disposing) the main window. Needs a display; BenchmarkMain skips it when headless. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainWindowBenchmark {
+    private Callable<?> workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Fixtures.workload("mainWindow");
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.call();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(workload);
+    }
+}
@@ -0,0 +1,34 @@
+package skillbarter.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Direct matches plus three-way barters, as run by the Matchmaking dialog. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakingBenchmark {
+    @Param({"1000", "100000"})
+    public int members;
+
+    private Callable<?> workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Fixtures.workload("matchmaking", members);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.call();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(workload);
+    }
+}
@@ -0,0 +1,34 @@
+package skillbarter.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** NeonButton.paintComponent into an offscreen image, idle and hovered. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeonButtonPaintBenchmark {
+    @Param({"false", "true"})
+    public boolean hovered;
+
+    private Callable<?> workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Fixtures.workload("neonButtonPaint", hovered);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.call();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(workload);
+    }
+}
@@ -0,0 +1,34 @@
+package skillbarter.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** One login rate limit check (per account, per client and overall) over the given number of distinct keys. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitBenchmark {
+    @Param({"1000", "1000000"})
+    public int keys;
+
+    private Callable<?> workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Fixtures.workload("rateLimit", keys);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.call();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(workload);
+    }
+}
@@ -0,0 +1,478 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AnalyticsStore.java
+ *
+ * Usage events behind the "Analytics" and "Admin Console" cards: registrations, logins,
+ * searches, bookings and point transfers.
+ *
+ * record() puts an event on a lock-free ring and returns. A single writer thread drains it
+ * in batches and
+ * - appends each event to its day's partition, stored as one file per column (time of day,
+ *   type, user hash, latency: 17 bytes per event), and
+ * - folds it into per-minute, per-hour and per-day rollups. Each rollup bucket holds an event
+ *   count, a HyperLogLog of distinct users and a t-digest of latencies, so dashboards read a
+ *   handful of buckets instead of raw events. Minutes are kept for two days, hours for two
+ *   weeks and days for a bit over a year.
+ *
+ * When a day is over its rollups are saved next to its columns, so a restart only rescans the
+ * raw columns of today and yesterday. Days are UTC.
+ */
+class AnalyticsStore implements Closeable {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int RING_SIZE = 1 << 16;
+    private static final int MAX_BATCH = 4096;
+    private static final int ROWS_PER_FLUSH = 8192;
+    private static final long FLUSH_MS = 1_000;
+    private static final int ROLLUP_MAGIC = 0x534b4152; // "SKAR"
+
+    private static final LongAdder RECORDED = Metrics.counter("analytics.recorded");
+    private static final LongAdder DROPPED = Metrics.counter("analytics.dropped");
+    private static final Metrics.Histogram QUERY_TIME = Metrics.histogram("analytics.query");
+
+    enum EventType {
+        REGISTER("Registrations"),
+        LOGIN("Logins"),
+        SEARCH("Searches"),
+        BOOKING("Bookings"),
+        TRANSFER("Point transfers");
+
+        final String label;
+
+        EventType(String label) {
+            this.label = label;
+        }
+    }
+
+    enum Resolution {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 2 * DAY_MS, 10, 50),
+        HOUR(TimeUnit.HOURS.toMillis(1), 14 * DAY_MS, 11, 100),
+        DAY(DAY_MS, 400 * DAY_MS, 12, 100);
+
+        final long millis;
+        final long retention;
+        final int hllPrecision;
+        final double compression;
+
+        Resolution(long millis, long retention, int hllPrecision, double compression) {
+            this.millis = millis;
+            this.retention = retention;
+            this.hllPrecision = hllPrecision;
+            this.compression = compression;
+        }
+
+        long floor(long time) {
+            return Math.floorDiv(time, millis) * millis;
+        }
+    }
+
+    /** One bucket of a series (or a whole range): event count, distinct users, latency percentiles. */
+    static final class Point {
+        final long start;
+        final long count;
+        final long users;
+        final double p50Millis;
+        final double p99Millis;
+
+        Point(long start, long count, long users, double p50Millis, double p99Millis) {
+            this.start = start;
+            this.count = count;
+            this.users = users;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+        }
+    }
+
+    private static final class Bucket {
+        long count;
+        final HyperLogLog users;
+        final TDigest latency;
+
+        Bucket(HyperLogLog users, TDigest latency) {
+            this.users = users;
+            this.latency = latency;
+        }
+
+        Bucket(Resolution res) {
+            this(new HyperLogLog(res.hllPrecision), new TDigest(res.compression));
+        }
+
+        synchronized void add(long user, double latencyMillis) {
+            count++;
+            if (user != 0) users.add(user);
+            if (latencyMillis >= 0) latency.add(latencyMillis);
+        }
+
+        synchronized void mergeInto(Bucket target) {
+            target.count += count;
+            target.users.merge(users);
+            target.latency.merge(latency);
+        }
+
+        synchronized void write(DataOutput out) throws IOException {
+            out.writeLong(count);
+            users.write(out);
+            latency.write(out);
+        }
+
+        static Bucket read(DataInput in) throws IOException {
+            long count = in.readLong();
+            Bucket b = new Bucket(HyperLogLog.read(in), TDigest.read(in));
+            b.count = count;
+            return b;
+        }
+
+        Point point(long start) {
+            return new Point(start, count, users.estimate(), latency.quantile(0.5), latency.quantile(0.99));
+        }
+    }
+
+    private static final class Event {
+        final long time;
+        final EventType type;
+        final long user;
+        final int latencyMicros; // -1 when not measured
+
+        Event(long time, EventType type, long user, int latencyMicros) {
+            this.time = time;
+            this.type = type;
+            this.user = user;
+            this.latencyMicros = latencyMicros;
+        }
+    }
+
+    // ----- Column files -----
+    // time.col: int millis of day; type.col: byte; user.col: long hash (0 = anonymous); latency.col: int micros (-1 = none)
+    private static final String[] COLUMNS = {"time.col", "type.col", "user.col", "latency.col"};
+    private static final int[] WIDTHS = {4, 1, 8, 4};
+
+    /** Appends rows to one day's column files through buffers flushed together. Writer thread only. */
+    private static final class DayWriter implements Closeable {
+        final long day;
+        final FileChannel[] channels = new FileChannel[COLUMNS.length];
+        final ByteBuffer[] buffers = new ByteBuffer[COLUMNS.length];
+
+        DayWriter(Path partition, long day) throws IOException {
+            this.day = day;
+            Files.createDirectories(partition);
+            long rows = rowCount(partition);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                channels[c] = FileChannel.open(partition.resolve(COLUMNS[c]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                // Columns can disagree after a crash mid-flush; cut them back to the rows all of them have
+                channels[c].truncate(rows * WIDTHS[c]);
+                channels[c].position(rows * WIDTHS[c]);
+                buffers[c] = ByteBuffer.allocate(ROWS_PER_FLUSH * WIDTHS[c]);
+            }
+        }
+
+        void append(Event e) throws IOException {
+            if (!buffers[1].hasRemaining()) flush();
+            buffers[0].putInt((int) (e.time - day * DAY_MS));
+            buffers[1].put((byte) e.type.ordinal());
+            buffers[2].putLong(e.user);
+            buffers[3].putInt(e.latencyMicros);
+        }
+
+        void flush() throws IOException {
+            for (int c = 0; c < COLUMNS.length; c++) {
+                ByteBuffer b = buffers[c];
+                b.flip();
+                while (b.hasRemaining()) channels[c].write(b);
+                b.clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            for (FileChannel ch : channels) ch.close();
+        }
+    }
+
+    private final Path dir;
+    private final MpscRingBuffer<Event> ring = new MpscRingBuffer<>(RING_SIZE);
+    private final Map<Resolution, ConcurrentSkipListMap<Long, AtomicReferenceArray<Bucket>>> rollups = new EnumMap<>(Resolution.class);
+    private final Map<Long, DayWriter> writers = new HashMap<>(); // writer thread only
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    private AnalyticsStore(Path dir) {
+        this.dir = dir;
+        for (Resolution r : Resolution.values()) rollups.put(r, new ConcurrentSkipListMap<>());
+        writer = new Thread(this::writeLoop, "analytics-writer");
+        writer.setDaemon(true);
+    }
+
+    /** Opens (or creates) the store in {@code dir}, restoring rollups, and starts its writer thread. */
+    static AnalyticsStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        AnalyticsStore store = new AnalyticsStore(dir);
+        store.recover();
+        store.writer.start();
+        return store;
+    }
+
+    // ----- Recording -----
+    /** Records an event now. user may be null (anonymous); latencyNanos may be negative (not measured). */
+    boolean record(EventType type, String user, long latencyNanos) {
+        return record(type, user, latencyNanos, System.currentTimeMillis());
+    }
+
+    /** Records an event at the given time; returns false if the writer is too far behind and it was dropped. */
+    boolean record(EventType type, String user, long latencyNanos, long timeMillis) {
+        if (closed) return false;
+        long hash = user == null || user.trim().isEmpty() ? 0 : HyperLogLog.hash(user.trim().toLowerCase(Locale.ROOT));
+        if (hash == 0 && user != null && !user.trim().isEmpty()) hash = 1; // 0 means anonymous on disk
+        int micros = latencyNanos < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, latencyNanos / 1_000);
+        if (!ring.offer(new Event(timeMillis, type, hash, micros))) {
+            DROPPED.increment();
+            return false;
+        }
+        RECORDED.increment();
+        if (writerParked) LockSupport.unpark(writer);
+        return true;
+    }
+
+    // ----- Queries -----
+    /** Buckets of the given resolution that have events of this type in [from, to), oldest first. */
+    List<Point> series(EventType type, Resolution res, long from, long to) {
+        long t0 = System.nanoTime();
+        List<Point> out = new ArrayList<>();
+        for (Map.Entry<Long, AtomicReferenceArray<Bucket>> e : rollups.get(res).subMap(res.floor(from), true, to, false).entrySet()) {
+            Bucket b = e.getValue().get(type.ordinal());
+            if (b == null) continue;
+            synchronized (b) {
+                out.add(b.point(e.getKey()));
+            }
+        }
+        QUERY_TIME.record(System.nanoTime() - t0);
+        return out;
+    }
+
+    /** Totals for [from, to) at the given resolution; distinct users are counted once across the range. */
+    Point total(EventType type, Resolution res, long from, long to) {
+        long t0 = System.nanoTime();
+        Bucket sum = new Bucket(res);
+        for (AtomicReferenceArray<Bucket> buckets : rollups.get(res).subMap(res.floor(from), true, to, false).values()) {
+            Bucket b = buckets.get(type.ordinal());
+            if (b != null) b.mergeInto(sum);
+        }
+        Point p = sum.point(res.floor(from));
+        QUERY_TIME.record(System.nanoTime() - t0);
+        return p;
+    }
+
+    /** Finest resolution that still covers a range of the given length. */
+    static Resolution resolutionFor(long rangeMillis) {
+        for (Resolution r : Resolution.values()) {
+            if (rangeMillis <= r.retention) return r;
+        }
+        return Resolution.DAY;
+    }
+
+    // ----- Writer thread -----
+    private void writeLoop() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH);
+        long lastFlush = System.currentTimeMillis();
+        while (!closed || !ring.isEmpty()) {
+            if (ring.drain(batch::add, MAX_BATCH) == 0) {
+                writerParked = true;
+                if (ring.isEmpty() && !closed) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(20));
+                writerParked = false;
+            } else {
+                for (Event e : batch) {
+                    try {
+                        writerFor(Math.floorDiv(e.time, DAY_MS)).append(e);
+                    } catch (IOException ex) {
+                        System.err.println("Analytics write failed: " + ex.getMessage());
+                    }
+                    rollup(e, System.currentTimeMillis());
+                }
+                batch.clear();
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastFlush >= FLUSH_MS) {
+                lastFlush = now;
+                maintain(now);
+            }
+        }
+        for (DayWriter w : writers.values()) {
+            try {
+                w.close();
+            } catch (IOException e) {
+                System.err.println("Analytics close failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private DayWriter writerFor(long day) throws IOException {
+        DayWriter w = writers.get(day);
+        if (w == null) {
+            Path partition = partition(day);
+            // A late event reopens a finished day; its saved rollups are now stale
+            Files.deleteIfExists(partition.resolve("rollup.bin"));
+            w = new DayWriter(partition, day);
+            writers.put(day, w);
+        }
+        return w;
+    }
+
+    // Flushes buffered rows, finishes days older than yesterday and trims expired rollups
+    private void maintain(long now) {
+        long today = Math.floorDiv(now, DAY_MS);
+        for (Iterator<DayWriter> it = writers.values().iterator(); it.hasNext(); ) {
+            DayWriter w = it.next();
+            try {
+                if (w.day < today - 1) {
+                    w.close();
+                    it.remove();
+                    saveRollups(w.day);
+                } else {
+                    w.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Analytics flush failed: " + e.getMessage());
+            }
+        }
+        for (Resolution r : Resolution.values()) rollups.get(r).headMap(r.floor(now - r.retention)).clear();
+    }
+
+    private void rollup(Event e, long now) {
+        double latencyMillis = e.latencyMicros < 0 ? -1 : e.latencyMicros / 1000.0;
+        for (Resolution r : Resolution.values()) {
+            long start = r.floor(e.time);
+            if (start < r.floor(now - r.retention)) continue;
+            AtomicReferenceArray<Bucket> buckets = rollups.get(r).computeIfAbsent(start, s -> new AtomicReferenceArray<>(EventType.values().length));
+            Bucket b = buckets.get(e.type.ordinal());
+            if (b == null) {
+                b = new Bucket(r);
+                buckets.set(e.type.ordinal(), b);
+            }
+            b.add(e.user, latencyMillis);
+        }
+    }
+
+    // ----- Persistence of finished days -----
+    private Path partition(long day) {
+        return dir.resolve("day-" + LocalDate.ofEpochDay(day));
+    }
+
+    private static long rowCount(Path partition) throws IOException {
+        long rows = Long.MAX_VALUE;
+        for (int c = 0; c < COLUMNS.length; c++) {
+            Path f = partition.resolve(COLUMNS[c]);
+            rows = Math.min(rows, Files.exists(f) ? Files.size(f) / WIDTHS[c] : 0);
+        }
+        return rows;
+    }
+
+    // [int magic][int n] then n x ([byte resolution][long start][byte type][bucket]) for the day and its hours
+    private void saveRollups(long day) throws IOException {
+        long from = day * DAY_MS, to = from + DAY_MS;
+        List<Object[]> entries = new ArrayList<>();
+        for (Resolution r : new Resolution[] {Resolution.HOUR, Resolution.DAY}) {
+            for (Map.Entry<Long, AtomicReferenceArray<Bucket>> e : rollups.get(r).subMap(from, true, to, false).entrySet()) {
+                for (EventType t : EventType.values()) {
+                    Bucket b = e.getValue().get(t.ordinal());
+                    if (b != null) entries.add(new Object[] {r, e.getKey(), t, b});
+                }
+            }
+        }
+        Path tmp = partition(day).resolve("rollup.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(ROLLUP_MAGIC);
+            out.writeInt(entries.size());
+            for (Object[] e : entries) {
+                out.writeByte(((Resolution) e[0]).ordinal());
+                out.writeLong((Long) e[1]);
+                out.writeByte(((EventType) e[2]).ordinal());
+                ((Bucket) e[3]).write(out);
+            }
+        }
+        Files.move(tmp, partition(day).resolve("rollup.bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void recover() throws IOException {
+        long now = System.currentTimeMillis();
+        long today = Math.floorDiv(now, DAY_MS);
+        long oldest = Math.floorDiv(now - Resolution.DAY.retention, DAY_MS);
+        List<Long> days = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "day-*")) {
+            for (Path p : ds) {
+                try {
+                    long day = LocalDate.parse(p.getFileName().toString().substring(4)).toEpochDay();
+                    if (day >= oldest) days.add(day);
+                } catch (java.time.format.DateTimeParseException ignored) {
+                }
+            }
+        }
+        Collections.sort(days);
+        for (long day : days) {
+            Path saved = partition(day).resolve("rollup.bin");
+            if (day < today - 1 && Files.exists(saved) && loadRollups(saved, now)) continue;
+            scan(day, now);
+            if (day < today - 1) saveRollups(day);
+        }
+    }
+
+    private boolean loadRollups(Path file, long now) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != ROLLUP_MAGIC) return false;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Resolution r = Resolution.values()[in.readByte()];
+                long start = in.readLong();
+                EventType t = EventType.values()[in.readByte()];
+                Bucket b = Bucket.read(in);
+                if (start < r.floor(now - r.retention)) continue;
+                rollups.get(r).computeIfAbsent(start, s -> new AtomicReferenceArray<>(EventType.values().length)).set(t.ordinal(), b);
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Replays a day's raw columns into the rollups
+    private void scan(long day, long now) throws IOException {
+        Path partition = partition(day);
+        long rows = rowCount(partition);
+        if (rows == 0) return;
+        MappedByteBuffer[] cols = new MappedByteBuffer[COLUMNS.length];
+        for (int c = 0; c < COLUMNS.length; c++) {
+            try (FileChannel ch = FileChannel.open(partition.resolve(COLUMNS[c]), StandardOpenOption.READ)) {
+                cols[c] = ch.map(FileChannel.MapMode.READ_ONLY, 0, rows * WIDTHS[c]);
+            }
+        }
+        EventType[] types = EventType.values();
+        long base = day * DAY_MS;
+        for (int i = 0; i < rows; i++) {
+            int type = cols[1].get(i);
+            if (type < 0 || type >= types.length) continue;
+            rollup(new Event(base + cols[0].getInt(i * 4), types[type], cols[2].getLong(i * 8), cols[3].getInt(i * 4)), now);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
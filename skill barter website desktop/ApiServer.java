@@ -0,0 +1,536 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ApiServer.java
+ *
+ * Headless JSON API over the same backend flows as the Swing dialogs, for running SkillBarter
+ * on a server and load-testing it (see {@link LoadGenerator}). Started with
+ * {@code --server [--port 8080] [--bind 127.0.0.1]}.
+ *
+ *   GET  /api/health                                      {"status":"ok"}
+ *   GET  /api/search?q=java&limit=10                      {"hits":[{"name":..,"skills":[..],"score":..}]}
+ *   POST /api/register {name,email,password,teaches,learns}   201 {"email":..,"token":..}
+ *   POST /api/login    {email,password,remember}          {"email":..,"token":..}
+ *   POST /api/contact  {name,email,message}               202 {"queued":true|false}
+ *   GET  /metrics                                          Prometheus text, as MetricsExporter
+ *
+ * Skills may be JSON arrays or comma-separated strings. Errors are {"error":"..."} with 400
+ * (invalid input), 401 (bad credentials), 404, 405, 413 (body over 64 KB), 429 (rate limited,
+ * with Retry-After) or 500.
+ *
+ * Each request runs on its own virtual thread on Java 21+ (a fixed pool on older JVMs), so a
+ * login waiting for the scrypt pool does not hold up searches. Connections are kept alive
+ * between requests, and responses of COMPRESS_MIN_BYTES or more are gzipped when the client
+ * accepts it.
+ */
+final class ApiServer implements Closeable {
+    static final int MAX_BODY_BYTES = 64 * 1024;
+    static final int COMPRESS_MIN_BYTES = 1024;
+    static final int MAX_SEARCH_LIMIT = 100;
+    private static final String NDJSON = "application/x-ndjson; charset=utf-8";
+    private static final Metrics.Histogram REQUEST = Metrics.histogram("api.request");
+
+    /** A handled request: status and body (JSON unless said otherwise). */
+    private static final class Reply {
+        final int status;
+        final String json;
+        final String contentType;
+
+        Reply(int status, String json) {
+            this(status, json, "application/json; charset=utf-8");
+        }
+
+        Reply(int status, String body, String contentType) {
+            this.status = status;
+            this.json = body;
+            this.contentType = contentType;
+        }
+    }
+
+    private interface Handler {
+        Reply handle(HttpExchange exchange) throws Exception;
+    }
+
+    /** Client errors that map to a status code other than 500. */
+    private static final class ApiException extends Exception {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private ApiServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Starts serving on the address; port 0 picks a free one. */
+    static ApiServer start(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 1024);
+        ExecutorService executor = SkillBarterBackend.perRequestExecutor("api",
+                Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+        server.setExecutor(executor);
+        ApiServer api = new ApiServer(server, executor);
+        api.route("/api/health", "GET", ApiServer::health);
+        api.route("/api/search", "GET", ApiServer::search);
+        api.route("/api/match", "GET", ApiServer::match);
+        api.route("/api/register", "POST", ApiServer::register);
+        api.route("/api/login", "POST", ApiServer::login);
+        api.route("/api/logout", "POST", ApiServer::logout);
+        api.route("/api/contact", "POST", ApiServer::contact);
+        api.route("/api/sync", "POST", ApiServer::sync);
+        api.route("/internal/join", "POST", ApiServer::join);
+        api.route("/internal/members", "POST", ApiServer::members);
+        api.route("/internal/users", "POST", ApiServer::users);
+        api.route("/internal/search", "GET", ApiServer::shardSearch);
+        api.route("/internal/match", "GET", ApiServer::shardMatch);
+        api.route("/internal/listing", "GET", ApiServer::shardListing);
+        server.createContext("/", ex -> send(ex, 404, "application/json; charset=utf-8",
+                error(404, "Not found").json.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/metrics", ex -> {
+            if (!metricsAllowed(ex)) {
+                send(ex, 403, "application/json; charset=utf-8", error(403, "Forbidden").json.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            send(ex, 200, "text/plain; version=0.0.4; charset=utf-8", MetricsExporter.prometheusText().getBytes(StandardCharsets.UTF_8));
+        });
+        server.start();
+        return api;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // ----- Command line -----
+    /** Runs the server until the process is stopped; {@code args} are the ones after --server. */
+    static void run(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        // Headers and body go out as separate writes; with Nagle on, each response waits for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        int port = 8080;
+        String bind = "127.0.0.1", join = null, advertise = null;
+        boolean clustered = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--bind") && i + 1 < args.length) bind = args[++i];
+            else if (args[i].equals("--cluster")) clustered = true;
+            else if (args[i].equals("--join") && i + 1 < args.length) join = args[++i];
+            else if (args[i].equals("--advertise") && i + 1 < args.length) advertise = args[++i];
+        }
+        clustered |= join != null;
+        // Load the index, accounts and logs before the first request rather than during it
+        if (clustered) {
+            if (advertise == null && (port == 0 || bind.equals("0.0.0.0") || bind.equals("::"))) {
+                throw new IllegalArgumentException("Cluster nodes need a fixed --port and, when binding to all interfaces, --advertise host:port");
+            }
+            SkillBarterBackend.startCluster(advertise != null ? advertise : bind + ":" + port);
+        } else {
+            SkillBarterBackend.searchIndex();
+            SkillBarterBackend.matchEngine();
+        }
+        SkillBarterBackend.auth();
+        SkillBarterBackend.outbox();
+        SkillBarterBackend.analytics();
+        MetricsExporter.start();
+        ApiServer api = start(new InetSocketAddress(bind, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(api::close, "api-stop"));
+        System.out.println("SkillBarter API listening on http://" + bind + ":" + api.port() + "/api/");
+        if (join != null) {
+            try {
+                SkillBarterBackend.cluster().join(join);
+            } catch (IOException e) {
+                api.close();
+                throw e;
+            }
+        }
+    }
+
+    // ----- Endpoints -----
+    private static Reply health(HttpExchange ex) {
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node == null) return new Reply(200, "{\"status\":\"ok\"}");
+        StringBuilder sb = new StringBuilder("{\"status\":\"ok\",\"node\":");
+        quote(sb, node.self()).append(",\"members\":").append(node.shard().size()).append(",\"nodes\":[");
+        List<String> nodes = node.ring().nodes();
+        for (int i = 0; i < nodes.size(); i++) quote(i == 0 ? sb : sb.append(','), nodes.get(i));
+        return new Reply(200, sb.append("]}").toString());
+    }
+
+    private static Reply search(HttpExchange ex) throws ApiException {
+        Map<String, String> query = queryParams(ex.getRequestURI().getRawQuery());
+        String q = query.getOrDefault("q", "");
+        int limit = Math.max(1, Math.min(MAX_SEARCH_LIMIT, intParam(query, "limit", 10)));
+        List<SkillSearchIndex.Hit> hits = SkillBarterBackend.search(q, limit);
+        StringBuilder sb = new StringBuilder(64 + hits.size() * 96).append("{\"hits\":[");
+        for (int i = 0; i < hits.size(); i++) {
+            SkillSearchIndex.Hit h = hits.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":");
+            quote(sb, h.listing.userName).append(",\"skills\":[");
+            for (int j = 0; j < h.listing.skills.length; j++) {
+                if (j > 0) sb.append(',');
+                quote(sb, h.listing.skills[j]);
+            }
+            sb.append("],\"score\":").append(h.score).append('}');
+        }
+        return new Reply(200, sb.append("]}").toString());
+    }
+
+    private static Reply match(HttpExchange ex) throws ApiException {
+        Map<String, String> query = queryParams(ex.getRequestURI().getRawQuery());
+        int limit = Math.max(1, Math.min(MAX_SEARCH_LIMIT, intParam(query, "limit", 10)));
+        List<SkillMatchEngine.Match> matches = SkillBarterBackend.matches(SkillInterner.parseList(query.get("teaches")),
+                SkillInterner.parseList(query.get("learns")), limit);
+        StringBuilder sb = new StringBuilder(64 + matches.size() * 48).append("{\"matches\":[");
+        for (int i = 0; i < matches.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":");
+            quote(sb, matches.get(i).name).append(",\"score\":").append(matches.get(i).score).append('}');
+        }
+        return new Reply(200, sb.append("]}").toString());
+    }
+
+    private static Reply register(HttpExchange ex) throws Exception {
+        String raw = body(ex);
+        Map<String, String> body = parseJson(raw);
+        String name = body.get("name"), email = body.get("email"), password = body.getOrDefault("password", "");
+        char[] pw = password.toCharArray();
+        String problem = AuthService.validateRegistration(name, email, pw);
+        if (problem != null) throw new ApiException(400, problem);
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node != null && !node.owns(email) && !forwarded(ex)) return forward(ex, node, "/api/register", raw, email);
+        try {
+            AuthService.Session session = SkillBarterBackend.register(client(ex), name, email, pw,
+                    SkillInterner.parseList(body.get("teaches")), SkillInterner.parseList(body.get("learns")));
+            return new Reply(201, session(session));
+        } catch (AuthService.AuthException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+    }
+
+    private static Reply login(HttpExchange ex) throws Exception {
+        String raw = body(ex);
+        Map<String, String> body = parseJson(raw);
+        String email = body.getOrDefault("email", "");
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node != null && !node.owns(email) && !forwarded(ex)) return forward(ex, node, "/api/login", raw, email);
+        try {
+            AuthService.Session session = SkillBarterBackend.login(client(ex), email,
+                    body.getOrDefault("password", "").toCharArray(),
+                    "true".equals(body.get("remember")));
+            return new Reply(200, session(session));
+        } catch (AuthService.AuthException e) {
+            throw new ApiException(401, e.getMessage());
+        }
+    }
+
+    private static Reply logout(HttpExchange ex) throws Exception {
+        String raw = body(ex);
+        Map<String, String> body = parseJson(raw);
+        String email = body.getOrDefault("email", "");
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node != null && !node.owns(email) && !forwarded(ex)) return forward(ex, node, "/api/logout", raw, email);
+        SkillBarterBackend.auth().logout(body.getOrDefault("token", ""));
+        return new Reply(200, "{}");
+    }
+
+    private static Reply contact(HttpExchange ex) throws Exception {
+        Map<String, String> body = parseJson(body(ex));
+        String name = body.get("name"), email = body.get("email"), message = body.get("message");
+        String problem = AuthService.validateProfile(name, email);
+        if (problem == null && (message == null || message.trim().isEmpty())) problem = "Please enter a message.";
+        if (problem != null) throw new ApiException(400, problem);
+        long id = SkillBarterBackend.sendContactMessage(client(ex), name.trim(), email.trim(), message.trim());
+        return new Reply(202, "{\"queued\":" + (id >= 0) + "}");
+    }
+
+    // Body: {"email", "token" from login, "since" (the last vector, or ""), "viewed": [listing names]}
+    private static Reply sync(HttpExchange ex) throws Exception {
+        String raw = body(ex);
+        Map<String, String> body = parseJson(raw);
+        String email = body.getOrDefault("email", "");
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node != null && !node.owns(email) && !forwarded(ex)) return forward(ex, node, "/api/sync", raw, email);
+        if (!AuthService.canonicalEmail(email).equals(SkillBarterBackend.auth().authenticate(body.get("token")))) {
+            throw new ApiException(401, "Please log in again.");
+        }
+        List<String> viewed = SkillInterner.parseList(body.get("viewed"));
+        if (viewed.size() > ClientSync.RECENT_LISTINGS) viewed = viewed.subList(0, ClientSync.RECENT_LISTINGS);
+        return new Reply(200, SkillBarterBackend.sync().delta(email, body.get("since"), viewed), NDJSON);
+    }
+
+    // Accounts live on the node that owns their email; that node's answer is passed back as is
+    private static Reply forward(HttpExchange ex, ClusterNode node, String path, String raw, String email) throws ApiException {
+        String owner = node.ownerOf(email);
+        try {
+            ClusterNode.Response r = node.forward(owner, path, raw, client(ex));
+            if (r.retryAfter != null) ex.getResponseHeaders().set("Retry-After", r.retryAfter);
+            return r.contentType == null ? new Reply(r.status, r.body) : new Reply(r.status, r.body, r.contentType);
+        } catch (IOException e) {
+            Metrics.counter("cluster.forward.failed").increment();
+            throw new ApiException(503, "The server holding this account is not reachable right now. Please try again later.");
+        }
+    }
+
+    private static String session(AuthService.Session s) {
+        StringBuilder sb = new StringBuilder("{\"email\":");
+        quote(sb, s.email).append(",\"token\":");
+        return quote(sb, s.token).append(",\"expiresAt\":").append(s.expiresAt).append('}').toString();
+    }
+
+    // ----- Cluster (node to node) -----
+    private static ClusterNode internal(HttpExchange ex) throws ApiException {
+        ClusterNode node = SkillBarterBackend.cluster();
+        if (node == null) throw new ApiException(404, "Not found");
+        if (!node.trusted(ex.getRemoteAddress().getAddress(), ex.getRequestHeaders().getFirst(ClusterNode.SECRET_HEADER))) {
+            throw new ApiException(403, "Not a cluster member");
+        }
+        return node;
+    }
+
+    // Metrics name routes and show load, so only loopback callers and cluster members may scrape them
+    private static boolean metricsAllowed(HttpExchange ex) {
+        InetAddress caller = ex.getRemoteAddress().getAddress();
+        if (caller.isLoopbackAddress()) return true;
+        ClusterNode node = SkillBarterBackend.cluster();
+        return node != null && node.trusted(caller, ex.getRequestHeaders().getFirst(ClusterNode.SECRET_HEADER));
+    }
+
+    // Sent on by another node, which already routed it here
+    private static boolean forwarded(HttpExchange ex) throws ApiException {
+        return ex.getRequestHeaders().containsKey(ClusterNode.CLIENT_HEADER) && internal(ex) != null;
+    }
+
+    private static Reply join(HttpExchange ex) throws Exception {
+        ClusterNode node = internal(ex);
+        String joining = parseJson(body(ex)).get("node");
+        if (joining == null || joining.indexOf(':') < 0) throw new ApiException(400, "Expected {\"node\":\"host:port\"}");
+        return new Reply(200, ClusterNode.membersJson(node.merge(Collections.singleton(joining))));
+    }
+
+    private static Reply members(HttpExchange ex) throws Exception {
+        ClusterNode node = internal(ex);
+        List<String> nodes = SkillInterner.parseList(parseJson(body(ex)).get("members"));
+        return new Reply(200, ClusterNode.membersJson(node.merge(nodes)));
+    }
+
+    private static Reply users(HttpExchange ex) throws Exception {
+        ClusterNode node = internal(ex);
+        try {
+            return new Reply(200, "{\"stored\":" + node.receive(body(ex)) + "}");
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+    }
+
+    private static Reply shardSearch(HttpExchange ex) throws ApiException {
+        ClusterNode node = internal(ex);
+        Map<String, String> query = queryParams(ex.getRequestURI().getRawQuery());
+        List<SkillSearchIndex.Hit> hits = node.shard().index().search(query.getOrDefault("q", ""), intParam(query, "limit", 10));
+        return new Reply(200, ClusterNode.hitLines(hits), NDJSON);
+    }
+
+    private static Reply shardListing(HttpExchange ex) throws ApiException {
+        ClusterNode node = internal(ex);
+        SkillSearchIndex.Listing l = node.shard().listing(queryParams(ex.getRequestURI().getRawQuery()).getOrDefault("name", ""));
+        return new Reply(200, ClusterNode.hitLines(l == null ? Collections.<SkillSearchIndex.Hit>emptyList()
+                : Collections.singletonList(new SkillSearchIndex.Hit(l, 0))), NDJSON);
+    }
+
+    private static Reply shardMatch(HttpExchange ex) throws ApiException {
+        ClusterNode node = internal(ex);
+        Map<String, String> query = queryParams(ex.getRequestURI().getRawQuery());
+        List<SkillMatchEngine.Match> matches = node.localMatches(SkillInterner.parseList(query.get("teaches")),
+                SkillInterner.parseList(query.get("learns")), intParam(query, "limit", 10), "true".equals(query.get("learnOnly")));
+        return new Reply(200, ClusterNode.matchLines(matches), NDJSON);
+    }
+
+    // ----- Plumbing -----
+    private void route(String path, String method, Handler handler) {
+        Metrics.Histogram latency = Metrics.histogram(path.substring(1).replace('/', '.'));
+        server.createContext(path, ex -> {
+            long t0 = System.nanoTime();
+            Reply reply;
+            try {
+                if (!ex.getRequestURI().getPath().equals(path)) reply = error(404, "Not found");
+                else if (!ex.getRequestMethod().equals(method)) reply = error(405, "Use " + method);
+                else reply = handler.handle(ex);
+            } catch (ApiException e) {
+                reply = error(e.status, e.getMessage());
+            } catch (RateLimiter.LimitExceeded e) {
+                ex.getResponseHeaders().set("Retry-After", Long.toString(e.retryAfterSeconds()));
+                reply = error(429, e.getMessage());
+            } catch (Exception e) {
+                Metrics.counter("api.errors").increment();
+                System.err.println("API " + path + " failed: " + e);
+                reply = error(500, "Internal error");
+            }
+            byte[] body = reply.json.getBytes(StandardCharsets.UTF_8);
+            send(ex, reply.status, reply.contentType, body);
+            long elapsed = System.nanoTime() - t0;
+            REQUEST.record(elapsed);
+            latency.record(elapsed);
+        });
+    }
+
+    // Rate limits are per remote address (a reverse proxy in front would make every client one),
+    // or the original client's address when another cluster node forwarded the request
+    private static String client(HttpExchange ex) throws ApiException {
+        String original = ex.getRequestHeaders().getFirst(ClusterNode.CLIENT_HEADER);
+        if (original != null && forwarded(ex)) return original;
+        return ex.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private static Reply error(int status, String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        return new Reply(status, quote(sb, message).append('}').toString());
+    }
+
+    // Drains the request body (required for keep-alive), compresses if worthwhile and closes the exchange
+    private static void send(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        try {
+            Headers headers = ex.getResponseHeaders();
+            if (!drain(ex.getRequestBody())) headers.set("Connection", "close");
+            headers.set("Content-Type", contentType);
+            if (body.length >= COMPRESS_MIN_BYTES && acceptsGzip(ex)) {
+                ByteArrayOutputStream gz = new ByteArrayOutputStream(body.length / 3);
+                try (GZIPOutputStream out = new GZIPOutputStream(gz)) {
+                    out.write(body);
+                }
+                body = gz.toByteArray();
+                headers.set("Content-Encoding", "gzip");
+                headers.set("Vary", "Accept-Encoding");
+            }
+            ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = ex.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    // False when the client keeps sending past the limit; that connection is not worth keeping
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] skip = new byte[4096];
+        long total = 0;
+        for (int n; (n = in.read(skip)) >= 0; ) {
+            if ((total += n) > MAX_BODY_BYTES) return false;
+        }
+        in.close();
+        return true;
+    }
+
+    private static boolean acceptsGzip(HttpExchange ex) {
+        List<String> values = ex.getRequestHeaders().get("Accept-Encoding");
+        if (values == null) return false;
+        for (String v : values) if (v.contains("gzip")) return true;
+        return false;
+    }
+
+    private static String body(HttpExchange ex) throws IOException, ApiException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(512);
+        byte[] chunk = new byte[4096];
+        // Left open: send() drains whatever is not read here
+        InputStream in = ex.getRequestBody();
+        for (int n; (n = in.read(chunk)) >= 0; ) {
+            buf.write(chunk, 0, n);
+            if (buf.size() > MAX_BODY_BYTES) throw new ApiException(413, "Request body is larger than 64 KB");
+        }
+        return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseJson(String body) throws ApiException {
+        try {
+            return UserImporter.parseJsonObject(body.trim());
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+    }
+
+    private static Map<String, String> queryParams(String raw) throws ApiException {
+        Map<String, String> out = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return out;
+        try {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                out.put(key, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        } catch (IllegalArgumentException | java.io.UnsupportedEncodingException e) {
+            throw new ApiException(400, "Malformed query string");
+        }
+        return out;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int fallback) throws ApiException {
+        String v = query.get(name);
+        if (v == null) return fallback;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    static StringBuilder quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    static StringBuilder array(StringBuilder sb, Collection<String> values) {
+        sb.append('[');
+        boolean first = true;
+        for (String v : values) {
+            if (!first) sb.append(',');
+            quote(sb, v);
+            first = false;
+        }
+        return sb.append(']');
+    }
+}
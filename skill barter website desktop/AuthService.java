@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * AuthService.java
+ *
+ * Registration and login against the repository, with salted scrypt password hashes.
+ *
+ * Stored hashes look like {@code $scrypt$ln=14,r=8,p=1$<salt>$<hash>} so the cost can be
+ * raised later: a successful login with older parameters re-hashes the password at the
+ * current cost. Hashing only ever runs on a small fixed pool with a bounded queue; when a
+ * burst fills the queue new attempts are rejected straight away instead of piling up
+ * memory or taking every core.
+ *
+ * A successful login returns a session token. Tokens live in a bounded LRU cache with an
+ * expiry, so later requests authenticate with the token and never hash again.
+ */
+final class AuthService {
+    static final int MIN_PASSWORD = 6;
+    static final int MAX_PASSWORD = 1024;
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+");
+    private static final int SALT_BYTES = 16, HASH_BYTES = 32;
+    // Stored salts and hashes outside these lengths are not ours
+    private static final int MIN_SALT = 8, MAX_SALT = 64, MIN_HASH = 16, MAX_HASH = 64;
+    private static final long SESSION_TTL = TimeUnit.HOURS.toMillis(12);
+    private static final long REMEMBERED_TTL = TimeUnit.DAYS.toMillis(30);
+
+    /** Thrown for bad credentials, duplicate accounts and rejected (overloaded) attempts. */
+    static class AuthException extends Exception {
+        AuthException(String message) {
+            super(message);
+        }
+    }
+
+    /** Scrypt cost; N = 2^logN. */
+    static final class Cost {
+        final int logN, r, p;
+
+        Cost(int logN, int r, int p) {
+            this.logN = logN;
+            this.r = r;
+            this.p = p;
+        }
+
+        /** Reads -Dskillbarter.auth.scrypt.ln / .r / .p, defaulting to 2^14, 8, 1 (16 MB per hash). */
+        static Cost fromSystemProperties() {
+            return new Cost(Integer.getInteger("skillbarter.auth.scrypt.ln", 14),
+                    Integer.getInteger("skillbarter.auth.scrypt.r", 8),
+                    Integer.getInteger("skillbarter.auth.scrypt.p", 1));
+        }
+
+        boolean within(Cost limit) {
+            return logN <= limit.logN && r <= limit.r && p <= limit.p;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Cost && ((Cost) o).logN == logN && ((Cost) o).r == r && ((Cost) o).p == p;
+        }
+
+        @Override
+        public int hashCode() {
+            return (logN * 31 + r) * 31 + p;
+        }
+    }
+
+    static final class Session {
+        final String token;
+        final String email;
+        final long expiresAt;
+
+        Session(String token, String email, long expiresAt) {
+            this.token = token;
+            this.email = email;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final SkillBarterRepository repository;
+    private final Cost cost;
+    private final ThreadPoolExecutor hashers;
+    private final SecureRandom random = new SecureRandom();
+    private final Set<String> registering = ConcurrentHashMap.newKeySet();
+    private final int maxSessions;
+    // Access-ordered, so iteration starts at the least recently used session
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private volatile String dummyHash;
+
+    AuthService(SkillBarterRepository repository, Cost cost, int hashThreads, int queueSize, int maxSessions) {
+        this.repository = repository;
+        this.cost = cost;
+        this.maxSessions = maxSessions;
+        this.hashers = new ThreadPoolExecutor(hashThreads, hashThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "password-hasher");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // ----- Validation (shared with the dialogs) -----
+    /** Null when the login form is acceptable, otherwise a message for the user. */
+    static String validateLogin(String email, char[] password) {
+        if (email == null || !EMAIL.matcher(email.trim()).matches()) return "Please enter a valid email address.";
+        if (password == null || password.length == 0) return "Please enter your password.";
+        if (password.length > MAX_PASSWORD) return "Password is too long.";
+        return null;
+    }
+
+    /** Null when the registration form is acceptable, otherwise a message for the user. */
+    static String validateRegistration(String name, String email, char[] password) {
+        String problem = validateProfile(name, email);
+        if (problem != null) return problem;
+        problem = validateLogin(email, password);
+        if (problem != null) return problem;
+        if (password.length < MIN_PASSWORD) return "Password must be " + MIN_PASSWORD + "+ chars.";
+        return null;
+    }
+
+    /** The name and email checks of {@link #validateRegistration}, for accounts created without a password. */
+    static String validateProfile(String name, String email) {
+        if (name == null || name.trim().isEmpty()) return "Please enter your name.";
+        if (email == null || !EMAIL.matcher(email.trim()).matches()) return "Please enter a valid email address.";
+        return null;
+    }
+
+    static String canonicalEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // ----- Accounts -----
+    /** Creates the account and signs it in. The password array is cleared. */
+    Session register(String name, String email, char[] password, List<String> teaches, List<String> learns)
+            throws AuthException, IOException {
+        try {
+            String problem = validateRegistration(name, email, password);
+            if (problem != null) throw new AuthException(problem);
+            String account = canonicalEmail(email);
+            if (!registering.add(account)) throw new AuthException("This account is already being created.");
+            try {
+                if (repository.findUser(account) != null) throw new AuthException("An account with this email already exists.");
+                String hash = hash(password);
+                repository.saveUser(new SkillBarterRepository.User(account, name.trim(), hash, teaches, learns,
+                        System.currentTimeMillis()));
+            } finally {
+                registering.remove(account);
+            }
+            Metrics.counter("auth.register").increment();
+            return newSession(account, false);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /** Checks the password and opens a session. The password array is cleared. */
+    Session login(String email, char[] password, boolean remember) throws AuthException, IOException {
+        try {
+            String problem = validateLogin(email, password);
+            if (problem != null) throw new AuthException(problem);
+            String account = canonicalEmail(email);
+            SkillBarterRepository.User user = repository.findUser(account);
+            // Unknown accounts still pay for one hash so response time does not reveal which emails exist
+            String stored = user != null && user.passwordHash != null ? user.passwordHash : dummyHash();
+            boolean ok = verify(password, stored) && user != null && user.passwordHash != null;
+            if (!ok) {
+                Metrics.counter("auth.login.failed").increment();
+                throw new AuthException("Email or password is incorrect.");
+            }
+            if (!cost.equals(parseCost(stored))) upgrade(user, password);
+            Metrics.counter("auth.login.ok").increment();
+            return newSession(account, remember);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /** The account behind a live session token, or null if unknown or expired. */
+    String authenticate(String token) {
+        if (token == null) return null;
+        synchronized (sessions) {
+            Session s = sessions.get(token);
+            if (s == null) return null;
+            if (s.expiresAt <= System.currentTimeMillis()) {
+                sessions.remove(token);
+                return null;
+            }
+            return s.email;
+        }
+    }
+
+    void logout(String token) {
+        synchronized (sessions) {
+            sessions.remove(token);
+        }
+    }
+
+    int sessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    private Session newSession(String account, boolean remember) {
+        byte[] raw = new byte[24];
+        random.nextBytes(raw);
+        long now = System.currentTimeMillis();
+        Session s = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(raw), account,
+                now + (remember ? REMEMBERED_TTL : SESSION_TTL));
+        synchronized (sessions) {
+            sessions.put(s.token, s);
+            // Drop expired sessions from the cold end, then the least recently used beyond the cap
+            Iterator<Session> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                Session old = it.next();
+                if (sessions.size() > maxSessions || old.expiresAt <= now) it.remove();
+                else break;
+            }
+        }
+        return s;
+    }
+
+    private void upgrade(SkillBarterRepository.User user, char[] password) throws AuthException, IOException {
+        String hash = hash(password);
+        repository.saveUser(new SkillBarterRepository.User(user.email, user.name, hash, user.teaches, user.learns, user.createdAt));
+    }
+
+    private String dummyHash() throws AuthException {
+        String h = dummyHash;
+        if (h == null) dummyHash = h = hash("not-a-real-password".toCharArray());
+        return h;
+    }
+
+    // ----- Hashing -----
+    /**
+     * Hashes at the current cost on the calling thread and clears the password. For bulk
+     * callers that bound their own hashing threads (see UserImporter); sign-ins use the pool.
+     */
+    String hashNow(char[] password) {
+        byte[] pw = utf8(password);
+        Arrays.fill(password, '\0');
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Cost c = cost;
+        long t0 = System.nanoTime();
+        try {
+            return format(c, salt, Scrypt.derive(pw, salt, 1 << c.logN, c.r, c.p, HASH_BYTES));
+        } catch (java.security.GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing failed", e);
+        } finally {
+            Arrays.fill(pw, (byte) 0);
+            Metrics.histogram("auth.hash").record(System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * The costliest stored hash that is accepted: the configured cost, or 2^16, 8, 1 (64 MB
+     * per hash) where that is higher. An imported or replicated hash could otherwise make
+     * every login for its email run scrypt with gigabytes of memory.
+     */
+    static final Cost CEILING;
+    static {
+        Cost configured = Cost.fromSystemProperties();
+        CEILING = new Cost(Math.max(configured.logN, 16), Math.max(configured.r, 8), Math.max(configured.p, 1));
+    }
+
+    /** True for a hash string this service can verify, e.g. one exported from another install, costing no more than {@link #CEILING}. */
+    static boolean isPasswordHash(String stored) {
+        Cost c = stored == null ? null : parseCost(stored);
+        return c != null && c.within(CEILING);
+    }
+
+    private String hash(char[] password) throws AuthException {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Cost c = cost;
+        return format(c, salt, derive(password, salt, c, HASH_BYTES));
+    }
+
+    private static String format(Cost c, byte[] salt, byte[] dk) {
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return "$scrypt$ln=" + c.logN + ",r=" + c.r + ",p=" + c.p + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(dk);
+    }
+
+    private static byte[] utf8(char[] password) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] pw = new byte[encoded.remaining()];
+        encoded.get(pw);
+        Arrays.fill(encoded.array(), (byte) 0);
+        return pw;
+    }
+
+    private boolean verify(char[] password, String stored) throws AuthException {
+        String[] parts = stored.split("\\$");
+        Cost c = parseCost(stored);
+        if (c == null || !c.within(CEILING) && !c.equals(cost)) return false;
+        byte[] salt = Base64.getDecoder().decode(parts[3]), expected = Base64.getDecoder().decode(parts[4]);
+        return MessageDigest.isEqual(expected, derive(password, salt, c, expected.length));
+    }
+
+    // The cost of a well-formed hash, or null
+    private static Cost parseCost(String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 5 || !"scrypt".equals(parts[1])) return null;
+        int logN = -1, r = -1, p = -1;
+        for (String kv : parts[2].split(",")) {
+            int eq = kv.indexOf('=');
+            if (eq < 0) return null;
+            int v;
+            try {
+                v = Integer.parseInt(kv.substring(eq + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            switch (kv.substring(0, eq)) {
+                case "ln": logN = v; break;
+                case "r": r = v; break;
+                case "p": p = v; break;
+                default: return null;
+            }
+        }
+        if (logN <= 0 || r <= 0 || p <= 0) return null;
+        Cost c = new Cost(logN, r, p);
+        try {
+            int salt = Base64.getDecoder().decode(parts[3]).length, hash = Base64.getDecoder().decode(parts[4]).length;
+            return salt >= MIN_SALT && salt <= MAX_SALT && hash >= MIN_HASH && hash <= MAX_HASH ? c : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Runs the derivation on the hashing pool and waits; a full queue rejects immediately
+    private byte[] derive(char[] password, byte[] salt, Cost c, int length) throws AuthException {
+        byte[] pw = utf8(password);
+        Future<byte[]> f;
+        try {
+            f = hashers.submit(() -> {
+                long t0 = System.nanoTime();
+                try {
+                    return Scrypt.derive(pw, salt, 1 << c.logN, c.r, c.p, length);
+                } finally {
+                    Arrays.fill(pw, (byte) 0);
+                    Metrics.histogram("auth.hash").record(System.nanoTime() - t0);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(pw, (byte) 0);
+            Metrics.counter("auth.rejected").increment();
+            throw new AuthException("Too many sign-in attempts right now. Please try again in a moment.");
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthException("Sign-in was interrupted.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * BackgroundTasks.java
+ *
+ * Runs dialog actions off the Event Dispatch Thread and posts results back to it.
+ *
+ * Work runs on virtual threads when the JVM has them (Java 21+) and on a cached pool of
+ * daemon threads otherwise. Each task supports cancellation, an optional timeout (for reads;
+ * a write that times out may still have happened, so writes use slowNotice instead) and
+ * progress updates; progress is coalesced so a chatty task posts at most one pending
+ * update to the EDT. Exactly one of onSuccess/onFailure runs, always on the EDT.
+ *
+ * Each task records "task.<name>.latency" (the work itself) and "task.<name>.response"
+ * (start until its callback runs on the EDT, which is what the user waits for).
+ *
+ * An EDT monitor posts a probe every 100 ms and records how long it waited in the
+ * "edt.lag" histogram, i.e. how long the EDT was blocked by whatever ran before it.
+ */
+final class BackgroundTasks {
+    private BackgroundTasks() {}
+
+    private static final ExecutorService WORKERS = newWorkerExecutor();
+    private static final ScheduledExecutorService TIMERS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "task-timeouts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Metrics.Histogram EDT_LAG = Metrics.histogram("edt.lag");
+    private static final Metrics.Histogram EDT_CALLBACK = Metrics.histogram("edt.callback");
+    private static final LongAdder EDT_STALLS = Metrics.counter("edt.stalls");
+
+    /** A task name's metrics, looked up once so starting and finishing a task builds no names. */
+    private static final class TaskMetrics {
+        final LongAdder started, cancelled, failed;
+        final Metrics.Histogram latency, response;
+
+        TaskMetrics(String name) {
+            started = Metrics.counter("task." + name + ".started");
+            cancelled = Metrics.counter("task." + name + ".cancelled");
+            failed = Metrics.counter("task." + name + ".failed");
+            latency = Metrics.histogram("task." + name + ".latency");
+            response = Metrics.histogram("task." + name + ".response");
+        }
+    }
+
+    private static final ConcurrentHashMap<String, TaskMetrics> TASK_METRICS = new ConcurrentHashMap<>();
+
+    /** The body of a task; runs on a worker thread. */
+    interface Work<T> {
+        T run(Progress progress) throws Exception;
+    }
+
+    /** Lets work report progress and notice cancellation. */
+    interface Progress {
+        void update(int percent, String message);
+
+        boolean isCancelled();
+    }
+
+    /** Creates a task; nothing runs until {@link Task#start()}. */
+    static <T> Task<T> task(String name, Work<T> work) {
+        return new Task<>(name, work);
+    }
+
+    static final class Task<T> implements Progress {
+        private final String name;
+        private final Work<T> work;
+        private final TaskMetrics metrics;
+        private long timeoutMillis;
+        private long slowMillis;
+        private Runnable onSlow;
+        private Consumer<T> onSuccess = r -> {};
+        private Consumer<Throwable> onFailure = e -> {};
+        private ProgressListener onProgress;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicReference<Object[]> pendingProgress = new AtomicReference<>();
+        private volatile Future<?> future;
+        private volatile boolean cancelled;
+        private long startedAt;
+
+        /** Receives coalesced progress on the EDT. */
+        interface ProgressListener {
+            void progress(int percent, String message);
+        }
+
+        private Task(String name, Work<T> work) {
+            this.name = name;
+            this.work = work;
+            this.metrics = TASK_METRICS.computeIfAbsent(name, TaskMetrics::new);
+        }
+
+        Task<T> timeout(long millis) {
+            this.timeoutMillis = millis;
+            return this;
+        }
+
+        /**
+         * Runs the notice on the EDT if the work is still going after {@code millis}. Unlike
+         * timeout() nothing is cancelled, and the result is delivered when it arrives.
+         */
+        Task<T> slowNotice(long millis, Runnable notice) {
+            this.slowMillis = millis;
+            this.onSlow = notice;
+            return this;
+        }
+
+        Task<T> onSuccess(Consumer<T> action) {
+            this.onSuccess = action;
+            return this;
+        }
+
+        Task<T> onFailure(Consumer<Throwable> action) {
+            this.onFailure = action;
+            return this;
+        }
+
+        Task<T> onProgress(ProgressListener listener) {
+            this.onProgress = listener;
+            return this;
+        }
+
+        Task<T> start() {
+            startedAt = System.nanoTime();
+            metrics.started.increment();
+            future = WORKERS.submit(() -> {
+                try {
+                    T result = work.run(this);
+                    complete(result, null);
+                } catch (Throwable e) {
+                    complete(null, e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+            if (timeoutMillis > 0) {
+                TIMERS.schedule(() -> {
+                    if (!finished.get()) {
+                        future.cancel(true);
+                        complete(null, new TimeoutException(name + " timed out after " + timeoutMillis + " ms"));
+                    }
+                }, timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (onSlow != null) {
+                TIMERS.schedule(() -> {
+                    if (!finished.get()) SwingUtilities.invokeLater(() -> {
+                        if (!finished.get()) onSlow.run();
+                    });
+                }, slowMillis, TimeUnit.MILLISECONDS);
+            }
+            return this;
+        }
+
+        /** Cancels the task; neither callback runs afterwards. */
+        void cancel() {
+            cancelled = true;
+            if (finished.compareAndSet(false, true)) {
+                metrics.cancelled.increment();
+                Future<?> f = future;
+                if (f != null) f.cancel(true);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || Thread.currentThread().isInterrupted();
+        }
+
+        @Override
+        public void update(int percent, String message) {
+            if (onProgress == null || finished.get()) return;
+            // Only schedule an EDT hop if one is not already waiting; it will pick up the latest value
+            if (pendingProgress.getAndSet(new Object[] {percent, message}) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    Object[] p = pendingProgress.getAndSet(null);
+                    if (p != null && !finished.get()) onProgress.progress((Integer) p[0], (String) p[1]);
+                });
+            }
+        }
+
+        private void complete(T result, Throwable error) {
+            if (!finished.compareAndSet(false, true)) return;
+            metrics.latency.record(System.nanoTime() - startedAt);
+            if (error != null) metrics.failed.increment();
+            SwingUtilities.invokeLater(() -> {
+                long t0 = System.nanoTime();
+                // Click to result on screen, including the wait for the EDT
+                metrics.response.record(t0 - startedAt);
+                if (error == null) onSuccess.accept(result);
+                else onFailure.accept(error);
+                EDT_CALLBACK.record(System.nanoTime() - t0);
+            });
+        }
+    }
+
+    // ----- Executors -----
+    private static ExecutorService newWorkerExecutor() {
+        try {
+            // Java 21+: one virtual thread per task; looked up reflectively so the app still runs on older JVMs
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "ui-task");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ----- EDT monitor -----
+    private static volatile boolean monitoring;
+
+    /** Starts probing EDT responsiveness into the "edt.lag" histogram; safe to call more than once. */
+    static synchronized void startEdtMonitor() {
+        if (monitoring) return;
+        monitoring = true;
+        AtomicBoolean inFlight = new AtomicBoolean();
+        TIMERS.scheduleAtFixedRate(() -> {
+            if (!inFlight.compareAndSet(false, true)) return;
+            long posted = System.nanoTime();
+            SwingUtilities.invokeLater(() -> {
+                long lag = System.nanoTime() - posted;
+                EDT_LAG.record(lag);
+                if (lag > TimeUnit.MILLISECONDS.toNanos(100)) EDT_STALLS.increment();
+                inFlight.set(false);
+            });
+        }, 100, 100, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * ClientCache.java
+ *
+ * The desktop app's on-disk cache: a memory-mapped, append-only file of key/value records
+ * ("profile", "match/3", "message/0000000042", ...), so the app can show what it knew last
+ * time before it has talked to the server. Keys are kept in a sorted in-memory table of
+ * record positions, and values are decoded from the mapped file on each read.
+ *
+ * A put or remove appends a record and never rewrites one. When the file is full, the live
+ * records are compacted to its front, and the file grows first if they would still fill more
+ * than half of it. The mapped file is never replaced or shrunk, which Windows would refuse.
+ * The file starts with a format version; a file from another version, or a torn final record
+ * from a crash, is discarded, since everything in it can be fetched again.
+ */
+final class ClientCache implements Closeable {
+    static final int FORMAT = 1;
+    static final int INITIAL_BYTES = 256 * 1024;
+
+    // File: [int magic][int format], then records [int length][int crc][byte op][int keyLen][key][value]
+    private static final int MAGIC = 0x53424343; // "SBCC"
+    private static final int FILE_HEADER = 8;
+    private static final int HEADER = 8;
+    private static final byte PUT = 1, REMOVE = 2;
+
+    private static final Metrics.Histogram OPEN_TIME = Metrics.histogram("cache.open");
+
+    private final Path file;
+    private final TreeMap<String, Integer> positions = new TreeMap<>(); // key -> record position
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private int end;
+    private long liveBytes;
+
+    private ClientCache(Path file) {
+        this.file = file;
+    }
+
+    /** Opens (or creates) the cache file. */
+    static ClientCache open(Path file) throws IOException {
+        long t0 = System.nanoTime();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        ClientCache cache = new ClientCache(file);
+        cache.map(file, Math.max(INITIAL_BYTES, Files.exists(file) ? Files.size(file) : 0));
+        cache.recover();
+        OPEN_TIME.record(System.nanoTime() - t0);
+        return cache;
+    }
+
+    synchronized String get(String key) {
+        Integer pos = positions.get(key);
+        return pos == null ? null : value(pos);
+    }
+
+    /** Keys starting with the prefix, in order. */
+    synchronized List<String> keys(String prefix) {
+        return new ArrayList<>(positions.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    }
+
+    /** Values of the keys starting with the prefix, in key order. */
+    synchronized List<String> values(String prefix) {
+        List<String> out = new ArrayList<>();
+        for (int pos : positions.subMap(prefix, prefix + Character.MAX_VALUE).values()) out.add(value(pos));
+        return out;
+    }
+
+    synchronized void put(String key, String value) throws IOException {
+        if (value.equals(get(key))) return;
+        append(PUT, key, value);
+    }
+
+    synchronized void remove(String key) throws IOException {
+        if (positions.containsKey(key)) append(REMOVE, key, "");
+    }
+
+    /** Drops every entry, e.g. when another account signs in. */
+    synchronized void clear() throws IOException {
+        positions.clear();
+        liveBytes = 0;
+        rewrite(0);
+    }
+
+    /** Forces appended records to disk. */
+    synchronized void force() {
+        buf.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buf.force();
+        channel.close();
+    }
+
+    // ----- Records -----
+    private void append(byte op, String key, String value) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8), v = value.getBytes(StandardCharsets.UTF_8);
+        int len = 1 + 4 + k.length + v.length;
+        if (end + HEADER + len > buf.limit()) rewrite(HEADER + len);
+        ByteBuffer record = ByteBuffer.allocate(len);
+        record.put(op).putInt(k.length).put(k).put(v);
+        crc.reset();
+        crc.update(record.array(), 0, len);
+        buf.position(end);
+        buf.putInt(len).putInt((int) crc.getValue()).put(record.array());
+        Integer old = op == PUT ? positions.put(key, end) : positions.remove(key);
+        if (old != null) liveBytes -= HEADER + buf.getInt(old);
+        if (op == PUT) liveBytes += HEADER + len;
+        end += HEADER + len;
+    }
+
+    private String value(int pos) {
+        int len = buf.getInt(pos), keyLen = buf.getInt(pos + HEADER + 1);
+        byte[] v = new byte[len - 1 - 4 - keyLen];
+        ByteBuffer b = buf.duplicate();
+        b.position(pos + HEADER + 1 + 4 + keyLen);
+        b.get(v);
+        return new String(v, StandardCharsets.UTF_8);
+    }
+
+    private String key(int pos) {
+        byte[] k = new byte[buf.getInt(pos + HEADER + 1)];
+        ByteBuffer b = buf.duplicate();
+        b.position(pos + HEADER + 1 + 4);
+        b.get(k);
+        return new String(k, StandardCharsets.UTF_8);
+    }
+
+    // Compacts the live records to the front of the file, growing it first so {@code extra} more bytes fit
+    private void rewrite(int extra) throws IOException {
+        long size = buf.limit();
+        while (size < FILE_HEADER + 2 * (liveBytes + extra)) size *= 2;
+        if (size > Integer.MAX_VALUE) throw new IOException("Client cache is full");
+        ByteBuffer live = ByteBuffer.allocate((int) liveBytes);
+        for (Map.Entry<String, Integer> e : positions.entrySet()) {
+            int pos = e.getValue(), len = HEADER + buf.getInt(pos);
+            ByteBuffer record = buf.duplicate();
+            record.position(pos).limit(pos + len);
+            e.setValue(FILE_HEADER + live.position());
+            live.put(record);
+        }
+        if (size > buf.limit()) buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        // Without a header, a crash mid-way leaves a file that open() discards, not a mix of old and new records
+        buf.putInt(0, 0);
+        buf.force();
+        buf.position(FILE_HEADER);
+        buf.put(live.array(), 0, live.position());
+        int stale = end;
+        end = buf.position();
+        byte[] zeros = new byte[4096];
+        while (buf.position() < stale) buf.put(zeros, 0, Math.min(zeros.length, stale - buf.position()));
+        buf.putInt(0, MAGIC).putInt(4, FORMAT);
+        buf.force();
+    }
+
+    private void map(Path path, long size) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void recover() throws IOException {
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT) {
+            positions.clear();
+            liveBytes = 0;
+            end = buf.limit(); // nothing in it is ours, so all of it is cleared
+            rewrite(0);
+            return;
+        }
+        int pos = FILE_HEADER;
+        byte[] record = new byte[1024];
+        while (pos + HEADER <= buf.limit()) {
+            int len = buf.getInt(pos);
+            if (len < 5 || pos + HEADER + len > buf.limit()) break;
+            if (len > record.length) record = new byte[Math.max(len, record.length * 2)];
+            ByteBuffer b = buf.duplicate();
+            b.position(pos + HEADER);
+            b.get(record, 0, len);
+            crc.reset();
+            crc.update(record, 0, len);
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) break;
+            String key = key(pos);
+            Integer old = record[0] == PUT ? positions.put(key, pos) : positions.remove(key);
+            if (old != null) liveBytes -= HEADER + buf.getInt(old);
+            if (record[0] == PUT) liveBytes += HEADER + len;
+            pos += HEADER + len;
+        }
+        end = pos;
+        // A torn record from a crash: keep everything before it and clear the rest of the file
+        if (pos + HEADER <= buf.limit() && buf.getInt(pos) != 0) {
+            end = buf.limit();
+            rewrite(0);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ClientSync.java
+ *
+ * Keeps the desktop app's {@link ClientCache} in step with the server. The Profile card and
+ * search read only the cache, so they draw at once, even offline. Syncs run in the background:
+ * after sign-in, when the Profile card is shown and every -Dskillbarter.sync.intervalSeconds
+ * (default 60). Each one sends the version vector from the last and applies the delta that
+ * comes back (see {@link SyncService}).
+ *
+ * By default the app syncs with the backend in this process. With
+ * -Dskillbarter.sync.url=http://host:8080 it syncs with a server-mode instance instead. Sign-in
+ * and registration then go to that server too (login() and register()), since session tokens
+ * are only known to the process that issued them.
+ */
+final class ClientSync {
+    static final int RECENT_LISTINGS = 20;
+    static final int RECENT_SEARCHES = 20;
+
+    private static final Metrics.Histogram SYNC_TIME = Metrics.histogram("sync.client");
+    private static final LongAdder FAILED = Metrics.counter("sync.failed");
+
+    private final ClientCache cache;
+    private final String server;
+    private final long intervalSeconds;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "client-sync");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile String problem;
+    private volatile AuthService.Session session;
+
+    /** Syncs with the server at {@code server} ("http://host:port"), or in process when it is null. */
+    ClientSync(ClientCache cache, String server, long intervalSeconds) throws IOException {
+        this.cache = cache;
+        this.server = server;
+        this.intervalSeconds = intervalSeconds;
+        // A cache filled from another server, or kept for someone who did not ask to be remembered, is dropped
+        String source = server == null ? "local" : server;
+        if (!source.equals(cache.get("source")) || !"true".equals(cache.get("remember"))) {
+            cache.clear();
+            cache.put("source", source);
+        }
+    }
+
+    /** Starts the periodic sync; later calls do nothing. */
+    void start() {
+        if (started.compareAndSet(false, true)) worker.scheduleWithFixedDelay(this::syncSoon, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Runs after every sync and cache change, on the sync thread. */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /** Queues a sync unless one is already waiting. */
+    void syncSoon() {
+        if (queued.compareAndSet(false, true)) worker.execute(this::sync);
+    }
+
+    // ----- Session -----
+    /** Signs in with the backend in this process, or with the sync server's /api/login. The password is cleared. */
+    AuthService.Session login(String email, char[] password, boolean remember)
+            throws AuthService.AuthException, IOException, RateLimiter.LimitExceeded {
+        if (server == null) return SkillBarterBackend.login(null, email, password, remember);
+        StringBuilder body = new StringBuilder("{\"email\":");
+        ApiServer.quote(body, email).append(",\"password\":");
+        ApiServer.quote(body, new String(password)).append(",\"remember\":").append(remember).append('}');
+        Arrays.fill(password, '\0');
+        return remoteSession(post("/api/login", body.toString()));
+    }
+
+    /** Creates an account here, or on the sync server with /api/register. The password is cleared. */
+    AuthService.Session register(String name, String email, char[] password, List<String> teaches, List<String> learns)
+            throws AuthService.AuthException, IOException, RateLimiter.LimitExceeded {
+        if (server == null) return SkillBarterBackend.register(null, name, email, password, teaches, learns);
+        StringBuilder body = new StringBuilder("{\"name\":");
+        ApiServer.quote(body, name).append(",\"email\":");
+        ApiServer.quote(body, email).append(",\"password\":");
+        ApiServer.quote(body, new String(password)).append(",\"teaches\":");
+        ApiServer.array(body, teaches).append(",\"learns\":");
+        ApiServer.array(body, learns).append('}');
+        Arrays.fill(password, '\0');
+        return remoteSession(post("/api/register", body.toString()));
+    }
+
+    /**
+     * Switches the cache to the account that just signed in and syncs it. Unless the member
+     * asked to be remembered, the cache is emptied the next time the app starts.
+     */
+    void signedIn(AuthService.Session session, boolean remember) {
+        this.session = session;
+        worker.execute(() -> {
+            try {
+                if (!session.email.equals(cache.get("account"))) {
+                    cache.clear();
+                    cache.put("source", server == null ? "local" : server);
+                    cache.put("account", session.email);
+                }
+                cache.put("remember", Boolean.toString(remember));
+                // Only a server elsewhere needs the token; in-process sessions end with the app
+                if (server != null) cache.put("token", session.token);
+                cache.force();
+            } catch (IOException e) {
+                problem = "Could not save the session: " + e.getMessage();
+            }
+            changed();
+        });
+        syncSoon();
+    }
+
+    /** Forgets the account and everything cached for it. */
+    void signOut() {
+        AuthService.Session s = session;
+        session = null;
+        if (s != null && server == null) SkillBarterBackend.auth().logout(s.token);
+        worker.execute(() -> {
+            if (s != null && server != null) {
+                StringBuilder body = new StringBuilder("{\"email\":");
+                ApiServer.quote(body, s.email).append(",\"token\":");
+                ApiServer.quote(body, s.token).append('}');
+                try {
+                    post("/api/logout", body.toString());
+                } catch (IOException e) {
+                    // The token expires on its own
+                }
+            }
+            try {
+                cache.clear();
+                cache.put("source", server == null ? "local" : server);
+                cache.force();
+            } catch (IOException e) {
+                problem = "Could not clear the cache: " + e.getMessage();
+            }
+            changed();
+        });
+    }
+
+    /**
+     * The session from a sign-in during this run while it is still valid, else null. Unlike
+     * account(), which may be remembered from an earlier run, this is proof of a password.
+     */
+    AuthService.Session session() {
+        AuthService.Session s = session;
+        if (s == null) return null;
+        // A server elsewhere checks its own token on each call; here it only has to be unexpired
+        if (server != null) return s.expiresAt > System.currentTimeMillis() ? s : null;
+        return s.email.equals(SkillBarterBackend.auth().authenticate(s.token)) ? s : null;
+    }
+
+    String account() {
+        return cache.get("account");
+    }
+
+    // ----- Reads (fast; any thread) -----
+    /** The cached profile (email, name, teaches, learns), or null. */
+    Map<String, String> profile() {
+        String line = cache.get("profile");
+        return line == null ? null : UserImporter.parseJsonObject(line);
+    }
+
+    /** Cached top matches (name, score), best first. */
+    List<Map<String, String>> matches() {
+        return parse(cache.values("match/"));
+    }
+
+    /** Cached listings (name, skills, topics), most recently viewed first. */
+    List<Map<String, String>> recentListings() {
+        List<Map<String, String>> out = new ArrayList<>();
+        for (String name : recentNames()) {
+            String line = cache.get("listing/" + name);
+            if (line != null) out.add(UserImporter.parseJsonObject(line));
+        }
+        return out;
+    }
+
+    /** The newest cached messages (offset, at, conversation, from, text), oldest first. */
+    List<Map<String, String>> messages(int limit) {
+        List<String> lines = cache.values("message/");
+        return parse(lines.subList(Math.max(0, lines.size() - limit), lines.size()));
+    }
+
+    /** Results of the last search for the query, as display lines, or null. */
+    List<String> cachedSearch(String query) {
+        String hits = cache.get("search/" + normalize(query));
+        return hits == null ? null : hits.isEmpty() ? Collections.emptyList() : Arrays.asList(hits.split("\n"));
+    }
+
+    /** When the last sync finished (epoch millis), or 0. */
+    long lastSynced() {
+        String at = cache.get("sync.at");
+        return at == null ? 0 : Long.parseLong(at);
+    }
+
+    /** Why the last sync failed, or null if it worked. */
+    String problem() {
+        return problem;
+    }
+
+    // ----- Writes from the UI (applied on the sync thread) -----
+    void viewed(SkillSearchIndex.Listing l) {
+        worker.execute(() -> {
+            StringBuilder line = new StringBuilder("{\"kind\":\"listing\",\"name\":");
+            ApiServer.quote(line, l.userName).append(",\"skills\":");
+            ApiServer.array(line, Arrays.asList(l.skills)).append(",\"topics\":");
+            ApiServer.array(line, Arrays.asList(l.topics)).append('}');
+            try {
+                cache.put("listing/" + l.userName, line.toString());
+                List<String> recent = recentNames();
+                recent.remove(l.userName);
+                recent.add(0, l.userName);
+                while (recent.size() > RECENT_LISTINGS) cache.remove("listing/" + recent.remove(recent.size() - 1));
+                cache.put("recent", String.join("\n", recent));
+            } catch (IOException e) {
+                problem = "Could not update the cache: " + e.getMessage();
+            }
+            changed();
+        });
+    }
+
+    void searched(String query, List<String> lines) {
+        worker.execute(() -> {
+            String q = normalize(query);
+            try {
+                cache.put("search/" + q, String.join("\n", lines));
+                String order = cache.get("searches");
+                List<String> searches = new ArrayList<>(order == null || order.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(order.split("\n")));
+                searches.remove(q);
+                searches.add(0, q);
+                while (searches.size() > RECENT_SEARCHES) cache.remove("search/" + searches.remove(searches.size() - 1));
+                cache.put("searches", String.join("\n", searches));
+            } catch (IOException e) {
+                problem = "Could not update the cache: " + e.getMessage();
+            }
+        });
+    }
+
+    // ----- Sync -----
+    private void sync() {
+        queued.set(false);
+        String account = account();
+        if (account == null) return;
+        long t0 = System.nanoTime();
+        try {
+            List<String> viewed = recentNames();
+            apply(server == null ? SkillBarterBackend.sync().delta(account, cache.get("sync.vector"), viewed) : fetch(account, viewed));
+            problem = null;
+        } catch (Exception e) {
+            FAILED.increment();
+            problem = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        SYNC_TIME.record(System.nanoTime() - t0);
+        changed();
+    }
+
+    /** Applies a delta from {@link SyncService#delta}; its vector is stored last. */
+    void apply(String jsonl) throws IOException {
+        String vector = null;
+        for (String line : jsonl.split("\n")) {
+            if (line.trim().isEmpty()) continue;
+            Map<String, String> m = UserImporter.parseJsonObject(line);
+            switch (m.getOrDefault("kind", "")) {
+                case "profile": cache.put("profile", line); break;
+                case "matches":
+                    int count = Integer.parseInt(m.get("count"));
+                    for (String key : cache.keys("match/")) if (Integer.parseInt(key.substring(6)) >= count) cache.remove(key);
+                    break;
+                case "match": cache.put(String.format(Locale.ROOT, "match/%03d", Integer.parseInt(m.get("rank"))), line); break;
+                case "listing": cache.put("listing/" + m.get("name"), line); break;
+                case "message": cache.put(String.format(Locale.ROOT, "message/%019d", Long.parseLong(m.get("offset"))), line); break;
+                case "vector": vector = m.get("value"); break;
+                default: break; // from a newer server
+            }
+        }
+        List<String> messages = cache.keys("message/");
+        for (int i = 0; i < messages.size() - SyncService.MESSAGES; i++) cache.remove(messages.get(i));
+        if (vector != null) {
+            cache.put("sync.vector", vector);
+            cache.put("sync.at", Long.toString(System.currentTimeMillis()));
+        }
+        cache.force();
+    }
+
+    private String fetch(String account, List<String> viewed) throws IOException {
+        StringBuilder body = new StringBuilder("{\"email\":");
+        ApiServer.quote(body, account).append(",\"token\":");
+        ApiServer.quote(body, orEmpty(cache.get("token"))).append(",\"since\":");
+        ApiServer.quote(body, orEmpty(cache.get("sync.vector"))).append(",\"viewed\":");
+        ApiServer.array(body, viewed).append('}');
+        Reply r = post("/api/sync", body.toString());
+        if (r.status == 401) throw new IOException("Signed out by the server. Log in again to refresh your profile.");
+        if (r.status != 200) throw new IOException("Sync failed (" + r.status + "): " + r.text);
+        return r.text;
+    }
+
+    private static final class Reply {
+        final int status;
+        final String text;
+
+        Reply(int status, String text) {
+            this.status = status;
+            this.text = text;
+        }
+    }
+
+    private Reply post(String path, String json) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(server + path).openConnection();
+        c.setConnectTimeout(5_000);
+        c.setReadTimeout(30_000);
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "application/json");
+        c.setRequestProperty("Accept-Encoding", "gzip");
+        try (OutputStream out = c.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = c.getResponseCode();
+        InputStream in = status >= 400 ? c.getErrorStream() : c.getInputStream();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = "gzip".equalsIgnoreCase(c.getContentEncoding()) ? new GZIPInputStream(in) : in) {
+                byte[] chunk = new byte[8192];
+                for (int n; (n = stream.read(chunk)) >= 0; ) buf.write(chunk, 0, n);
+            }
+        }
+        return new Reply(status, new String(buf.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    // A session from /api/login or /api/register; their 4xx answers carry the reason to show
+    private static AuthService.Session remoteSession(Reply r) throws AuthService.AuthException, IOException {
+        Map<String, String> m = r.text.trim().startsWith("{") ? UserImporter.parseJsonObject(r.text.trim()) : Collections.<String, String>emptyMap();
+        if (r.status >= 400 && r.status < 500 && m.containsKey("error")) throw new AuthService.AuthException(m.get("error"));
+        if (r.status != 200 && r.status != 201 || m.get("token") == null || m.get("expiresat") == null) throw new IOException("Sign-in failed (" + r.status + "): " + r.text);
+        return new AuthService.Session(m.get("token"), m.get("email"), Long.parseLong(m.get("expiresat")));
+    }
+
+    private List<String> recentNames() {
+        String recent = cache.get("recent");
+        return new ArrayList<>(recent == null || recent.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(recent.split("\n")));
+    }
+
+    private void changed() {
+        for (Runnable l : listeners) l.run();
+    }
+
+    private static List<Map<String, String>> parse(List<String> lines) {
+        List<Map<String, String>> out = new ArrayList<>(lines.size());
+        for (String line : lines) out.add(UserImporter.parseJsonObject(line));
+        return out;
+    }
+
+    private static String orEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,486 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * ClusterNode.java
+ *
+ * One node of a SkillBarter cluster, a group of headless servers (see {@link ApiServer})
+ * that split the members between them by consistent hashing of their email. A node keeps
+ * the accounts and listings it owns in its own data directory and {@link ClusterShard}.
+ *
+ * - Sign-up and sign-in go to the owner of the email; whichever node a client calls
+ *   forwards them there.
+ * - Search and matchmaking ask every node in parallel (scatter-gather) and merge their top
+ *   results. A node that does not answer within the timeout is left out, and its failure
+ *   is counted in cluster.shard.failed. Each shard scores with its own term statistics;
+ *   hashing spreads members evenly, so those stay close to the cluster-wide ones.
+ * - A new node joins through any member. The member set is gossiped: each node tells the
+ *   others whenever it learns of a node they may not know, and answers with the nodes it
+ *   knows. After every change each node hands the members it no longer owns to their new
+ *   owner, together with their points balance and the reviews of them, then drops them from
+ *   its own shard.
+ *
+ * Nodes talk over the same HTTP server under /internal/. Those calls must carry the
+ * -Dskillbarter.cluster.secret shared by all nodes; without a secret only loopback callers
+ * are accepted, which is enough for several JVMs on one machine. Chat stays with the node
+ * that recorded it, and nodes only ever join (there is no leave).
+ */
+final class ClusterNode {
+    static final String SECRET_HEADER = "X-Cluster-Secret";
+    static final String CLIENT_HEADER = "X-Cluster-Client";
+    private static final int TRANSFER_BATCH_BYTES = 48 * 1024;
+    private static final int FORWARD_TIMEOUT_MILLIS = 30_000;
+    private static final long DOWN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final Metrics.Histogram GATHER = Metrics.histogram("cluster.gather");
+
+    /** A reply from another node. */
+    static final class Response {
+        final int status;
+        final String body;
+        final String retryAfter;
+        final String contentType;
+
+        Response(int status, String body, String retryAfter, String contentType) {
+            this.status = status;
+            this.body = body;
+            this.retryAfter = retryAfter;
+            this.contentType = contentType;
+        }
+    }
+
+    private final String self;
+    private final ClusterShard shard;
+    private final SkillBarterRepository repository;
+    private final PointsLedger ledger;
+    private final ReviewService reviews;
+    private final String secret;
+    private final int timeoutMillis;
+    private final ExecutorService fanout;
+    private final ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-rebalance");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean rebalanceQueued = new AtomicBoolean();
+    private final Map<String, Long> downUntil = new ConcurrentHashMap<>();
+    private final Object membership = new Object();
+    private volatile ClusterRing ring;
+
+    /**
+     * {@code self} is this node's address as the others reach it ("host:port"). Match scores
+     * are scaled by the members' review rank boost, as in the desktop matchmaking.
+     */
+    ClusterNode(String self, ClusterShard shard, SkillBarterRepository repository, PointsLedger ledger, ReviewService reviews,
+                String secret, int timeoutMillis, ExecutorService fanout) {
+        this.self = self;
+        this.shard = shard;
+        this.repository = repository;
+        this.ledger = ledger;
+        this.reviews = reviews;
+        this.secret = secret == null || secret.isEmpty() ? null : secret;
+        this.timeoutMillis = timeoutMillis;
+        this.fanout = fanout;
+        this.ring = new ClusterRing(Collections.singleton(self));
+    }
+
+    String self() {
+        return self;
+    }
+
+    ClusterRing ring() {
+        return ring;
+    }
+
+    ClusterShard shard() {
+        return shard;
+    }
+
+    String ownerOf(String email) {
+        return ring.owner(AuthService.canonicalEmail(email));
+    }
+
+    boolean owns(String email) {
+        return ownerOf(email).equals(self);
+    }
+
+    /** Whether an /internal/ call may be served: the shared secret, or loopback when there is none. */
+    boolean trusted(InetAddress caller, String presentedSecret) {
+        if (secret == null) return caller.isLoopbackAddress();
+        return presentedSecret != null
+                && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ----- Membership -----
+    /** Joins the cluster through one of its nodes; returns once this node knows all members. */
+    void join(String seed) throws IOException {
+        StringBuilder body = new StringBuilder("{\"node\":");
+        Response r = call(seed, "POST", "/internal/join", ApiServer.quote(body, self).append('}').toString(), null, timeoutMillis);
+        if (r.status != 200) throw new IOException("Joining through " + seed + " failed: " + r.status + " " + r.body);
+        merge(SkillInterner.parseList(UserImporter.parseJsonObject(r.body).get("members")));
+    }
+
+    /**
+     * Adds the nodes this one did not know yet, tells the others and starts moving members
+     * to their new owners. Returns all members known now.
+     */
+    List<String> merge(Collection<String> nodes) {
+        ClusterRing before, after;
+        synchronized (membership) {
+            before = ring;
+            after = before.with(nodes);
+            ring = after;
+        }
+        if (after != before) {
+            Metrics.counter("cluster.membership.changes").increment();
+            for (String node : after.nodes()) {
+                if (!node.equals(self)) fanout.execute(() -> tell(node));
+            }
+            rebalance();
+        }
+        return after.nodes();
+    }
+
+    // Sends our member list and takes in theirs; a node that is down hears about it on its next change
+    private void tell(String node) {
+        try {
+            Response r = call(node, "POST", "/internal/members", membersJson(ring.nodes()), null, timeoutMillis);
+            if (r.status == 200) merge(SkillInterner.parseList(UserImporter.parseJsonObject(r.body).get("members")));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not reach cluster node " + node + ": " + e.getMessage());
+        }
+    }
+
+    static String membersJson(List<String> nodes) {
+        StringBuilder sb = new StringBuilder("{\"members\":");
+        return ApiServer.array(sb, nodes).append('}').toString();
+    }
+
+    // ----- Rebalancing -----
+    /** Hands members this node no longer owns to their owners, in the background; failures are retried. */
+    void rebalance() {
+        if (rebalanceQueued.compareAndSet(false, true)) rebalancer.execute(this::moveMembers);
+    }
+
+    private void moveMembers() {
+        rebalanceQueued.set(false);
+        ClusterRing r = ring;
+        Map<String, List<SkillBarterRepository.User>> byOwner = new HashMap<>();
+        List<String> leaving = new ArrayList<>();
+        for (SkillBarterRepository.User u : shard.select(email -> !r.owner(email).equals(self))) {
+            byOwner.computeIfAbsent(r.owner(u.email), k -> new ArrayList<>()).add(u);
+            leaving.add(u.email);
+        }
+        if (leaving.isEmpty()) return;
+        Map<String, List<ReviewService.Review>> reviewed;
+        try {
+            reviewed = reviews.about(leaving);
+        } catch (IOException ex) {
+            System.err.println("Could not read reviews to hand over: " + ex.getMessage());
+            rebalancer.schedule(this::rebalance, 5, TimeUnit.SECONDS);
+            return;
+        }
+        List<String> moved = new ArrayList<>();
+        boolean failed = false;
+        for (Map.Entry<String, List<SkillBarterRepository.User>> e : byOwner.entrySet()) {
+            StringBuilder batch = new StringBuilder(TRANSFER_BATCH_BYTES + 1024);
+            Map<String, Long> inBatch = new HashMap<>(); // email -> points sent
+            try {
+                for (SkillBarterRepository.User u : e.getValue()) {
+                    long points = ledger.balance(u.email);
+                    userLine(batch, u, points).append('\n');
+                    for (ReviewService.Review rv : reviewed.getOrDefault(u.email, Collections.emptyList())) {
+                        reviewLine(batch, rv).append('\n');
+                    }
+                    inBatch.put(u.email, points);
+                    if (batch.length() >= TRANSFER_BATCH_BYTES) {
+                        send(e.getKey(), batch, inBatch, moved);
+                    }
+                }
+                if (!inBatch.isEmpty()) send(e.getKey(), batch, inBatch, moved);
+            } catch (IOException ex) {
+                failed = true;
+                System.err.println("Could not hand members to " + e.getKey() + ": " + ex.getMessage());
+            }
+        }
+        // The moved members stay searchable here until their new owner has them; the merge drops duplicates meanwhile
+        shard.removeAll(moved);
+        Metrics.counter("cluster.members.moved").add(moved.size());
+        if (failed) rebalancer.schedule(this::rebalance, 5, TimeUnit.SECONDS);
+    }
+
+    private void send(String node, StringBuilder batch, Map<String, Long> inBatch, List<String> moved) throws IOException {
+        Response r = call(node, "POST", "/internal/users", batch.toString(), null, FORWARD_TIMEOUT_MILLIS);
+        if (r.status != 200) throw new IOException(r.status + " " + r.body);
+        // The new owner holds these points now, so they leave this ledger
+        for (Map.Entry<String, Long> sent : inBatch.entrySet()) {
+            if (sent.getValue() <= 0) continue;
+            try {
+                ledger.spend(sent.getKey(), sent.getValue());
+            } catch (PointsLedger.InsufficientPointsException ex) {
+                System.err.println("Points of " + sent.getKey() + " changed while being handed over: " + ex.getMessage());
+            }
+        }
+        moved.addAll(inBatch.keySet());
+        batch.setLength(0);
+        inBatch.clear();
+    }
+
+    /**
+     * Stores members handed over by another node (JSON Lines, as sent by the rebalancer) and
+     * returns how many were new. Accounts already stored here are kept as they are, so a stale
+     * copy from a restarted node cannot overwrite a newer password; their points were credited
+     * when they first arrived. Reviews already here are skipped (see ReviewService.accept).
+     */
+    int receive(String jsonl) throws IOException {
+        List<SkillBarterRepository.User> fresh = new ArrayList<>();
+        Map<String, Long> points = new HashMap<>();
+        List<ReviewService.Review> handed = new ArrayList<>();
+        for (String line : jsonl.split("\n")) {
+            if (line.trim().isEmpty()) continue;
+            Map<String, String> m = UserImporter.parseJsonObject(line);
+            if ("review".equals(m.get("kind"))) {
+                handed.add(new ReviewService.Review(Long.parseLong(m.get("timestamp")), m.get("reviewer"), m.get("reviewer_name"),
+                        m.get("member"), m.get("member_name"), m.get("skill"), Integer.parseInt(m.get("stars")), m.get("text")));
+                continue;
+            }
+            String email = m.get("email"), hash = m.get("password_hash");
+            if (email == null || hash == null) throw new IllegalArgumentException("Member without email or password_hash");
+            if (!AuthService.isPasswordHash(hash)) throw new IllegalArgumentException("Unsupported password hash for " + email);
+            SkillBarterRepository.User u = new SkillBarterRepository.User(AuthService.canonicalEmail(email), m.getOrDefault("name", ""),
+                    hash, SkillInterner.parseList(m.get("teaches")), SkillInterner.parseList(m.get("learns")),
+                    Long.parseLong(m.getOrDefault("created_at", "0")));
+            SkillBarterRepository.User stored = repository.findUser(u.email);
+            if (stored == null) {
+                fresh.add(u);
+                points.put(u.email, Long.parseLong(m.getOrDefault("points", "0")));
+            }
+            // The shard serves what is stored here, not the possibly stale copy that was sent
+            shard.add(stored != null ? stored : u);
+        }
+        repository.saveUsers(fresh);
+        for (SkillBarterRepository.User u : fresh) {
+            long p = points.get(u.email);
+            if (p > 0) ledger.earn(u.email, p);
+        }
+        for (ReviewService.Review rv : handed) reviews.accept(rv);
+        // If the ring moved on while this was in flight, pass them along
+        rebalance();
+        return fresh.size();
+    }
+
+    private static StringBuilder userLine(StringBuilder sb, SkillBarterRepository.User u, long points) {
+        sb.append("{\"email\":");
+        ApiServer.quote(sb, u.email).append(",\"name\":");
+        ApiServer.quote(sb, u.name).append(",\"password_hash\":");
+        ApiServer.quote(sb, u.passwordHash).append(",\"teaches\":");
+        ApiServer.array(sb, u.teaches).append(",\"learns\":");
+        ApiServer.array(sb, u.learns).append(",\"created_at\":").append(u.createdAt);
+        return sb.append(",\"points\":").append(points).append('}');
+    }
+
+    private static StringBuilder reviewLine(StringBuilder sb, ReviewService.Review r) {
+        sb.append("{\"kind\":\"review\",\"timestamp\":").append(r.timestamp).append(",\"reviewer\":");
+        ApiServer.quote(sb, r.reviewer).append(",\"reviewer_name\":");
+        ApiServer.quote(sb, r.reviewerName).append(",\"member\":");
+        ApiServer.quote(sb, r.subject).append(",\"member_name\":");
+        ApiServer.quote(sb, r.subjectName).append(",\"skill\":");
+        ApiServer.quote(sb, r.skill).append(",\"stars\":").append(r.stars).append(",\"text\":");
+        return ApiServer.quote(sb, r.text).append('}');
+    }
+
+    // ----- Scatter-gather -----
+    /** The best hits across all nodes. */
+    List<SkillSearchIndex.Hit> search(String query, int limit) {
+        List<SkillSearchIndex.Hit> all = gather("/internal/search?q=" + encode(query) + "&limit=" + limit,
+                () -> shard.index().search(query, limit), ClusterNode::parseHit);
+        all.sort(Comparator.comparingDouble((SkillSearchIndex.Hit h) -> h.score).reversed());
+        // A member being handed over can briefly be on two nodes
+        Set<String> seen = new HashSet<>();
+        List<SkillSearchIndex.Hit> out = new ArrayList<>(limit);
+        for (SkillSearchIndex.Hit h : all) {
+            if (out.size() == limit) break;
+            if (seen.add(h.listing.userName + '\n' + String.join(",", h.listing.skills))) out.add(h);
+        }
+        return out;
+    }
+
+    /** The listing under exactly this name: from this shard when it is here, otherwise from any node that has it. */
+    SkillSearchIndex.Listing listing(String name) {
+        SkillSearchIndex.Listing local = shard.listing(name);
+        if (local != null) return local;
+        List<SkillSearchIndex.Hit> found = gather("/internal/listing?name=" + encode(name), Collections::emptyList, ClusterNode::parseHit);
+        return found.isEmpty() ? null : found.get(0).listing;
+    }
+
+    /** The best partners across all nodes; learnOnly ranks anyone who can teach, as SkillMatchEngine.LEARN_ONLY. */
+    List<SkillMatchEngine.Match> matches(List<String> teaches, List<String> learns, int limit, boolean learnOnly) {
+        String path = "/internal/match?teaches=" + encode(String.join(",", teaches)) + "&learns=" + encode(String.join(",", learns))
+                + "&limit=" + limit + (learnOnly ? "&learnOnly=true" : "");
+        List<SkillMatchEngine.Match> all = gather(path, () -> localMatches(teaches, learns, limit, learnOnly), ClusterNode::parseMatch);
+        all.sort(Comparator.comparingDouble((SkillMatchEngine.Match m) -> m.score).reversed());
+        Set<String> seen = new HashSet<>();
+        List<SkillMatchEngine.Match> out = new ArrayList<>(limit);
+        for (SkillMatchEngine.Match m : all) {
+            if (out.size() == limit) break;
+            if (seen.add(m.name)) out.add(m);
+        }
+        return out;
+    }
+
+    List<SkillMatchEngine.Match> localMatches(List<String> teaches, List<String> learns, int limit, boolean learnOnly) {
+        SkillMatchEngine engine = shard.engine();
+        return engine.topMatches(teaches, learns, limit,
+                engine.weighted(learnOnly ? SkillMatchEngine.LEARN_ONLY : SkillMatchEngine.RECIPROCAL, reviews::rankBoost));
+    }
+
+    // Runs the local part on this thread while the other nodes work
+    private <T> List<T> gather(String path, Callable<List<T>> local, Function<Map<String, String>, T> parse) {
+        long t0 = System.nanoTime();
+        List<Future<List<T>>> remote = new ArrayList<>();
+        for (String node : ring.nodes()) {
+            if (node.equals(self)) continue;
+            // A node that just failed is skipped for a few seconds rather than costing every query the timeout
+            Long down = downUntil.get(node);
+            if (down != null && down - t0 > 0) {
+                Metrics.counter("cluster.shard.failed").increment();
+                continue;
+            }
+            remote.add(fanout.submit(() -> {
+                try {
+                    Response r = call(node, "GET", path, null, null, timeoutMillis);
+                    if (r.status != 200) throw new IOException(node + " answered " + r.status);
+                    List<T> parsed = new ArrayList<>();
+                    for (String line : r.body.split("\n")) if (!line.isEmpty()) parsed.add(parse.apply(UserImporter.parseJsonObject(line)));
+                    return parsed;
+                } catch (IOException e) {
+                    downUntil.put(node, System.nanoTime() + DOWN_BACKOFF_NANOS);
+                    throw e;
+                }
+            }));
+        }
+        List<T> out;
+        try {
+            out = new ArrayList<>(local.call());
+        } catch (Exception e) {
+            throw new IllegalStateException("Local shard query failed", e);
+        }
+        long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Future<List<T>> f : remote) {
+            try {
+                out.addAll(f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+                f.cancel(true);
+                Metrics.counter("cluster.shard.failed").increment();
+            } catch (InterruptedException e) {
+                f.cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+        GATHER.record(System.nanoTime() - t0);
+        return out;
+    }
+
+    /** The local shard's hits as JSON Lines, for /internal/search and /internal/listing. */
+    static String hitLines(List<SkillSearchIndex.Hit> hits) {
+        StringBuilder sb = new StringBuilder(hits.size() * 96);
+        for (SkillSearchIndex.Hit h : hits) {
+            sb.append("{\"name\":");
+            ApiServer.quote(sb, h.listing.userName).append(",\"skills\":");
+            ApiServer.array(sb, java.util.Arrays.asList(h.listing.skills)).append(",\"topics\":");
+            ApiServer.array(sb, java.util.Arrays.asList(h.listing.topics)).append(",\"score\":").append(h.score).append("}\n");
+        }
+        return sb.toString();
+    }
+
+    /** Matches as JSON Lines, for /internal/match. */
+    static String matchLines(List<SkillMatchEngine.Match> matches) {
+        StringBuilder sb = new StringBuilder(matches.size() * 48);
+        for (SkillMatchEngine.Match m : matches) {
+            sb.append("{\"name\":");
+            ApiServer.quote(sb, m.name).append(",\"score\":").append(m.score).append("}\n");
+        }
+        return sb.toString();
+    }
+
+    private static SkillSearchIndex.Hit parseHit(Map<String, String> m) {
+        SkillSearchIndex.Listing listing = new SkillSearchIndex.Listing(-1, m.get("name"),
+                SkillInterner.parseList(m.get("skills")).toArray(new String[0]), SkillInterner.parseList(m.get("topics")).toArray(new String[0]));
+        return new SkillSearchIndex.Hit(listing, Float.parseFloat(m.get("score")));
+    }
+
+    private static SkillMatchEngine.Match parseMatch(Map<String, String> m) {
+        return new SkillMatchEngine.Match(m.get("name"), Double.parseDouble(m.get("score")));
+    }
+
+    // ----- HTTP -----
+    /** Passes a client's request on to the node that owns it, keeping the client's address for rate limits. */
+    Response forward(String node, String path, String body, String client) throws IOException {
+        return call(node, "POST", path, body, client, FORWARD_TIMEOUT_MILLIS);
+    }
+
+    // HttpURLConnection keeps connections to each node alive between calls once a response is read to the end
+    private Response call(String node, String method, String path, String body, String client, int timeout) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL("http://" + node + path).openConnection();
+        c.setConnectTimeout(timeout);
+        c.setReadTimeout(timeout);
+        c.setRequestMethod(method);
+        if (secret != null) c.setRequestProperty(SECRET_HEADER, secret);
+        if (client != null) c.setRequestProperty(CLIENT_HEADER, client);
+        if (body != null) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            c.setDoOutput(true);
+            c.setFixedLengthStreamingMode(bytes.length);
+            c.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            try (OutputStream out = c.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        int status = c.getResponseCode();
+        InputStream in = status >= 400 ? c.getErrorStream() : c.getInputStream();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] chunk = new byte[8192];
+                for (int n; (n = stream.read(chunk)) >= 0; ) buf.write(chunk, 0, n);
+            }
+        }
+        return new Response(status, new String(buf.toByteArray(), StandardCharsets.UTF_8), c.getHeaderField("Retry-After"), c.getContentType());
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
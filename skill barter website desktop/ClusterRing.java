@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * ClusterRing.java
+ *
+ * Consistent hashing of member emails onto cluster nodes ("host:port"). Each node owns
+ * VNODES points on a 64-bit ring, and a key belongs to the first point at or after its hash.
+ * When a node joins it takes over about 1/N of the keys, a few from each of the others, and
+ * no other key moves.
+ *
+ * Rings are immutable; membership changes build a new one.
+ */
+final class ClusterRing {
+    static final int VNODES = 128;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    ClusterRing(Collection<String> members) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+        if (nodes.isEmpty()) throw new IllegalArgumentException("A ring needs at least one node");
+        long[] keyed = new long[nodes.size() * VNODES];
+        // Sort (point, owner) pairs together: the owner index rides in a parallel array built after the sort
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < VNODES; v++) keyed[n * VNODES + v] = HyperLogLog.hash(nodes.get(n) + "#" + v);
+        }
+        long[] sorted = keyed.clone();
+        Arrays.sort(sorted);
+        points = sorted;
+        owners = new int[sorted.length];
+        for (int i = 0; i < keyed.length; i++) owners[Arrays.binarySearch(sorted, keyed[i])] = i / VNODES;
+    }
+
+    List<String> nodes() {
+        return nodes;
+    }
+
+    boolean contains(String node) {
+        return Collections.binarySearch(nodes, node) >= 0;
+    }
+
+    /** The node that owns the key (a canonical email). */
+    String owner(String key) {
+        int i = Arrays.binarySearch(points, HyperLogLog.hash(key));
+        if (i < 0) i = -i - 1;
+        return nodes.get(owners[i == points.length ? 0 : i]);
+    }
+
+    /** This ring plus the given nodes; this ring itself when none of them are new. */
+    ClusterRing with(Collection<String> more) {
+        TreeSet<String> all = new TreeSet<>(nodes);
+        return all.addAll(more) ? new ClusterRing(all) : this;
+    }
+
+    @Override
+    public String toString() {
+        return nodes.toString();
+    }
+}
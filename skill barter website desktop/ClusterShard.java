@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * ClusterShard.java
+ *
+ * The members one cluster node owns, with a search index and a match engine over just them.
+ * Adding a member updates both indexes in place. Handing members to another node rebuilds
+ * them without those members and then swaps the new ones in. Rebalancing is rare, so queries
+ * never wait on a lock for it.
+ */
+final class ClusterShard {
+    private final Supplier<SkillSearchIndex> newIndex;
+    private final Supplier<SkillMatchEngine> newEngine;
+    private final Map<String, SkillBarterRepository.User> members = new ConcurrentHashMap<>();
+    private volatile SkillSearchIndex index;
+    private volatile SkillMatchEngine engine;
+
+    ClusterShard(Supplier<SkillSearchIndex> newIndex, Supplier<SkillMatchEngine> newEngine) {
+        this.newIndex = newIndex;
+        this.newEngine = newEngine;
+        this.index = newIndex.get();
+        this.engine = newEngine.get();
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    SkillSearchIndex index() {
+        return index;
+    }
+
+    SkillMatchEngine engine() {
+        return engine;
+    }
+
+    /** Adds the member unless one with the same email is already here; returns whether it was added. */
+    synchronized boolean add(SkillBarterRepository.User user) {
+        if (members.putIfAbsent(user.email, user) != null) return false;
+        index.add(user.name, user.teaches, Collections.emptyList());
+        engine.addMember(user.name, user.teaches, user.learns);
+        return true;
+    }
+
+    /** This shard's listing under exactly this name, or null. */
+    SkillSearchIndex.Listing listing(String name) {
+        return index.named(name);
+    }
+
+    /** The members whose email matches, left in place. */
+    List<SkillBarterRepository.User> select(Predicate<String> email) {
+        List<SkillBarterRepository.User> out = new ArrayList<>();
+        for (SkillBarterRepository.User u : members.values()) if (email.test(u.email)) out.add(u);
+        return out;
+    }
+
+    /** Drops the members and rebuilds the indexes without them. */
+    synchronized void removeAll(Collection<String> emails) {
+        boolean changed = false;
+        for (String e : emails) changed |= members.remove(e) != null;
+        if (!changed) return;
+        SkillSearchIndex rebuiltIndex = newIndex.get();
+        SkillMatchEngine rebuiltEngine = newEngine.get();
+        for (SkillBarterRepository.User u : members.values()) {
+            rebuiltIndex.add(u.name, u.teaches, Collections.emptyList());
+            rebuiltEngine.addMember(u.name, u.teaches, u.learns);
+        }
+        index = rebuiltIndex;
+        engine = rebuiltEngine;
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HierarchicalTimingWheel.java
+ *
+ * Timer for very large numbers of pending callbacks (session reminders, retries).
+ * Timeouts hash into the buckets of a ring of wheels whose tick grows by the wheel size at
+ * each level, so adding or cancelling is O(1) and a pending timeout costs a single small
+ * node. Only non-empty buckets are queued for expiry, so one thread sleeps until the next
+ * bucket is due instead of waking on every tick or keeping one javax.swing.Timer per event.
+ *
+ * Deadlines are wall-clock epoch milliseconds; callbacks run on the supplied executor.
+ */
+class HierarchicalTimingWheel implements Closeable {
+
+    /** Handle for a scheduled callback. */
+    static final class Timeout {
+        final long deadline;
+        final Runnable task;
+        private Bucket bucket;
+        private Timeout prev, next;
+        private boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    /** Doubly-linked list of timeouts sharing one expiry slot. */
+    private static final class Bucket implements Delayed {
+        private final Timeout head = new Timeout(-1, null);
+        private volatile long expiration = -1;
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Timeout t) {
+            t.bucket = this;
+            t.prev = head.prev;
+            t.next = head;
+            head.prev.next = t;
+            head.prev = t;
+        }
+
+        static void unlink(Timeout t) {
+            t.prev.next = t.next;
+            t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        /** Returns true if the expiration changed, i.e. the bucket must be (re)queued. */
+        boolean setExpiration(long e) {
+            long old = expiration;
+            expiration = e;
+            return old != e;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(0, expiration - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(expiration, ((Bucket) o).expiration);
+        }
+    }
+
+    /** One level of the hierarchy. */
+    private final class Wheel {
+        final long tick;
+        final long interval;
+        final Bucket[] buckets;
+        long currentTime;
+        Wheel overflow;
+
+        Wheel(long tick, long startMs) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) buckets[i] = new Bucket();
+            this.currentTime = startMs - startMs % tick;
+        }
+
+        /** Returns false if the timeout is already due and should run now. */
+        boolean add(Timeout t) {
+            if (t.deadline < currentTime + tick) return false;
+            if (t.deadline < currentTime + interval) {
+                long slot = t.deadline / tick;
+                Bucket b = buckets[(int) (slot % wheelSize)];
+                b.add(t);
+                if (b.setExpiration(slot * tick)) queue.offer(b);
+                return true;
+            }
+            if (overflow == null) overflow = new Wheel(interval, currentTime);
+            return overflow.add(t);
+        }
+
+        void advance(long time) {
+            if (time >= currentTime + tick) {
+                currentTime = time - time % tick;
+                if (overflow != null) overflow.advance(currentTime);
+            }
+        }
+    }
+
+    private final int wheelSize;
+    private final Executor executor;
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+    private final Wheel root;
+    private final Thread reaper;
+    private int pending;
+    private volatile boolean closed;
+
+    HierarchicalTimingWheel(long tickMillis, int wheelSize, Executor executor) {
+        this.wheelSize = wheelSize;
+        this.executor = executor;
+        this.root = new Wheel(tickMillis, System.currentTimeMillis());
+        this.reaper = new Thread(this::run, "timing-wheel");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    Timeout schedule(Runnable task, long delayMillis) {
+        return scheduleAt(task, System.currentTimeMillis() + Math.max(0, delayMillis));
+    }
+
+    Timeout scheduleAt(Runnable task, long epochMillis) {
+        Timeout t = new Timeout(epochMillis, task);
+        boolean queued;
+        synchronized (this) {
+            queued = root.add(t);
+            if (queued) pending++;
+        }
+        if (!queued) executor.execute(task);
+        return t;
+    }
+
+    /** Cancels a pending timeout; returns false if it already ran or was cancelled. */
+    synchronized boolean cancel(Timeout t) {
+        if (t.cancelled || t.bucket == null) return false;
+        t.cancelled = true;
+        Bucket.unlink(t);
+        pending--;
+        return true;
+    }
+
+    synchronized int pending() {
+        return pending;
+    }
+
+    private void run() {
+        ArrayList<Runnable> due = new ArrayList<>();
+        while (!closed) {
+            Bucket b;
+            try {
+                b = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (b == null) continue;
+            synchronized (this) {
+                root.advance(b.expiration);
+                b.setExpiration(-1);
+                // Re-insert everything: timeouts from coarse levels cascade down, due ones run
+                for (Timeout t = b.head.next; t != b.head; ) {
+                    Timeout next = t.next;
+                    Bucket.unlink(t);
+                    if (!root.add(t)) {
+                        pending--;
+                        due.add(t.task);
+                    }
+                    t = next;
+                }
+            }
+            for (Runnable r : due) executor.execute(r);
+            due.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reaper.interrupt();
+    }
+}
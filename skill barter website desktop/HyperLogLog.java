@@ -0,0 +1,89 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * HyperLogLog.java
+ *
+ * Approximate distinct counter (Flajolet et al., with the usual small-range correction).
+ * 2^p one-byte registers give a standard error of about 1.04 / sqrt(2^p): p = 12 uses 4 KB
+ * for ~1.6% error. Sketches with the same precision merge by taking register maxima, so
+ * per-minute sketches roll up into hours and days without seeing the raw values again.
+ *
+ * Callers pass a well-mixed 64-bit hash; {@link #hash(String)} provides one.
+ */
+final class HyperLogLog {
+    private final int p;
+    private final byte[] registers;
+
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) throw new IllegalArgumentException("Precision must be 4..16: " + precision);
+        this.p = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    int precision() {
+        return p;
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - p));
+        // Rank of the first 1-bit in the remaining bits; the sentinel bit caps it at 64 - p + 1
+        int rank = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    /** Folds other into this; both must have the same precision. */
+    void merge(HyperLogLog other) {
+        if (other.p != p) throw new IllegalArgumentException("Precision mismatch: " + p + " vs " + other.p);
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) e = m * Math.log((double) m / zeros); // linear counting
+        return Math.round(e);
+    }
+
+    HyperLogLog copy() {
+        HyperLogLog h = new HyperLogLog(p);
+        System.arraycopy(registers, 0, h.registers, 0, registers.length);
+        return h;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(p);
+        out.write(registers);
+    }
+
+    static HyperLogLog read(DataInput in) throws IOException {
+        HyperLogLog h = new HyperLogLog(in.readByte());
+        in.readFully(h.registers);
+        return h;
+    }
+
+    /** 64-bit hash of a string (FNV-1a, then a murmur3 finalizer to spread the bits). */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
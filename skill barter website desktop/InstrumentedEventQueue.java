@@ -0,0 +1,191 @@
+import java.awt.AWTEvent;
+import java.awt.ActiveEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
+import java.awt.event.InvocationEvent;
+import java.awt.event.PaintEvent;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.swing.AbstractButton;
+import javax.swing.RepaintManager;
+
+/**
+ * InstrumentedEventQueue.java
+ *
+ * Times every event the EDT dispatches and finds out who is slow.
+ *
+ * Each dispatch is recorded in "edt.dispatch" and in a histogram per event kind
+ * ("edt.dispatch.invocation", ".input", ".paint", ".other"). Whole repaint passes
+ * go to "paint.frame" through a RepaintManager wrapper.
+ *
+ * A watchdog samples the EDT's stack while one dispatch has run longer than
+ * SLOW_MILLIS (default 50 ms, -Dskillbarter.edt.slowMillis). The first app frame on that stack names the
+ * culprit, e.g. "MainWindow.createContactPanel (lambda)", and slow dispatches are counted
+ * per culprit in {@link #slowListeners()}. Events that finish slow between two samples are
+ * attributed to their action listener's class instead.
+ *
+ * A dispatch that opens a modal dialog keeps running until the dialog closes, pumping events
+ * of its own meanwhile; that is the user's time, not a stall, so such dispatches are only
+ * counted in "edt.modalLoops".
+ */
+final class InstrumentedEventQueue extends EventQueue {
+    static final long SLOW_MILLIS = Long.getLong("skillbarter.edt.slowMillis", 50);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS);
+
+    private static final Metrics.Histogram DISPATCH = Metrics.histogram("edt.dispatch");
+    private static final Metrics.Histogram INVOCATION = Metrics.histogram("edt.dispatch.invocation");
+    private static final Metrics.Histogram INPUT = Metrics.histogram("edt.dispatch.input");
+    private static final Metrics.Histogram PAINT = Metrics.histogram("edt.dispatch.paint");
+    private static final Metrics.Histogram OTHER = Metrics.histogram("edt.dispatch.other");
+    private static final Metrics.Histogram FRAME_PAINT = Metrics.histogram("paint.frame");
+    private static final LongAdder SLOW = Metrics.counter("edt.slowDispatches");
+    private static final LongAdder MODAL_LOOPS = Metrics.counter("edt.modalLoops");
+
+    private static final ConcurrentHashMap<String, LongAdder> SLOW_BY_SITE = new ConcurrentHashMap<>();
+    private static volatile boolean installed;
+
+    // Written by the EDT, read by the watchdog: start of the running dispatch (0 = idle) and a sequence number
+    private volatile long dispatchStart;
+    private volatile long dispatchSeq;
+    private volatile long sampledSeq = -1;
+    private volatile Thread edt;
+    private int depth;           // EDT only
+    private long nestedEntries;  // EDT only
+
+    private InstrumentedEventQueue() {}
+
+    /** Pushes the queue and the repaint timer onto the running toolkit; safe to call more than once. */
+    static synchronized void install() {
+        if (installed) return;
+        installed = true;
+        InstrumentedEventQueue queue = new InstrumentedEventQueue();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(queue);
+        EventQueue.invokeLater(() -> RepaintManager.setCurrentManager(new TimedRepaintManager()));
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edt-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(5, SLOW_MILLIS / 2);
+        watchdog.scheduleAtFixedRate(queue::sample, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Slow dispatch counts by culprit, sorted by name. */
+    static Map<String, Long> slowListeners() {
+        TreeMap<String, Long> out = new TreeMap<>();
+        SLOW_BY_SITE.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        if (edt == null) edt = Thread.currentThread();
+        long nestedBefore = nestedEntries;
+        if (depth++ > 0) nestedEntries++;
+        long seq = ++dispatchSeq;
+        long t0 = System.nanoTime();
+        dispatchStart = t0;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long nanos = System.nanoTime() - t0;
+            depth--;
+            dispatchStart = 0;
+            if (nestedEntries != nestedBefore) {
+                MODAL_LOOPS.increment();
+            } else {
+                DISPATCH.record(nanos);
+                histogramFor(event).record(nanos);
+                if (nanos >= SLOW_NANOS) {
+                    SLOW.increment();
+                    // The watchdog already named the culprit if it caught this dispatch in the act
+                    if (sampledSeq != seq) countSlow(culpritOf(event));
+                }
+            }
+        }
+    }
+
+    private static Metrics.Histogram histogramFor(AWTEvent event) {
+        if (event instanceof InvocationEvent) return INVOCATION;
+        if (event instanceof InputEvent) return INPUT;
+        if (event instanceof PaintEvent) return PAINT;
+        return OTHER;
+    }
+
+    // ----- Attribution -----
+    // Runs on the watchdog thread
+    private void sample() {
+        long start = dispatchStart, seq = dispatchSeq;
+        Thread t = edt;
+        if (start == 0 || t == null || sampledSeq == seq || System.nanoTime() - start < SLOW_NANOS) return;
+        StackTraceElement[] stack = t.getStackTrace();
+        // Waiting for the next event inside a modal dialog's loop is not a stall
+        for (StackTraceElement f : stack) {
+            if (f.getClassName().equals("java.awt.EventQueue") && f.getMethodName().equals("getNextEvent")) return;
+        }
+        // The dispatch may have ended while the stack was taken; then dispatchEvent attributes it
+        if (dispatchSeq != seq || dispatchStart != start) return;
+        sampledSeq = seq;
+        countSlow(culpritOf(stack));
+    }
+
+    private static void countSlow(String site) {
+        SLOW_BY_SITE.computeIfAbsent(site, k -> new LongAdder()).increment();
+    }
+
+    /** First frame from app code, with lambda bodies named after their enclosing method. */
+    static String culpritOf(StackTraceElement[] stack) {
+        for (StackTraceElement f : stack) {
+            String cls = f.getClassName();
+            if (isPlatform(cls) || cls.equals(InstrumentedEventQueue.class.getName())) continue;
+            String method = f.getMethodName();
+            // javac names lambda bodies lambda$<enclosing method>$<n>
+            if (method.startsWith("lambda$")) {
+                int end = method.indexOf('$', 7);
+                return simpleName(cls) + "." + method.substring(7, end < 0 ? method.length() : end) + " (lambda)";
+            }
+            return simpleName(cls) + "." + method;
+        }
+        return "(platform)";
+    }
+
+    private static String culpritOf(AWTEvent event) {
+        // A button fires its listeners while the mouse release (or key press) is dispatched
+        if (event.getSource() instanceof AbstractButton) {
+            AbstractButton b = (AbstractButton) event.getSource();
+            if (b.getActionListeners().length > 0) {
+                return simpleName(b.getActionListeners()[0].getClass().getName()) + " (action \"" + b.getText() + "\")";
+            }
+        }
+        if (event instanceof InvocationEvent || event instanceof ActiveEvent) return "(invokeLater task)";
+        Object source = event.getSource();
+        return "(" + event.getClass().getSimpleName() + " on " + (source == null ? "?" : source.getClass().getSimpleName()) + ")";
+    }
+
+    private static boolean isPlatform(String cls) {
+        return cls.startsWith("java.") || cls.startsWith("javax.") || cls.startsWith("sun.")
+                || cls.startsWith("jdk.") || cls.startsWith("com.sun.");
+    }
+
+    // Lambda classes look like MainWindow$$Lambda$42/0x...; keep the declaring class
+    private static String simpleName(String cls) {
+        int lambda = cls.indexOf("$$Lambda");
+        return lambda < 0 ? cls : cls.substring(0, lambda);
+    }
+
+    // ----- Repaint passes -----
+    private static final class TimedRepaintManager extends RepaintManager {
+        @Override
+        public void paintDirtyRegions() {
+            long t0 = System.nanoTime();
+            super.paintDirtyRegions();
+            FRAME_PAINT.record(System.nanoTime() - t0);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * JdbcRepository.java
+ *
+ * SkillBarterRepository on MySQL. PostgreSQL (INSERT ... ON CONFLICT) and databases with the
+ * SQL:2003 MERGE statement (H2, SQL Server) work too; the upsert is picked from the URL.
+ *
+ * Connections come from a small fixed pool instead of DriverManager per call. Writes use
+ * prepared statements sent as JDBC batches of BATCH_SIZE rows, all inside one transaction
+ * per call, so a failed call stores nothing. With MySQL add {@code rewriteBatchedStatements=true}
+ * to the URL so the driver sends each batch as multi-row INSERTs. Reads stream with a fetch
+ * size instead of materialising whole tables.
+ */
+class JdbcRepository implements SkillBarterRepository {
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS users (email VARCHAR(255) PRIMARY KEY, name VARCHAR(255) NOT NULL,"
+                + " password_hash VARCHAR(255), teaches TEXT, learns TEXT, created_at BIGINT NOT NULL)",
+    };
+
+    /**
+     * Fixed-size pool; connections are validated on checkout and replaced if broken. Capacity is
+     * held in a semaphore rather than by the idle connections, so a connection that breaks or
+     * cannot be reopened gives its slot back and the next checkout opens a fresh one.
+     */
+    static final class ConnectionPool implements AutoCloseable {
+        private final String url, user, password;
+        private final Semaphore slots;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+        ConnectionPool(String url, String user, String password, int size) throws SQLException {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.slots = new Semaphore(size, true);
+            for (int i = 0; i < size; i++) idle.add(open());
+        }
+
+        Connection acquire() throws SQLException {
+            try {
+                if (!slots.tryAcquire(30, TimeUnit.SECONDS)) throw new SQLException("Timed out waiting for a database connection");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection", e);
+            }
+            try {
+                Connection c = idle.poll();
+                if (c != null && !c.isValid(2)) {
+                    closeQuietly(c);
+                    c = null;
+                }
+                return c != null ? c : open();
+            } catch (SQLException | RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+        }
+
+        void release(Connection c) {
+            try {
+                if (!c.getAutoCommit()) {
+                    c.rollback();
+                    c.setAutoCommit(true);
+                }
+                idle.add(c);
+            } catch (SQLException e) {
+                // Broken; the slot is reopened on a later checkout
+                closeQuietly(c);
+            } finally {
+                slots.release();
+            }
+        }
+
+        private Connection open() throws SQLException {
+            return DriverManager.getConnection(url, user, password);
+        }
+
+        private static void closeQuietly(Connection c) {
+            try { c.close(); } catch (SQLException ignored) {}
+        }
+
+        @Override
+        public void close() {
+            Connection c;
+            while ((c = idle.poll()) != null) closeQuietly(c);
+        }
+    }
+
+    private interface Binder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+
+    private interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    private final ConnectionPool pool;
+    private final boolean mysql, postgres;
+
+    JdbcRepository(String url, String user, String password, int poolSize) throws IOException {
+        try {
+            this.pool = new ConnectionPool(url, user, password, poolSize);
+            this.mysql = url.startsWith("jdbc:mysql:");
+            this.postgres = url.startsWith("jdbc:postgresql:");
+            Connection c = pool.acquire();
+            try (Statement st = c.createStatement()) {
+                for (String ddl : SCHEMA) st.execute(ddl);
+            } finally {
+                pool.release(c);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot open database " + url, e);
+        }
+    }
+
+    // ----- Users -----
+    @Override
+    public void saveUsers(Collection<User> users) throws IOException {
+        // An existing account keeps its created_at
+        String sql = mysql
+                ? "INSERT INTO users VALUES (?,?,?,?,?,?) ON DUPLICATE KEY UPDATE name=VALUES(name),"
+                        + " password_hash=VALUES(password_hash), teaches=VALUES(teaches), learns=VALUES(learns)"
+                : postgres
+                ? "INSERT INTO users VALUES (?,?,?,?,?,?) ON CONFLICT (email) DO UPDATE SET name=EXCLUDED.name,"
+                        + " password_hash=EXCLUDED.password_hash, teaches=EXCLUDED.teaches, learns=EXCLUDED.learns"
+                : "MERGE INTO users u USING (VALUES (?,?,?,?,?,?)) AS s (email, name, password_hash, teaches, learns, created_at)"
+                        + " ON u.email = s.email"
+                        + " WHEN MATCHED THEN UPDATE SET name=s.name, password_hash=s.password_hash, teaches=s.teaches, learns=s.learns"
+                        + " WHEN NOT MATCHED THEN INSERT VALUES (s.email, s.name, s.password_hash, s.teaches, s.learns, s.created_at)";
+        batch(sql, users, (ps, u) -> {
+            ps.setString(1, u.email);
+            ps.setString(2, u.name);
+            ps.setString(3, u.passwordHash);
+            ps.setString(4, String.join(",", u.teaches));
+            ps.setString(5, String.join(",", u.learns));
+            ps.setLong(6, u.createdAt);
+        });
+    }
+
+    @Override
+    public User findUser(String email) throws IOException {
+        List<User> found = query("SELECT * FROM users WHERE email = ?", JdbcRepository::readUser, email);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) throws IOException {
+        stream("SELECT * FROM users", rs -> {
+            action.accept(readUser(rs));
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    // ----- JDBC plumbing -----
+    private <T> void batch(String sql, Collection<T> rows, Binder<T> binder) throws IOException {
+        if (rows.isEmpty()) return;
+        Connection c = null;
+        try {
+            c = pool.acquire();
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                int pending = 0;
+                for (T row : rows) {
+                    binder.bind(ps, row);
+                    ps.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        ps.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) ps.executeBatch();
+            }
+            // One commit for the whole call; on failure release() rolls everything back
+            c.commit();
+        } catch (SQLException e) {
+            throw new IOException("Batch write failed: " + e.getMessage(), e);
+        } finally {
+            if (c != null) pool.release(c);
+        }
+    }
+
+    private <T> List<T> query(String sql, RowReader<T> reader, Object... params) throws IOException {
+        ArrayList<T> out = new ArrayList<>();
+        stream(sql, rs -> {
+            out.add(reader.read(rs));
+            return null;
+        }, params);
+        return out;
+    }
+
+    private void stream(String sql, RowReader<Void> reader, Object... params) throws IOException {
+        Connection c = null;
+        try {
+            c = pool.acquire();
+            try (PreparedStatement ps = c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // MySQL only streams rows with this fetch size; other drivers treat it as a hint
+                ps.setFetchSize(mysql ? Integer.MIN_VALUE : 1000);
+                for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) reader.read(rs);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Query failed: " + e.getMessage(), e);
+        } finally {
+            if (c != null) pool.release(c);
+        }
+    }
+
+    private static User readUser(ResultSet rs) throws SQLException {
+        return new User(rs.getString("email"), rs.getString("name"), rs.getString("password_hash"),
+                splitList(rs.getString("teaches")), splitList(rs.getString("learns")), rs.getLong("created_at"));
+    }
+
+    private static List<String> splitList(String s) {
+        return s == null || s.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(s.split(",")));
+    }
+}
@@ -0,0 +1,320 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.swing.AbstractListModel;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListSelectionModel;
+import javax.swing.border.EmptyBorder;
+import javax.swing.text.Position;
+
+/**
+ * ListingBrowser.java
+ *
+ * Scrollable view of every skill listing, built to stay smooth with 100k+ rows.
+ *
+ * - One JList with a fixed row size, so Swing never measures rows and only paints the
+ *   visible ones.
+ * - One shared renderer that paints text directly (no HTML, no per-row components).
+ * - A paged model: rows are fetched from the search index in pages off the EDT, a bounded
+ *   LRU keeps only recently viewed pages, and pages around the viewport are prefetched.
+ *   Rows whose page has not arrived yet paint as placeholders and repaint when it lands.
+ *
+ * The filter box swaps the source for a ranked search result; clearing it browses everything.
+ * The row count is re-read each time the view is shown.
+ */
+class ListingBrowser extends JPanel {
+    static final int PAGE_SIZE = 256;
+    static final int MAX_PAGES = 32;
+    private static final int PREFETCH_PAGES = 2;
+    private static final int ROW_HEIGHT = 56;
+    private static final int MIN_ROW_WIDTH = 400;
+    private static final int MAX_SEARCH_RESULTS = 5000;
+    private static final Metrics.Histogram ROW_PAINT = Metrics.histogram("paint.listingRow");
+
+    /** Where rows come from; both methods are called off the EDT. */
+    interface PageSource<T> {
+        int size() throws Exception;
+
+        List<T> page(int offset, int limit) throws Exception;
+    }
+
+    // ----- Paged model -----
+    static final class PagedListModel<T> extends AbstractListModel<T> {
+        private PageSource<T> source;
+        private int generation;   // bumped when the source changes; pages from older sources are dropped
+        private int sizeRequests; // only the latest count request is applied
+        private int size;
+        private final LinkedHashMap<Integer, List<T>> pages = new LinkedHashMap<>(64, 0.75f, true);
+        private final Set<Integer> loading = new HashSet<>();
+
+        PagedListModel(PageSource<T> source) {
+            this.source = source;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        /** The row, or null while its page is still loading. */
+        @Override
+        public T getElementAt(int index) {
+            int page = index / PAGE_SIZE;
+            List<T> rows = pages.get(page);
+            if (rows == null) {
+                request(page);
+                return null;
+            }
+            int i = index % PAGE_SIZE;
+            return i < rows.size() ? rows.get(i) : null;
+        }
+
+        /** Switches to a new source (e.g. a search result) and loads its row count. */
+        void setSource(PageSource<T> next) {
+            source = next;
+            generation++;
+            pages.clear();
+            loading.clear();
+            int old = size;
+            size = 0;
+            if (old > 0) fireIntervalRemoved(this, 0, old - 1);
+            refresh();
+        }
+
+        /** Re-reads the row count, keeping loaded pages and the scroll position. */
+        void refresh() {
+            int req = ++sizeRequests;
+            int gen = generation;
+            PageSource<T> src = source;
+            BackgroundTasks.task("listings.size", progress -> src.size())
+                    .onSuccess(n -> {
+                        if (req != sizeRequests || gen != generation) return;
+                        int old = size;
+                        // The old last page may have been partial; drop it so the new rows load
+                        if (old > 0) pages.remove((old - 1) / PAGE_SIZE);
+                        size = n;
+                        if (n > old) fireIntervalAdded(this, old, n - 1);
+                        else if (n < old) fireIntervalRemoved(this, n, old - 1);
+                    })
+                    .start();
+        }
+
+        /** Requests the pages around [first, last] so scrolling rarely hits a placeholder. */
+        void prefetch(int first, int last) {
+            if (first < 0 || size == 0) return;
+            int lastPage = (size - 1) / PAGE_SIZE;
+            for (int p = Math.max(0, first / PAGE_SIZE - PREFETCH_PAGES);
+                 p <= Math.min(lastPage, last / PAGE_SIZE + PREFETCH_PAGES); p++) {
+                if (!pages.containsKey(p)) request(p);
+            }
+        }
+
+        private void request(int page) {
+            if (!loading.add(page)) return;
+            int gen = generation;
+            PageSource<T> src = source;
+            BackgroundTasks.task("listings.page", progress -> src.page(page * PAGE_SIZE, PAGE_SIZE))
+                    .onSuccess(rows -> {
+                        if (gen != generation) return;
+                        loading.remove(page);
+                        pages.put(page, rows);
+                        Iterator<Integer> it = pages.keySet().iterator();
+                        while (pages.size() > MAX_PAGES && it.hasNext()) {
+                            it.next();
+                            it.remove();
+                        }
+                        int from = page * PAGE_SIZE;
+                        fireContentsChanged(this, from, Math.min(size, from + PAGE_SIZE) - 1);
+                    })
+                    .onFailure(e -> {
+                        if (gen == generation) loading.remove(page);
+                    })
+                    .start();
+        }
+    }
+
+    // ----- Shared renderer -----
+    private static final class ListingRenderer extends JComponent implements ListCellRenderer<SkillSearchIndex.Listing> {
+        private final ThemeEngine theme;
+        private SkillSearchIndex.Listing listing;
+        private boolean selected;
+
+        ListingRenderer(ThemeEngine theme) {
+            this.theme = theme;
+            setOpaque(true);
+        }
+
+        @Override
+        public JComponent getListCellRendererComponent(JList<? extends SkillSearchIndex.Listing> list,
+                SkillSearchIndex.Listing value, int index, boolean isSelected, boolean cellHasFocus) {
+            this.listing = value;
+            this.selected = isSelected;
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            long t0 = System.nanoTime();
+            paintRow((Graphics2D) g);
+            RenderCache.recordPaint(ROW_PAINT, "listingRow", t0);
+        }
+
+        private void paintRow(Graphics2D g2) {
+            Map<?, ?> hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (hints != null) g2.addRenderingHints(hints);
+            g2.setColor(theme.color(selected ? "surface.hover" : "surface"));
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.setColor(theme.color("bg"));
+            g2.drawLine(0, getHeight() - 1, getWidth(), getHeight() - 1);
+            if (selected) {
+                g2.setColor(theme.color("accent"));
+                g2.fillRect(0, 0, 3, getHeight());
+            }
+
+            int x = 16;
+            g2.setFont(UiStyles.CARD_TITLE);
+            FontMetrics fm = g2.getFontMetrics();
+            int y = 8 + fm.getAscent();
+            if (listing == null) {
+                g2.setColor(theme.color("text.faint"));
+                g2.drawString("Loading…", x, y);
+                return;
+            }
+            g2.setColor(theme.color("accent"));
+            g2.drawString(listing.userName, x, y);
+            g2.setFont(UiStyles.SMALL);
+            g2.setColor(theme.color("text.muted"));
+            String detail = String.join(", ", listing.skills);
+            if (listing.topics.length > 0) detail += "   ·   " + String.join(", ", listing.topics);
+            g2.drawString(detail, x, y + g2.getFontMetrics().getHeight() + 2);
+        }
+    }
+
+    // ----- Panel -----
+    private final JList<SkillSearchIndex.Listing> list;
+    private final PagedListModel<SkillSearchIndex.Listing> model;
+
+    ListingBrowser(ThemeEngine theme, Consumer<SkillSearchIndex.Listing> onOpen) {
+        super(new BorderLayout(0, 12));
+        setOpaque(false);
+
+        JTextField filter = new JTextField();
+        filter.setToolTipText("Filter by name, skill or topic; press Enter. Clear to browse everything.");
+        JPanel top = new JPanel(new BorderLayout(8, 0));
+        top.setOpaque(false);
+        top.add(theme.foreground(new JLabel("Filter:"), "text"), BorderLayout.WEST);
+        top.add(filter, BorderLayout.CENTER);
+
+        model = new PagedListModel<>(allListings());
+        list = new JList<SkillSearchIndex.Listing>(model) {
+            // Type-ahead would walk every row and load every page; it is not useful here
+            @Override
+            public int getNextMatch(String prefix, int startIndex, Position.Bias bias) {
+                return -1;
+            }
+        };
+        // Both fixed: without a cell width BasicListUI renders every row to find the widest.
+        // Rows still stretch to the viewport width.
+        list.setFixedCellHeight(ROW_HEIGHT);
+        list.setFixedCellWidth(MIN_ROW_WIDTH);
+        list.setCellRenderer(new ListingRenderer(theme));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        theme.background(list, "surface");
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() != 2) return;
+                int i = list.locationToIndex(e.getPoint());
+                SkillSearchIndex.Listing l = i >= 0 ? model.getElementAt(i) : null;
+                if (l != null) onOpen.accept(l);
+            }
+        });
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setBorder(new EmptyBorder(0, 0, 0, 0));
+        scroll.getVerticalScrollBar().setUnitIncrement(ROW_HEIGHT / 2);
+        scroll.getViewport().addChangeListener(e -> model.prefetch(list.getFirstVisibleIndex(), list.getLastVisibleIndex()));
+        scroll.setPreferredSize(new Dimension(600, 400));
+
+        filter.addActionListener(e -> {
+            String q = filter.getText().trim();
+            model.setSource(q.isEmpty() ? allListings() : searchResults(q));
+            list.clearSelection();
+            list.ensureIndexIsVisible(0);
+        });
+
+        add(top, BorderLayout.NORTH);
+        add(scroll, BorderLayout.CENTER);
+        // Re-read the count whenever the card is shown, so members who registered since appear
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) model.refresh();
+        });
+        model.refresh();
+    }
+
+    private static PageSource<SkillSearchIndex.Listing> allListings() {
+        return new PageSource<SkillSearchIndex.Listing>() {
+            @Override
+            public int size() {
+                return SkillBarterBackend.searchIndex().size();
+            }
+
+            @Override
+            public List<SkillSearchIndex.Listing> page(int offset, int limit) {
+                return SkillBarterBackend.searchIndex().page(offset, limit);
+            }
+        };
+    }
+
+    // The ranked result is computed once (on the first size() call) and paged from memory
+    private static PageSource<SkillSearchIndex.Listing> searchResults(String query) {
+        return new PageSource<SkillSearchIndex.Listing>() {
+            private volatile List<SkillSearchIndex.Listing> result;
+
+            private List<SkillSearchIndex.Listing> result() {
+                List<SkillSearchIndex.Listing> r = result;
+                if (r == null) {
+                    r = new ArrayList<>();
+                    long t0 = System.nanoTime();
+                    for (SkillSearchIndex.Hit h : SkillBarterBackend.searchIndex().search(query, MAX_SEARCH_RESULTS)) r.add(h.listing);
+                    SkillBarterBackend.analytics().record(AnalyticsStore.EventType.SEARCH, null, System.nanoTime() - t0);
+                    result = r;
+                }
+                return r;
+            }
+
+            @Override
+            public int size() {
+                return result().size();
+            }
+
+            @Override
+            public List<SkillSearchIndex.Listing> page(int offset, int limit) {
+                List<SkillSearchIndex.Listing> r = result();
+                if (offset >= r.size()) return Collections.emptyList();
+                return r.subList(offset, Math.min(r.size(), offset + limit));
+            }
+        };
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadGenerator.java
+ *
+ * Closed-loop load for {@link ApiServer}: each connection sends a request over a kept-alive
+ * HTTP/1.1 socket, waits for the response and sends the next, cycling through the given
+ * requests. Prints throughput and latency percentiles at the end.
+ *
+ *   java LoadGenerator [--host 127.0.0.1] [--port 8080] [--connections 64] [--seconds 10]
+ *                      [--warmup 3] [--gzip] [--get PATH]... [--post PATH JSON]...
+ *
+ * With no --get or --post it searches for a few common skills. The client is deliberately
+ * minimal (Content-Length responses only, as ApiServer sends) so it costs little CPU next
+ * to the server when both run on one machine.
+ */
+final class LoadGenerator {
+    private LoadGenerator() {}
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = 8080, connections = 64, seconds = 10, warmup = 3;
+        boolean gzip = false;
+        List<String> getPaths = new ArrayList<>(), postPaths = new ArrayList<>(), postBodies = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--connections": connections = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--gzip": gzip = true; break;
+                case "--get": getPaths.add(args[++i]); break;
+                case "--post": postPaths.add(args[++i]); postBodies.add(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (getPaths.isEmpty() && postPaths.isEmpty()) {
+            for (String q : new String[] {"java", "design", "guitar", "photo"}) getPaths.add("/api/search?q=" + q + "&limit=10");
+        }
+        List<byte[]> requests = new ArrayList<>();
+        for (String path : getPaths) requests.add(request("GET", path, null, host, gzip));
+        for (int i = 0; i < postPaths.size(); i++) requests.add(request("POST", postPaths.get(i), postBodies.get(i), host, gzip));
+
+        System.out.printf("Warming up for %d s, then measuring %d s over %d connections to %s:%d%n",
+                warmup, seconds, connections, host, port);
+        Result result = run(new InetSocketAddress(host, port), requests, connections,
+                TimeUnit.SECONDS.toNanos(warmup), TimeUnit.SECONDS.toNanos(seconds));
+        System.out.println(result);
+    }
+
+    /** What a run measured; latencies cover only the measured window. */
+    static final class Result {
+        final long requests;
+        final long errors;
+        final long nanos;
+        final Metrics.Histogram latency;
+
+        Result(long requests, long errors, long nanos, Metrics.Histogram latency) {
+            this.requests = requests;
+            this.errors = errors;
+            this.nanos = nanos;
+            this.latency = latency;
+        }
+
+        double requestsPerSecond() {
+            return requests * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d requests in %.1f s: %,.0f req/s, %d errors%n"
+                            + "latency p50 %s, p90 %s, p99 %s, p99.9 %s, max %s",
+                    requests, nanos / 1e9, requestsPerSecond(), errors,
+                    micros(percentile(0.50)), micros(percentile(0.90)), micros(percentile(0.99)),
+                    micros(percentile(0.999)), micros(latency.maxNanos()));
+        }
+
+        // Bucket bounds are powers of two; the top one can be above the slowest request
+        long percentile(double q) {
+            return Math.min(latency.percentileNanos(q), latency.maxNanos());
+        }
+
+        private static String micros(long nanos) {
+            return nanos >= 10_000_000 ? (nanos / 1_000_000) + " ms" : (nanos / 1_000) + " us";
+        }
+    }
+
+    static Result run(InetSocketAddress address, List<byte[]> requests, int connections, long warmupNanos, long measureNanos)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos, end = measureFrom + measureNanos;
+        Metrics.Histogram latency = new Metrics.Histogram();
+        LongAdder done = new LongAdder(), errors = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int first = c;
+            Thread t = new Thread(() -> connection(address, requests, first, measureFrom, end, latency, done, errors), "load-" + c);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        return new Result(done.sum(), errors.sum(), measureNanos, latency);
+    }
+
+    // One kept-alive connection; reconnects after an error
+    private static void connection(InetSocketAddress address, List<byte[]> requests, int next, long measureFrom, long end,
+                                   Metrics.Histogram latency, LongAdder done, LongAdder errors) {
+        byte[] buf = new byte[16 * 1024];
+        while (System.nanoTime() < end) {
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, 5_000);
+                socket.setSoTimeout(30_000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream(), buf.length);
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    out.write(requests.get(next++ % requests.size()));
+                    out.flush();
+                    int status = readResponse(in, buf);
+                    long t1 = System.nanoTime();
+                    if (now >= measureFrom) {
+                        latency.record(t1 - now);
+                        done.increment();
+                        if (status >= 500) errors.increment();
+                    }
+                }
+            } catch (IOException e) {
+                if (System.nanoTime() >= measureFrom) errors.increment();
+            }
+        }
+    }
+
+    private static byte[] request(String method, String path, String json, String host, boolean gzip) {
+        StringBuilder sb = new StringBuilder(128).append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n");
+        if (gzip) sb.append("Accept-Encoding: gzip\r\n");
+        byte[] body = json == null ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+        if (json != null) sb.append("Content-Type: application/json\r\n").append("Content-Length: ").append(body.length).append("\r\n");
+        byte[] head = sb.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] request = new byte[head.length + body.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
+
+    // Reads the status line and headers, skips the body and returns the status code
+    private static int readResponse(InputStream in, byte[] buf) throws IOException {
+        String statusLine = readLine(in, buf);
+        if (statusLine.length() < 12) throw new IOException("Bad status line: " + statusLine);
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        long length = 0;
+        for (String line; !(line = readLine(in, buf)).isEmpty(); ) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) length = Long.parseLong(line.substring(15).trim());
+        }
+        while (length > 0) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, length));
+            if (n < 0) throw new EOFException("Connection closed mid-response");
+            length -= n;
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in, byte[] buf) throws IOException {
+        int n = 0;
+        for (int b; (b = in.read()) != '\n'; ) {
+            if (b < 0) throw new EOFException("Connection closed");
+            if (b != '\r' && n < buf.length) buf[n++] = (byte) b;
+        }
+        return new String(buf, 0, n, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * LocalFileRepository.java
+ *
+ * Embedded log-structured store so the app runs without an external database.
+ *
+ * Users are one append-only file of length- and CRC-framed records. Writes go through a
+ * large buffer and are flushed once per batch, so bulk registration is a single sequential
+ * write stream. An in-memory index maps each email to the offset of its latest record; it is
+ * rebuilt by scanning the log on open, which also truncates a torn record left by a crash.
+ * Updating a user appends a new version.
+ */
+class LocalFileRepository implements SkillBarterRepository {
+    private static final int BUFFER = 1 << 20;
+
+    /** One append-only record file. */
+    private static final class Log implements Closeable {
+        final Path path;
+        final FileChannel channel;
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER);
+        final CRC32 crc = new CRC32();
+        long size;
+
+        Log(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /** Appends one record and returns its offset; the record is visible to reads after flush(). */
+        long append(byte[] body, int len) throws IOException {
+            if (out.remaining() < len + 8) flush();
+            long offset = size;
+            crc.reset();
+            crc.update(body, 0, len);
+            if (len + 8 > out.capacity()) {
+                flush();
+                ByteBuffer big = ByteBuffer.allocate(len + 8);
+                big.putInt(len).putInt((int) crc.getValue()).put(body, 0, len).flip();
+                while (big.hasRemaining()) channel.write(big, size + big.position());
+            } else {
+                out.putInt(len).putInt((int) crc.getValue()).put(body, 0, len);
+            }
+            size += len + 8;
+            return offset;
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            long pos = size - out.remaining();
+            while (out.hasRemaining()) pos += channel.write(out, pos);
+            out.clear();
+        }
+
+        byte[] read(long offset) throws IOException {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            readFully(head, offset);
+            int len = head.getInt(0);
+            ByteBuffer body = ByteBuffer.allocate(len);
+            readFully(body, offset + 8);
+            return body.array();
+        }
+
+        private void readFully(ByteBuffer b, long pos) throws IOException {
+            while (b.hasRemaining()) {
+                int n = channel.read(b, pos + b.position());
+                if (n < 0) throw new EOFException(path + " ends early at " + pos);
+            }
+        }
+
+        /** Visits every intact record; truncates the file after the last good one. */
+        void scan(RecordVisitor visitor) throws IOException {
+            long end = channel.size(), pos = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER))) {
+                byte[] body = new byte[256];
+                CRC32 check = new CRC32();
+                while (pos + 8 <= end) {
+                    int len = in.readInt();
+                    int sum = in.readInt();
+                    if (len < 0 || pos + 8 + len > end) break;
+                    if (len > body.length) body = new byte[len];
+                    in.readFully(body, 0, len);
+                    check.reset();
+                    check.update(body, 0, len);
+                    if ((int) check.getValue() != sum) break;
+                    visitor.visit(pos, body, len);
+                    pos += 8 + len;
+                }
+            }
+            if (pos < end) channel.truncate(pos);
+            size = pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(long offset, byte[] body, int len) throws IOException;
+    }
+
+    private final Log users;
+    private final HashMap<String, Long> userIndex = new HashMap<>();
+    private final ByteArrayOutputStream encodeBuf = new ByteArrayOutputStream(256);
+    private final DataOutputStream encoder = new DataOutputStream(encodeBuf);
+
+    LocalFileRepository(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        users = new Log(dir.resolve("users.log"));
+        users.scan((off, b, len) -> userIndex.put(decodeUser(b, len).email, off));
+    }
+
+    // ----- Users -----
+    @Override
+    public synchronized void saveUsers(Collection<User> batch) throws IOException {
+        // Checked up front so a bad user cannot leave half a batch in the log
+        for (User u : batch) {
+            checkList(u.teaches);
+            checkList(u.learns);
+        }
+        for (User u : batch) {
+            encodeBuf.reset();
+            writeString(u.email);
+            writeString(u.name);
+            writeString(u.passwordHash);
+            writeList(u.teaches);
+            writeList(u.learns);
+            encoder.writeLong(u.createdAt);
+            userIndex.put(u.email, users.append(bytes(), encodeBuf.size()));
+        }
+        users.flush();
+    }
+
+    @Override
+    public synchronized User findUser(String email) throws IOException {
+        Long off = userIndex.get(email);
+        if (off == null) return null;
+        byte[] b = users.read(off);
+        return decodeUser(b, b.length);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) throws IOException {
+        long[] offsets;
+        synchronized (this) {
+            offsets = new long[userIndex.size()];
+            int i = 0;
+            for (long off : userIndex.values()) offsets[i++] = off;
+        }
+        Arrays.sort(offsets);
+        // Sequential pass over the log, emitting only records that are a user's latest version
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(users.path), BUFFER))) {
+            long pos = 0;
+            byte[] body = new byte[256];
+            for (long target : offsets) {
+                while (pos < target) {
+                    int len = in.readInt();
+                    in.readInt();
+                    skipFully(in, len);
+                    pos += 8 + len;
+                }
+                int len = in.readInt();
+                in.readInt();
+                if (len > body.length) body = new byte[len];
+                in.readFully(body, 0, len);
+                pos += 8 + len;
+                action.accept(decodeUser(body, len));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        users.close();
+    }
+
+    // ----- Encoding -----
+    private byte[] bytes() {
+        return encodeBuf.toByteArray();
+    }
+
+    // Strings are length-prefixed UTF-8; -1 encodes null
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            encoder.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        encoder.writeInt(b.length);
+        encoder.write(b);
+    }
+
+    // Lists are stored with an unsigned short count
+    private static void checkList(List<String> list) {
+        if (list.size() > 0xFFFF) throw new IllegalArgumentException("Too many skills in one list: " + list.size());
+    }
+
+    private void writeList(List<String> list) throws IOException {
+        checkList(list);
+        encoder.writeShort(list.size());
+        for (String s : list) writeString(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int n = in.readUnsignedShort();
+        ArrayList<String> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(readString(in));
+        return out;
+    }
+
+    private static DataInputStream input(byte[] b, int len) {
+        return new DataInputStream(new ByteArrayInputStream(b, 0, len));
+    }
+
+    private static User decodeUser(byte[] b, int len) throws IOException {
+        DataInputStream in = input(b, len);
+        return new User(readString(in), readString(in), readString(in), readList(in), readList(in), in.readLong());
+    }
+
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int s = in.skipBytes(n);
+            if (s <= 0) throw new EOFException();
+            n -= s;
+        }
+    }
+
+}
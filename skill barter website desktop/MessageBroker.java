@@ -0,0 +1,354 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MessageBroker.java
+ *
+ * In-process message broker behind the "Chat" / "Messaging" cards.
+ *
+ * publish() only puts the message on a lock-free MPSC ring, so senders never contend on a
+ * lock or wait for disk. One writer thread drains the ring in batches, appends each batch
+ * to the {@link MessageLog} (which assigns offsets) and then hands the messages, in log
+ * order, to the subscribers of their conversation. Ordering within a conversation is
+ * therefore the log order, and a subscriber that remembers the last offset it saw can
+ * resume after a disconnect with subscribe(conversation, lastOffset + 1, ...): stored
+ * messages are replayed first and live delivery continues without gaps or duplicates.
+ *
+ * The writer spins briefly when the ring is empty and then parks for at most a millisecond,
+ * which bounds delivery latency without burning a core while idle. The log is forced to
+ * disk every {@code syncMillis}. If the log fails (disk full, I/O error) the writer stops and
+ * every later publish() fails at once with the reason instead of filling the ring.
+ *
+ * The broker also keeps the message offsets of each conversation and of each member (built by
+ * one pass over the log on open, then by the writer). Replay, history and sync read those
+ * offsets directly instead of scanning every conversation.
+ */
+class MessageBroker implements Closeable {
+    static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final int RING_SIZE = 1 << 16;
+    private static final int MAX_BATCH = 1024;
+    private static final int CATCH_UP_UNLOCKED = 4096;
+    private static final long PUBLISH_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final LongAdder PUBLISHED = Metrics.counter("messaging.published");
+    private static final LongAdder DELIVERED = Metrics.counter("messaging.delivered");
+    private static final LongAdder WRITER_FAILED = Metrics.counter("messaging.writerFailed");
+    private static final Metrics.Histogram LATENCY = Metrics.histogram("messaging.latency");
+    private static final Metrics.Histogram BATCH_WRITE = Metrics.histogram("messaging.batch");
+
+    static final class Message {
+        final long offset;
+        final long timestamp;
+        final String conversation;
+        final String sender;
+        final String body;
+
+        Message(long offset, long timestamp, String conversation, String sender, String body) {
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.conversation = conversation;
+            this.sender = sender;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + offset + " " + sender + ": " + body;
+        }
+    }
+
+    /** Receives messages on the broker's writer thread, so it must not block. */
+    interface Subscriber {
+        void onMessage(Message m);
+    }
+
+    final class Subscription implements Closeable {
+        final String conversation;
+        private final Subscriber subscriber;
+
+        private Subscription(String conversation, Subscriber subscriber) {
+            this.conversation = conversation;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void close() {
+            List<Subscription> list = subscribers.get(conversation);
+            if (list != null) list.remove(this);
+        }
+    }
+
+    private static final class Pending {
+        final long enqueuedNanos = System.nanoTime();
+        final long timestamp = System.currentTimeMillis();
+        final String conversation, sender, body;
+
+        Pending(String conversation, String sender, String body) {
+            this.conversation = conversation;
+            this.sender = sender;
+            this.body = body;
+        }
+    }
+
+    // Offsets of a member's or a conversation's messages, ascending; the writer appends, readers take ranges
+    private static final class Offsets {
+        private long[] offsets = new long[16];
+        private int size;
+
+        synchronized void add(long offset) {
+            if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+            offsets[size++] = offset;
+        }
+
+        /** The newest {@code limit} offsets in [from, to). */
+        synchronized long[] range(long from, long to, int limit) {
+            int hi = lowerBound(to), lo = Math.max(lowerBound(from), hi - limit);
+            return Arrays.copyOfRange(offsets, lo, hi);
+        }
+
+        private int lowerBound(long offset) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (offsets[mid] < offset) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /** Conversation id for a two-person chat; the same whichever side asks. */
+    static String conversationId(String a, String b) {
+        String x = a.trim().toLowerCase(), y = b.trim().toLowerCase();
+        return x.compareTo(y) <= 0 ? x + "|" + y : y + "|" + x;
+    }
+
+    private final MessageLog log;
+    private final long syncMillis;
+    private final MpscRingBuffer<Pending> ring = new MpscRingBuffer<>(RING_SIZE);
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Subscription>> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Offsets> byMember = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Offsets> byConversation = new ConcurrentHashMap<>();
+    private volatile long indexedTo; // messages below this offset are appended and indexed
+    private final Object dispatchLock = new Object(); // held while a batch is appended and delivered
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+    private volatile String failure; // why the writer stopped, or null
+
+    private MessageBroker(MessageLog log, long syncMillis) {
+        this.log = log;
+        this.syncMillis = syncMillis;
+        this.writer = new Thread(this::writeLoop, "message-broker-writer");
+        writer.setDaemon(true);
+    }
+
+    /** Opens the broker over the message log in {@code dir} and starts its writer thread. */
+    static MessageBroker open(Path dir, long syncMillis) throws IOException {
+        MessageBroker broker = new MessageBroker(MessageLog.open(dir), syncMillis);
+        broker.indexedTo = broker.log.read(0, broker.log.nextOffset(), m -> broker.index(m.conversation, m.offset));
+        broker.writer.start();
+        return broker;
+    }
+
+    /** Offset the next published message will get; every message below it can be read. */
+    long nextOffset() {
+        return indexedTo;
+    }
+
+    /**
+     * Queues a message for the conversation. Returns as soon as it is on the ring; if the ring
+     * stays full for a second (the writer cannot keep up), throws IllegalStateException.
+     */
+    void publish(String conversation, String sender, String body) {
+        Pending p = pending(conversation, sender, body);
+        if (!ring.offer(p)) {
+            long deadline = System.nanoTime() + PUBLISH_WAIT_NANOS;
+            do {
+                LockSupport.unpark(writer);
+                if (System.nanoTime() > deadline) throw new IllegalStateException("Message broker is overloaded; try again");
+                LockSupport.parkNanos(50_000);
+                checkRunning();
+            } while (!ring.offer(p));
+        }
+        published();
+    }
+
+    /**
+     * Like publish() but never waits: returns false at once when the ring is full. For callers
+     * that must not block, such as a selector thread.
+     */
+    boolean tryPublish(String conversation, String sender, String body) {
+        if (!ring.offer(pending(conversation, sender, body))) return false;
+        published();
+        return true;
+    }
+
+    private Pending pending(String conversation, String sender, String body) {
+        checkRunning();
+        if (conversation.isEmpty() || sender.isEmpty()) throw new IllegalArgumentException("Conversation and sender are required");
+        if (body.length() * 3 > MAX_BODY_BYTES && body.getBytes(StandardCharsets.UTF_8).length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Message is longer than " + MAX_BODY_BYTES + " bytes");
+        }
+        return new Pending(conversation, sender, body);
+    }
+
+    private void checkRunning() {
+        String f = failure;
+        if (f != null) throw new IllegalStateException("Messaging is unavailable: " + f);
+        if (closed) throw new IllegalStateException("Message broker is closed");
+    }
+
+    private void published() {
+        PUBLISHED.increment();
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Delivers every stored message of the conversation from {@code fromOffset} on, then live
+     * messages as they are written. Replay runs on the calling thread; live delivery on the
+     * writer thread.
+     */
+    Subscription subscribe(String conversation, long fromOffset, Subscriber subscriber) {
+        Subscription sub = new Subscription(conversation, subscriber);
+        long next = Math.max(0, fromOffset);
+        // Catch up without the lock while far behind, so a long replay does not stall writes
+        while (indexedTo - next > CATCH_UP_UNLOCKED) {
+            next = replay(conversation, next, indexedTo, subscriber);
+        }
+        synchronized (dispatchLock) {
+            replay(conversation, next, indexedTo, subscriber);
+            subscribers.computeIfAbsent(conversation, c -> new CopyOnWriteArrayList<>()).add(sub);
+        }
+        return sub;
+    }
+
+    /** Stored messages of the conversation in [from, to), oldest first. */
+    List<Message> history(String conversation, long from, long to) {
+        List<Message> out = new ArrayList<>();
+        replay(conversation, from, to, out::add);
+        return out;
+    }
+
+    /**
+     * Stored messages in [from, to) from the two-person conversations the member takes part in,
+     * oldest first; only the newest {@code limit} are kept.
+     */
+    List<Message> involving(String member, long from, long to, int limit) {
+        Offsets index = byMember.get(member.trim().toLowerCase());
+        if (index == null) return Collections.emptyList();
+        List<Message> out = new ArrayList<>();
+        for (long offset : index.range(from, Math.min(to, indexedTo), limit)) log.read(offset, offset + 1, out::add);
+        return out;
+    }
+
+    // Files the offset under its conversation and, for a two-person one ("a|b"), under both members
+    private void index(String conversation, long offset) {
+        byConversation.computeIfAbsent(conversation, k -> new Offsets()).add(offset);
+        int first = conversation.indexOf('|'), last = conversation.lastIndexOf('|');
+        if (first < 0) return;
+        String a = conversation.substring(0, first), b = conversation.substring(last + 1);
+        byMember.computeIfAbsent(a, k -> new Offsets()).add(offset);
+        if (!b.equals(a)) byMember.computeIfAbsent(b, k -> new Offsets()).add(offset);
+    }
+
+    // Reads only the conversation's own offsets; returns where the next replay should start
+    private long replay(String conversation, long from, long to, Subscriber subscriber) {
+        long end = Math.min(to, indexedTo);
+        Offsets index = byConversation.get(conversation);
+        if (index == null) return Math.max(from, end);
+        for (long offset : index.range(from, end, Integer.MAX_VALUE)) log.read(offset, offset + 1, subscriber::onMessage);
+        return Math.max(from, end);
+    }
+
+    // ----- Writer thread -----
+    private void writeLoop() {
+        try {
+            drainLoop();
+        } catch (RuntimeException e) {
+            // Messages still on the ring are lost; publishers are told from now on
+            failure = e.getMessage() != null ? e.getMessage() : e.toString();
+            WRITER_FAILED.increment();
+            System.err.println("Message broker writer stopped: " + e);
+        }
+    }
+
+    private void drainLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        long lastSync = System.nanoTime();
+        int idle = 0;
+        while (!closed || !ring.isEmpty()) {
+            if (ring.drain(batch::add, MAX_BATCH) == 0) {
+                if (++idle < 100) {
+                    Thread.yield();
+                } else {
+                    writerParked = true;
+                    if (ring.isEmpty() && !closed) LockSupport.parkNanos(this, 1_000_000);
+                    writerParked = false;
+                }
+            } else {
+                idle = 0;
+                writeBatch(batch);
+                batch.clear();
+            }
+            if (System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(syncMillis)) {
+                log.force();
+                lastSync = System.nanoTime();
+            }
+        }
+        log.force();
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        long t0 = System.nanoTime();
+        Message[] written = new Message[batch.size()];
+        synchronized (dispatchLock) {
+            for (int i = 0; i < written.length; i++) {
+                Pending p = batch.get(i);
+                written[i] = log.append(p.timestamp, p.conversation, p.sender, p.body);
+                // Only once stored: a failed append must not leave an offset behind in the index
+                index(p.conversation, written[i].offset);
+                indexedTo = written[i].offset + 1;
+            }
+            BATCH_WRITE.record(System.nanoTime() - t0);
+            for (int i = 0; i < written.length; i++) {
+                Message m = written[i];
+                List<Subscription> subs = subscribers.get(m.conversation);
+                if (subs != null) {
+                    for (Subscription s : subs) {
+                        try {
+                            s.subscriber.onMessage(m);
+                            DELIVERED.increment();
+                        } catch (RuntimeException e) {
+                            System.err.println("Message subscriber failed: " + e);
+                        }
+                    }
+                }
+                LATENCY.record(System.nanoTime() - batch.get(i).enqueuedNanos);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MessageClient.java
+ *
+ * Client for {@link MessageServer}. Remembers the last offset received per conversation and,
+ * when the connection drops, reconnects with backoff and re-subscribes from the next offset,
+ * so no message is missed or delivered twice across a reconnect.
+ */
+class MessageClient implements Closeable {
+    private static final int CONNECT_TIMEOUT_MS = 3_000;
+    private static final long MAX_BACKOFF_MS = 5_000;
+
+    /** Called on the client's reader thread. */
+    interface Listener {
+        void onMessage(MessageBroker.Message m);
+
+        default void onError(String text) {
+            System.err.println("Message server: " + text);
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final String token;
+    private final Listener listener;
+    private final Map<String, Long> nextOffsets = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile Socket socket;
+    private volatile DataOutputStream out;
+    private volatile boolean closed;
+    private Thread reader;
+
+    MessageClient(String host, int port, String token, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+        this.listener = listener;
+    }
+
+    /** Connects and starts the reader thread; later drops reconnect on their own. */
+    MessageClient connect() throws IOException {
+        open();
+        reader = new Thread(this::readLoop, "message-client");
+        reader.setDaemon(true);
+        reader.start();
+        return this;
+    }
+
+    /** Subscribes from fromOffset (0 for the whole history); reconnects resume where delivery stopped. */
+    void subscribe(String conversation, long fromOffset) throws IOException {
+        nextOffsets.put(conversation, fromOffset);
+        sendSubscribe(conversation, fromOffset);
+    }
+
+    /** The offset after the last message received for the conversation. */
+    long nextOffset(String conversation) {
+        return nextOffsets.getOrDefault(conversation, 0L);
+    }
+
+    void publish(String conversation, String body) throws IOException {
+        byte[] c = conversation.getBytes(StandardCharsets.UTF_8);
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        synchronized (writeLock) {
+            DataOutputStream o = connected();
+            o.writeInt(1 + 4 + c.length + 4 + b.length);
+            o.writeByte(MessageServer.PUBLISH);
+            writeBytes(o, c);
+            writeBytes(o, b);
+            o.flush();
+        }
+    }
+
+    private void sendSubscribe(String conversation, long fromOffset) throws IOException {
+        byte[] c = conversation.getBytes(StandardCharsets.UTF_8);
+        synchronized (writeLock) {
+            DataOutputStream o = connected();
+            o.writeInt(1 + 4 + c.length + 8);
+            o.writeByte(MessageServer.SUBSCRIBE);
+            writeBytes(o, c);
+            o.writeLong(fromOffset);
+            o.flush();
+        }
+    }
+
+    private DataOutputStream connected() throws IOException {
+        DataOutputStream o = out;
+        if (o == null) throw new IOException("Not connected to the message server");
+        return o;
+    }
+
+    private void open() throws IOException {
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        DataOutputStream o = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+        byte[] t = token.getBytes(StandardCharsets.UTF_8);
+        synchronized (writeLock) {
+            o.writeInt(1 + 4 + t.length);
+            o.writeByte(MessageServer.HELLO);
+            writeBytes(o, t);
+            o.flush();
+            socket = s;
+            out = o;
+        }
+        for (Map.Entry<String, Long> e : nextOffsets.entrySet()) sendSubscribe(e.getKey(), e.getValue());
+    }
+
+    // ----- Reader thread -----
+    private void readLoop() {
+        long backoff = 100;
+        while (!closed) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                backoff = 100;
+                while (true) readFrame(in);
+            } catch (IOException e) {
+                out = null;
+                closeSocket();
+            }
+            // Reconnect until it works or the client is closed
+            while (!closed) {
+                try {
+                    Thread.sleep(backoff);
+                    open();
+                    break;
+                } catch (IOException e) {
+                    backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readFrame(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len <= 0 || len > MessageServer.MAX_FRAME) throw new IOException("Bad frame length " + len);
+        byte type = in.readByte();
+        if (type == MessageServer.MESSAGE) {
+            long offset = in.readLong();
+            long timestamp = in.readLong();
+            String conversation = readString(in);
+            MessageBroker.Message m = new MessageBroker.Message(offset, timestamp, conversation, readString(in), readString(in));
+            nextOffsets.put(conversation, offset + 1);
+            listener.onMessage(m);
+        } else if (type == MessageServer.ERROR) {
+            listener.onError(readString(in));
+        } else {
+            in.skipBytes(len - 1);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MessageServer.MAX_FRAME) throw new IOException("Bad string length " + len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream o, byte[] b) throws IOException {
+        o.writeInt(b.length);
+        o.write(b);
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        out = null;
+        closeSocket();
+        if (reader != null) reader.interrupt();
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * MessageLog.java
+ *
+ * Append-only, memory-mapped log of chat messages; the storage behind {@link MessageBroker}.
+ *
+ * Every message gets a dense offset (0, 1, 2, ...) in the order it was appended. Segments are
+ * named after the offset of their first record and are never rewritten, so a client that
+ * reconnects can ask for everything after the last offset it saw. Each segment keeps an
+ * in-memory table of record positions, which makes a read from any offset one lookup.
+ *
+ * There is a single writer (the broker's writer thread); reads may come from any thread and
+ * only see records whose append has returned. As with the points ledger, mapped writes survive
+ * a process crash as soon as append() returns and force() covers power loss.
+ */
+class MessageLog implements Closeable {
+    static final long SEGMENT_BYTES = 64L << 20;
+
+    // Record: [int length][int crc][long offset][long timestamp][int convLen][conv][int senderLen][sender][body]
+    private static final int HEADER = 8;
+    private static final int FIXED = 8 + 8 + 4 + 4;
+
+    private static final class Segment {
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        volatile int[] positions = new int[1024]; // replaced (never mutated in place past count) when it grows
+        int count;
+        int end;
+
+        Segment(long base, FileChannel channel, MappedByteBuffer buf) {
+            this.base = base;
+            this.channel = channel;
+            this.buf = buf;
+        }
+
+        // Writer thread only
+        void add(int position) {
+            int[] p = positions;
+            if (count == p.length) {
+                p = Arrays.copyOf(p, p.length * 2);
+                positions = p;
+            }
+            p[count++] = position;
+        }
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private volatile Segment[] segments = new Segment[0];
+    private volatile long nextOffset;
+    private final CRC32 crc = new CRC32();
+    private byte[] record = new byte[1024];
+
+    private MessageLog(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** Opens (or creates) the log in {@code dir}, dropping a torn final record left by a crash. */
+    static MessageLog open(Path dir) throws IOException {
+        return open(dir, SEGMENT_BYTES);
+    }
+
+    static MessageLog open(Path dir, long segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        MessageLog log = new MessageLog(dir, segmentBytes);
+        log.recover();
+        return log;
+    }
+
+    /** Offset the next appended message will get; everything below it is readable. */
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    /** Offset of the oldest stored message. */
+    long firstOffset() {
+        Segment[] segs = segments;
+        return segs.length == 0 ? nextOffset : segs[0].base;
+    }
+
+    /** Appends one message and returns it with its offset. Writer thread only. */
+    MessageBroker.Message append(long timestamp, String conversation, String sender, String body) {
+        byte[] conv = conversation.getBytes(StandardCharsets.UTF_8);
+        byte[] from = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] text = body.getBytes(StandardCharsets.UTF_8);
+        int len = FIXED + conv.length + from.length + text.length;
+        if (HEADER + len > segmentBytes) throw new IllegalArgumentException("Message too large: " + len + " bytes");
+        if (len > record.length) record = new byte[Math.max(len, record.length * 2)];
+
+        long offset = nextOffset;
+        int p = putLong(record, 0, offset);
+        p = putLong(record, p, timestamp);
+        p = putBytes(record, p, conv);
+        p = putBytes(record, p, from);
+        System.arraycopy(text, 0, record, p, text.length);
+        crc.reset();
+        crc.update(record, 0, len);
+
+        Segment seg = current();
+        if (seg == null || seg.end + HEADER + len > seg.buf.limit()) seg = roll(offset);
+        MappedByteBuffer buf = seg.buf;
+        buf.position(seg.end);
+        buf.putInt(len);
+        buf.putInt((int) crc.getValue());
+        buf.put(record, 0, len);
+        seg.add(seg.end);
+        seg.end += HEADER + len;
+        nextOffset = offset + 1; // publishes the record and its position to readers
+        return new MessageBroker.Message(offset, timestamp, conversation, sender, body);
+    }
+
+    /** Forces the active segment's mapped pages to disk. */
+    void force() {
+        Segment seg = current();
+        if (seg != null) seg.buf.force();
+    }
+
+    /**
+     * Passes messages with offsets in [from, to) to sink, oldest first, and returns the offset
+     * after the last one read. Offsets older than the log's start are skipped.
+     */
+    long read(long from, long to, Consumer<MessageBroker.Message> sink) {
+        long end = Math.min(to, nextOffset); // read before the segment table so both are current
+        Segment[] segs = segments;
+        long offset = Math.max(from, segs.length == 0 ? end : segs[0].base);
+        int s = segmentFor(segs, offset);
+        while (offset < end && s < segs.length) {
+            Segment seg = segs[s];
+            int[] positions = seg.positions;
+            ByteBuffer buf = seg.buf.duplicate();
+            long segEnd = s + 1 < segs.length ? segs[s + 1].base : end;
+            for (; offset < Math.min(end, segEnd); offset++) {
+                buf.position(positions[(int) (offset - seg.base)]);
+                sink.accept(decode(buf));
+            }
+            s++;
+        }
+        return offset;
+    }
+
+    private static MessageBroker.Message decode(ByteBuffer buf) {
+        int len = buf.getInt();
+        buf.getInt(); // crc; checked on recovery
+        int start = buf.position();
+        long offset = buf.getLong();
+        long timestamp = buf.getLong();
+        String conversation = getString(buf, buf.getInt());
+        String sender = getString(buf, buf.getInt());
+        String body = getString(buf, len - (buf.position() - start));
+        return new MessageBroker.Message(offset, timestamp, conversation, sender, body);
+    }
+
+    private static String getString(ByteBuffer buf, int length) {
+        byte[] b = new byte[length];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int segmentFor(Segment[] segs, long offset) {
+        int lo = 0, hi = segs.length - 1, found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segs[mid].base <= offset) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private Segment current() {
+        Segment[] segs = segments;
+        return segs.length == 0 ? null : segs[segs.length - 1];
+    }
+
+    // Writer thread only; 'base' is the offset of the next record
+    private Segment roll(long base) {
+        try {
+            Segment old = current();
+            if (old != null) old.buf.force();
+            Segment seg = map(dir.resolve(String.format("messages-%020d.log", base)), base, true);
+            Segment[] segs = Arrays.copyOf(segments, segments.length + 1);
+            segs[segs.length - 1] = seg;
+            segments = segs;
+            return seg;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open message log segment", e);
+        }
+    }
+
+    private Segment map(Path file, long base, boolean writable) throws IOException {
+        FileChannel ch = writable
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer buf = writable
+                ? ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, ch.size()))
+                : ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        return new Segment(base, ch, buf);
+    }
+
+    // ----- Recovery -----
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "messages-*.log")) {
+            for (Path p : ds) files.add(p);
+        }
+        files.sort(Comparator.comparingLong(MessageLog::baseOffset));
+        List<Segment> segs = new ArrayList<>();
+        long next = 0;
+        for (int i = 0; i < files.size(); i++) {
+            boolean last = i == files.size() - 1;
+            Segment seg = map(files.get(i), baseOffset(files.get(i)), last);
+            scan(seg, last);
+            segs.add(seg);
+            next = seg.base + seg.count;
+        }
+        segments = segs.toArray(new Segment[0]);
+        nextOffset = next;
+    }
+
+    private void scan(Segment seg, boolean last) {
+        MappedByteBuffer buf = seg.buf;
+        byte[] body = new byte[1024];
+        CRC32 check = new CRC32();
+        int pos = 0;
+        while (pos + HEADER <= buf.limit()) {
+            int len = buf.getInt(pos);
+            if (len == 0) break;
+            if (len < FIXED || pos + HEADER + len > buf.limit()) {
+                if (last) clear(buf, pos, HEADER);
+                break;
+            }
+            if (len > body.length) body = new byte[len];
+            buf.position(pos + HEADER);
+            buf.get(body, 0, len);
+            check.reset();
+            check.update(body, 0, len);
+            if ((int) check.getValue() != buf.getInt(pos + 4) || getLong(body, 0) != seg.base + seg.count) {
+                // Torn final record from a crash mid-append (there is one writer, so nothing follows it)
+                if (last) clear(buf, pos, HEADER + len);
+                break;
+            }
+            seg.add(pos);
+            pos += HEADER + len;
+        }
+        seg.end = pos;
+    }
+
+    private static void clear(MappedByteBuffer buf, int start, int length) {
+        for (int i = start, end = Math.min(buf.limit(), start + length); i < end; i++) buf.put(i, (byte) 0);
+        buf.force();
+    }
+
+    private static long baseOffset(Path seg) {
+        String n = seg.getFileName().toString();
+        return Long.parseLong(n.substring("messages-".length(), n.length() - ".log".length()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        for (Segment seg : segments) seg.channel.close();
+    }
+
+    // ----- Byte helpers -----
+    private static int putBytes(byte[] b, int p, byte[] v) {
+        p = putInt(b, p, v.length);
+        System.arraycopy(v, 0, b, p, v.length);
+        return p + v.length;
+    }
+
+    private static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 24); b[p + 1] = (byte) (v >>> 16); b[p + 2] = (byte) (v >>> 8); b[p + 3] = (byte) v;
+        return p + 4;
+    }
+
+    private static int putLong(byte[] b, int p, long v) {
+        putInt(b, p, (int) (v >>> 32));
+        return putInt(b, p + 4, (int) v);
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return (b[p] & 0xff) << 24 | (b[p + 1] & 0xff) << 16 | (b[p + 2] & 0xff) << 8 | (b[p + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] b, int p) {
+        return (long) getInt(b, p) << 32 | (getInt(b, p + 4) & 0xffffffffL);
+    }
+}
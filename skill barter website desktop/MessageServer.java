@@ -0,0 +1,341 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * MessageServer.java
+ *
+ * Loopback socket front end for the {@link MessageBroker}, so other processes (and tests) can
+ * chat through the same broker. One thread runs a non-blocking NIO selector for all clients.
+ *
+ * Frames are [int length][byte type][payload]; strings are [int length][UTF-8 bytes]:
+ *   HELLO     token                        client → server, first frame; the token is a login session
+ *   SUBSCRIBE conversation, long fromOffset client → server
+ *   PUBLISH   conversation, body           client → server
+ *   MESSAGE   long offset, long timestamp, conversation, sender, body   server → client
+ *   ERROR     text                         server → client
+ *
+ * A rejected or repeated HELLO gets an ERROR and the connection is closed. A client may only
+ * use conversations it is a member of (see {@link MessageBroker#conversationId}). Subscribing from an old offset replays stored
+ * messages a chunk at a time as the socket drains, then switches to live delivery. Live
+ * messages are copied into a per-client buffer on the broker thread; a client that falls more
+ * than {@link #MAX_PENDING_BYTES} behind is disconnected and is expected to reconnect and
+ * resume from the last offset it received.
+ */
+class MessageServer implements Closeable {
+    static final byte HELLO = 1;
+    static final byte SUBSCRIBE = 2;
+    static final byte PUBLISH = 3;
+    static final byte MESSAGE = 4;
+    static final byte ERROR = 5;
+
+    static final int MAX_FRAME = MessageBroker.MAX_BODY_BYTES + 1024;
+    static final int MAX_PENDING_BYTES = 4 << 20;
+    private static final int REPLAY_CHUNK = 4096;
+
+    private static final LongAdder DROPPED = Metrics.counter("messaging.server.slowClientsDropped");
+
+    private final MessageBroker broker;
+    private final Function<String, String> authenticator;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ConcurrentLinkedQueue<Connection> dirty = new ConcurrentLinkedQueue<>();
+    private final Thread loop;
+    private volatile boolean closed;
+
+    /** Catch-up state for one SUBSCRIBE until it has replayed close enough to go live. */
+    private static final class Replay {
+        final String conversation;
+        long next;
+
+        Replay(String conversation, long next) {
+            this.conversation = conversation;
+            this.next = next;
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(4 + MAX_FRAME);
+        ByteBuffer out = ByteBuffer.allocate(16 * 1024); // guarded by this
+        boolean overflowed;                              // guarded by this
+        boolean closing;                                 // guarded by this; close once out is written
+        final AtomicBoolean flushQueued = new AtomicBoolean();
+        final List<MessageBroker.Subscription> subscriptions = new ArrayList<>();
+        final List<Replay> replays = new ArrayList<>();
+        String sender;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        // Broker writer thread (live) or selector thread (replay)
+        void deliver(MessageBroker.Message m) {
+            byte[] conv = m.conversation.getBytes(StandardCharsets.UTF_8);
+            byte[] from = m.sender.getBytes(StandardCharsets.UTF_8);
+            byte[] body = m.body.getBytes(StandardCharsets.UTF_8);
+            int len = 1 + 8 + 8 + 12 + conv.length + from.length + body.length;
+            synchronized (this) {
+                if (overflowed) return;
+                if (!ensure(4 + len)) return;
+                out.putInt(len).put(MESSAGE).putLong(m.offset).putLong(m.timestamp);
+                out.putInt(conv.length).put(conv).putInt(from.length).put(from).putInt(body.length).put(body);
+            }
+            scheduleFlush();
+        }
+
+        void error(String text) {
+            byte[] b = text.getBytes(StandardCharsets.UTF_8);
+            synchronized (this) {
+                if (!ensure(4 + 1 + 4 + b.length)) return;
+                out.putInt(1 + 4 + b.length).put(ERROR).putInt(b.length).put(b);
+            }
+            scheduleFlush();
+        }
+
+        // Caller holds this; grows the buffer up to the pending limit
+        private boolean ensure(int bytes) {
+            if (out.remaining() >= bytes) return true;
+            if (out.position() + bytes > MAX_PENDING_BYTES) {
+                overflowed = true;
+                return false;
+            }
+            int size = out.capacity();
+            while (size - out.position() < bytes) size *= 2;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(size, MAX_PENDING_BYTES));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+            return true;
+        }
+
+        private void scheduleFlush() {
+            if (flushQueued.compareAndSet(false, true)) {
+                dirty.add(this);
+                selector.wakeup();
+            }
+        }
+    }
+
+    MessageServer(MessageBroker broker, Function<String, String> authenticator, int port) throws IOException {
+        this.broker = broker;
+        this.authenticator = authenticator;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.loop = new Thread(this::run, "message-server");
+        loop.setDaemon(true);
+    }
+
+    MessageServer start() {
+        loop.start();
+        return this;
+    }
+
+    /** The bound port (useful when constructed with port 0). */
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    // ----- Selector loop -----
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+                Connection c;
+                while ((c = dirty.poll()) != null) {
+                    c.flushQueued.set(false);
+                    if (!c.key.isValid()) continue;
+                    try {
+                        flush(c);
+                    } catch (IOException | RuntimeException e) {
+                        disconnect(c);
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else handle((Connection) key.attachment(), key);
+                }
+            } catch (IOException e) {
+                if (!closed) System.err.println("Message server error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) return;
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(ch, key));
+    }
+
+    private void handle(Connection c, SelectionKey key) {
+        try {
+            if (key.isReadable()) read(c);
+            if (key.isValid() && key.isWritable()) flush(c);
+        } catch (IOException | RuntimeException e) {
+            disconnect(c);
+        }
+    }
+
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            disconnect(c);
+            return;
+        }
+        ByteBuffer in = c.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int len = in.getInt(in.position());
+            if (len <= 0 || len > MAX_FRAME) throw new IOException("Bad frame length " + len);
+            if (in.remaining() < 4 + len) break;
+            int end = in.position() + 4 + len;
+            in.position(in.position() + 4);
+            byte type = in.get();
+            onFrame(c, type, in);
+            in.position(end);
+        }
+        in.compact();
+    }
+
+    private void onFrame(Connection c, byte type, ByteBuffer in) throws IOException {
+        synchronized (c) {
+            if (c.closing) return; // an error is on its way out; ignore what the client sent after
+        }
+        if (type == HELLO) {
+            // The sender is fixed by the first HELLO; a connection cannot switch members
+            String sender = c.sender == null ? authenticator.apply(getString(in)) : null;
+            if (sender == null) {
+                c.error(c.sender == null ? "Not signed in" : "Already signed in");
+                synchronized (c) {
+                    c.closing = true;
+                }
+                return;
+            }
+            c.sender = sender;
+            return;
+        }
+        if (c.sender == null) throw new IOException("Expected HELLO");
+        String conversation = getString(in);
+        if (!isMember(c.sender, conversation)) {
+            c.error("Not a member of " + conversation);
+            return;
+        }
+        switch (type) {
+            case SUBSCRIBE:
+                c.replays.add(new Replay(conversation, Math.max(0, in.getLong())));
+                flush(c);
+                break;
+            case PUBLISH:
+                // This is the selector thread, so a full ring is reported rather than waited out
+                try {
+                    if (!broker.tryPublish(conversation, c.sender, getString(in))) c.error("Message broker is overloaded; try again");
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    c.error(e.getMessage());
+                }
+                break;
+            default:
+                throw new IOException("Unknown frame type " + type);
+        }
+    }
+
+    static boolean isMember(String sender, String conversation) {
+        return Arrays.asList(conversation.split("\\|")).contains(sender.trim().toLowerCase());
+    }
+
+    private void flush(Connection c) throws IOException {
+        boolean more;
+        boolean overflowed, closing;
+        synchronized (c) {
+            c.out.flip();
+            c.channel.write(c.out);
+            more = c.out.hasRemaining();
+            c.out.compact();
+            overflowed = c.overflowed;
+            closing = c.closing;
+        }
+        if ((overflowed || closing) && !more) {
+            if (overflowed) DROPPED.increment();
+            disconnect(c);
+            return;
+        }
+        if (!more && !c.replays.isEmpty()) continueReplays(c);
+        c.key.interestOps(more ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    // Replays one chunk per drained socket buffer; near the head, hands over to a live subscription
+    private void continueReplays(Connection c) {
+        for (Iterator<Replay> it = c.replays.iterator(); it.hasNext(); ) {
+            Replay r = it.next();
+            long head = broker.nextOffset();
+            if (head - r.next <= REPLAY_CHUNK) {
+                c.subscriptions.add(broker.subscribe(r.conversation, r.next, c::deliver));
+                it.remove();
+            } else {
+                long to = r.next + REPLAY_CHUNK;
+                for (MessageBroker.Message m : broker.history(r.conversation, r.next, to)) c.deliver(m);
+                r.next = to;
+            }
+        }
+        if (!c.replays.isEmpty()) c.scheduleFlush();
+    }
+
+    private void disconnect(Connection c) {
+        for (MessageBroker.Subscription s : c.subscriptions) s.close();
+        c.subscriptions.clear();
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        int len = in.getInt();
+        if (len < 0 || len > in.remaining()) throw new IOException("Bad string length " + len);
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join(2_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) disconnect((Connection) key.attachment());
+        }
+        server.close();
+        selector.close();
+    }
+}
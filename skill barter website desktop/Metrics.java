@@ -0,0 +1,90 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics.java
+ *
+ * Process-wide counters and latency histograms. Recording is lock-free and allocation-free,
+ * so hot paths (task completion, EDT probes) can call it freely; looking a metric up by name
+ * is not, so callers resolve it once and keep the reference.
+ */
+final class Metrics {
+    private Metrics() {}
+
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    /** Nanosecond histogram with power-of-two buckets (bucket i holds values below 2^i ns). */
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            sum.add(nanos);
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { }
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long sumNanos() {
+            return sum.sum();
+        }
+
+        long maxNanos() {
+            return max.get();
+        }
+
+        /** Upper bound of the bucket holding quantile q (0..1). */
+        long percentileNanos(double q) {
+            long total = count(), seen = 0, target = (long) Math.ceil(q * total);
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) return i == 0 ? 0 : 1L << i;
+            }
+            return 0;
+        }
+
+        long bucket(int i) {
+            return buckets.get(i);
+        }
+    }
+
+    static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    static Map<String, Long> counters() {
+        TreeMap<String, Long> out = new TreeMap<>();
+        COUNTERS.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    static Map<String, Histogram> histograms() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    /** Human-readable dump, e.g. for a diagnostics dialog or a log line. */
+    static String summary() {
+        StringBuilder sb = new StringBuilder();
+        counters().forEach((k, v) -> sb.append(k).append(" = ").append(v).append('\n'));
+        histograms().forEach((k, h) -> sb.append(String.format("%s: n=%d p50=%.2fms p99=%.2fms max=%.2fms%n",
+                k, h.count(), h.percentileNanos(0.5) / 1e6, h.percentileNanos(0.99) / 1e6, h.maxNanos() / 1e6)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import javax.management.*;
+
+/**
+ * MetricsExporter.java
+ *
+ * Publishes {@link Metrics} outside the process.
+ *
+ * - JMX: one MBean, "SkillBarter:type=Metrics", with an attribute per counter and
+ *   count/p50/p99/max attributes per histogram, read live on every request (JConsole,
+ *   VisualVM, jcmd).
+ * - HTTP: with -Dskillbarter.metrics.port=9464, GET http://127.0.0.1:9464/metrics returns
+ *   the same numbers in the Prometheus text format. Histograms keep their power-of-two
+ *   buckets from 1 µs to 68 s, in seconds. The server listens on the loopback address only.
+ *
+ * Slow EDT dispatches per culprit (see {@link InstrumentedEventQueue}) are included in both.
+ */
+final class MetricsExporter {
+    private MetricsExporter() {}
+
+    static final String OBJECT_NAME = "SkillBarter:type=Metrics";
+    private static final int FIRST_BUCKET = 10; // 2^10 ns, about 1 µs
+    private static final int LAST_BUCKET = 36;  // 2^36 ns, about 68 s
+    private static volatile boolean started;
+
+    /** Registers the MBean and, if configured, starts the HTTP endpoint; safe to call more than once. */
+    static synchronized void start() {
+        if (started) return;
+        started = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+        Integer port = Integer.getInteger("skillbarter.metrics.port");
+        if (port != null) {
+            try {
+                HttpServer server = serve(port);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(0), "metrics-http-stop"));
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Starts the /metrics endpoint on the loopback address (port 0 picks a free one). */
+    static HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/metrics", exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = prometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    // ----- Prometheus text format -----
+    static String prometheusText() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        Metrics.counters().forEach((name, value) -> {
+            String n = metricName(name) + "_total";
+            sb.append("# TYPE ").append(n).append(" counter\n").append(n).append(' ').append(value).append('\n');
+        });
+        Metrics.histograms().forEach((name, h) -> {
+            String n = metricName(name) + "_seconds";
+            sb.append("# TYPE ").append(n).append(" histogram\n");
+            long count = h.count(), cumulative = 0;
+            for (int i = 0; i <= LAST_BUCKET; i++) {
+                cumulative += h.bucket(i);
+                // Bucket i holds values below 2^i ns; a fixed le set (1 µs .. 68 s) keeps series stable
+                if (i >= FIRST_BUCKET) sb.append(n).append("_bucket{le=\"").append(seconds(1L << i)).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(n).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+            sb.append(n).append("_sum ").append(seconds(h.sumNanos())).append('\n');
+            sb.append(n).append("_count ").append(count).append('\n');
+        });
+        Map<String, Long> slow = InstrumentedEventQueue.slowListeners();
+        if (!slow.isEmpty()) {
+            String n = "skillbarter_edt_slow_dispatches_by_site_total";
+            sb.append("# TYPE ").append(n).append(" counter\n");
+            slow.forEach((site, count) -> sb.append(n).append("{site=\"").append(labelValue(site)).append("\"} ").append(count).append('\n'));
+        }
+        return sb.toString();
+    }
+
+    private static String metricName(String name) {
+        StringBuilder sb = new StringBuilder("skillbarter_");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static String labelValue(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // ----- JMX -----
+    // Attributes: "<counter>", "<histogram>.count", ".p50Millis", ".p99Millis", ".maxMillis", "edt.slowListeners"
+    private static final class MetricsMBean implements DynamicMBean {
+        private static final String[] HISTOGRAM_FIELDS = {"count", "p50Millis", "p99Millis", "maxMillis"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("edt.slowListeners")) return InstrumentedEventQueue.slowListeners().toString();
+            Long counter = Metrics.counters().get(attribute);
+            if (counter != null) return counter;
+            int dot = attribute.lastIndexOf('.');
+            Metrics.Histogram h = dot < 0 ? null : Metrics.histograms().get(attribute.substring(0, dot));
+            if (h != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return h.count();
+                    case "p50Millis": return h.percentileNanos(0.5) / 1e6;
+                    case "p99Millis": return h.percentileNanos(0.99) / 1e6;
+                    case "maxMillis": return h.maxNanos() / 1e6;
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    list.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException ignored) {
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName));
+        }
+
+        // Rebuilt on each call so metrics created after registration show up
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (String name : Metrics.counters().keySet()) {
+                attrs.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+            }
+            for (String name : Metrics.histograms().keySet()) {
+                for (String field : HISTOGRAM_FIELDS) {
+                    attrs.add(new MBeanAttributeInfo(name + "." + field, field.equals("count") ? "long" : "double",
+                            "Histogram " + field, true, false, false));
+                }
+            }
+            attrs.add(new MBeanAttributeInfo("edt.slowListeners", "java.lang.String", "Slow EDT dispatches by culprit", true, false, false));
+            return new MBeanInfo(MetricsMBean.class.getName(), "SkillBarter runtime metrics",
+                    attrs.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * MpscRingBuffer.java
+ *
+ * Bounded lock-free queue for many producer threads and exactly one consumer thread.
+ *
+ * Producers claim a slot by CAS on the tail counter and then publish the element into it;
+ * the consumer walks slots from the head and stops at the first one not yet published, so
+ * elements come out in claim order. A slot is free again once the consumer has cleared it
+ * and moved the head past it. offer() never blocks: it returns false when the ring is full.
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final int capacity;
+    private final AtomicLong tail = new AtomicLong(); // next slot a producer claims
+    private final AtomicLong head = new AtomicLong(); // next slot the consumer reads; written by the consumer only
+
+    /** Capacity is rounded up to a power of two. */
+    MpscRingBuffer(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.capacity = size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /** Adds e, or returns false if the ring is full. Safe from any thread. */
+    boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= capacity) return false;
+        } while (!tail.compareAndSet(t, t + 1));
+        slots.lazySet((int) t & mask, e);
+        return true;
+    }
+
+    /** Hands up to max elements to sink, oldest first. Consumer thread only. */
+    int drain(Consumer<? super E> sink, int max) {
+        long h = head.get();
+        int n = 0;
+        while (n < max) {
+            int i = (int) h & mask;
+            E e = slots.get(i);
+            if (e == null) break; // empty, or claimed but not yet published
+            slots.lazySet(i, null);
+            h++;
+            n++;
+            sink.accept(e);
+        }
+        if (n > 0) head.lazySet(h);
+        return n;
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /** Approximate; exact only when producers are idle. */
+    int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Outbox.java
+ *
+ * Durable outbox for email: the contact form and notifications such as the welcome mail.
+ *
+ * enqueue() appends the message to a journal and returns; nothing waits on the network. A
+ * dispatcher thread delivers pending messages in batches of up to BATCH through an
+ * {@link OutboxTransport}. A failed batch is retried with exponential backoff (1 s doubling
+ * to 5 min, with jitter), and while batches keep failing the dispatcher pauses for the same
+ * backoff instead of trying the next one. A message is dropped as undeliverable after
+ * MAX_ATTEMPTS tries or when the transport rejects it outright.
+ *
+ * The journal holds an ENQUEUE record per message and a DONE or DEAD record once it is
+ * settled. On open() it is replayed, and every message without DONE or DEAD is pending
+ * again, so nothing is lost across restarts. Delivery is at least once: a crash between
+ * sending and writing DONE sends that message again. Transports receive the message ID to
+ * drop such repeats; the file transport does, and SMTP sends it as the Message-ID header.
+ *
+ * Messages with the same dedupe key (e.g. a double-clicked Send) are only queued once while
+ * the first is pending or among the last DEDUPE_WINDOW delivered.
+ *
+ * Journal writes survive a process crash as soon as enqueue() returns; a flusher forces
+ * them to disk every {@code syncMillis} to cover power loss as well, as in PointsLedger.
+ * Segments roll at SEGMENT_BYTES and are deleted, oldest first, once all their messages
+ * are settled.
+ */
+class Outbox implements Closeable {
+    static final int BATCH = 50;
+    static final int MAX_ATTEMPTS = 12;
+    static final long FIRST_RETRY_MILLIS = 1000;
+    static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DEDUPE_WINDOW = 10_000;
+    private static final long SEGMENT_BYTES = 8L << 20;
+
+    // Record: [int length][int crc][byte type][long id] + for ENQUEUE [long createdAt][utf key, kind, to, replyTo, subject, body]
+    private static final byte ENQUEUE = 1;
+    private static final byte DONE = 2;
+    private static final byte DEAD = 3;
+    private static final int HEADER = 8;
+
+    /** One queued email. */
+    static final class Message {
+        final long id;
+        final long createdAt;
+        final String key;
+        final String kind;
+        final String to;
+        final String replyTo;
+        final String subject;
+        final String body;
+
+        Message(long id, long createdAt, String key, String kind, String to, String replyTo, String subject, String body) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.key = key;
+            this.kind = kind;
+            this.to = to;
+            this.replyTo = replyTo;
+            this.subject = subject;
+            this.body = body;
+        }
+    }
+
+    // A pending message with its retry state; guarded by lock
+    private static final class Pending {
+        final Message message;
+        final int segment;
+        int attempts;
+        long due;
+
+        Pending(Message message, int segment) {
+            this.message = message;
+            this.segment = segment;
+        }
+    }
+
+    private final Path dir;
+    private final OutboxTransport transport;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Pending> queue = new PriorityQueue<>(Comparator.comparingLong((Pending p) -> p.due).thenComparingLong(p -> p.message.id));
+    private final HashMap<Long, Pending> pending = new HashMap<>();
+    private final HashSet<String> pendingKeys = new HashSet<>();
+    private final LinkedHashSet<String> deliveredKeys = new LinkedHashSet<>();
+    private final TreeMap<Integer, int[]> unsettled = new TreeMap<>(); // segment -> {messages not yet settled}
+    private long nextId = 1;
+    private int failedBatches;  // in a row; while the transport is failing, no batch is tried before pausedUntil
+    private long pausedUntil;
+
+    // Journal; guarded by lock
+    private FileChannel journal;
+    private int segment;
+    private int oldestSegment;
+    private final CRC32 crc = new CRC32();
+
+    private final Thread dispatcher;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private Outbox(Path dir, OutboxTransport transport, long syncMillis) {
+        this.dir = dir;
+        this.transport = transport;
+        dispatcher = new Thread(this::dispatch, "outbox-dispatcher");
+        dispatcher.setDaemon(true);
+        flusher = new Thread(() -> {
+            while (!closed) {
+                try { Thread.sleep(syncMillis); } catch (InterruptedException e) { return; }
+                sync();
+            }
+        }, "outbox-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /** Opens (or creates) the outbox in {@code dir}, requeues what was pending and starts delivering. */
+    static Outbox open(Path dir, OutboxTransport transport, long syncMillis) throws IOException {
+        Files.createDirectories(dir);
+        Outbox outbox = new Outbox(dir, transport, syncMillis);
+        outbox.recover();
+        outbox.dispatcher.start();
+        outbox.flusher.start();
+        return outbox;
+    }
+
+    // ----- Enqueue -----
+    /**
+     * Queues a message and returns its ID, or -1 if a message with the same key is already
+     * pending or was delivered recently. Only waits for the journal write.
+     */
+    long enqueue(String key, String kind, String to, String replyTo, String subject, String body) throws IOException {
+        if (closed) throw new IOException("Outbox is closed");
+        lock.lock();
+        try {
+            if (pendingKeys.contains(key) || deliveredKeys.contains(key)) {
+                Metrics.counter("outbox.deduped").increment();
+                return -1;
+            }
+            Message m = new Message(nextId++, System.currentTimeMillis(), key, kind, to, replyTo == null ? "" : replyTo, subject, body);
+            int seg = append(ENQUEUE, m.id, m);
+            queue.add(track(m, seg));
+            changed.signal();
+            Metrics.counter("outbox.enqueued").increment();
+            return m.id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Messages not yet delivered or dropped. */
+    int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock; the caller also queues it for delivery
+    private Pending track(Message m, int seg) {
+        Pending p = new Pending(m, seg);
+        pending.put(m.id, p);
+        pendingKeys.add(m.key);
+        unsettled.computeIfAbsent(seg, s -> new int[1])[0]++;
+        return p;
+    }
+
+    // ----- Dispatch -----
+    private void dispatch() {
+        while (!closed) {
+            List<Pending> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch.isEmpty()) continue;
+            deliver(batch);
+        }
+    }
+
+    // Waits until at least one message is due, then takes up to BATCH due messages
+    private List<Pending> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                Pending head = queue.peek();
+                long wait = head == null ? Long.MAX_VALUE : Math.max(head.due, pausedUntil) - System.currentTimeMillis();
+                if (wait <= 0) break;
+                if (head == null) changed.await();
+                else changed.await(wait, TimeUnit.MILLISECONDS);
+            }
+            List<Pending> batch = new ArrayList<>(BATCH);
+            long now = System.currentTimeMillis();
+            while (batch.size() < BATCH && !queue.isEmpty() && queue.peek().due <= now) batch.add(queue.poll());
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(List<Pending> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Pending p : batch) messages.add(p.message);
+        HashSet<Long> settled = new HashSet<>();
+        long t0 = System.nanoTime();
+        try {
+            transport.deliver(messages, new OutboxTransport.Receipt() {
+                @Override
+                public void delivered(Message m) {
+                    if (settled.add(m.id)) settle(m, DONE);
+                }
+
+                @Override
+                public void rejected(Message m, String reason) {
+                    if (!settled.add(m.id)) return;
+                    System.err.println("Outbox: message " + m.id + " to " + m.to + " rejected: " + reason);
+                    settle(m, DEAD);
+                }
+            });
+            Metrics.histogram("outbox.batch").record(System.nanoTime() - t0);
+            transportOk();
+            // A transport that returns without a verdict for a message gets it retried
+            if (settled.size() < batch.size()) retry(batch, settled, "no receipt");
+        } catch (IOException | RuntimeException e) {
+            transportFailed();
+            retry(batch, settled, e.toString());
+        }
+    }
+
+    // A failing transport (server down, network gone) pauses all delivery, not just the failed batch
+    private void transportFailed() {
+        lock.lock();
+        try {
+            pausedUntil = System.currentTimeMillis() + backoff(++failedBatches);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transportOk() {
+        lock.lock();
+        try {
+            failedBatches = 0;
+            pausedUntil = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void retry(List<Pending> batch, Set<Long> settled, String reason) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (Pending p : batch) {
+                if (settled.contains(p.message.id)) continue;
+                if (++p.attempts >= MAX_ATTEMPTS) {
+                    System.err.println("Outbox: giving up on message " + p.message.id + " to " + p.message.to + " after " + p.attempts + " attempts: " + reason);
+                    settleLocked(p.message, DEAD);
+                    continue;
+                }
+                p.due = now + backoff(p.attempts);
+                queue.add(p);
+                Metrics.counter("outbox.retries").increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Delay before attempt n + 1: doubling from FIRST_RETRY_MILLIS up to MAX_RETRY_MILLIS, plus up to 20% jitter. */
+    static long backoff(int attempts) {
+        long base = Math.min(MAX_RETRY_MILLIS, FIRST_RETRY_MILLIS << Math.min(attempts - 1, 20));
+        return base + ThreadLocalRandom.current().nextLong(base / 5 + 1);
+    }
+
+    private void settle(Message m, byte outcome) {
+        lock.lock();
+        try {
+            settleLocked(m, outcome);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock
+    private void settleLocked(Message m, byte outcome) {
+        Pending p = pending.remove(m.id);
+        if (p == null) return;
+        pendingKeys.remove(m.key);
+        try {
+            append(outcome, m.id, null);
+        } catch (IOException e) {
+            // The message stays settled in memory; after a restart it may be sent once more
+            System.err.println("Outbox: could not journal message " + m.id + ": " + e.getMessage());
+        }
+        if (outcome == DONE) {
+            remember(m.key);
+            Metrics.counter("outbox.delivered").increment();
+            Metrics.histogram("outbox.delivery").record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - m.createdAt));
+        } else {
+            Metrics.counter("outbox.dead").increment();
+        }
+        int[] left = unsettled.get(p.segment);
+        if (left != null && --left[0] == 0) deleteSettledSegments();
+    }
+
+    private void remember(String key) {
+        deliveredKeys.add(key);
+        if (deliveredKeys.size() > DEDUPE_WINDOW) {
+            Iterator<String> it = deliveredKeys.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    // ----- Journal -----
+    // Caller holds lock; returns the segment the record went to
+    private int append(byte type, long id, Message m) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(m == null ? 16 : 128 + m.body.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeLong(id);
+        if (m != null) {
+            out.writeLong(m.createdAt);
+            for (String s : new String[] {m.key, m.kind, m.to, m.replyTo, m.subject}) out.writeUTF(s);
+            byte[] body = m.body.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+        byte[] record = bytes.toByteArray();
+        crc.reset();
+        crc.update(record, HEADER, record.length - HEADER);
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        buf.putInt(0, record.length - HEADER);
+        buf.putInt(4, (int) crc.getValue());
+        if (journal.position() + record.length > SEGMENT_BYTES && journal.position() > 0) roll();
+        while (buf.hasRemaining()) journal.write(buf);
+        return segment;
+    }
+
+    // Caller holds lock
+    private void roll() throws IOException {
+        journal.force(false);
+        journal.close();
+        segment++;
+        journal = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        deleteSettledSegments();
+    }
+
+    // Oldest first and never the active segment, so a DONE record is never kept while its ENQUEUE is gone
+    private void deleteSettledSegments() {
+        int keep = segment;
+        for (Map.Entry<Integer, int[]> e : unsettled.entrySet()) {
+            if (e.getValue()[0] > 0) {
+                keep = Math.min(keep, e.getKey());
+                break;
+            }
+        }
+        unsettled.headMap(keep).clear();
+        for (; oldestSegment < keep; oldestSegment++) {
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment));
+            } catch (IOException e) {
+                System.err.println("Outbox: could not delete settled journal segment: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void sync() {
+        lock.lock();
+        try {
+            if (journal != null && journal.isOpen()) journal.force(false);
+        } catch (IOException e) {
+            System.err.println("Outbox sync failed: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path segmentFile(int n) {
+        return dir.resolve(String.format("outbox-%08d.log", n));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().matches("outbox-\\d{8}\\.log")).sorted().forEach(out::add);
+        }
+        return out;
+    }
+
+    private static int segmentNumber(Path p) {
+        String name = p.getFileName().toString();
+        return Integer.parseInt(name.substring(7, 15));
+    }
+
+    // ----- Recovery -----
+    private void recover() throws IOException {
+        lock.lock();
+        try {
+            List<Path> files = segmentFiles();
+            if (!files.isEmpty()) oldestSegment = segmentNumber(files.get(0));
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                segment = segmentNumber(file);
+                long valid = replay(file, segment);
+                if (valid < Files.size(file)) {
+                    if (i < files.size() - 1) throw new IOException("Corrupt outbox journal segment " + file);
+                    // Torn final record from a crash
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        ch.truncate(valid);
+                    }
+                }
+            }
+            journal = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            journal.position(journal.size());
+            queue.addAll(pending.values());
+            deleteSettledSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the length of the valid prefix
+    private long replay(Path file, int seg) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.remaining() >= HEADER) {
+            int start = buf.position();
+            int len = buf.getInt();
+            int sum = buf.getInt();
+            if (len < 9 || len > buf.remaining()) return start;
+            crc.reset();
+            crc.update(data, buf.position(), len);
+            if ((int) crc.getValue() != sum) return start;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, buf.position(), len));
+            buf.position(buf.position() + len);
+            byte type = in.readByte();
+            long id = in.readLong();
+            nextId = Math.max(nextId, id + 1);
+            if (type == ENQUEUE) {
+                long createdAt = in.readLong();
+                String key = in.readUTF(), kind = in.readUTF(), to = in.readUTF(), replyTo = in.readUTF(), subject = in.readUTF();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                track(new Message(id, createdAt, key, kind, to, replyTo, subject, new String(body, StandardCharsets.UTF_8)), seg);
+            } else {
+                Pending p = pending.remove(id);
+                if (p == null) continue;
+                pendingKeys.remove(p.message.key);
+                unsettled.get(p.segment)[0]--;
+                if (type == DONE) remember(p.message.key);
+            }
+        }
+        return buf.position();
+    }
+
+    // ----- Lifecycle -----
+    /** Stops delivering (an in-flight batch is finished or left pending) and closes the journal. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            journal.force(false);
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+        transport.close();
+    }
+}
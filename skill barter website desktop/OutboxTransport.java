@@ -0,0 +1,200 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * OutboxTransport.java
+ *
+ * Where the {@link Outbox} dispatcher hands its batches.
+ *
+ * deliver() reports each message through the receipt: delivered, or rejected for good (a bad
+ * address, a permanent SMTP error). Throwing an IOException means "try again later" for
+ * every message of the batch that has no receipt yet.
+ *
+ * Two implementations:
+ * - {@link Directory} writes each message as an .eml file, the stand-in when no mail server
+ *   is configured. A message whose file already exists counts as delivered, so a message
+ *   sent again after a crash is not written twice.
+ * - {@link Smtp} sends a batch over one connection to a plain SMTP relay (no TLS or login;
+ *   meant for a local relay such as Postfix that forwards the mail).
+ */
+interface OutboxTransport extends Closeable {
+    interface Receipt {
+        void delivered(Outbox.Message message);
+
+        void rejected(Outbox.Message message, String reason);
+    }
+
+    void deliver(List<Outbox.Message> batch, Receipt receipt) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /** The message as an RFC 5322 email with a base64 UTF-8 body, lines ending in CRLF. */
+    static String toMime(Outbox.Message m, String from) {
+        StringBuilder sb = new StringBuilder(256 + m.body.length() * 4 / 3);
+        header(sb, "From", from);
+        header(sb, "To", m.to);
+        if (!m.replyTo.isEmpty()) header(sb, "Reply-To", m.replyTo);
+        header(sb, "Subject", encodeWord(m.subject));
+        header(sb, "Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(m.createdAt), ZoneId.systemDefault())));
+        // Stable across retries, so the receiving side can drop a message that arrives twice
+        header(sb, "Message-ID", "<" + m.id + "." + m.createdAt + "@outbox.skillbarter>");
+        header(sb, "X-SkillBarter-Kind", m.kind);
+        header(sb, "MIME-Version", "1.0");
+        header(sb, "Content-Type", "text/plain; charset=UTF-8");
+        header(sb, "Content-Transfer-Encoding", "base64");
+        sb.append("\r\n");
+        sb.append(Base64.getMimeEncoder().encodeToString(m.body.getBytes(StandardCharsets.UTF_8))).append("\r\n");
+        return sb.toString();
+    }
+
+    // Header values never contain line breaks, whatever was typed into the form
+    static void header(StringBuilder sb, String name, String value) {
+        sb.append(name).append(": ").append(value.replaceAll("[\\r\\n]+", " ")).append("\r\n");
+    }
+
+    static String encodeWord(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 126) {
+                return "=?UTF-8?B?" + Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8)) + "?=";
+            }
+        }
+        return text;
+    }
+
+    static boolean plausibleAddress(String address) {
+        return address.indexOf('@') > 0 && address.matches("[^\\s<>\\r\\n]+");
+    }
+
+    // ----- Directory -----
+    final class Directory implements OutboxTransport {
+        private final Path dir;
+        private final String from;
+
+        Directory(Path dir, String from) throws IOException {
+            this.dir = Files.createDirectories(dir);
+            this.from = from;
+        }
+
+        @Override
+        public void deliver(List<Outbox.Message> batch, Receipt receipt) throws IOException {
+            for (Outbox.Message m : batch) {
+                if (!plausibleAddress(m.to)) {
+                    receipt.rejected(m, "invalid recipient " + m.to);
+                    continue;
+                }
+                Path file = dir.resolve(String.format("%012d-%s.eml", m.id, m.kind));
+                if (!Files.exists(file)) {
+                    Path tmp = dir.resolve(file.getFileName() + ".tmp");
+                    Files.write(tmp, toMime(m, from).getBytes(StandardCharsets.UTF_8));
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                receipt.delivered(m);
+            }
+        }
+    }
+
+    // ----- SMTP -----
+    final class Smtp implements OutboxTransport {
+        private final String host;
+        private final int port;
+        private final String from;
+        private final int timeoutMillis;
+
+        Smtp(String host, int port, String from, int timeoutMillis) {
+            this.host = host;
+            this.port = port;
+            this.from = from;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public void deliver(List<Outbox.Message> batch, Receipt receipt) throws IOException {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+                expect(in, 220, "greeting");
+                command(out, "EHLO skillbarter.local");
+                expect(in, 250, "EHLO");
+                for (Outbox.Message m : batch) {
+                    if (!plausibleAddress(m.to)) {
+                        receipt.rejected(m, "invalid recipient " + m.to);
+                        continue;
+                    }
+                    String problem = send(in, out, m);
+                    if (problem == null) {
+                        receipt.delivered(m);
+                    } else {
+                        receipt.rejected(m, problem);
+                        command(out, "RSET");
+                        expect(in, 250, "RSET");
+                    }
+                }
+                command(out, "QUIT");
+            }
+        }
+
+        // Returns null when accepted, the server's reason for a permanent (5xx) refusal; throws on anything temporary
+        private String send(BufferedReader in, Writer out, Outbox.Message m) throws IOException {
+            command(out, "MAIL FROM:<" + from + ">");
+            String reply = reply(in);
+            if (code(reply) != 250) return refusal(reply, "MAIL FROM");
+            command(out, "RCPT TO:<" + m.to + ">");
+            reply = reply(in);
+            if (code(reply) != 250 && code(reply) != 251) return refusal(reply, "RCPT TO");
+            command(out, "DATA");
+            reply = reply(in);
+            if (code(reply) != 354) return refusal(reply, "DATA");
+            // Base64 bodies and cleaned headers never start a line with '.', so no dot-stuffing is needed
+            out.write(toMime(m, from));
+            command(out, ".");
+            reply = reply(in);
+            return code(reply) == 250 ? null : refusal(reply, "message");
+        }
+
+        private static String refusal(String reply, String step) throws IOException {
+            if (code(reply) >= 500) return step + " refused: " + reply;
+            throw new IOException(step + " failed: " + reply);
+        }
+
+        private static void command(Writer out, String line) throws IOException {
+            out.write(line);
+            out.write("\r\n");
+            out.flush();
+        }
+
+        private static void expect(BufferedReader in, int code, String step) throws IOException {
+            String reply = reply(in);
+            if (code(reply) != code) throw new IOException("SMTP " + step + ": " + reply);
+        }
+
+        // Multi-line replies continue with "250-..." and end with "250 ..."
+        private static String reply(BufferedReader in) throws IOException {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null) throw new EOFException("SMTP server closed the connection");
+            } while (line.length() >= 4 && line.charAt(3) == '-');
+            return line;
+        }
+
+        private static int code(String reply) {
+            try {
+                return Integer.parseInt(reply.substring(0, 3));
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+    }
+}
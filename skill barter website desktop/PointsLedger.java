@@ -0,0 +1,445 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * PointsLedger.java
+ *
+ * Crash-safe points ledger behind the "Earn & Spend Points" / "Points Engine" cards.
+ *
+ * Balances live in memory, guarded by a fixed set of striped locks (a transfer takes the
+ * two stripes in index order, so it can never deadlock or observe a half-applied move).
+ * Every accepted operation is appended to a memory-mapped write-ahead log while those
+ * stripes are still held, so the log order agrees with the order conflicting operations
+ * were applied in. snapshot() writes all balances at a log sequence number and starts a
+ * new log segment; on open() the newest snapshot is loaded and only the log tail after
+ * it is replayed.
+ *
+ * Mapped writes survive a process crash as soon as append() returns; a background
+ * flusher forces them to disk every {@code syncMillis} to cover power loss as well.
+ */
+class PointsLedger implements Closeable {
+    private static final int STRIPES = 1024;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << 14;
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final int SNAPSHOT_MAGIC = 0x534b4250; // "SKBP"
+
+    private static final byte OPEN = 1;
+    private static final byte EARN = 2;
+    private static final byte SPEND = 3;
+    private static final byte TRANSFER = 4;
+
+    /** Thrown when a spend or transfer would take an account below zero. */
+    static class InsufficientPointsException extends Exception {
+        InsufficientPointsException(String account, long balance, long wanted) {
+            super(account + " has " + balance + " points, needs " + wanted);
+        }
+    }
+
+    private final Path dir;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final long[][] pages = new long[MAX_PAGES][];
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    // Write-ahead log; guarded by walLock
+    private final Object walLock = new Object();
+    private FileChannel walChannel;
+    private MappedByteBuffer wal;
+    private long seq;
+    private final CRC32 crc = new CRC32();
+    private final byte[] record = new byte[256];
+
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private PointsLedger(Path dir, long syncMillis) {
+        this.dir = dir;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+        flusher = new Thread(() -> {
+            while (!closed) {
+                try { Thread.sleep(syncMillis); } catch (InterruptedException e) { return; }
+                sync();
+            }
+        }, "points-ledger-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /** Opens (or creates) the ledger in {@code dir}, recovering from the last snapshot and log tail. */
+    static PointsLedger open(Path dir, long syncMillis) throws IOException {
+        Files.createDirectories(dir);
+        PointsLedger ledger = new PointsLedger(dir, syncMillis);
+        ledger.recover();
+        ledger.flusher.start();
+        return ledger;
+    }
+
+    // ----- Operations -----
+    long balance(String account) {
+        Integer id = ids.get(account);
+        if (id == null) return 0;
+        ReentrantLock l = stripe(id);
+        l.lock();
+        try { return get(id); }
+        finally { l.unlock(); }
+    }
+
+    /** Credits points, e.g. for a completed teaching session. */
+    void earn(String account, long points) {
+        requirePositive(points);
+        int id = account(account);
+        ReentrantLock l = stripe(id);
+        l.lock();
+        try {
+            long updated = Math.addExact(get(id), points);
+            append(EARN, -1, id, points, null);
+            set(id, updated);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /** Opens the account with no points if it has none yet. */
+    void open(String account) {
+        account(account);
+    }
+
+    /** Debits points; fails without side effects if the account is unknown or its balance is too low. */
+    void spend(String account, long points) throws InsufficientPointsException {
+        requirePositive(points);
+        int id = existing(account);
+        ReentrantLock l = stripe(id);
+        l.lock();
+        try {
+            long bal = get(id);
+            if (bal < points) throw new InsufficientPointsException(account, bal, points);
+            append(SPEND, id, -1, points, null);
+            set(id, bal - points);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /** Moves points between two open accounts atomically; an unknown account is an error, not a new one. */
+    void transfer(String from, String to, long points) throws InsufficientPointsException {
+        requirePositive(points);
+        int a = existing(from), b = existing(to);
+        if (a == b) throw new IllegalArgumentException("Cannot transfer to the same account");
+        int sa = a & (STRIPES - 1), sb = b & (STRIPES - 1);
+        ReentrantLock first = stripes[Math.min(sa, sb)], second = stripes[Math.max(sa, sb)];
+        first.lock();
+        if (second != first) second.lock();
+        try {
+            long bal = get(a);
+            if (bal < points) throw new InsufficientPointsException(from, bal, points);
+            long credited = Math.addExact(get(b), points);
+            append(TRANSFER, a, b, points, null);
+            set(a, bal - points);
+            set(b, credited);
+        } finally {
+            if (second != first) second.unlock();
+            first.unlock();
+        }
+    }
+
+    /** Sum of all balances; takes every stripe so the total is consistent. */
+    long totalPoints() {
+        lockAll();
+        try {
+            long sum = 0;
+            for (int id = 0, n = nextId.get(); id < n; id++) sum += get(id);
+            return sum;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // ----- Accounts -----
+    private int account(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        synchronized (names) {
+            id = ids.get(name);
+            if (id != null) return id;
+            int newId = nextId.get();
+            if (newId >= MAX_PAGES * PAGE_SIZE) throw new IllegalStateException("Ledger is full");
+            if (pages[newId >>> PAGE_BITS] == null) pages[newId >>> PAGE_BITS] = new long[PAGE_SIZE];
+            append(OPEN, -1, newId, 0, name);
+            names.add(name);
+            nextId.set(newId + 1);
+            ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    private int existing(String name) {
+        Integer id = ids.get(name);
+        if (id == null) throw new IllegalArgumentException("No points account for " + name);
+        return id;
+    }
+
+    private long get(int id) {
+        return pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)];
+    }
+
+    private void set(int id, long value) {
+        pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)] = value;
+    }
+
+    private ReentrantLock stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock l : stripes) l.lock();
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) stripes[i].unlock();
+    }
+
+    private static void requirePositive(long points) {
+        if (points <= 0) throw new IllegalArgumentException("Points must be positive: " + points);
+    }
+
+    // ----- Write-ahead log -----
+    // Record: [int length][int crc][byte type][long seq][int from][int to][long amount][name bytes]
+    private void append(byte type, int from, int to, long amount, String name) {
+        byte[] nameBytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        synchronized (walLock) {
+            int bodyLen = 1 + 8 + 4 + 4 + 8 + nameBytes.length;
+            byte[] buf = bodyLen <= record.length ? record : new byte[bodyLen];
+            long s = seq + 1;
+            int p = 0;
+            buf[p++] = type;
+            p = putLong(buf, p, s);
+            p = putInt(buf, p, from);
+            p = putInt(buf, p, to);
+            p = putLong(buf, p, amount);
+            System.arraycopy(nameBytes, 0, buf, p, nameBytes.length);
+            crc.reset();
+            crc.update(buf, 0, bodyLen);
+
+            if (wal.remaining() < 8 + bodyLen + 4) rollSegment(s);
+            wal.putInt(bodyLen);
+            wal.putInt((int) crc.getValue());
+            wal.put(buf, 0, bodyLen);
+            seq = s;
+        }
+    }
+
+    // Caller holds walLock; 'first' is the sequence number of the next record
+    private void rollSegment(long first) {
+        try {
+            if (wal != null) {
+                wal.force();
+                walChannel.close();
+            }
+            Path file = dir.resolve(String.format("ledger-%020d.wal", first));
+            walChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            wal = walChannel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            // Resume after any records already in this segment (recovery of a live tail)
+            while (wal.remaining() >= 4) {
+                int len = wal.getInt(wal.position());
+                if (len <= 0 || wal.position() + 8 + len > wal.limit()) break;
+                wal.position(wal.position() + 8 + len);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ledger segment", e);
+        }
+    }
+
+    /** Forces mapped log pages to disk without holding up appenders. */
+    void sync() {
+        MappedByteBuffer current;
+        synchronized (walLock) {
+            current = wal;
+        }
+        if (current != null) current.force();
+    }
+
+    // ----- Snapshots and recovery -----
+    /** Writes every balance at the current log position and drops the log segments it covers. */
+    void snapshot() throws IOException {
+        long at;
+        String[] snapNames;
+        long[] balances;
+        lockAll();
+        try {
+            synchronized (names) {
+                synchronized (walLock) {
+                    at = seq;
+                    snapNames = names.toArray(new String[0]);
+                    balances = new long[snapNames.length];
+                    for (int id = 0; id < balances.length; id++) balances[id] = get(id);
+                    rollSegment(at + 1);
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(at);
+            out.writeInt(snapNames.length);
+            for (int id = 0; id < snapNames.length; id++) {
+                out.writeUTF(snapNames[id]);
+                out.writeLong(balances[id]);
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve("snapshot.bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path seg : segments()) {
+            if (firstSeq(seg) <= at) Files.deleteIfExists(seg);
+        }
+    }
+
+    private void recover() throws IOException {
+        long snapSeq = 0;
+        Path snap = dir.resolve("snapshot.bin");
+        if (Files.exists(snap)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snap), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a ledger snapshot: " + snap);
+                snapSeq = in.readLong();
+                int n = in.readInt();
+                for (int id = 0; id < n; id++) {
+                    restoreAccount(id, in.readUTF());
+                    set(id, in.readLong());
+                }
+            }
+        }
+        seq = snapSeq;
+
+        List<Path> segs = segments();
+        for (Path seg : segs) replay(seg, snapSeq);
+        long next = seq + 1;
+        synchronized (walLock) {
+            if (!segs.isEmpty()) {
+                // Keep appending to the newest segment after its last intact record
+                Path last = segs.get(segs.size() - 1);
+                rollSegment(firstSeq(last));
+            } else {
+                rollSegment(next);
+            }
+        }
+    }
+
+    private void replay(Path seg, long after) throws IOException {
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            byte[] body = new byte[256];
+            CRC32 check = new CRC32();
+            while (buf.remaining() >= 8) {
+                int start = buf.position();
+                int len = buf.getInt();
+                int sum = buf.getInt();
+                if (len == 0) return;
+                if (len < 0 || len > buf.remaining()) {
+                    clear(buf, start, 8);
+                    return;
+                }
+                if (len > body.length) body = new byte[len];
+                buf.get(body, 0, len);
+                check.reset();
+                check.update(body, 0, len);
+                if ((int) check.getValue() != sum) {
+                    // Torn final record from a crash mid-append (appends are serialized, so nothing follows it)
+                    clear(buf, start, 8 + len);
+                    return;
+                }
+                long s = getLong(body, 1);
+                if (s <= after) continue;
+                apply(body[0], getInt(body, 9), getInt(body, 13), getLong(body, 17),
+                        new String(body, 25, len - 25, StandardCharsets.UTF_8));
+                seq = s;
+            }
+        }
+    }
+
+    private static void clear(MappedByteBuffer buf, int start, int length) {
+        for (int i = start, end = Math.min(buf.limit(), start + length); i < end; i++) buf.put(i, (byte) 0);
+        buf.force();
+    }
+
+    private void apply(byte type, int from, int to, long amount, String name) {
+        switch (type) {
+            case OPEN: restoreAccount(to, name); break;
+            case EARN: set(to, get(to) + amount); break;
+            case SPEND: set(from, get(from) - amount); break;
+            case TRANSFER: set(from, get(from) - amount); set(to, get(to) + amount); break;
+            default: throw new IllegalStateException("Unknown ledger record type " + type);
+        }
+    }
+
+    private void restoreAccount(int id, String name) {
+        if (pages[id >>> PAGE_BITS] == null) pages[id >>> PAGE_BITS] = new long[PAGE_SIZE];
+        while (names.size() <= id) names.add(null);
+        names.set(id, name);
+        ids.put(name, id);
+        if (nextId.get() <= id) nextId.set(id + 1);
+    }
+
+    private List<Path> segments() throws IOException {
+        ArrayList<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "ledger-*.wal")) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(Comparator.comparingLong(PointsLedger::firstSeq));
+        return out;
+    }
+
+    private static long firstSeq(Path seg) {
+        String n = seg.getFileName().toString();
+        return Long.parseLong(n.substring("ledger-".length(), n.length() - ".wal".length()));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+        synchronized (walLock) {
+            try {
+                if (wal != null) wal.force();
+                if (walChannel != null) walChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                wal = null;
+            }
+        }
+    }
+
+    // ----- Byte helpers -----
+    private static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 24); b[p + 1] = (byte) (v >>> 16); b[p + 2] = (byte) (v >>> 8); b[p + 3] = (byte) v;
+        return p + 4;
+    }
+
+    private static int putLong(byte[] b, int p, long v) {
+        putInt(b, p, (int) (v >>> 32));
+        return putInt(b, p + 4, (int) v);
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return (b[p] & 0xff) << 24 | (b[p + 1] & 0xff) << 16 | (b[p + 2] & 0xff) << 8 | (b[p + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] b, int p) {
+        return (long) getInt(b, p) << 32 | (getInt(b, p + 4) & 0xffffffffL);
+    }
+}
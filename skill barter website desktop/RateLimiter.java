@@ -0,0 +1,180 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RateLimiter.java
+ *
+ * One limit (say, "10 sign-in attempts per 5 minutes") applied separately to every key it
+ * sees: an account, a client address, or a single key for everyone. The memory used is fixed,
+ * whether ten keys show up or ten million.
+ *
+ * A limit allows a burst of N and then one more attempt every period/N. This is a token bucket
+ * kept the GCRA way (generic cell rate algorithm), as a single timestamp per bucket. Buckets
+ * live in a count-min style sketch: a key maps to one cell in each of DEPTH rows, its
+ * timestamp is the smallest of those cells, and an accepted attempt raises all of them.
+ * Keys that share cells can only look busier than they are, never quieter, so a collision
+ * may reject early but never lets an abuser through. Cells need no cleanup because an old
+ * timestamp simply means a full bucket.
+ *
+ * A check is lock-free and allocates nothing: a few reads and a CAS per row. Concurrent
+ * attempts for the same key can pass on the same reading, so a key may briefly get one extra
+ * attempt per racing caller. That is fine for abuse limits; don't use this for billing.
+ *
+ * Actions are guarded by a {@link Policy}, which combines the per-account, per-client and
+ * overall limits.
+ */
+final class RateLimiter {
+    static final int DEPTH = 4;
+    private static final Pattern SPEC = Pattern.compile("(\\d+)\\s*/\\s*(\\d*)\\s*(ms|s|m|h|d)");
+
+    /** Thrown when a limit is exceeded; the message can be shown to the user as is. */
+    static final class LimitExceeded extends Exception {
+        final String limit;
+        final long retryAfterNanos;
+
+        LimitExceeded(String limit, String what, long retryAfterNanos) {
+            super("Too many " + what + ". Please try again in " + describe(retryAfterNanos) + ".");
+            this.limit = limit;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        long retryAfterSeconds() {
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+        }
+
+        private static String describe(long nanos) {
+            long s = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + 999_999_999L));
+            if (s < 90) return s == 1 ? "a second" : s + " seconds";
+            long m = (s + 59) / 60;
+            if (m < 90) return m + " minutes";
+            return (m + 59) / 60 + " hours";
+        }
+    }
+
+    private final String name;
+    private final long interval;  // ns between attempts once the burst is used up
+    private final long tolerance; // how far ahead of now a bucket's timestamp may run
+    private final int width;
+    private final AtomicLongArray cells;
+    private final long origin = System.nanoTime();
+    private final LongAdder checked, rejected;
+
+    /**
+     * Allows {@code burst} attempts per {@code period} per key. The sketch takes 32 bytes per
+     * unit of {@code width} (rounded up to a power of two); width 1 makes it a single limit
+     * shared by all keys.
+     */
+    RateLimiter(String name, int burst, long period, TimeUnit unit, int width) {
+        if (burst < 1 || period <= 0) throw new IllegalArgumentException("Bad rate limit for " + name);
+        this.name = name;
+        this.interval = Math.max(1, unit.toNanos(period) / burst);
+        this.tolerance = interval * (burst - 1);
+        this.width = width <= 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.cells = new AtomicLongArray(DEPTH * this.width);
+        this.checked = Metrics.counter("ratelimit." + name + ".checked");
+        this.rejected = Metrics.counter("ratelimit." + name + ".rejected");
+    }
+
+    /**
+     * The limit from -Dskillbarter.ratelimit.&lt;name&gt;, else {@code defaultSpec}. A spec
+     * is "burst/period", e.g. "10/5m", "30/1m", "5/h" (units ms, s, m, h, d).
+     */
+    static RateLimiter configured(String name, String defaultSpec, int width) {
+        String spec = System.getProperty("skillbarter.ratelimit." + name, defaultSpec);
+        Matcher m = SPEC.matcher(spec.trim());
+        if (!m.matches()) {
+            System.err.println("Ignoring rate limit " + name + "=" + spec + "; expected e.g. 10/5m");
+            m = SPEC.matcher(defaultSpec);
+            if (!m.matches()) throw new IllegalArgumentException("Bad default rate limit " + defaultSpec);
+        }
+        long amount = m.group(2).isEmpty() ? 1 : Long.parseLong(m.group(2));
+        TimeUnit unit;
+        switch (m.group(3)) {
+            case "ms": unit = TimeUnit.MILLISECONDS; break;
+            case "s": unit = TimeUnit.SECONDS; break;
+            case "m": unit = TimeUnit.MINUTES; break;
+            case "h": unit = TimeUnit.HOURS; break;
+            default: unit = TimeUnit.DAYS;
+        }
+        return new RateLimiter(name, Integer.parseInt(m.group(1)), amount, unit, width);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /** Takes an attempt for the key: 0 if allowed, otherwise nanoseconds until it would be. */
+    long acquire(String key) {
+        long hash = HyperLogLog.hash(key);
+        long wait = waitNanos(hash);
+        if (wait > 0) rejected.increment();
+        else take(hash);
+        return wait;
+    }
+
+    // 0 if the key has an attempt left, otherwise how long until it has one; changes nothing
+    private long waitNanos(long keyHash) {
+        checked.increment();
+        long now = System.nanoTime() - origin;
+        // Double hashing: row i uses h1 + i*h2, which is as good as DEPTH independent hashes here
+        int h1 = (int) keyHash, h2 = (int) (keyHash >>> 32) | 1, mask = width - 1;
+        long tat = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) tat = Math.min(tat, cells.get(i * width + ((h1 + i * h2) & mask)));
+        return Math.max(0, tat - now - tolerance);
+    }
+
+    private void take(long keyHash) {
+        long now = System.nanoTime() - origin;
+        int h1 = (int) keyHash, h2 = (int) (keyHash >>> 32) | 1, mask = width - 1;
+        long tat = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) tat = Math.min(tat, cells.get(i * width + ((h1 + i * h2) & mask)));
+        long next = Math.max(tat, now) + interval;
+        // Conservative update: only raise the cells that are behind, never past the key's own timestamp
+        for (int i = 0; i < DEPTH; i++) {
+            int cell = i * width + ((h1 + i * h2) & mask);
+            long c;
+            while ((c = cells.get(cell)) < next && !cells.compareAndSet(cell, c, next)) { }
+        }
+    }
+
+    // ----- Policies -----
+    /**
+     * The limits on one action, per account, per client and overall (any may be null). An
+     * attempt takes from all of them or, when any is used up, from none. So rejected attempts
+     * never write to the sketches, and the number of writes is capped by the overall limit
+     * however many made-up accounts or addresses an abuser cycles through.
+     */
+    static final class Policy {
+        private final String what;
+        private final RateLimiter perAccount, perClient, overall;
+
+        /** {@code what} names the attempts in the rejection message, e.g. "sign-in attempts". */
+        Policy(String what, RateLimiter perAccount, RateLimiter perClient, RateLimiter overall) {
+            this.what = what;
+            this.perAccount = perAccount;
+            this.perClient = perClient;
+            this.overall = overall;
+        }
+
+        /** Takes an attempt; a null account or client skips that limit. */
+        void check(String account, String client) throws LimitExceeded {
+            boolean byAccount = perAccount != null && account != null, byClient = perClient != null && client != null;
+            long accountHash = byAccount ? HyperLogLog.hash(account) : 0, clientHash = byClient ? HyperLogLog.hash(client) : 0;
+            long accountWait = byAccount ? perAccount.waitNanos(accountHash) : 0;
+            long clientWait = byClient ? perClient.waitNanos(clientHash) : 0;
+            long overallWait = overall != null ? overall.waitNanos(0) : 0;
+            if (accountWait > 0 || clientWait > 0 || overallWait > 0) {
+                RateLimiter by = accountWait >= clientWait && accountWait >= overallWait ? perAccount
+                        : clientWait >= overallWait ? perClient : overall;
+                by.rejected.increment();
+                throw new LimitExceeded(by.name, what, Math.max(accountWait, Math.max(clientWait, overallWait)));
+            }
+            if (byAccount) perAccount.take(accountHash);
+            if (byClient) perClient.take(clientHash);
+            if (overall != null) overall.take(0);
+        }
+    }
+}
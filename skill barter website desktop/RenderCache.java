@@ -0,0 +1,171 @@
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RenderCache.java
+ *
+ * Pre-rendered backgrounds for custom-painted components (NeonButton hover, top nav gradient).
+ *
+ * A component keeps a {@link Slot}; while its size, scale, colors and the cache generation are
+ * unchanged, painting is a single drawImage with no allocation. When any of them change the
+ * slot looks up (or renders) an image in a shared LRU keyed by all of them, so buttons of the
+ * same size share one image. Images are compatible with the screen's GraphicsConfiguration so
+ * Java2D can keep them in video memory. {@link #invalidate()} drops everything, e.g. on a theme
+ * change.
+ *
+ * Paint timings go to "paint.*" histograms and, if set, to a {@link PaintObserver}.
+ */
+final class RenderCache {
+    private RenderCache() {}
+
+    private static final int MAX_ENTRIES = 256;
+    private static final long MAX_PIXELS = 8L << 20; // 32 MB of ARGB
+
+    static final LongAdder HITS = Metrics.counter("render.cache.hits");
+    static final LongAdder MISSES = Metrics.counter("render.cache.misses");
+
+    /** Renders a background of w x h logical pixels (the graphics is already scaled). */
+    interface Painter {
+        void paint(Graphics2D g, int w, int h, Color a, Color b);
+    }
+
+    /** Optional hook, called on the EDT after each instrumented paint. */
+    interface PaintObserver {
+        void painted(String surface, long nanos);
+    }
+
+    private static volatile PaintObserver observer;
+    private static volatile int generation;
+    private static long pixels;
+    private static final LinkedHashMap<Key, BufferedImage> IMAGES = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static final class Key {
+        final String kind;
+        final int w, h, scaleMilli, a, b;
+
+        Key(String kind, int w, int h, int scaleMilli, int a, int b) {
+            this.kind = kind;
+            this.w = w;
+            this.h = h;
+            this.scaleMilli = scaleMilli;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return w == k.w && h == k.h && scaleMilli == k.scaleMilli && a == k.a && b == k.b && kind.equals(k.kind);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, w, h, scaleMilli, a, b);
+        }
+    }
+
+    /** Per-component handle to its current image. Use from the EDT only. */
+    static final class Slot {
+        private final String kind;
+        private final Painter painter;
+        private BufferedImage image;
+        private GraphicsConfiguration config;
+        private int w, h, scaleMilli = 1000, a, b, gen = -1;
+
+        Slot(String kind, Painter painter) {
+            this.kind = kind;
+            this.painter = painter;
+        }
+
+        void paint(Component c, Graphics g, int width, int height, Color colorA, Color colorB) {
+            if (width <= 0 || height <= 0) return;
+            // The screen's scale only changes with the configuration (e.g. moving to another monitor)
+            GraphicsConfiguration gc = c.getGraphicsConfiguration();
+            int scale = scaleMilli;
+            if (gc != config) {
+                config = gc;
+                scale = gc == null ? 1000 : (int) Math.round(Math.max(1, gc.getDefaultTransform().getScaleX()) * 1000);
+            }
+            int ca = colorA.getRGB(), cb = colorB.getRGB();
+            if (image == null || gen != generation || width != w || height != h || scale != scaleMilli || ca != a || cb != b) {
+                image = lookup(new Key(kind, width, height, scale, ca, cb), c, painter, colorA, colorB);
+                w = width;
+                h = height;
+                scaleMilli = scale;
+                a = ca;
+                b = cb;
+                gen = generation;
+            } else {
+                HITS.increment();
+            }
+            g.drawImage(image, 0, 0, width, height, null);
+        }
+    }
+
+    /** Drops all cached images; slots re-render on their next paint. */
+    static void invalidate() {
+        synchronized (IMAGES) {
+            IMAGES.clear();
+            pixels = 0;
+            generation++;
+        }
+    }
+
+    static void setObserver(PaintObserver o) {
+        observer = o;
+    }
+
+    /** Records a paint that started at t0 (System.nanoTime()) into the given histogram. */
+    static void recordPaint(Metrics.Histogram histogram, String surface, long t0) {
+        long nanos = System.nanoTime() - t0;
+        histogram.record(nanos);
+        PaintObserver o = observer;
+        if (o != null) o.painted(surface, nanos);
+    }
+
+    private static BufferedImage lookup(Key key, Component c, Painter painter, Color colorA, Color colorB) {
+        synchronized (IMAGES) {
+            BufferedImage img = IMAGES.get(key);
+            if (img != null) {
+                HITS.increment();
+                return img;
+            }
+        }
+        MISSES.increment();
+        double scale = key.scaleMilli / 1000.0;
+        int pw = (int) Math.ceil(key.w * scale), ph = (int) Math.ceil(key.h * scale);
+        GraphicsConfiguration gc = c.getGraphicsConfiguration();
+        BufferedImage img = gc != null
+                ? gc.createCompatibleImage(pw, ph, Transparency.TRANSLUCENT)
+                : new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        try {
+            g2.scale(scale, scale);
+            painter.paint(g2, key.w, key.h, colorA, colorB);
+        } finally {
+            g2.dispose();
+        }
+        synchronized (IMAGES) {
+            if (IMAGES.put(key, img) == null) pixels += (long) pw * ph;
+            Iterator<Map.Entry<Key, BufferedImage>> it = IMAGES.entrySet().iterator();
+            while ((IMAGES.size() > MAX_ENTRIES || pixels > MAX_PIXELS) && it.hasNext()) {
+                BufferedImage old = it.next().getValue();
+                if (old == img) break;
+                pixels -= (long) old.getWidth() * old.getHeight();
+                it.remove();
+            }
+        }
+        return img;
+    }
+}
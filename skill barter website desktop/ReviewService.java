@@ -0,0 +1,365 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * ReviewService.java
+ *
+ * Ratings and reviews behind the "Feedback" card, with running aggregates for ranking.
+ *
+ * Every review is appended to a CRC-checked log and folded into immutable {@link Stats}
+ * snapshots, one per member, one per (member, skill) and one overall, so reading a member's
+ * count, mean, Bayesian score or percentile is a map lookup. Ratings are whole stars, so
+ * the five-bucket histogram in each snapshot is an exact percentile sketch. Reviewers and
+ * members are accounts, keyed by canonical email; a reviewer has one rating per member and
+ * skill, and rating again replaces the old one in the aggregates. Listings and matches only
+ * know display names, so they read a second aggregate kept per name ({@link #listed}).
+ *
+ * On open() the aggregates are rebuilt by replaying the log; a torn final record from a
+ * crash is cut off.
+ */
+class ReviewService implements Closeable {
+    static final int MAX_TEXT = 2000;
+    private static final int RECENT = 5;
+    /** How many reviews' worth of weight the overall mean gets in a member's Bayesian score. */
+    static final double PRIOR_WEIGHT = 5;
+
+    private static final Metrics.Histogram SUBMIT_TIME = Metrics.histogram("reviews.submit");
+
+    static final class Review {
+        final long timestamp;
+        final String reviewer;      // email
+        final String reviewerName;
+        final String subject;       // email
+        final String subjectName;
+        final String skill;
+        final int stars;
+        final String text;
+
+        Review(long timestamp, String reviewer, String reviewerName, String subject, String subjectName,
+               String skill, int stars, String text) {
+            this.timestamp = timestamp;
+            this.reviewer = reviewer;
+            this.reviewerName = reviewerName;
+            this.subject = subject;
+            this.subjectName = subjectName;
+            this.skill = skill;
+            this.stars = stars;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return stars + "★ from " + reviewerName + (skill.isEmpty() ? "" : " for " + skill) + (text.isEmpty() ? "" : ": " + text);
+        }
+    }
+
+    /** Immutable aggregate of 1–5 star ratings. */
+    static final class Stats {
+        static final Stats EMPTY = new Stats(new long[5]);
+
+        private final long[] histogram; // histogram[i] = ratings of i + 1 stars
+        final long count;
+        final long sum;
+
+        private Stats(long[] histogram) {
+            this.histogram = histogram;
+            long c = 0, s = 0;
+            for (int i = 0; i < 5; i++) {
+                c += histogram[i];
+                s += histogram[i] * (i + 1);
+            }
+            this.count = c;
+            this.sum = s;
+        }
+
+        /** A copy with oldStars removed (0 for none) and newStars added. */
+        Stats replace(int oldStars, int newStars) {
+            long[] h = histogram.clone();
+            if (oldStars > 0) h[oldStars - 1]--;
+            h[newStars - 1]++;
+            return new Stats(h);
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        long count(int stars) {
+            return histogram[stars - 1];
+        }
+
+        /** Smallest star value with at least fraction q of ratings at or below it; 0 if unrated. */
+        int percentile(double q) {
+            long target = (long) Math.ceil(q * count), seen = 0;
+            for (int i = 0; i < 5; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0) return i + 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return count == 0 ? "no reviews yet" : String.format("%.1f★ from %d review%s", mean(), count, count == 1 ? "" : "s");
+        }
+    }
+
+    private final Path file;
+    private final FileChannel log;
+    private final Object writeLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private final AtomicReference<Stats> overall = new AtomicReference<>(Stats.EMPTY);
+    private final ConcurrentHashMap<String, AtomicReference<Stats>> byMember = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicReference<Stats>> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicReference<Stats>> bySkill = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Byte> ratings = new ConcurrentHashMap<>(); // reviewer|member|skill -> stars
+    private final ConcurrentHashMap<String, Deque<Review>> recent = new ConcurrentHashMap<>(); // by display name
+
+    private ReviewService(Path file, FileChannel log) {
+        this.file = file;
+        this.log = log;
+    }
+
+    /** Opens (or creates) the review log in {@code dir} and rebuilds the aggregates from it. */
+    static ReviewService open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve("reviews.log");
+        ReviewService service = new ReviewService(file,
+                FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        service.recover();
+        return service;
+    }
+
+    /**
+     * Records a review by one account of another and returns it. The caller vouches that both
+     * accounts exist (see {@link SkillBarterBackend#submitReview}). Throws
+     * IllegalArgumentException for invalid input (stars outside 1–5, reviewing yourself,
+     * over-long text).
+     */
+    Review submit(SkillBarterRepository.User reviewer, SkillBarterRepository.User member, String skill, int stars, String text) throws IOException {
+        String from = key(reviewer.email), to = key(member.email), sk = skill == null ? "" : skill.trim(), body = text == null ? "" : text.trim();
+        if (from.isEmpty() || to.isEmpty()) throw new IllegalArgumentException("Reviewer and member are required");
+        if (from.equals(to)) throw new IllegalArgumentException("You cannot review yourself");
+        if (stars < 1 || stars > 5) throw new IllegalArgumentException("Stars must be 1 to 5: " + stars);
+        if (body.length() > MAX_TEXT) throw new IllegalArgumentException("Reviews are limited to " + MAX_TEXT + " characters");
+
+        long t0 = System.nanoTime();
+        Review r = new Review(System.currentTimeMillis(), from, reviewer.name, to, member.name, sk, stars, body);
+        byte[] record = encode(r);
+        synchronized (writeLock) {
+            append(record, r);
+        }
+        SUBMIT_TIME.record(System.nanoTime() - t0);
+        return r;
+    }
+
+    /**
+     * Stores a review handed over by another node (see {@link ClusterNode}) as it was written
+     * there. Returns false, storing nothing, when this reviewer's rating of the member and
+     * skill is already here, so a transfer that is retried adds nothing twice.
+     */
+    boolean accept(Review r) throws IOException {
+        if (r.stars < 1 || r.stars > 5) throw new IllegalArgumentException("Stars must be 1 to 5: " + r.stars);
+        byte[] record = encode(r);
+        synchronized (writeLock) {
+            if (ratings.containsKey(ratingKey(r))) return false;
+            append(record, r);
+        }
+        return true;
+    }
+
+    /**
+     * The current review by each reviewer of each of these accounts (per skill), oldest first,
+     * read back from the log; for handing members over to another node.
+     */
+    Map<String, List<Review>> about(Collection<String> emails) throws IOException {
+        Set<String> wanted = new HashSet<>();
+        for (String e : emails) wanted.add(key(e));
+        long end;
+        synchronized (writeLock) {
+            end = log.position();
+        }
+        LinkedHashMap<String, Review> latest = new LinkedHashMap<>();
+        read(end, r -> {
+            if (!wanted.contains(key(r.subject))) return;
+            String k = ratingKey(r);
+            latest.remove(k); // a replaced rating moves to its new place in log order
+            latest.put(k, r);
+        });
+        Map<String, List<Review>> out = new HashMap<>();
+        for (Review r : latest.values()) out.computeIfAbsent(key(r.subject), k -> new ArrayList<>()).add(r);
+        return out;
+    }
+
+    // Caller holds writeLock
+    private void append(byte[] record, Review r) throws IOException {
+        crc.reset();
+        crc.update(record, 0, record.length);
+        ByteBuffer buf = ByteBuffer.allocate(8 + record.length);
+        buf.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        while (buf.hasRemaining()) log.write(buf);
+        log.force(false);
+        // Applied under the write lock so replacements see ratings in log order
+        apply(r);
+    }
+
+    // ----- Lookups (all O(1)) -----
+    Stats overall() {
+        return overall.get();
+    }
+
+    /** Ratings of the account with this email. */
+    Stats member(String email) {
+        return lookup(byMember, email);
+    }
+
+    /** Ratings of every member listed under this display name, for listings and matches. */
+    Stats listed(String name) {
+        return lookup(byName, name);
+    }
+
+    Stats skill(String email, String skill) {
+        AtomicReference<Stats> s = bySkill.get(key(email) + '|' + key(skill));
+        return s == null ? Stats.EMPTY : s.get();
+    }
+
+    /** Mean shrunk toward the overall mean, so a single 5★ does not outrank fifty 4.8★ reviews. */
+    double score(String email) {
+        return bayesian(member(email));
+    }
+
+    double skillScore(String email, String skill) {
+        return bayesian(skill(email, skill));
+    }
+
+    /**
+     * Multiplier for search and match ranking of a listed name, between 0.8 (1★) and 1.2 (5★);
+     * about neutral for members nobody has reviewed.
+     */
+    double rankBoost(String name) {
+        return 1 + 0.1 * (bayesian(listed(name)) - 3);
+    }
+
+    /** The newest reviews of members listed under this display name. */
+    List<Review> recent(String name) {
+        Deque<Review> d = recent.get(key(name));
+        if (d == null) return Collections.emptyList();
+        synchronized (d) {
+            return new ArrayList<>(d);
+        }
+    }
+
+    private double bayesian(Stats s) {
+        Stats all = overall.get();
+        double prior = all.count == 0 ? 3.0 : all.mean();
+        return (PRIOR_WEIGHT * prior + s.sum) / (PRIOR_WEIGHT + s.count);
+    }
+
+    private static Stats lookup(ConcurrentHashMap<String, AtomicReference<Stats>> map, String k) {
+        if (map.isEmpty()) return Stats.EMPTY; // skips the key normalisation while nobody has reviews
+        AtomicReference<Stats> s = map.get(key(k));
+        return s == null ? Stats.EMPTY : s.get();
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String ratingKey(Review r) {
+        return key(r.reviewer) + '|' + key(r.subject) + '|' + key(r.skill);
+    }
+
+    // Caller holds writeLock (or is recover(), before the service is shared)
+    private void apply(Review r) {
+        String member = key(r.subject);
+        Byte old = ratings.put(ratingKey(r), (byte) r.stars);
+        int previous = old == null ? 0 : old;
+        overall.updateAndGet(s -> s.replace(previous, r.stars));
+        byMember.computeIfAbsent(member, k -> new AtomicReference<>(Stats.EMPTY)).updateAndGet(s -> s.replace(previous, r.stars));
+        String name = key(r.subjectName);
+        byName.computeIfAbsent(name, k -> new AtomicReference<>(Stats.EMPTY)).updateAndGet(s -> s.replace(previous, r.stars));
+        if (!r.skill.isEmpty()) {
+            bySkill.computeIfAbsent(member + '|' + key(r.skill), k -> new AtomicReference<>(Stats.EMPTY))
+                    .updateAndGet(s -> s.replace(previous, r.stars));
+        }
+        Deque<Review> d = recent.computeIfAbsent(name, k -> new ArrayDeque<>());
+        synchronized (d) {
+            if (old != null) d.removeIf(x -> key(x.reviewer).equals(key(r.reviewer)) && key(x.subject).equals(member) && key(x.skill).equals(key(r.skill)));
+            d.addFirst(r);
+            if (d.size() > RECENT) d.removeLast();
+        }
+    }
+
+    // ----- Log -----
+    // Record: [int length][int crc][long timestamp][byte stars][UTF reviewer][UTF member][UTF skill][UTF text]
+    //         [UTF reviewer name][UTF member name]
+    private static byte[] encode(Review r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + r.text.length() * 3);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(r.timestamp);
+            out.writeByte(r.stars);
+            out.writeUTF(r.reviewer);
+            out.writeUTF(r.subject);
+            out.writeUTF(r.skill);
+            out.writeUTF(r.text);
+            out.writeUTF(r.reviewerName);
+            out.writeUTF(r.subjectName);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Review decode(byte[] record, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 0, length));
+        long ts = in.readLong();
+        int stars = in.readByte();
+        String reviewer = in.readUTF(), subject = in.readUTF(), skill = in.readUTF(), text = in.readUTF();
+        String reviewerName = in.readUTF(), subjectName = in.readUTF();
+        return new Review(ts, reviewer, reviewerName, subject, subjectName, skill, stars, text);
+    }
+
+    private void recover() throws IOException {
+        long size = log.size();
+        long pos = read(size, this::apply);
+        // Drop a torn final record (crash mid-append) so new reviews follow the last good one
+        if (pos < size) log.truncate(pos);
+        log.position(pos);
+    }
+
+    // Hands each intact review in the first size bytes of the log to sink; returns where they end
+    private long read(long size, Consumer<Review> sink) throws IOException {
+        long pos = 0;
+        byte[] record = new byte[256];
+        CRC32 check = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (pos + 8 <= size) {
+                int len = in.readInt();
+                int sum = in.readInt();
+                if (len <= 0 || pos + 8 + len > size) break;
+                if (len > record.length) record = new byte[len];
+                in.readFully(record, 0, len);
+                check.reset();
+                check.update(record, 0, len);
+                if ((int) check.getValue() != sum) break;
+                Review r = decode(record, len);
+                if (r.stars < 1 || r.stars > 5) break;
+                sink.accept(r);
+                pos += 8 + len;
+            }
+        }
+        return pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            log.close();
+        }
+    }
+}
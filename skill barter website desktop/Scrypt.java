@@ -0,0 +1,127 @@
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Scrypt.java
+ *
+ * Pure-Java scrypt (RFC 7914), the memory-hard key derivation used for stored passwords.
+ *
+ * Cost is N (memory/CPU, a power of two), r (block size) and p (parallelism); one derivation
+ * touches 128 * r * N bytes. The N-sized scratch array is kept per thread, so a fixed pool of
+ * hashing threads holds a fixed amount of memory instead of allocating it on every login.
+ */
+final class Scrypt {
+    private Scrypt() {}
+
+    private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<>();
+
+    static byte[] derive(byte[] password, byte[] salt, int n, int r, int p, int length) throws GeneralSecurityException {
+        if (n < 2 || (n & (n - 1)) != 0) throw new IllegalArgumentException("N must be a power of two > 1: " + n);
+        if (r < 1 || p < 1 || (long) r * p >= 1 << 30) throw new IllegalArgumentException("Bad r/p: " + r + "/" + p);
+        if ((long) 128 * r * n > Integer.MAX_VALUE) throw new IllegalArgumentException("N * r too large");
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        // HMAC zero-pads its key, so an empty key is the same as a single zero byte (which JCE accepts)
+        mac.init(new SecretKeySpec(password.length == 0 ? new byte[1] : password, "HmacSHA256"));
+
+        byte[] b = pbkdf2(mac, salt, p * 128 * r);
+        int words = 32 * r;
+        int[] v = scratch(words * n);
+        int[] xy = new int[2 * words];
+        int[] x = new int[16];
+        for (int i = 0; i < p; i++) smix(b, i * 128 * r, r, n, v, xy, x);
+        return pbkdf2(mac, b, length);
+    }
+
+    private static int[] scratch(int size) {
+        int[] v = SCRATCH.get();
+        if (v == null || v.length != size) {
+            v = new int[size];
+            SCRATCH.set(v);
+        }
+        return v;
+    }
+
+    // PBKDF2-HMAC-SHA256 with a single iteration, which is all scrypt needs
+    private static byte[] pbkdf2(Mac mac, byte[] salt, int length) {
+        byte[] out = new byte[length];
+        byte[] counter = new byte[4];
+        for (int block = 1, off = 0; off < length; block++, off += 32) {
+            counter[0] = (byte) (block >>> 24);
+            counter[1] = (byte) (block >>> 16);
+            counter[2] = (byte) (block >>> 8);
+            counter[3] = (byte) block;
+            mac.update(salt);
+            byte[] u = mac.doFinal(counter);
+            System.arraycopy(u, 0, out, off, Math.min(32, length - off));
+        }
+        return out;
+    }
+
+    // ----- ROMix -----
+    private static void smix(byte[] b, int offset, int r, int n, int[] v, int[] xy, int[] x) {
+        int words = 32 * r;
+        for (int k = 0; k < words; k++) {
+            int i = offset + 4 * k;
+            xy[k] = (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(xy, 0, v, i * words, words);
+            blockMix(xy, words, r, x);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = xy[(2 * r - 1) * 16] & (n - 1);
+            int base = j * words;
+            for (int k = 0; k < words; k++) xy[k] ^= v[base + k];
+            blockMix(xy, words, r, x);
+        }
+        for (int k = 0; k < words; k++) {
+            int w = xy[k], i = offset + 4 * k;
+            b[i] = (byte) w;
+            b[i + 1] = (byte) (w >>> 8);
+            b[i + 2] = (byte) (w >>> 16);
+            b[i + 3] = (byte) (w >>> 24);
+        }
+    }
+
+    // Mixes the block in xy[0, words) using xy[words, 2 * words) as Y
+    private static void blockMix(int[] xy, int words, int r, int[] x) {
+        System.arraycopy(xy, (2 * r - 1) * 16, x, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) x[k] ^= xy[i * 16 + k];
+            salsa8(x);
+            System.arraycopy(x, 0, xy, words + i * 16, 16);
+        }
+        // Even Y blocks go to the first half, odd ones to the second
+        for (int i = 0; i < r; i++) {
+            System.arraycopy(xy, words + (2 * i) * 16, xy, i * 16, 16);
+            System.arraycopy(xy, words + (2 * i + 1) * 16, xy, (r + i) * 16, 16);
+        }
+    }
+
+    private static void salsa8(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);   x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);  x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);    x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);  x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);  x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);  x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);  x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);  x15 ^= Integer.rotateLeft(x11 + x7, 18);
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);    x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);   x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);    x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);   x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);  x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);  x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7); x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13); x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+        b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3; b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7;
+        b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11; b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+    }
+}
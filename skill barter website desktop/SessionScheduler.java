@@ -0,0 +1,251 @@
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SessionScheduler.java
+ *
+ * Booking engine behind the "Smart Scheduling" and "Scheduler" cards.
+ *
+ * Each member's calendar keeps declared availability and booked sessions as ordered maps of
+ * non-overlapping [start, end) intervals in UTC epoch millis, so a conflict check is two
+ * O(log n) neighbour lookups. A member who never declared availability is treated as free
+ * except for their bookings. Mutual free slots are found by sweeping both members' free
+ * intervals in one pass. Times are entered and shown in each member's own time zone.
+ *
+ * Reminders go through a shared HierarchicalTimingWheel rather than one timer per booking.
+ */
+class SessionScheduler {
+    static final long[] REMINDER_OFFSETS = {Duration.ofHours(24).toMillis(), Duration.ofMinutes(15).toMillis()};
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("EEE d MMM yyyy, HH:mm z");
+
+    /** Receives reminders for upcoming sessions. */
+    interface ReminderListener {
+        void remind(String member, Booking booking, String message);
+    }
+
+    static final class Booking {
+        final long id;
+        final String teacher;
+        final String learner;
+        final String topic;
+        final long start;
+        final long end;
+        private final List<HierarchicalTimingWheel.Timeout> reminders = new ArrayList<>();
+
+        Booking(long id, String teacher, String learner, String topic, long start, long end) {
+            this.id = id;
+            this.teacher = teacher;
+            this.learner = learner;
+            this.topic = topic;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** Thrown when a requested session overlaps a booking or falls outside availability. */
+    static class ConflictException extends Exception {
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Calendar {
+        final String member;
+        volatile ZoneId zone;
+        final TreeMap<Long, Long> available = new TreeMap<>();
+        final TreeMap<Long, Booking> booked = new TreeMap<>();
+
+        Calendar(String member, ZoneId zone) {
+            this.member = member;
+            this.zone = zone;
+        }
+
+        boolean isFree(long start, long end) {
+            Map.Entry<Long, Booking> before = booked.floorEntry(start);
+            if (before != null && before.getValue().end > start) return false;
+            Map.Entry<Long, Booking> after = booked.ceilingEntry(start);
+            return after == null || after.getKey() >= end;
+        }
+
+        boolean isAvailable(long start, long end) {
+            if (available.isEmpty()) return true;
+            Map.Entry<Long, Long> w = available.floorEntry(start);
+            return w != null && w.getValue() >= end;
+        }
+
+        /** Adds a window, merging it with any windows it touches. */
+        void addAvailability(long start, long end) {
+            Map.Entry<Long, Long> prev = available.floorEntry(start);
+            if (prev != null && prev.getValue() >= start) {
+                start = prev.getKey();
+                end = Math.max(end, prev.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = available.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                available.remove(next.getKey());
+            }
+            available.put(start, end);
+        }
+
+        /** Free intervals in [from, to): availability (or everything) minus bookings. */
+        List<long[]> free(long from, long to) {
+            ArrayList<long[]> windows = new ArrayList<>();
+            if (available.isEmpty()) {
+                windows.add(new long[] {from, to});
+            } else {
+                Map.Entry<Long, Long> first = available.floorEntry(from);
+                Long key = first != null && first.getValue() > from ? first.getKey() : available.ceilingKey(from);
+                for (Map.Entry<Long, Long> w : key == null ? Collections.<Map.Entry<Long, Long>>emptySet()
+                        : available.tailMap(key, true).entrySet()) {
+                    if (w.getKey() >= to) break;
+                    windows.add(new long[] {Math.max(from, w.getKey()), Math.min(to, w.getValue())});
+                }
+            }
+            ArrayList<long[]> out = new ArrayList<>();
+            for (long[] w : windows) {
+                long cursor = w[0];
+                Map.Entry<Long, Booking> b = booked.floorEntry(cursor);
+                if (b != null && b.getValue().end > cursor) cursor = b.getValue().end;
+                for (Booking bk : booked.subMap(cursor, true, w[1], false).values()) {
+                    if (bk.start > cursor) out.add(new long[] {cursor, bk.start});
+                    cursor = Math.max(cursor, bk.end);
+                }
+                if (cursor < w[1]) out.add(new long[] {cursor, w[1]});
+            }
+            return out;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Calendar> calendars = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Booking> bookings = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<ReminderListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final HierarchicalTimingWheel wheel;
+
+    SessionScheduler(HierarchicalTimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    void addReminderListener(ReminderListener l) {
+        listeners.add(l);
+    }
+
+    void setZone(String member, ZoneId zone) {
+        calendar(member).zone = zone;
+    }
+
+    ZoneId zone(String member) {
+        return calendar(member).zone;
+    }
+
+    /** Declares a window (in the member's own zone) when they can take sessions. */
+    void addAvailability(String member, LocalDateTime from, LocalDateTime to) {
+        Calendar c = calendar(member);
+        long start = from.atZone(c.zone).toInstant().toEpochMilli();
+        long end = to.atZone(c.zone).toInstant().toEpochMilli();
+        if (end <= start) throw new IllegalArgumentException("Availability must end after it starts");
+        synchronized (c) {
+            c.addAvailability(start, end);
+        }
+    }
+
+    /** Books a session; both calendars are locked in a fixed order so concurrent bookings cannot overlap. */
+    Booking book(String teacher, String learner, String topic, Instant start, Duration length) throws ConflictException {
+        if (teacher.equals(learner)) throw new ConflictException("Cannot book a session with yourself");
+        long s = start.toEpochMilli(), e = s + length.toMillis();
+        if (e <= s) throw new ConflictException("Session length must be positive");
+        Calendar t = calendar(teacher), l = calendar(learner);
+        Calendar first = teacher.compareTo(learner) < 0 ? t : l, second = first == t ? l : t;
+        Booking b;
+        synchronized (first) {
+            synchronized (second) {
+                if (!t.isAvailable(s, e)) throw new ConflictException(teacher + " is not available then");
+                if (!l.isAvailable(s, e)) throw new ConflictException(learner + " is not available then");
+                if (!t.isFree(s, e)) throw new ConflictException(teacher + " already has a session then");
+                if (!l.isFree(s, e)) throw new ConflictException(learner + " already has a session then");
+                b = new Booking(nextId.getAndIncrement(), teacher, learner, topic, s, e);
+                t.booked.put(s, b);
+                l.booked.put(s, b);
+            }
+        }
+        bookings.put(b.id, b);
+        scheduleReminders(b);
+        return b;
+    }
+
+    /** Cancels a booking and its pending reminders. */
+    boolean cancel(long bookingId) {
+        Booking b = bookings.remove(bookingId);
+        if (b == null) return false;
+        for (String member : new String[] {b.teacher, b.learner}) {
+            Calendar c = calendar(member);
+            synchronized (c) {
+                c.booked.remove(b.start, b);
+            }
+        }
+        synchronized (b.reminders) {
+            for (HierarchicalTimingWheel.Timeout r : b.reminders) wheel.cancel(r);
+        }
+        return true;
+    }
+
+    /** Up to {@code limit} slots of at least {@code length} that are free for both members. */
+    List<Instant> mutualFreeSlots(String a, String b, Instant from, Instant to, Duration length, int limit) {
+        long f = from.toEpochMilli(), t = to.toEpochMilli(), len = length.toMillis();
+        List<long[]> fa, fb;
+        Calendar ca = calendar(a), cb = calendar(b);
+        synchronized (ca) { fa = ca.free(f, t); }
+        synchronized (cb) { fb = cb.free(f, t); }
+
+        ArrayList<Instant> out = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < fa.size() && j < fb.size() && out.size() < limit) {
+            long s = Math.max(fa.get(i)[0], fb.get(j)[0]);
+            long e = Math.min(fa.get(i)[1], fb.get(j)[1]);
+            if (e - s >= len) out.add(Instant.ofEpochMilli(s));
+            if (fa.get(i)[1] < fb.get(j)[1]) i++; else j++;
+        }
+        return out;
+    }
+
+    List<Booking> bookingsFor(String member) {
+        Calendar c = calendar(member);
+        synchronized (c) {
+            return new ArrayList<>(c.booked.values());
+        }
+    }
+
+    /** Formats a booking's start in the viewer's zone. */
+    String describe(Booking b, String viewer) {
+        String partner = viewer.equals(b.teacher) ? b.learner : b.teacher;
+        return b.topic + " with " + partner + " on " + FORMAT.format(Instant.ofEpochMilli(b.start).atZone(zone(viewer)));
+    }
+
+    private void scheduleReminders(Booking b) {
+        long now = System.currentTimeMillis();
+        synchronized (b.reminders) {
+            for (long offset : REMINDER_OFFSETS) {
+                long at = b.start - offset;
+                if (at <= now) continue;
+                b.reminders.add(wheel.scheduleAt(() -> fire(b), at));
+            }
+        }
+    }
+
+    private void fire(Booking b) {
+        if (!bookings.containsKey(b.id)) return;
+        for (ReminderListener l : listeners) {
+            l.remind(b.teacher, b, "Upcoming session: " + describe(b, b.teacher));
+            l.remind(b.learner, b, "Upcoming session: " + describe(b, b.learner));
+        }
+    }
+
+    private Calendar calendar(String member) {
+        return calendars.computeIfAbsent(member, m -> new Calendar(m, ZoneId.systemDefault()));
+    }
+}
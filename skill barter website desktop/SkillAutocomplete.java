@@ -0,0 +1,171 @@
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * SkillAutocomplete.java
+ *
+ * Suggests skills from the {@link SkillTaxonomy} while typing into a comma-separated skills
+ * field. The entry being typed (from the last comma to the caret) is looked up on every
+ * keystroke; Up/Down pick a suggestion, Enter or Tab (or a click) replaces the entry with the
+ * canonical name, Escape closes the list.
+ *
+ * Lookups read the field through a reused Segment and write IDs into a reused array, so
+ * typing only allocates what Swing itself needs to repaint the list.
+ */
+final class SkillAutocomplete {
+    private static final Metrics.Histogram LOOKUP = Metrics.histogram("skills.autocomplete");
+
+    private final JTextField field;
+    private final SkillTaxonomy taxonomy;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<String> model = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(model);
+    private final int[] ids = new int[SkillTaxonomy.TOP_K];
+    private final Segment text = new Segment();
+    private int entryStart;
+    private boolean replacing;
+
+    private SkillAutocomplete(JTextField field, SkillTaxonomy taxonomy) {
+        this.field = field;
+        this.taxonomy = taxonomy;
+    }
+
+    /** Adds suggestions to the field; call on the EDT. */
+    static void install(JTextField field, SkillTaxonomy taxonomy) {
+        new SkillAutocomplete(field, taxonomy).wire();
+    }
+
+    private void wire() {
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFocusable(false);
+        list.setVisibleRowCount(SkillTaxonomy.TOP_K);
+        popup.setFocusable(false);
+        popup.add(list);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        // Tab accepts a suggestion, so focus traversal keys are handled here rather than by Swing
+        field.setFocusTraversalKeysEnabled(false);
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    if (e.getKeyCode() == KeyEvent.VK_TAB) {
+                        if (e.isShiftDown()) field.transferFocusBackward();
+                        else field.transferFocus();
+                        e.consume();
+                    }
+                    return;
+                }
+                int i = list.getSelectedIndex();
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN: list.setSelectedIndex(Math.min(i + 1, model.size() - 1)); break;
+                    case KeyEvent.VK_UP: list.setSelectedIndex(Math.max(i - 1, 0)); break;
+                    case KeyEvent.VK_ENTER:
+                    case KeyEvent.VK_TAB: accept(list.getSelectedValue()); break;
+                    case KeyEvent.VK_ESCAPE: popup.setVisible(false); break;
+                    default: return;
+                }
+                e.consume();
+            }
+        });
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                popup.setVisible(false);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int i = list.locationToIndex(e.getPoint());
+                if (i >= 0) accept(model.get(i));
+            }
+        });
+    }
+
+    // The caret is only updated after document listeners run
+    private void changed() {
+        if (!replacing) SwingUtilities.invokeLater(this::update);
+    }
+
+    private void update() {
+        if (!field.isFocusOwner()) return;
+        Document doc = field.getDocument();
+        int caret = Math.min(field.getCaretPosition(), doc.getLength());
+        try {
+            doc.getText(0, caret, text);
+        } catch (BadLocationException e) {
+            return;
+        }
+        int start = caret;
+        while (start > 0 && text.charAt(start - 1) != ',') start--;
+        while (start < caret && Character.isWhitespace(text.charAt(start))) start++;
+        entryStart = start;
+
+        int n = 0;
+        if (start < caret) {
+            long t0 = System.nanoTime();
+            n = taxonomy.complete(text, start, caret, ids);
+            LOOKUP.record(System.nanoTime() - t0);
+        }
+        // Nothing to offer, or the entry already is the only suggestion
+        if (n == 0 || (n == 1 && SkillInterner.canonical(taxonomy.completionName(ids[0])).contentEquals(canonicalEntry(start, caret)))) {
+            popup.setVisible(false);
+            return;
+        }
+        model.clear();
+        for (int i = 0; i < n; i++) model.addElement(taxonomy.completionName(ids[i]));
+        list.setSelectedIndex(0);
+        list.setFixedCellWidth(field.getWidth());
+        if (popup.isVisible()) popup.pack();
+        else popup.show(field, 0, field.getHeight());
+    }
+
+    private String canonicalEntry(int start, int end) {
+        return SkillInterner.canonical(text.subSequence(start, end).toString());
+    }
+
+    private void accept(String skill) {
+        popup.setVisible(false);
+        if (skill == null) return;
+        int caret = Math.min(field.getCaretPosition(), field.getDocument().getLength());
+        replacing = true;
+        try {
+            Document doc = field.getDocument();
+            doc.remove(entryStart, caret - entryStart);
+            doc.insertString(entryStart, skill + ", ", null);
+        } catch (BadLocationException ignored) {
+        } finally {
+            replacing = false;
+        }
+    }
+}
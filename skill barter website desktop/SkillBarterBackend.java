@@ -0,0 +1,547 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SkillBarterBackend.java
+ *
+ * Process-wide holder for the backend services the Swing UI talks to.
+ * Services are created lazily on first use so the window can open before they load.
+ */
+final class SkillBarterBackend {
+    static final long WELCOME_POINTS = 50;
+
+    private SkillBarterBackend() {}
+
+    /** Where local data lives; override with -Dskillbarter.data=/some/dir. */
+    static Path dataDir() {
+        return Paths.get(System.getProperty("skillbarter.data",
+                Paths.get(System.getProperty("user.home"), ".skillbarter").toString()));
+    }
+
+    private static class RepositoryHolder {
+        static final SkillBarterRepository REPOSITORY = openRepository();
+    }
+
+    private static class SearchHolder {
+        static final SkillSearchIndex INDEX = seedSearchIndex();
+    }
+
+    private static class TaxonomyHolder {
+        static final SkillTaxonomy TAXONOMY = openTaxonomy();
+    }
+
+    private static class MatchHolder {
+        static final SkillMatchEngine ENGINE = seedMatchEngine();
+    }
+
+    private static class LedgerHolder {
+        static final PointsLedger LEDGER = openLedger();
+    }
+
+    private static class AuthHolder {
+        static final AuthService AUTH = new AuthService(repository(), AuthService.Cost.fromSystemProperties(),
+                Integer.getInteger("skillbarter.auth.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("skillbarter.auth.queue", 256), 10_000);
+    }
+
+    private static class SchedulerHolder {
+        static final HierarchicalTimingWheel WHEEL = new HierarchicalTimingWheel(100, 512, daemonPool("reminder", 2));
+        static final SessionScheduler SCHEDULER = new SessionScheduler(WHEEL);
+    }
+
+    private static class ReviewsHolder {
+        static final ReviewService REVIEWS = openReviews();
+    }
+
+    private static class MessagingHolder {
+        static final MessageBroker BROKER = openMessaging();
+    }
+
+    private static class OutboxHolder {
+        static final Outbox OUTBOX = openOutbox();
+    }
+
+    private static class AnalyticsHolder {
+        static final AnalyticsStore ANALYTICS = openAnalytics();
+    }
+
+    private static class SyncHolder {
+        static final SyncService SYNC = new SyncService(() -> cluster != null ? cluster.self() : "local", repository(),
+                (teaches, learns) -> matches(teaches, learns, SyncService.MATCHES), SkillBarterBackend::listing,
+                SkillBarterBackend::messageBroker);
+    }
+
+    private static class ClientSyncHolder {
+        static final ClientSync CLIENT = openClientSync();
+    }
+
+    // Limits per account, per client address and overall; -Dskillbarter.ratelimit.<name>=burst/period
+    private static class RateLimitHolder {
+        static final int WIDTH = Integer.getInteger("skillbarter.ratelimit.width", 1 << 14);
+        static final RateLimiter.Policy LOGIN = new RateLimiter.Policy("sign-in attempts",
+                RateLimiter.configured("login.account", "10/5m", WIDTH),
+                RateLimiter.configured("login.client", "30/1m", WIDTH),
+                RateLimiter.configured("login.all", "100/1s", 1));
+        static final RateLimiter.Policy REGISTER = new RateLimiter.Policy("new accounts",
+                null,
+                RateLimiter.configured("register.client", "5/1h", WIDTH),
+                RateLimiter.configured("register.all", "20/1s", 1));
+        static final RateLimiter.Policy CONTACT = new RateLimiter.Policy("messages",
+                RateLimiter.configured("contact.account", "5/10m", WIDTH),
+                RateLimiter.configured("contact.client", "10/10m", WIDTH),
+                RateLimiter.configured("contact.all", "50/1s", 1));
+    }
+
+    static SkillBarterRepository repository() {
+        return RepositoryHolder.REPOSITORY;
+    }
+
+    static AuthService auth() {
+        return AuthHolder.AUTH;
+    }
+
+    static SkillSearchIndex searchIndex() {
+        return SearchHolder.INDEX;
+    }
+
+    static SkillTaxonomy taxonomy() {
+        return TaxonomyHolder.TAXONOMY;
+    }
+
+    static SkillMatchEngine matchEngine() {
+        return MatchHolder.ENGINE;
+    }
+
+    static PointsLedger ledger() {
+        return LedgerHolder.LEDGER;
+    }
+
+    static HierarchicalTimingWheel timingWheel() {
+        return SchedulerHolder.WHEEL;
+    }
+
+    static SessionScheduler scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    static ReviewService reviews() {
+        return ReviewsHolder.REVIEWS;
+    }
+
+    static MessageBroker messageBroker() {
+        return MessagingHolder.BROKER;
+    }
+
+    static Outbox outbox() {
+        return OutboxHolder.OUTBOX;
+    }
+
+    /** Where contact form messages go; -Dskillbarter.contact.to. */
+    static String contactAddress() {
+        return System.getProperty("skillbarter.contact.to", "support@skillbarter.local");
+    }
+
+    static AnalyticsStore analytics() {
+        return AnalyticsHolder.ANALYTICS;
+    }
+
+    /** Change tracking and deltas for clients' offline caches. */
+    static SyncService sync() {
+        return SyncHolder.SYNC;
+    }
+
+    /** The desktop app's cache of the signed-in member's data, and its sync. */
+    static ClientSync clientSync() {
+        return ClientSyncHolder.CLIENT;
+    }
+
+    // ----- Cluster mode -----
+    private static volatile ClusterNode cluster;
+
+    /** This process's node when running as part of a cluster (see ApiServer --cluster), otherwise null. */
+    static ClusterNode cluster() {
+        return cluster;
+    }
+
+    /**
+     * Switches the flows below to cluster mode, with this node reachable at {@code self}
+     * ("host:port"). The shard starts with every stored member; once other nodes are known,
+     * the ones they own are handed over. Call before serving requests, then join.
+     */
+    static synchronized ClusterNode startCluster(String self) {
+        if (cluster != null) return cluster;
+        ClusterShard shard = new ClusterShard(SkillBarterBackend::newSearchIndex, () -> new SkillMatchEngine(taxonomy()));
+        SkillTaxonomy skills = taxonomy();
+        loadUsers("cluster shard", u -> shard.add(new SkillBarterRepository.User(u.email, u.name, u.passwordHash,
+                skills.canonicalNames(u.teaches), skills.canonicalNames(u.learns), u.createdAt)));
+        cluster = new ClusterNode(self, shard, repository(), ledger(), reviews(),
+                System.getProperty("skillbarter.cluster.secret"), Integer.getInteger("skillbarter.cluster.timeoutMillis", 2_000),
+                perRequestExecutor("cluster", 32));
+        return cluster;
+    }
+
+    // ----- Flows shared by the Swing dialogs and the HTTP API -----
+    // client is the caller's address for the per-client rate limits, or null in the desktop app
+
+    /** Creates the account and makes the member searchable, matchable and welcomed. The password array is cleared. */
+    static AuthService.Session register(String client, String name, String email, char[] password, List<String> teaches, List<String> learns)
+            throws AuthService.AuthException, IOException, RateLimiter.LimitExceeded {
+        try {
+            RateLimitHolder.REGISTER.check(null, client);
+        } catch (RateLimiter.LimitExceeded e) {
+            Arrays.fill(password, '\0');
+            throw e;
+        }
+        long t0 = System.nanoTime();
+        // Store canonical names, so "js" and "JavaScript " are the same skill everywhere
+        List<String> skills = taxonomy().canonicalNames(teaches);
+        List<String> wants = taxonomy().canonicalNames(learns);
+        String fullName = name.trim();
+        AuthService.Session session = auth().register(fullName, email, password, skills, wants);
+        analytics().record(AnalyticsStore.EventType.REGISTER, session.email, System.nanoTime() - t0);
+        sync().memberChanged(session.email, fullName);
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.shard().add(repository().findUser(session.email));
+        } else {
+            searchIndex().add(fullName, skills, Collections.emptyList());
+            matchEngine().addMember(fullName, skills, wants);
+        }
+        ledger().earn(session.email, WELCOME_POINTS);
+        outbox().enqueue("welcome:" + session.email, "notification", session.email, null, "Welcome to SkillBarter",
+                "Hi " + fullName + ",\n\nYour account is ready and " + WELCOME_POINTS
+                        + " welcome points are waiting for you. Happy swapping!\n\nThe SkillBarter team");
+        return session;
+    }
+
+    /** Checks the password and opens a session. The password array is cleared. */
+    static AuthService.Session login(String client, String email, char[] password, boolean remember)
+            throws AuthService.AuthException, IOException, RateLimiter.LimitExceeded {
+        try {
+            RateLimitHolder.LOGIN.check(AuthService.canonicalEmail(email), client);
+        } catch (RateLimiter.LimitExceeded e) {
+            Arrays.fill(password, '\0');
+            throw e;
+        }
+        long t0 = System.nanoTime();
+        AuthService.Session session = auth().login(email, password, remember);
+        analytics().record(AnalyticsStore.EventType.LOGIN, session.email, System.nanoTime() - t0);
+        return session;
+    }
+
+    static List<SkillSearchIndex.Hit> search(String query, int limit) {
+        long t0 = System.nanoTime();
+        ClusterNode node = cluster;
+        List<SkillSearchIndex.Hit> hits = node != null ? node.search(query, limit) : searchIndex().search(query, limit);
+        analytics().record(AnalyticsStore.EventType.SEARCH, null, System.nanoTime() - t0);
+        return hits;
+    }
+
+    /** Partners for a profile: swaps that help both sides first, else anyone who can teach what is wanted. */
+    static List<SkillMatchEngine.Match> matches(List<String> teaches, List<String> learns, int limit) {
+        List<String> t = taxonomy().canonicalNames(teaches), l = taxonomy().canonicalNames(learns);
+        ClusterNode node = cluster;
+        if (node != null) {
+            List<SkillMatchEngine.Match> pairs = node.matches(t, l, limit, false);
+            return pairs.isEmpty() ? node.matches(t, l, limit, true) : pairs;
+        }
+        SkillMatchEngine engine = matchEngine();
+        List<SkillMatchEngine.Match> pairs = engine.topMatches(t, l, limit, engine.weighted(SkillMatchEngine.RECIPROCAL, reviews()::rankBoost));
+        return pairs.isEmpty() ? engine.topMatches(t, l, limit, engine.weighted(SkillMatchEngine.LEARN_ONLY, reviews()::rankBoost)) : pairs;
+    }
+
+    /** Moves points between two members' accounts and returns the sender's new balance. */
+    static long transferPoints(String from, String to, long points) throws IOException, PointsLedger.InsufficientPointsException {
+        String source = AuthService.canonicalEmail(from), target = AuthService.canonicalEmail(to);
+        if (repository().findUser(target) == null) throw new IllegalArgumentException("There is no member with the email " + target + ".");
+        long t0 = System.nanoTime();
+        // Members who joined before the ledger existed have no account in it yet
+        ledger().open(source);
+        ledger().open(target);
+        ledger().transfer(source, target, points);
+        analytics().record(AnalyticsStore.EventType.TRANSFER, source, System.nanoTime() - t0);
+        return ledger().balance(source);
+    }
+
+    /** Records a review of one member by another; both are emails of stored accounts. */
+    static ReviewService.Review submitReview(String reviewer, String member, String skill, int stars, String text) throws IOException {
+        SkillBarterRepository.User from = repository().findUser(AuthService.canonicalEmail(reviewer));
+        SkillBarterRepository.User to = repository().findUser(AuthService.canonicalEmail(member));
+        if (from == null) throw new IllegalArgumentException("There is no member with the email " + reviewer + ".");
+        if (to == null) throw new IllegalArgumentException("There is no member with the email " + AuthService.canonicalEmail(member) + ".");
+        return reviews().submit(from, to, skill, stars, text);
+    }
+
+    /** The listing of the member with exactly this name, or null. */
+    static SkillSearchIndex.Listing listing(String name) {
+        ClusterNode node = cluster;
+        return node != null ? node.listing(name) : searchIndex().named(name);
+    }
+
+    /** Queues a contact form message; returns its outbox ID, or -1 if the same message was already sent. */
+    static long sendContactMessage(String client, String name, String email, String message) throws IOException, RateLimiter.LimitExceeded {
+        RateLimitHolder.CONTACT.check(AuthService.canonicalEmail(email), client);
+        String key = "contact:" + Long.toHexString(HyperLogLog.hash(name + '\n' + email + '\n' + message));
+        return outbox().enqueue(key, "contact", contactAddress(), email, "Contact form: " + name,
+                "From: " + name + " <" + email + ">\n\n" + message);
+    }
+
+    /**
+     * Imports accounts from a CSV or JSONL file (see {@link UserImporter}); imported members
+     * become searchable and matchable and get the welcome points. Passwords are hashed on
+     * -Dskillbarter.import.hashThreads threads (default: half the cores).
+     */
+    static UserImporter.Result importUsers(Path file, BackgroundTasks.Progress progress) throws IOException, InterruptedException {
+        ClusterNode node = cluster;
+        UserImporter.Result result = userImporter().run(file, users -> {
+            for (SkillBarterRepository.User u : users) {
+                if (node != null) {
+                    node.shard().add(u);
+                } else {
+                    searchIndex().add(u.name, u.teaches, Collections.emptyList());
+                    matchEngine().addMember(u.name, u.teaches, u.learns);
+                }
+                ledger().earn(u.email, WELCOME_POINTS);
+                sync().memberChanged(u.email, u.name);
+            }
+        }, progress);
+        // Imported members owned by other nodes are handed over to them
+        if (node != null) node.rebalance();
+        return result;
+    }
+
+    /**
+     * Runs an import from the command line ({@code --import FILE}), printing progress to
+     * stderr, then exits. Bulk creation mints welcome points and skips the registration rate
+     * limit, so it is only offered to whoever runs the app against the data directory.
+     */
+    static void runImport(Path file) {
+        int status = 0;
+        try {
+            UserImporter.Result r = importUsers(file, new BackgroundTasks.Progress() {
+                @Override
+                public void update(int percent, String message) {
+                    System.err.println(percent + "% " + message);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+            System.err.println(r + (r.duplicates + r.invalid > 0 ? ". Rejected rows are listed in " + r.rejects : "."));
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Import stopped: " + e.getMessage() + ". Run it again to resume.");
+            status = 1;
+        }
+        // Shutdown hooks close the stores
+        System.exit(status);
+    }
+
+    static UserImporter userImporter() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new UserImporter(repository(), auth(), taxonomy(), cores,
+                Integer.getInteger("skillbarter.import.hashThreads", Math.max(1, cores / 2)), dataDir().resolve("imports"));
+    }
+
+    static ExecutorService daemonPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** One virtual thread per task on Java 21+, otherwise a fixed pool of daemon threads. */
+    static ExecutorService perRequestExecutor(String name, int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return daemonPool(name, fallbackThreads);
+        }
+    }
+
+    // Demo listings so a fresh install has something to find
+    private static SkillSearchIndex seedSearchIndex() {
+        SkillSearchIndex index = newSearchIndex();
+        index.add("Asha", Arrays.asList("UI Design", "Figma"), Arrays.asList("Design", "Web"));
+        index.add("Ravi", Arrays.asList("Java Swing", "Java"), Arrays.asList("Programming", "Desktop apps"));
+        index.add("Leena", Arrays.asList("Photography", "Lightroom"), Arrays.asList("Art", "Editing"));
+        index.add("Marco", Arrays.asList("Guitar", "Music Theory"), Collections.singletonList("Music"));
+        SkillTaxonomy skills = taxonomy();
+        loadUsers("search index", u -> index.add(u.name, skills.canonicalNames(u.teaches), Collections.emptyList()));
+        return index;
+    }
+
+    private static SkillSearchIndex newSearchIndex() {
+        SkillSearchIndex index = new SkillSearchIndex();
+        index.setSynonyms(taxonomy()::aliasTarget);
+        // Better-reviewed members rank higher; the review log loads on the first search
+        index.setQuality(l -> (float) reviews().rankBoost(l.userName));
+        return index;
+    }
+
+    private static SkillMatchEngine seedMatchEngine() {
+        SkillMatchEngine engine = new SkillMatchEngine(taxonomy());
+        engine.addMember("Asha", Arrays.asList("UI Design", "Figma"), Collections.singletonList("Photography"));
+        engine.addMember("Ravi", Arrays.asList("Java Swing", "Java"), Collections.singletonList("UI Design"));
+        engine.addMember("Leena", Arrays.asList("Photography", "Lightroom"), Collections.singletonList("Java"));
+        engine.addMember("Marco", Arrays.asList("Guitar", "Music Theory"), Arrays.asList("Java", "Photography"));
+        loadUsers("match engine", u -> engine.addMember(u.name, u.teaches, u.learns));
+        return engine;
+    }
+
+    private static void loadUsers(String what, Consumer<SkillBarterRepository.User> action) {
+        try {
+            repository().forEachUser(action);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load stored users into the " + what + ": " + e.getMessage());
+        }
+    }
+
+    /** The built-in skills plus -Dskillbarter.skills (default: skills.txt in the data directory), if present. */
+    private static SkillTaxonomy openTaxonomy() {
+        SkillTaxonomy taxonomy = SkillTaxonomy.withDefaults();
+        Path file = Paths.get(System.getProperty("skillbarter.skills", dataDir().resolve("skills.txt").toString()));
+        if (Files.exists(file)) {
+            try {
+                taxonomy.load(file);
+            } catch (IOException e) {
+                System.err.println("Could not load skill taxonomy " + file + ": " + e.getMessage());
+            }
+        }
+        return taxonomy;
+    }
+
+    /**
+     * JDBC when -Dskillbarter.jdbc.url is set (with .user/.password), otherwise the embedded
+     * store under the data directory.
+     */
+    private static SkillBarterRepository openRepository() {
+        try {
+            String url = System.getProperty("skillbarter.jdbc.url");
+            SkillBarterRepository repo = url != null
+                    ? new JdbcRepository(url, System.getProperty("skillbarter.jdbc.user", "root"),
+                            System.getProperty("skillbarter.jdbc.password", ""), Integer.getInteger("skillbarter.jdbc.pool", 8))
+                    : new LocalFileRepository(dataDir().resolve("store"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { repo.close(); } catch (IOException ignored) {}
+            }, "repository-close"));
+            return repo;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open storage", e);
+        }
+    }
+
+    // Flush the log every 200 ms and snapshot every 5 minutes so restarts only replay a short tail
+    private static PointsLedger openLedger() {
+        try {
+            PointsLedger ledger = PointsLedger.open(dataDir().resolve("ledger"), 200);
+            ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "points-ledger-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshots.scheduleWithFixedDelay(() -> {
+                try { ledger.snapshot(); }
+                catch (IOException e) { System.err.println("Ledger snapshot failed: " + e.getMessage()); }
+            }, 5, 5, TimeUnit.MINUTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(ledger::close, "points-ledger-close"));
+            return ledger;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open points ledger", e);
+        }
+    }
+
+    private static ReviewService openReviews() {
+        try {
+            ReviewService reviews = ReviewService.open(dataDir().resolve("reviews"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { reviews.close(); } catch (IOException ignored) {}
+            }, "reviews-close"));
+            return reviews;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open reviews", e);
+        }
+    }
+
+    /**
+     * Broker over the message log under the data directory. With -Dskillbarter.messaging.port
+     * it is also served on that loopback port; clients sign in with a login session token.
+     */
+    private static MessageBroker openMessaging() {
+        try {
+            MessageBroker broker = MessageBroker.open(dataDir().resolve("messages"), 200);
+            Integer port = Integer.getInteger("skillbarter.messaging.port");
+            MessageServer server = port == null ? null : new MessageServer(broker, token -> auth().authenticate(token), port).start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    if (server != null) server.close();
+                    broker.close();
+                } catch (IOException ignored) {}
+            }, "message-broker-close"));
+            return broker;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open message log", e);
+        }
+    }
+
+    // One cache file per data directory; -Dskillbarter.sync.url points the sync at a server-mode instance
+    private static ClientSync openClientSync() {
+        try {
+            ClientCache cache = ClientCache.open(dataDir().resolve("cache").resolve("client.cache"));
+            ClientSync sync = new ClientSync(cache, System.getProperty("skillbarter.sync.url"),
+                    Long.getLong("skillbarter.sync.intervalSeconds", 60));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.close();
+                } catch (IOException ignored) {}
+            }, "client-cache-close"));
+            return sync;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the client cache", e);
+        }
+    }
+
+    /**
+     * Outbox under the data directory. Mail goes to the SMTP relay at -Dskillbarter.smtp.host
+     * (and .port, default 25) if set, otherwise into .eml files under mail/ in the data directory.
+     */
+    private static Outbox openOutbox() {
+        try {
+            String from = System.getProperty("skillbarter.mail.from", "no-reply@skillbarter.local");
+            String smtp = System.getProperty("skillbarter.smtp.host");
+            OutboxTransport transport = smtp != null
+                    ? new OutboxTransport.Smtp(smtp, Integer.getInteger("skillbarter.smtp.port", 25), from, 10_000)
+                    : new OutboxTransport.Directory(dataDir().resolve("mail"), from);
+            Outbox outbox = Outbox.open(dataDir().resolve("outbox"), transport, 200);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { outbox.close(); } catch (IOException ignored) {}
+            }, "outbox-close"));
+            return outbox;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open outbox", e);
+        }
+    }
+
+    private static AnalyticsStore openAnalytics() {
+        try {
+            AnalyticsStore analytics = AnalyticsStore.open(dataDir().resolve("analytics"));
+            Runtime.getRuntime().addShutdownHook(new Thread(analytics::close, "analytics-close"));
+            return analytics;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open analytics store", e);
+        }
+    }
+}
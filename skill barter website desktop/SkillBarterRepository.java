@@ -0,0 +1,50 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * SkillBarterRepository.java
+ *
+ * Storage API for member accounts. Two implementations: JdbcRepository for MySQL (and other
+ * databases with an upsert, see there) and LocalFileRepository, an embedded log-structured
+ * store used when no database is configured. Reviews and points keep their own logs
+ * ({@link ReviewService}, {@link PointsLedger}).
+ *
+ * saveUsers takes a whole batch so implementations can group it into one transaction (JDBC)
+ * or one buffered sequential write (local store); a batch is stored entirely or not at all.
+ */
+interface SkillBarterRepository extends Closeable {
+
+    final class User {
+        final String email;
+        final String name;
+        final String passwordHash;
+        final List<String> teaches;
+        final List<String> learns;
+        final long createdAt;
+
+        User(String email, String name, String passwordHash, List<String> teaches, List<String> learns, long createdAt) {
+            this.email = email;
+            this.name = name;
+            this.passwordHash = passwordHash;
+            this.teaches = Collections.unmodifiableList(teaches);
+            this.learns = Collections.unmodifiableList(learns);
+            this.createdAt = createdAt;
+        }
+    }
+
+    void saveUsers(Collection<User> users) throws IOException;
+
+    default void saveUser(User user) throws IOException {
+        saveUsers(Collections.singletonList(user));
+    }
+
+    /** Latest stored version of a user, or null. */
+    User findUser(String email) throws IOException;
+
+    /** Streams every user (latest version only) without loading them all into memory. */
+    void forEachUser(Consumer<User> action) throws IOException;
+}
@@ -1,7 +1,5 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.io.FileWriter;
-import java.io.IOException;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 
@@ -16,10 +14,32 @@ import javax.swing.border.EmptyBorder;
  * Drop into an IDE and run. Requires Java 8+.
  */
 public class SkillBarter_Website_Desktop {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            ApiServer.run(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--import")) {
+            SkillBarterBackend.runImport(java.nio.file.Paths.get(args[1]));
+            return;
+        }
+        installLookAndFeel();
+        InstrumentedEventQueue.install();
+        SwingUtilities.invokeLater(() -> open(null));
+    }
+
+    /** Builds and shows the main window (on the EDT); onFirstPaint, if given, runs once it has painted. */
+    static void open(Runnable onFirstPaint) {
+        long t0 = System.nanoTime();
+        MainWindow w = new MainWindow();
+        Metrics.histogram("startup.window").record(System.nanoTime() - t0);
+        if (onFirstPaint != null) w.whenFirstPainted(onFirstPaint);
+        w.setVisible(true);
+    }
+
+    static void installLookAndFeel() {
         try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
         catch (Exception ignored) {}
-        SwingUtilities.invokeLater(() -> new MainWindow().setVisible(true));
     }
 }
 
@@ -27,21 +47,20 @@ class MainWindow extends JFrame {
     private final CardLayout cardLayout = new CardLayout();
     private final JPanel cards = new JPanel(cardLayout);
 
-    // Theme colors (toggleable)
-    private Color bgDark = new Color(10, 10, 12);
-    private Color cardDark = new Color(25, 25, 28);
-    private Color textLight = new Color(230, 230, 230);
-    private Color neonBlue = new Color(0, 200, 255);
-    private Color neonPurple = new Color(170, 0, 255);
+    // Theme colors: panels bind to tokens, the neon gradient stays the same in both themes
+    private final ThemeEngine theme = new ThemeEngine(ThemeEngine.DARK);
+    private final Color neonBlue = UiStyles.NEON_BLUE;
+    private final Color neonPurple = UiStyles.NEON_PURPLE;
 
-    private Color bgLight = new Color(245, 245, 248);
-    private Color cardLight = new Color(255, 255, 255);
-    private Color textDark = new Color(30, 30, 30);
+    private final Font headingFont = UiStyles.HEADING;
+    private final Font textFont = UiStyles.TEXT;
 
-    private boolean darkMode = true;
+    // Cards other than HOME are built the first time they are shown
+    private final java.util.Map<String, java.util.function.Supplier<JPanel>> cardFactories = new java.util.LinkedHashMap<>();
+    private final java.util.Set<String> builtCards = new java.util.HashSet<>();
 
-    private final Font headingFont = new Font("Segoe UI Semibold", Font.BOLD, 30);
-    private final Font textFont = new Font("Segoe UI", Font.PLAIN, 16);
+    // Startup hooks, run once after the first frame has been painted
+    private java.util.List<Runnable> firstPaintActions = new java.util.ArrayList<>();
 
     // Testimonials carousel
     private final CardLayout testimonialLayout = new CardLayout();
@@ -54,17 +73,21 @@ class MainWindow extends JFrame {
         setSize(1150, 820);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout());
-        getContentPane().setBackground(bgDark);
+        theme.background((JComponent) getContentPane(), "bg");
+        theme.addListener(RenderCache::invalidate);
 
         add(createTopNav(), BorderLayout.NORTH);
-        cards.setBackground(bgDark);
+        theme.background(cards, "bg");
 
+        // Only HOME is visible at startup; the rest are built on first showCard
         cards.add(createHomePanel(), "HOME");
-        cards.add(createAboutPanel(), "ABOUT");
-        cards.add(createServicesPanel(), "SERVICES");
-        cards.add(createModulesPanel(), "MODULES");
-        cards.add(createContactPanel(), "CONTACT");
-        cards.add(createLoginProfilePanel(), "PROFILE");
+        builtCards.add("HOME");
+        cardFactories.put("ABOUT", this::createAboutPanel);
+        cardFactories.put("SERVICES", this::createServicesPanel);
+        cardFactories.put("LISTINGS", this::createListingsPanel);
+        cardFactories.put("MODULES", this::createModulesPanel);
+        cardFactories.put("CONTACT", this::createContactPanel);
+        cardFactories.put("PROFILE", this::createLoginProfilePanel);
 
         add(cards, BorderLayout.CENTER);
         add(createFooter(), BorderLayout.SOUTH);
@@ -75,6 +98,67 @@ class MainWindow extends JFrame {
 
         // Keyboard shortcuts
         setupShortcuts();
+
+        BackgroundTasks.startEdtMonitor();
+
+        // Backend services and class preloading wait until the window is on screen
+        whenFirstPainted(() -> {
+            StartupPreloader.start();
+            MetricsExporter.start();
+            // Opens the offline cache and starts syncing it, off the EDT
+            BackgroundTasks.task("sync", progress -> {
+                SkillBarterBackend.clientSync().start();
+                return null;
+            }).start();
+            // Session reminders arrive on the timing wheel's pool; show the signed-in member's on the EDT
+            BackgroundTasks.task("reminders", progress -> {
+                SkillBarterBackend.scheduler().addReminderListener((member, booking, message) -> {
+                    AuthService.Session s = SkillBarterBackend.clientSync().session();
+                    if (s == null || !s.email.equals(member)) return;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "Reminder", JOptionPane.INFORMATION_MESSAGE));
+                });
+                return null;
+            }).start();
+        });
+    }
+
+    @Override
+    public void dispose() {
+        // The carousel timer would otherwise keep firing into a closed window
+        testimonialTimer.stop();
+        super.dispose();
+    }
+
+    // ----- Lazy cards -----
+    void showCard(String name) {
+        if (builtCards.add(name)) {
+            java.util.function.Supplier<JPanel> factory = cardFactories.remove(name);
+            if (factory != null) cards.add(factory.get(), name);
+        }
+        cardLayout.show(cards, name);
+    }
+
+    /** Runs the action on the EDT once the frame has painted for the first time (or now, if it has). */
+    void whenFirstPainted(Runnable action) {
+        if (firstPaintActions == null) action.run();
+        else firstPaintActions.add(action);
+    }
+
+    @Override
+    protected JRootPane createRootPane() {
+        // Called from the JFrame constructor, before this class's fields are set; they are read only at paint time
+        return new JRootPane() {
+            @Override
+            public void paint(Graphics g) {
+                super.paint(g);
+                java.util.List<Runnable> actions = firstPaintActions;
+                if (actions != null) {
+                    firstPaintActions = null;
+                    // After this paint has reached the screen
+                    SwingUtilities.invokeLater(() -> actions.forEach(Runnable::run));
+                }
+            }
+        };
     }
 
     private void setupShortcuts() {
@@ -83,26 +167,27 @@ class MainWindow extends JFrame {
         ActionMap am = root.getActionMap();
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK), "goHome");
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK), "openSearch");
-        am.put("goHome", new AbstractAction() { public void actionPerformed(ActionEvent e) { cardLayout.show(cards, "HOME"); } });
+        am.put("goHome", new AbstractAction() { public void actionPerformed(ActionEvent e) { showCard("HOME"); } });
         am.put("openSearch", new AbstractAction() { public void actionPerformed(ActionEvent e) { showSearchDialog(); } });
     }
 
     // ----- Top Navigation with Search, Login, Theme Toggle -----
     private JComponent createTopNav() {
         JPanel nav = new JPanel(new BorderLayout()) {
+            private final RenderCache.Slot background = new RenderCache.Slot("nav", MainWindow::paintNavBackground);
+
             @Override
             protected void paintComponent(Graphics g) {
+                long t0 = System.nanoTime();
                 super.paintComponent(g);
-                Graphics2D g2 = (Graphics2D) g;
-                GradientPaint gp = new GradientPaint(0, 0, neonPurple, getWidth(), 0, neonBlue);
-                g2.setPaint(gp);
-                g2.fillRect(0, 0, getWidth(), getHeight());
+                background.paint(this, g, getWidth(), getHeight(), neonPurple, neonBlue);
+                RenderCache.recordPaint(NAV_PAINT, "nav", t0);
             }
         };
         nav.setBorder(new EmptyBorder(12, 18, 12, 18));
 
         JLabel brand = new JLabel("⚡ SkillBarter");
-        brand.setFont(new Font("Segoe UI", Font.BOLD, 28));
+        brand.setFont(UiStyles.BRAND);
         brand.setForeground(Color.WHITE);
         nav.add(brand, BorderLayout.WEST);
 
@@ -126,10 +211,10 @@ class MainWindow extends JFrame {
         right.add(login);
 
         // Quick nav buttons
-        String[] names = {"Home", "About", "Services", "Modules", "Contact"};
+        String[] names = {"Home", "About", "Services", "Listings", "Modules", "Contact"};
         for (String n : names) {
             NeonButton btn = new NeonButton(n);
-            btn.addActionListener(e -> cardLayout.show(cards, n.toUpperCase()));
+            btn.addActionListener(e -> showCard(n.toUpperCase()));
             right.add(btn);
         }
 
@@ -137,25 +222,28 @@ class MainWindow extends JFrame {
         return nav;
     }
 
+    private static final Metrics.Histogram NAV_PAINT = Metrics.histogram("paint.nav");
+    private static final Metrics.Histogram BUTTON_PAINT = Metrics.histogram("paint.neonButton");
+    private static final Metrics.Histogram CHART_PAINT = Metrics.histogram("paint.analyticsChart");
+    private static final Metrics.Histogram PROFILE_RENDER = Metrics.histogram("render.profile");
+
+    private static void paintNavBackground(Graphics2D g2, int w, int h, Color from, Color to) {
+        g2.setPaint(new GradientPaint(0, 0, from, w, 0, to));
+        g2.fillRect(0, 0, w, h);
+    }
+
     // ----- Theme toggle -----
     private void toggleTheme(boolean light) {
-        darkMode = !light; // toggleState: true -> light, false -> dark
-        if (light) {
-            getContentPane().setBackground(bgLight);
-            cards.setBackground(bgLight);
-        } else {
-            getContentPane().setBackground(bgDark);
-            cards.setBackground(bgDark);
-        }
-        // In real app we'd recursively update components; for demo, repaint top-level
-        SwingUtilities.updateComponentTreeUI(this);
+        // Only token-bound properties that differ between the themes are touched, then one repaint
+        theme.apply(light ? ThemeEngine.LIGHT : ThemeEngine.DARK, this);
     }
 
     // ----- Custom Buttons -----
     static class NeonButton extends JButton {
         private boolean hovered = false;
-        private final Color neonBlue = new Color(0, 200, 255);
-        private final Color neonPurple = new Color(170, 0, 255);
+        private final Color neonBlue = UiStyles.NEON_BLUE;
+        private final Color neonPurple = UiStyles.NEON_PURPLE;
+        private final RenderCache.Slot hoverBackground = new RenderCache.Slot("neonButton", NeonButton::paintHover);
 
         NeonButton(String text) {
             super(text);
@@ -163,7 +251,7 @@ class MainWindow extends JFrame {
             setContentAreaFilled(false);
             setFocusPainted(false);
             setForeground(Color.WHITE);
-            setFont(new Font("Segoe UI", Font.BOLD, 14));
+            setFont(UiStyles.BUTTON);
             setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
             setBorder(BorderFactory.createEmptyBorder(6, 12, 6, 12));
 
@@ -177,17 +265,19 @@ class MainWindow extends JFrame {
 
         @Override
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            if (hovered) {
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                GradientPaint gp = new GradientPaint(0, 0, neonPurple, getWidth(), getHeight(), neonBlue);
-                g2.setPaint(gp);
-                g2.fillRoundRect(0, 0, getWidth(), getHeight(), 18, 18);
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.20f));
-                g2.fillRoundRect(0, 0, getWidth(), getHeight(), 20, 20);
-            }
+            long t0 = System.nanoTime();
+            if (hovered) hoverBackground.paint(this, g, getWidth(), getHeight(), neonPurple, neonBlue);
             super.paintComponent(g);
-            g2.dispose();
+            RenderCache.recordPaint(BUTTON_PAINT, "neonButton", t0);
+        }
+
+        // Rendered once per size and color pair, then reused from RenderCache
+        private static void paintHover(Graphics2D g2, int w, int h, Color from, Color to) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setPaint(new GradientPaint(0, 0, from, w, h, to));
+            g2.fillRoundRect(0, 0, w, h, 18, 18);
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.20f));
+            g2.fillRoundRect(0, 0, w, h, 20, 20);
         }
     }
 
@@ -206,17 +296,16 @@ class MainWindow extends JFrame {
     private JPanel makeFeatureCard(String icon, String title, String desc) {
         JPanel card = new JPanel();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
-        card.setBackground(cardDark);
-        card.setBorder(BorderFactory.createCompoundBorder(
-                BorderFactory.createLineBorder(new Color(40, 40, 45), 1, true),
-                new EmptyBorder(18, 18, 18, 18)));
+        theme.background(card, "surface");
+        card.setBorder(UiStyles.CARD);
 
         JLabel i = new JLabel(icon);
-        i.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 36));
+        i.setFont(UiStyles.ICON);
         JLabel t = new JLabel(title);
-        t.setFont(new Font("Segoe UI", Font.BOLD, 16));
-        t.setForeground(neonBlue);
-        JLabel d = new JLabel("<html><body style='width:230px;color:#CCCCCC;font-size:13px;'>" + desc + "</body></html>");
+        t.setFont(UiStyles.CARD_TITLE);
+        theme.foreground(t, "accent");
+        WrapLabel d = theme.foreground(new WrapLabel(desc, 230), "text.muted");
+        d.setFont(UiStyles.SMALL);
 
         card.add(i);
         card.add(Box.createVerticalStrut(10));
@@ -227,17 +316,17 @@ class MainWindow extends JFrame {
         card.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseEntered(MouseEvent e) {
-                card.setBorder(BorderFactory.createLineBorder(neonBlue, 2, true));
-                card.setBackground(new Color(30, 30, 35));
+                card.setBorder(UiStyles.CARD_HOVER_OUTLINE);
+                card.setBackground(theme.color("surface.hover"));
             }
             @Override
             public void mouseExited(MouseEvent e) {
-                card.setBorder(BorderFactory.createLineBorder(new Color(40, 40, 45), 1, true));
-                card.setBackground(cardDark);
+                card.setBorder(UiStyles.CARD_OUTLINE);
+                card.setBackground(theme.color("surface"));
             }
             @Override
             public void mouseClicked(MouseEvent e) {
-                showServiceDetail(title, desc);
+                openFeature(title, desc);
             }
         });
         return card;
@@ -246,19 +335,19 @@ class MainWindow extends JFrame {
     // ----- Home Panel -----
     private JPanel createHomePanel() {
         JPanel panel = new JPanel(new BorderLayout());
-        panel.setBackground(bgDark);
+        theme.background(panel, "bg");
         panel.setBorder(new EmptyBorder(40, 60, 40, 60));
 
         JLabel headline = new JLabel("Where Your Talent is the Currency");
-        headline.setFont(new Font("Segoe UI", Font.BOLD, 36));
-        headline.setForeground(neonBlue);
+        headline.setFont(UiStyles.HERO);
+        theme.foreground(headline, "accent");
 
-        JLabel sub = new JLabel("<html><body style='color:#EAEAEA;font-size:16px;'>Join a global network of learners and teachers who trade skills instead of money.</body></html>");
+        JLabel sub = theme.foreground(new JLabel("<html><body style='font-size:16px;'>Join a global network of learners and teachers who trade skills instead of money.</body></html>"), "text");
         sub.setBorder(new EmptyBorder(10, 0, 25, 0));
 
         JPanel top = new JPanel();
         top.setLayout(new BoxLayout(top, BoxLayout.Y_AXIS));
-        top.setBackground(bgDark);
+        theme.background(top, "bg");
         top.add(headline);
         top.add(sub);
 
@@ -284,7 +373,7 @@ class MainWindow extends JFrame {
         JPanel cta = new JPanel(new FlowLayout(FlowLayout.LEFT));
         cta.setOpaque(false);
         JButton join = new JButton("Join SkillBarter — It's Free");
-        join.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        join.setFont(UiStyles.CARD_TITLE);
         join.addActionListener(e -> new RegisterDialog(this).setVisible(true));
         cta.add(join);
 
@@ -299,7 +388,7 @@ class MainWindow extends JFrame {
     private JPanel makeTestimonial(String text) {
         JPanel p = new JPanel(new BorderLayout());
         p.setOpaque(false);
-        JLabel t = new JLabel("<html><div style='font-size:15px;color:#EAEAEA;padding:10px;'><i>\"" + text + "\"</i></div></html>");
+        JLabel t = theme.foreground(new JLabel("<html><div style='font-size:15px;padding:10px;'><i>\"" + text + "\"</i></div></html>"), "text");
         p.add(t, BorderLayout.CENTER);
         return p;
     }
@@ -307,20 +396,20 @@ class MainWindow extends JFrame {
     // ----- About Panel -----
     private JPanel createAboutPanel() {
         JPanel panel = new JPanel(new BorderLayout());
-        panel.setBackground(bgDark);
+        theme.background(panel, "bg");
         panel.setBorder(new EmptyBorder(30, 60, 30, 60));
 
         JLabel title = new JLabel("About SkillBarter 🌐");
-        title.setFont(new Font("Segoe UI", Font.BOLD, 34));
-        title.setForeground(neonBlue);
+        title.setFont(UiStyles.PAGE_TITLE);
+        theme.foreground(title, "accent");
         panel.add(title, BorderLayout.NORTH);
 
-        String aboutText = "<html><body style='font-size:16px;color:#E0E0E0;line-height:1.6;'>"
+        String aboutText = "<html><body style='font-size:16px;line-height:1.6;'>"
                 + "<b>SkillBarter</b> is a futuristic platform where <b>knowledge becomes a shared currency</b>.<br><br>"
                 + "Our mission is to connect passionate learners and teachers worldwide — enabling them to exchange skills, time, and creativity in a <b>cash-free ecosystem</b>."
                 + "</body></html>";
 
-        JLabel about = new JLabel(aboutText);
+        JLabel about = theme.foreground(new JLabel(aboutText), "text");
         about.setBorder(new EmptyBorder(18, 0, 0, 0));
         panel.add(about, BorderLayout.CENTER);
 
@@ -351,7 +440,7 @@ class MainWindow extends JFrame {
                 if (!open) {
                     body = new JPanel();
                     body.setOpaque(false);
-                    body.add(new JLabel("<html><div style='width:260px;color:#E0E0E0;'>" + a + "</div></html>"));
+                    body.add(theme.foreground(new JLabel("<html><div style='width:260px;'>" + a + "</div></html>"), "text"));
                     container.add(body, BorderLayout.SOUTH);
                 } else {
                     container.remove(1);
@@ -368,12 +457,12 @@ class MainWindow extends JFrame {
     // ----- Services Panel -----
     private JPanel createServicesPanel() {
         JPanel panel = new JPanel(new BorderLayout());
-        panel.setBackground(bgDark);
+        theme.background(panel, "bg");
         panel.setBorder(new EmptyBorder(30, 40, 30, 40));
 
         JLabel headline = new JLabel("Our Services ⚙️");
-        headline.setFont(new Font("Segoe UI", Font.BOLD, 32));
-        headline.setForeground(neonBlue);
+        headline.setFont(UiStyles.SECTION_TITLE);
+        theme.foreground(headline, "accent");
 
         JPanel grid = new JPanel(new GridLayout(2, 3, 18, 18));
         grid.setOpaque(false);
@@ -389,26 +478,90 @@ class MainWindow extends JFrame {
         return panel;
     }
 
+    // Cards with a working module open it; the rest show the detail modal
+    private void openFeature(String title, String desc) {
+        switch (title) {
+            case "AI Skill Matchmaking":
+            case "AI Matchmaking":
+            case "Recommender":
+                showMatchmakingDialog();
+                break;
+            case "Earn & Spend Points":
+            case "Secure Points":
+            case "Points Engine":
+                showPointsDialog();
+                break;
+            case "Smart Scheduling":
+            case "Scheduler":
+                showSchedulerDialog();
+                break;
+            case "Feedback":
+                showFeedbackDialog();
+                break;
+            case "Chat":
+            case "Messaging":
+                showChatDialog();
+                break;
+            case "Analytics":
+                showAnalyticsDialog(false);
+                break;
+            case "Admin Console":
+                showAnalyticsDialog(true);
+                break;
+            default:
+                showServiceDetail(title, desc);
+        }
+    }
+
     private void showServiceDetail(String title, String desc) {
         JTextArea area = new JTextArea(title + "\n\n" + desc + "\n\nDetailed info, pricing tiers, FAQs, and sign-up CTA would go here.");
         area.setEditable(false);
         area.setLineWrap(true);
         area.setWrapStyleWord(true);
-        area.setBackground(cardDark);
-        area.setForeground(textLight);
+        area.setBackground(theme.color("surface"));
+        area.setForeground(theme.color("text"));
         area.setBorder(new EmptyBorder(12,12,12,12));
         JOptionPane.showMessageDialog(this, new JScrollPane(area), "Service — " + title, JOptionPane.INFORMATION_MESSAGE);
     }
 
+    // ----- Listings Panel -----
+    private JPanel createListingsPanel() {
+        JPanel panel = new JPanel(new BorderLayout(0, 16));
+        theme.background(panel, "bg");
+        panel.setBorder(new EmptyBorder(30, 40, 30, 40));
+
+        JLabel headline = new JLabel("Browse Listings 📚");
+        headline.setFont(UiStyles.SECTION_TITLE);
+        theme.foreground(headline, "accent");
+
+        panel.add(headline, BorderLayout.NORTH);
+        panel.add(new ListingBrowser(theme, this::showListing), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void showListing(SkillSearchIndex.Listing l) {
+        SkillBarterBackend.clientSync().viewed(l);
+        BackgroundTasks.task("listing.reviews", progress -> {
+            ReviewService reviews = SkillBarterBackend.reviews();
+            StringBuilder sb = new StringBuilder(l.userName).append("\n\nTeaches: ").append(String.join(", ", l.skills));
+            if (l.topics.length > 0) sb.append("\nTopics: ").append(String.join(", ", l.topics));
+            sb.append("\n\nRating: ").append(reviews.listed(l.userName));
+            for (ReviewService.Review r : reviews.recent(l.userName)) sb.append("\n- ").append(r);
+            return sb.toString();
+        }).onSuccess(text -> JOptionPane.showMessageDialog(this, text, "Listing — " + l.userName, JOptionPane.INFORMATION_MESSAGE))
+          .onFailure(ex -> JOptionPane.showMessageDialog(this, "Could not load listing: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE))
+          .start();
+    }
+
     // ----- Modules Panel -----
     private JPanel createModulesPanel() {
         JPanel panel = new JPanel(new BorderLayout());
-        panel.setBackground(bgDark);
+        theme.background(panel, "bg");
         panel.setBorder(new EmptyBorder(30, 40, 30, 40));
 
         JLabel headline = new JLabel("Core Modules 🧩");
-        headline.setFont(new Font("Segoe UI", Font.BOLD, 32));
-        headline.setForeground(neonBlue);
+        headline.setFont(UiStyles.SECTION_TITLE);
+        theme.foreground(headline, "accent");
 
         JPanel grid = new JPanel(new GridLayout(2, 3, 18, 18));
         grid.setOpaque(false);
@@ -427,12 +580,12 @@ class MainWindow extends JFrame {
     // ----- Contact Panel with validation and Export to HTML -----
     private JPanel createContactPanel() {
         JPanel contact = new JPanel(new BorderLayout());
-        contact.setBackground(bgDark);
+        theme.background(contact, "bg");
         contact.setBorder(new EmptyBorder(30, 60, 30, 60));
 
         JLabel h = new JLabel("Contact Us ✉️");
         h.setFont(headingFont);
-        h.setForeground(neonBlue);
+        theme.foreground(h, "accent");
         contact.add(h, BorderLayout.NORTH);
 
         JPanel form = new JPanel(new GridBagLayout());
@@ -441,9 +594,9 @@ class MainWindow extends JFrame {
         gbc.insets = new Insets(8,8,8,8);
         gbc.fill = GridBagConstraints.HORIZONTAL;
 
-        JLabel nameL = new JLabel("Name:"); nameL.setForeground(textLight);
-        JLabel emailL = new JLabel("Email:"); emailL.setForeground(textLight);
-        JLabel msgL = new JLabel("Message:"); msgL.setForeground(textLight);
+        JLabel nameL = theme.foreground(new JLabel("Name:"), "text");
+        JLabel emailL = theme.foreground(new JLabel("Email:"), "text");
+        JLabel msgL = theme.foreground(new JLabel("Message:"), "text");
 
         JTextField name = new JTextField();
         JTextField email = new JTextField();
@@ -470,11 +623,26 @@ class MainWindow extends JFrame {
                 JOptionPane.showMessageDialog(this, "Please enter a valid email.", "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            JOptionPane.showMessageDialog(this, "Message Sent Successfully!");
+            send.setEnabled(false);
+            // Only the journal write happens here; the outbox delivers in the background and retries
+            BackgroundTasks.task("contact", progress -> SkillBarterBackend.sendContactMessage(null, nm, em, ms))
+                    .slowNotice(3_000, () -> send.setText("Still sending…"))
+                    .onSuccess(id -> {
+                        send.setText("Send Message");
+                        send.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, id < 0 ? "This message was already sent." : "Message Sent Successfully!");
+                        if (id >= 0) msg.setText("");
+                    })
+                    .onFailure(ex -> {
+                        send.setText("Send Message");
+                        send.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, "Could not send message: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    })
+                    .start();
         });
 
-        JButton export = new JButton("Export Page to HTML");
-        export.addActionListener(e -> exportToHTML());
+        JButton export = new JButton("Export Site to HTML");
+        export.addActionListener(e -> exportSite(export));
 
         JPanel btns = new JPanel(new FlowLayout(FlowLayout.LEFT));
         btns.setOpaque(false);
@@ -486,38 +654,138 @@ class MainWindow extends JFrame {
         return contact;
     }
 
-    private void exportToHTML() {
-        String html = "<!doctype html><html><head><meta charset=\"utf-8\"><title>SkillBarter — Export</title></head><body>"
-                + "<h1>SkillBarter — Exported Page</h1><p>This is a simple HTML export generated by the desktop app.</p>"
-                + "<ul><li>AI Matchmaking</li><li>Points Engine</li><li>Scheduler</li></ul>"
-                + "</body></html>";
-        try (FileWriter fw = new FileWriter("skillbarter_export.html")) {
-            fw.write(html);
-            JOptionPane.showMessageDialog(this, "Exported to skillbarter_export.html in working directory.");
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, "Failed to export: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+    // Streams every listing to a static site; the button shows progress while it runs
+    private void exportSite(JButton button) {
+        JFileChooser chooser = new JFileChooser(new java.io.File("."));
+        chooser.setDialogTitle("Export site to folder");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setSelectedFile(new java.io.File("skillbarter_site"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path dir = chooser.getSelectedFile().toPath();
+        String label = button.getText();
+        button.setEnabled(false);
+        BackgroundTasks.task("export", progress -> StaticSiteExporter.export(SkillBarterBackend.searchIndex(), SkillBarterBackend.reviews(), dir,
+                Runtime.getRuntime().availableProcessors(), progress))
+                .onProgress((percent, message) -> button.setText("Exporting… " + percent + "%"))
+                .onSuccess(r -> {
+                    button.setText(label);
+                    button.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Exported " + r + ".\nOpen " + dir.resolve("index.html") + " in a browser.");
+                })
+                .onFailure(ex -> {
+                    button.setText(label);
+                    button.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Failed to export: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                })
+                .start();
     }
 
-    // ----- Simple Profile / Login Panel -----
+    // ----- Profile Panel -----
+    // Drawn from the offline cache only, so it shows at once; a sync in the background redraws it
     private JPanel createLoginProfilePanel() {
-        JPanel p = new JPanel(new BorderLayout());
-        p.setBackground(bgDark);
+        ClientSync sync = SkillBarterBackend.clientSync();
+        JPanel p = new JPanel(new BorderLayout(0, 16));
+        theme.background(p, "bg");
         p.setBorder(new EmptyBorder(30,30,30,30));
-        JLabel t = new JLabel("Profile"); t.setFont(headingFont); t.setForeground(neonBlue);
+        JLabel t = new JLabel("Profile"); t.setFont(headingFont); theme.foreground(t, "accent");
         p.add(t, BorderLayout.NORTH);
-        JLabel info = new JLabel("<html><div style='color:#EAEAEA'>You are not logged in. Use Ctrl+S or the Login button to sign in.</div></html>");
-        p.add(info, BorderLayout.CENTER);
+
+        JPanel body = new JPanel();
+        body.setLayout(new BoxLayout(body, BoxLayout.Y_AXIS));
+        body.setOpaque(false);
+        JScrollPane scroll = new JScrollPane(body);
+        scroll.setBorder(new EmptyBorder(0, 0, 0, 0));
+        scroll.setOpaque(false);
+        scroll.getViewport().setOpaque(false);
+        p.add(scroll, BorderLayout.CENTER);
+
+        JLabel status = theme.foreground(new JLabel(" "), "text.faint");
+        JButton syncNow = new JButton("Sync now"); syncNow.setFocusPainted(false);
+        JButton signOut = new JButton("Sign out"); signOut.setFocusPainted(false);
+        JPanel south = new JPanel(new BorderLayout());
+        south.setOpaque(false);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.setOpaque(false);
+        buttons.add(syncNow); buttons.add(signOut);
+        south.add(status, BorderLayout.WEST);
+        south.add(buttons, BorderLayout.EAST);
+        p.add(south, BorderLayout.SOUTH);
+
+        Runnable render = () -> renderProfile(sync, body, status, signOut);
+        sync.addListener(() -> SwingUtilities.invokeLater(render));
+        syncNow.addActionListener(e -> {
+            status.setText("Syncing…");
+            sync.syncSoon();
+        });
+        signOut.addActionListener(e -> sync.signOut());
+        p.addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && p.isShowing()) sync.syncSoon();
+        });
+        render.run();
         return p;
     }
 
+    private void renderProfile(ClientSync sync, JPanel body, JLabel status, JButton signOut) {
+        long t0 = System.nanoTime();
+        body.removeAll();
+        java.util.Map<String, String> profile = sync.account() == null ? null : sync.profile();
+        signOut.setVisible(sync.account() != null);
+        if (sync.account() == null) {
+            body.add(profileLine("You are not logged in. Use the Login button to sign in.", UiStyles.TEXT, "text"));
+        } else if (profile == null) {
+            body.add(profileLine(sync.account(), UiStyles.CARD_TITLE, "accent"));
+            body.add(profileLine("Loading your profile…", UiStyles.TEXT, "text.muted"));
+        } else {
+            body.add(profileLine(profile.getOrDefault("name", ""), UiStyles.CARD_TITLE, "accent"));
+            body.add(profileLine(profile.getOrDefault("email", ""), UiStyles.SMALL, "text.muted"));
+            body.add(profileLine("Teaches: " + profile.getOrDefault("teaches", "").replace(",", ", "), UiStyles.TEXT, "text"));
+            body.add(profileLine("Wants to learn: " + profile.getOrDefault("learns", "").replace(",", ", "), UiStyles.TEXT, "text"));
+            profileSection(body, "Top matches");
+            for (java.util.Map<String, String> m : sync.matches()) {
+                body.add(profileLine(m.get("name") + "  ·  score " + m.get("score"), UiStyles.TEXT, "text"));
+            }
+            profileSection(body, "Recently viewed");
+            for (java.util.Map<String, String> l : sync.recentListings()) {
+                body.add(profileLine(l.get("name") + " — " + l.getOrDefault("skills", "").replace(",", ", "), UiStyles.TEXT, "text"));
+            }
+            profileSection(body, "Messages");
+            for (java.util.Map<String, String> m : sync.messages(5)) {
+                body.add(profileLine(m.get("from") + ": " + m.get("text"), UiStyles.TEXT, "text"));
+            }
+        }
+        body.revalidate();
+        body.repaint();
+
+        String problem = sync.problem();
+        long synced = sync.lastSynced();
+        if (sync.account() == null) status.setText(" ");
+        else if (problem != null) status.setText("Offline — showing saved data (" + problem + ")");
+        else if (synced == 0) status.setText("Syncing…");
+        else status.setText("Synced " + java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(synced), java.time.ZoneId.systemDefault())
+                .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+        PROFILE_RENDER.record(System.nanoTime() - t0);
+    }
+
+    private void profileSection(JPanel body, String title) {
+        body.add(Box.createVerticalStrut(14));
+        body.add(profileLine(title, UiStyles.CARD_TITLE, "accent"));
+    }
+
+    private JLabel profileLine(String text, Font font, String color) {
+        JLabel l = theme.foreground(new JLabel(text), color);
+        l.putClientProperty("html.disable", Boolean.TRUE); // names and messages come from other members
+        l.setFont(font);
+        l.setBorder(new EmptyBorder(2, 0, 2, 0));
+        return l;
+    }
+
     // ----- Footer -----
     private JPanel createFooter() {
         JPanel f = new JPanel(new BorderLayout());
-        f.setBackground(new Color(18, 18, 22));
+        theme.background(f, "footer");
         f.setBorder(new EmptyBorder(10, 20, 10, 20));
         JLabel left = new JLabel("©️ 2025 SkillBarter | Desktop Website Edition");
-        left.setForeground(new Color(160, 160, 160));
+        theme.foreground(left, "text.faint");
 
         JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         right.setOpaque(false);
@@ -532,13 +800,452 @@ class MainWindow extends JFrame {
         return f;
     }
 
+    // ----- Matchmaking Dialog -----
+    private void showMatchmakingDialog() {
+        JTextField teaches = new JTextField();
+        JTextField learns = new JTextField();
+        JPanel form = new JPanel(new GridLayout(4, 1, 4, 4));
+        form.add(new JLabel("Skills you can teach (comma-separated):"));
+        form.add(teaches);
+        form.add(new JLabel("Skills you want to learn (comma-separated):"));
+        form.add(learns);
+        if (JOptionPane.showConfirmDialog(this, form, "Find skill partners", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) return;
+
+        java.util.List<String> t = SkillInterner.parseList(teaches.getText());
+        java.util.List<String> l = SkillInterner.parseList(learns.getText());
+        BackgroundTasks.task("matchmaking", progress -> {
+            StringBuilder sb = new StringBuilder("Direct swaps:\n");
+            ReviewService reviews = SkillBarterBackend.reviews();
+            java.util.List<SkillMatchEngine.Match> pairs = SkillBarterBackend.matches(t, l, 10);
+            if (pairs.isEmpty()) sb.append("- none yet\n");
+            for (SkillMatchEngine.Match m : pairs) sb.append("- ").append(m.name).append("  (").append(reviews.listed(m.name)).append(")\n");
+            sb.append("\nThree-way barters:\n");
+            java.util.List<String[]> cycles = SkillBarterBackend.matchEngine().barterCycles("You", t, l, 5);
+            if (cycles.isEmpty()) sb.append("- none yet\n");
+            for (String[] c : cycles) sb.append("- You → ").append(c[1]).append(" → ").append(c[2]).append(" → You\n");
+            return sb.toString();
+        }).timeout(5_000)
+          .onSuccess(text -> JOptionPane.showMessageDialog(this, text, "Skill Matchmaking", JOptionPane.INFORMATION_MESSAGE))
+          .onFailure(ex -> JOptionPane.showMessageDialog(this, "Matchmaking failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE))
+          .start();
+    }
+
+    // ----- Points Dialog -----
+    private void showPointsDialog() {
+        AuthService.Session session = requireSession("send or check points");
+        if (session == null) return;
+        JTextField to = new JTextField();
+        JTextField amount = new JTextField();
+        JPanel form = new JPanel(new GridLayout(5, 1, 4, 4));
+        form.add(new JLabel("Signed in as " + session.email));
+        form.add(new JLabel("Send points to (member's email; leave empty to check balance):")); form.add(to);
+        form.add(new JLabel("Points:")); form.add(amount);
+        if (JOptionPane.showConfirmDialog(this, form, "Points", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) return;
+
+        String account = session.email;
+        String target = to.getText().trim();
+        long points;
+        try {
+            points = target.isEmpty() ? 0 : Long.parseLong(amount.getText().trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Please enter a whole number of points.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        BackgroundTasks.task("points", progress -> {
+            long balance = target.isEmpty() ? SkillBarterBackend.ledger().balance(account)
+                    : SkillBarterBackend.transferPoints(account, target, points);
+            return "Balance for " + account + ": " + balance + " points";
+        }).slowNotice(3_000, stillWorking("The transfer"))
+          .onSuccess(text -> JOptionPane.showMessageDialog(this, text, "Points", JOptionPane.INFORMATION_MESSAGE))
+          .onFailure(ex -> JOptionPane.showMessageDialog(this, "Transfer failed: " + ex.getMessage(), "Points", JOptionPane.ERROR_MESSAGE))
+          .start();
+    }
+
+    /** The member signed in during this run, or null after asking them to log in. */
+    private AuthService.Session requireSession(String toDoWhat) {
+        AuthService.Session s = SkillBarterBackend.clientSync().session();
+        if (s == null) JOptionPane.showMessageDialog(this, "Please log in to " + toDoWhat + ".", "Login required", JOptionPane.WARNING_MESSAGE);
+        return s;
+    }
+
+    // Shown when a write takes long; it is not cancelled, and its result still follows
+    private Runnable stillWorking(String what) {
+        return () -> {
+            JDialog d = new JOptionPane(what + " is taking longer than usual. It will finish in the background.",
+                    JOptionPane.INFORMATION_MESSAGE).createDialog(this, "Still working");
+            d.setModal(false);
+            d.setVisible(true);
+        };
+    }
+
+    // ----- Scheduler Dialog -----
+    private void showSchedulerDialog() {
+        // Members book their own sessions and set only their own time zone
+        AuthService.Session session = requireSession("book a session");
+        if (session == null) return;
+        JComboBox<String> role = new JComboBox<>(new String[] {"I teach", "I learn"});
+        JTextField partner = new JTextField();
+        JTextField topic = new JTextField();
+        JTextField when = new JTextField(java.time.LocalDateTime.now().plusDays(1).withMinute(0).withSecond(0).withNano(0)
+                .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+        JSpinner minutes = new JSpinner(new SpinnerNumberModel(60, 15, 480, 15));
+        JComboBox<String> zone = new JComboBox<>(new java.util.TreeSet<>(java.time.ZoneId.getAvailableZoneIds()).toArray(new String[0]));
+        zone.setSelectedItem(java.time.ZoneId.systemDefault().getId());
+
+        JPanel form = new JPanel(new GridLayout(7, 2, 6, 6));
+        form.add(new JLabel("Signed in as:")); form.add(new JLabel(session.email));
+        form.add(new JLabel("In this session:")); form.add(role);
+        form.add(new JLabel("Other member (email):")); form.add(partner);
+        form.add(new JLabel("Topic:")); form.add(topic);
+        form.add(new JLabel("Start (yyyy-MM-dd HH:mm):")); form.add(when);
+        form.add(new JLabel("Length (minutes):")); form.add(minutes);
+        form.add(new JLabel("Your time zone:")); form.add(zone);
+        if (JOptionPane.showConfirmDialog(this, form, "Book a session", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) return;
+
+        String self = session.email, other = AuthService.canonicalEmail(partner.getText());
+        if (other.isEmpty() || other.equals(self)) {
+            JOptionPane.showMessageDialog(this, "Please enter the email of another member.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        boolean teaching = role.getSelectedIndex() == 0;
+        String teacher = teaching ? self : other, learner = teaching ? other : self;
+        java.time.ZoneId tz = java.time.ZoneId.of((String) zone.getSelectedItem());
+        java.time.Instant start;
+        try {
+            start = java.time.LocalDateTime.parse(when.getText().trim(), java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))
+                    .atZone(tz).toInstant();
+        } catch (java.time.format.DateTimeParseException ex) {
+            JOptionPane.showMessageDialog(this, "Please use the format yyyy-MM-dd HH:mm.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        java.time.Duration length = java.time.Duration.ofMinutes((Integer) minutes.getValue());
+        BackgroundTasks.task("booking", progress -> {
+            SessionScheduler scheduler = SkillBarterBackend.scheduler();
+            scheduler.setZone(self, tz);
+            try {
+                long t0 = System.nanoTime();
+                SessionScheduler.Booking b = scheduler.book(teacher, learner, topic.getText().trim(), start, length);
+                SkillBarterBackend.analytics().record(AnalyticsStore.EventType.BOOKING, learner, System.nanoTime() - t0);
+                return "Booked: " + scheduler.describe(b, self);
+            } catch (SessionScheduler.ConflictException ex) {
+                StringBuilder sb = new StringBuilder(ex.getMessage()).append(".\n\nFree for both in the next week:\n");
+                java.time.format.DateTimeFormatter f = java.time.format.DateTimeFormatter.ofPattern("EEE d MMM, HH:mm");
+                for (java.time.Instant slot : scheduler.mutualFreeSlots(teacher, learner, start,
+                        start.plus(java.time.Duration.ofDays(7)), length, 5)) {
+                    sb.append("- ").append(f.format(slot.atZone(tz))).append('\n');
+                }
+                return sb.toString();
+            }
+        }).slowNotice(3_000, stillWorking("The booking"))
+          .onSuccess(text -> JOptionPane.showMessageDialog(this, text, "Scheduler", JOptionPane.INFORMATION_MESSAGE))
+          .onFailure(ex -> JOptionPane.showMessageDialog(this, "Booking failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE))
+          .start();
+    }
+
+    // ----- Feedback Dialog -----
+    private void showFeedbackDialog() {
+        AuthService.Session session = requireSession("rate a swap");
+        if (session == null) return;
+        JTextField member = new JTextField();
+        JTextField skill = new JTextField();
+        JComboBox<Integer> stars = new JComboBox<>(new Integer[] {5, 4, 3, 2, 1});
+        JTextArea comment = new JTextArea(4, 24);
+        comment.setLineWrap(true);
+        comment.setWrapStyleWord(true);
+        JPanel form = new JPanel(new GridLayout(5, 2, 6, 6));
+        form.add(new JLabel("Signed in as:")); form.add(new JLabel(session.email));
+        form.add(new JLabel("Member you swapped with (email):")); form.add(member);
+        form.add(new JLabel("Skill (optional):")); form.add(skill);
+        form.add(new JLabel("Stars:")); form.add(stars);
+        form.add(new JLabel("Comment (optional):")); form.add(new JScrollPane(comment));
+        if (JOptionPane.showConfirmDialog(this, form, "Rate a swap", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) return;
+
+        String reviewer = session.email, subject = AuthService.canonicalEmail(member.getText());
+        if (subject.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter the member's email.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        BackgroundTasks.task("review", progress -> {
+            ReviewService reviews = SkillBarterBackend.reviews();
+            ReviewService.Review r = SkillBarterBackend.submitReview(reviewer, subject, skill.getText(), (Integer) stars.getSelectedItem(), comment.getText());
+            String text = "Thanks! " + r.subjectName + " now has " + reviews.member(subject) + ".";
+            if (!skill.getText().trim().isEmpty()) {
+                text += "\nFor " + skill.getText().trim() + ": " + reviews.skill(subject, skill.getText()) + ".";
+            }
+            return text;
+        }).slowNotice(3_000, stillWorking("Saving your review"))
+          .onSuccess(text -> JOptionPane.showMessageDialog(this, text, "Feedback", JOptionPane.INFORMATION_MESSAGE))
+          .onFailure(ex -> JOptionPane.showMessageDialog(this, "Review not saved: " + ex.getMessage(), "Feedback", JOptionPane.ERROR_MESSAGE))
+          .start();
+    }
+
+    // ----- Chat Dialog -----
+    private void showChatDialog() {
+        // Only the members of a conversation may read or post in it, as MessageServer enforces
+        AuthService.Session session = requireSession("chat");
+        if (session == null) return;
+        JTextField partner = new JTextField();
+        JPanel form = new JPanel(new GridLayout(3, 1, 4, 4));
+        form.add(new JLabel("Signed in as " + session.email));
+        form.add(new JLabel("Chat with (email):")); form.add(partner);
+        if (JOptionPane.showConfirmDialog(this, form, "Open a chat", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) return;
+        String sender = session.email, other = AuthService.canonicalEmail(partner.getText());
+        if (other.isEmpty() || other.equals(sender)) {
+            JOptionPane.showMessageDialog(this, "Please enter the email of another member.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String conversation = MessageBroker.conversationId(sender, other);
+
+        JDialog dialog = new JDialog(this, "Chat — " + other, false);
+        JTextArea transcript = new JTextArea(16, 40);
+        transcript.setEditable(false);
+        transcript.setLineWrap(true);
+        transcript.setWrapStyleWord(true);
+        theme.background(transcript, "surface");
+        theme.foreground(transcript, "text");
+        JTextField input = new JTextField();
+        JButton send = new JButton("Send");
+        JPanel bottom = new JPanel(new BorderLayout(6, 0));
+        bottom.add(input, BorderLayout.CENTER);
+        bottom.add(send, BorderLayout.EAST);
+        dialog.getContentPane().add(new JScrollPane(transcript), BorderLayout.CENTER);
+        dialog.getContentPane().add(bottom, BorderLayout.SOUTH);
+
+        // Messages arrive on the broker thread; collect them and append in one EDT pass
+        java.util.concurrent.ConcurrentLinkedQueue<MessageBroker.Message> inbox = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        java.util.concurrent.atomic.AtomicBoolean drainQueued = new java.util.concurrent.atomic.AtomicBoolean();
+        java.time.format.DateTimeFormatter time = java.time.format.DateTimeFormatter.ofPattern("HH:mm")
+                .withZone(java.time.ZoneId.systemDefault());
+        MessageBroker.Subscriber onMessage = m -> {
+            inbox.add(m);
+            if (drainQueued.compareAndSet(false, true)) SwingUtilities.invokeLater(() -> {
+                drainQueued.set(false);
+                StringBuilder sb = new StringBuilder();
+                for (MessageBroker.Message msg; (msg = inbox.poll()) != null; ) {
+                    sb.append('[').append(time.format(java.time.Instant.ofEpochMilli(msg.timestamp))).append("] ")
+                      .append(msg.sender.equals(sender) ? "You" : msg.sender).append(": ").append(msg.body).append('\n');
+                }
+                transcript.append(sb.toString());
+                transcript.setCaretPosition(transcript.getDocument().getLength());
+            });
+        };
+
+        java.util.concurrent.atomic.AtomicReference<MessageBroker.Subscription> subscription = new java.util.concurrent.atomic.AtomicReference<>();
+        BackgroundTasks.task("chat.open", progress -> SkillBarterBackend.messageBroker().subscribe(conversation, 0, onMessage))
+                .onSuccess(sub -> {
+                    if (dialog.isDisplayable()) subscription.set(sub);
+                    else sub.close();
+                })
+                .onFailure(ex -> transcript.append("Could not load the conversation: " + ex.getMessage() + "\n"))
+                .start();
+
+        ActionListener post = e -> {
+            String text = input.getText().trim();
+            if (text.isEmpty()) return;
+            if (SkillBarterBackend.clientSync().session() != session) {
+                JOptionPane.showMessageDialog(dialog, "Your session has ended. Log in again to keep chatting.", "Chat", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            input.setText("");
+            BackgroundTasks.task("chat.send", progress -> {
+                SkillBarterBackend.messageBroker().publish(conversation, sender, text);
+                return null;
+            }).onFailure(ex -> {
+                input.setText(text);
+                JOptionPane.showMessageDialog(dialog, "Message not sent: " + ex.getMessage(), "Chat", JOptionPane.ERROR_MESSAGE);
+            }).start();
+        };
+        send.addActionListener(post);
+        input.addActionListener(post);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                MessageBroker.Subscription sub = subscription.getAndSet(null);
+                if (sub != null) sub.close();
+            }
+        });
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    // ----- Analytics Dialog -----
+    // Totals per event type for the chosen range, plus a per-bucket chart of the selected type.
+    // The admin console adds the process metrics.
+    private void showAnalyticsDialog(boolean admin) {
+        String[] ranges = {"Last hour", "Last 24 hours", "Last 7 days", "Last 90 days"};
+        long[] rangeMillis = {3_600_000L, 86_400_000L, 7 * 86_400_000L, 90 * 86_400_000L};
+        JComboBox<String> range = new JComboBox<>(ranges);
+        range.setSelectedIndex(1);
+        javax.swing.table.DefaultTableModel model = new javax.swing.table.DefaultTableModel(
+                new Object[] {"Event", "Count", "Unique users", "p50 ms", "p99 ms"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JLabel status = new JLabel(" ");
+        theme.foreground(status, "text.faint");
+
+        java.util.List<AnalyticsStore.Point> series = new java.util.ArrayList<>();
+        JPanel chart = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                long t0 = System.nanoTime();
+                super.paintComponent(g);
+                long peak = 1;
+                for (AnalyticsStore.Point p : series) peak = Math.max(peak, p.count);
+                int n = Math.max(1, series.size()), w = getWidth() - 8, h = getHeight() - 8;
+                g.setColor(theme.color("accent"));
+                for (int i = 0; i < series.size(); i++) {
+                    int bh = (int) (h * series.get(i).count / peak);
+                    g.fillRect(4 + i * w / n, 4 + h - bh, Math.max(1, w / n - 1), bh);
+                }
+                RenderCache.recordPaint(CHART_PAINT, "analyticsChart", t0);
+            }
+        };
+        chart.setPreferredSize(new Dimension(520, 120));
+        theme.background(chart, "surface");
+
+        // A newer range or row supersedes the load in flight, so a slow old result cannot overwrite it
+        java.util.concurrent.atomic.AtomicReference<BackgroundTasks.Task<Object[]>> loading = new java.util.concurrent.atomic.AtomicReference<>();
+        Runnable reload = () -> {
+            long span = rangeMillis[range.getSelectedIndex()];
+            int row = Math.max(0, table.getSelectedRow());
+            AnalyticsStore.EventType selected = AnalyticsStore.EventType.values()[row];
+            status.setText("Loading…");
+            BackgroundTasks.Task<Object[]> task = BackgroundTasks.task("analytics", progress -> {
+                AnalyticsStore store = SkillBarterBackend.analytics();
+                long now = System.currentTimeMillis(), t0 = System.nanoTime();
+                AnalyticsStore.Resolution res = AnalyticsStore.resolutionFor(span);
+                java.util.List<AnalyticsStore.Point> totals = new java.util.ArrayList<>();
+                for (AnalyticsStore.EventType t : AnalyticsStore.EventType.values()) totals.add(store.total(t, res, now - span, now + 1));
+                java.util.List<AnalyticsStore.Point> points = store.series(selected, res, now - span, now + 1);
+                return new Object[] {totals, points, res, (System.nanoTime() - t0) / 1_000_000};
+            }).timeout(5_000)
+              .onSuccess(r -> {
+                  @SuppressWarnings("unchecked")
+                  java.util.List<AnalyticsStore.Point> totals = (java.util.List<AnalyticsStore.Point>) r[0];
+                  @SuppressWarnings("unchecked")
+                  java.util.List<AnalyticsStore.Point> points = (java.util.List<AnalyticsStore.Point>) r[1];
+                  model.setRowCount(0);
+                  AnalyticsStore.EventType[] types = AnalyticsStore.EventType.values();
+                  for (int i = 0; i < types.length; i++) {
+                      AnalyticsStore.Point p = totals.get(i);
+                      model.addRow(new Object[] {types[i].label, p.count, p.users,
+                              Double.isNaN(p.p50Millis) ? "–" : String.format("%.1f", p.p50Millis),
+                              Double.isNaN(p.p99Millis) ? "–" : String.format("%.1f", p.p99Millis)});
+                  }
+                  table.getSelectionModel().setSelectionInterval(row, row);
+                  series.clear();
+                  series.addAll(points);
+                  chart.repaint();
+                  status.setText(selected.label + " per " + r[2].toString().toLowerCase() + " (UTC) · loaded in " + r[3] + " ms");
+              })
+              .onFailure(ex -> status.setText("Could not load analytics: " + ex.getMessage()));
+            BackgroundTasks.Task<Object[]> previous = loading.getAndSet(task);
+            if (previous != null) previous.cancel();
+            task.start();
+        };
+        range.addActionListener(e -> reload.run());
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                reload.run();
+            }
+        });
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Range:"));
+        top.add(range);
+        JPanel usage = new JPanel(new BorderLayout(0, 6));
+        usage.add(top, BorderLayout.NORTH);
+        JScrollPane tableScroll = new JScrollPane(table);
+        tableScroll.setPreferredSize(new Dimension(520, 130));
+        usage.add(tableScroll, BorderLayout.CENTER);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(chart, BorderLayout.CENTER);
+        bottom.add(status, BorderLayout.SOUTH);
+        usage.add(bottom, BorderLayout.SOUTH);
+
+        JDialog dialog = new JDialog(this, admin ? "Admin Console" : "Analytics", false);
+        if (admin) {
+            java.util.function.Supplier<String> runtime = () -> {
+                StringBuilder sb = new StringBuilder(Metrics.summary()).append("\nSlow EDT dispatches (over ")
+                        .append(InstrumentedEventQueue.SLOW_MILLIS).append(" ms) by culprit:\n");
+                InstrumentedEventQueue.slowListeners().forEach((site, n) -> sb.append(n).append("  ").append(site).append('\n'));
+                return sb.toString();
+            };
+            JTextArea metrics = new JTextArea(runtime.get(), 14, 60);
+            metrics.setEditable(false);
+            metrics.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            JTabbedPane tabs = new JTabbedPane();
+            tabs.addTab("Usage", usage);
+            tabs.addTab("Runtime metrics", new JScrollPane(metrics));
+            tabs.addChangeListener(e -> metrics.setText(runtime.get()));
+            dialog.getContentPane().add(tabs);
+        } else {
+            dialog.getContentPane().add(usage);
+        }
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                BackgroundTasks.Task<Object[]> task = loading.getAndSet(null);
+                if (task != null) task.cancel();
+            }
+        });
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        reload.run();
+    }
+
     // ----- Search Dialog -----
+    // Shows the cached results of the same search at once, then replaces them with fresh ones
     private void showSearchDialog() {
         String q = JOptionPane.showInputDialog(this, "Search for skills, topics or users:");
-        if (q != null) {
-            // naive search simulation: show a small results dialog
-            JOptionPane.showMessageDialog(this, "Search results for: " + q + "\n\n- UI Design\n- Java Swing\n- Photography");
-        }
+        if (q == null || q.trim().isEmpty()) return;
+        ClientSync sync = SkillBarterBackend.clientSync();
+        java.util.List<String> cached = sync.cachedSearch(q);
+        JTextArea results = new JTextArea(searchText(q, cached, cached == null ? "Searching…" : "Saved results; refreshing…"), 14, 48);
+        results.setEditable(false);
+        results.setLineWrap(true);
+        results.setWrapStyleWord(true);
+        JOptionPane pane = new JOptionPane(new JScrollPane(results), JOptionPane.INFORMATION_MESSAGE);
+        JDialog dialog = pane.createDialog(this, "Search");
+        dialog.setModal(false);
+        dialog.setVisible(true);
+        // Query runs on a worker thread; results are shown back on the EDT
+        BackgroundTasks.task("search", progress -> SkillBarterBackend.search(q, 10))
+                .timeout(2_000)
+                .onSuccess(hits -> {
+                    java.util.List<String> lines = new java.util.ArrayList<>();
+                    for (SkillSearchIndex.Hit h : hits) lines.add(h.listing.toString());
+                    sync.searched(q, lines);
+                    results.setText(searchText(q, lines, null));
+                    results.setCaretPosition(0);
+                })
+                .onFailure(ex -> results.setText(searchText(q, cached, "Search failed: " + ex.getMessage()
+                        + (cached == null ? "" : " Showing saved results."))))
+                .start();
+    }
+
+    private static String searchText(String q, java.util.List<String> lines, String note) {
+        StringBuilder sb = new StringBuilder("Search results for: " + q + "\n");
+        if (note != null) sb.append(note).append('\n');
+        sb.append('\n');
+        if (lines != null && lines.isEmpty()) sb.append("No matching skills or users.");
+        if (lines != null) for (String line : lines) sb.append("- ").append(line).append('\n');
+        return sb.toString();
     }
 
 }
@@ -563,12 +1270,31 @@ class LoginDialog extends JDialog {
 
         JButton login = new JButton("Login");
         login.addActionListener(e -> {
-            if (email.getText().contains("@") && pass.getPassword().length>0) {
-                JOptionPane.showMessageDialog(this, "Login successful (demo). Welcome!");
-                dispose();
-            } else {
-                JOptionPane.showMessageDialog(this, "Please enter valid credentials.", "Error", JOptionPane.ERROR_MESSAGE);
+            String problem = AuthService.validateLogin(email.getText(), pass.getPassword());
+            if (problem != null) {
+                JOptionPane.showMessageDialog(this, problem, "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+            String em = email.getText();
+            char[] pw = pass.getPassword();
+            boolean keep = remember.isSelected();
+            login.setEnabled(false);
+            // Password hashing is deliberately slow, so it never runs on the EDT
+            BackgroundTasks.task("login", progress -> SkillBarterBackend.clientSync().login(em, pw, keep))
+                    .slowNotice(5_000, () -> login.setText("Still checking…"))
+                    .onSuccess(session -> {
+                        SkillBarterBackend.clientSync().signedIn(session, keep);
+                        login.setText("Login");
+                        login.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, "Login successful. Welcome!");
+                        dispose();
+                    })
+                    .onFailure(ex -> {
+                        login.setText("Login");
+                        login.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, ex.getMessage(), "Login failed", JOptionPane.ERROR_MESSAGE);
+                    })
+                    .start();
         });
         form.add(login);
 
@@ -580,7 +1306,7 @@ class LoginDialog extends JDialog {
 class RegisterDialog extends JDialog {
     RegisterDialog(JFrame parent) {
         super(parent, "Create an account", true);
-        setSize(480, 360);
+        setSize(480, 440);
         setLocationRelativeTo(parent);
         setLayout(new BorderLayout());
 
@@ -598,19 +1324,48 @@ class RegisterDialog extends JDialog {
 
         gbc.gridx=0; gbc.gridy=3; form.add(new JLabel("Skills (comma-separated):"), gbc);
         gbc.gridx=1; gbc.gridy=3; JTextField skills = new JTextField(); form.add(skills, gbc);
+        gbc.gridx=0; gbc.gridy=4; form.add(new JLabel("Wants to learn (comma-separated):"), gbc);
+        gbc.gridx=1; gbc.gridy=4; JTextField learns = new JTextField(); form.add(learns, gbc);
 
         JButton create = new JButton("Create Account");
         create.addActionListener(e -> {
-            if (name.getText().trim().isEmpty() || !email.getText().contains("@") || pass.getPassword().length<6) {
-                JOptionPane.showMessageDialog(this, "Please provide valid details. Password must be 6+ chars.", "Validation", JOptionPane.WARNING_MESSAGE);
+            String problem = AuthService.validateRegistration(name.getText(), email.getText(), pass.getPassword());
+            if (problem != null) {
+                JOptionPane.showMessageDialog(this, problem, "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            // In a real app, we'd call backend; here we just show a brief success and close.
-            JOptionPane.showMessageDialog(this, "Account created (demo). Welcome, " + name.getText());
-            dispose();
+            // Save, then make the new member searchable and matchable right away (all off the EDT)
+            String fullName = name.getText().trim();
+            String em = email.getText();
+            char[] pw = pass.getPassword();
+            java.util.List<String> typedSkills = SkillInterner.parseList(skills.getText());
+            java.util.List<String> typedLearns = SkillInterner.parseList(learns.getText());
+            create.setEnabled(false);
+            BackgroundTasks.task("register", progress -> SkillBarterBackend.clientSync().register(fullName, em, pw, typedSkills, typedLearns))
+              .slowNotice(5_000, () -> create.setText("Still creating…"))
+              .onSuccess(session -> {
+                  SkillBarterBackend.clientSync().signedIn(session, false);
+                  JOptionPane.showMessageDialog(this, "Account created. Welcome, " + fullName);
+                  dispose();
+              })
+              .onFailure(ex -> {
+                  create.setText("Create Account");
+                  create.setEnabled(true);
+                  JOptionPane.showMessageDialog(this, "Could not create account: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+              })
+              .start();
         });
 
-        gbc.gridx=1; gbc.gridy=4; form.add(create, gbc);
+        gbc.gridx=1; gbc.gridy=5; form.add(create, gbc);
+
+        // The taxonomy and member counts load off the EDT; suggestions appear once they are ready
+        BackgroundTasks.task("skills", progress -> {
+            SkillBarterBackend.matchEngine();
+            return SkillBarterBackend.taxonomy();
+        }).onSuccess(taxonomy -> {
+            SkillAutocomplete.install(skills, taxonomy);
+            SkillAutocomplete.install(learns, taxonomy);
+        }).start();
 
         add(form, BorderLayout.CENTER);
     }
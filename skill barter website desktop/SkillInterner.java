@@ -0,0 +1,80 @@
+import java.util.*;
+
+/**
+ * SkillInterner.java
+ *
+ * Maps skill names to dense int IDs so matching can work on primitive arrays
+ * instead of comparing strings. Names are compared case- and whitespace-insensitively.
+ */
+class SkillInterner {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    /** Returns the ID for a skill, assigning a new one on first sight. */
+    synchronized int intern(String skill) {
+        String key = canonical(skill);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = names.size();
+            ids.put(key, id);
+            names.add(skill.trim());
+        }
+        return id;
+    }
+
+    /** Returns the ID for a known skill, or -1; never grows the table. */
+    synchronized int lookup(String skill) {
+        Integer id = ids.get(canonical(skill));
+        return id == null ? -1 : id;
+    }
+
+    synchronized String name(int id) {
+        return names.get(id);
+    }
+
+    synchronized int size() {
+        return names.size();
+    }
+
+    /** Interns every skill and returns the distinct IDs, sorted. */
+    int[] internAll(Collection<String> skills) {
+        int[] out = new int[skills.size()];
+        int n = 0;
+        for (String s : skills) out[n++] = intern(s);
+        return sortedDistinct(out, n);
+    }
+
+    /** Looks up known skills only and returns their distinct IDs, sorted. */
+    int[] lookupAll(Collection<String> skills) {
+        int[] out = new int[skills.size()];
+        int n = 0;
+        for (String s : skills) {
+            int id = lookup(s);
+            if (id >= 0) out[n++] = id;
+        }
+        return sortedDistinct(out, n);
+    }
+
+    static String canonical(String skill) {
+        return skill.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /** Splits the comma-separated text typed into RegisterDialog, dropping blanks. */
+    static List<String> parseList(String text) {
+        ArrayList<String> out = new ArrayList<>();
+        if (text == null) return out;
+        for (String s : text.split(",")) {
+            if (!s.trim().isEmpty()) out.add(s.trim());
+        }
+        return out;
+    }
+
+    private static int[] sortedDistinct(int[] a, int n) {
+        Arrays.sort(a, 0, n);
+        int w = 0;
+        for (int i = 0; i < n; i++) {
+            if (w == 0 || a[w - 1] != a[i]) a[w++] = a[i];
+        }
+        return Arrays.copyOf(a, w);
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SkillMatchEngine.java
+ *
+ * Complementary-skill matchmaking behind the "AI Skill Matchmaking" and "Recommender" cards.
+ * Each member teaches some skills and wants to learn others; skills are interned to int IDs
+ * and kept as sorted primitive arrays. A query member's sets are expanded into bitsets, and
+ * every candidate is scored in parallel on the common fork-join pool.
+ *
+ * Besides direct pairs (A teaches B and B teaches A) the engine finds three-way barter
+ * cycles (A teaches B, B teaches C, C teaches A) through per-skill learner/teacher lists.
+ */
+class SkillMatchEngine {
+    private static final int CHUNK = 8192;
+    private static final int MAX_CYCLE_WORK = 2_000_000;
+
+    /**
+     * Scores a candidate for a member. {@code gives} is how many of the member's skills
+     * the candidate wants to learn, {@code gets} how many of the candidate's skills the
+     * member wants. Return a value {@code <= 0} to reject the candidate.
+     */
+    interface MatchScorer {
+        double score(int member, int candidate, int gives, int gets);
+    }
+
+    /** Both sides must gain something; balanced swaps rank above lopsided ones. */
+    static final MatchScorer RECIPROCAL = (member, candidate, gives, gets) ->
+            gives == 0 || gets == 0 ? 0 : 2.0 * gives * gets / (gives + gets) + 0.01 * (gives + gets);
+
+    /** Anyone who can teach the member something, whether or not they want anything back. */
+    static final MatchScorer LEARN_ONLY = (member, candidate, gives, gets) -> gets + 0.1 * gives;
+
+    /**
+     * Wraps a scorer so accepted candidates are multiplied by a per-name factor (e.g. their
+     * review score); rejections stay rejections. The factor is looked up once per candidate.
+     */
+    MatchScorer weighted(MatchScorer base, java.util.function.ToDoubleFunction<String> factor) {
+        return (member, candidate, gives, gets) -> {
+            double s = base.score(member, candidate, gives, gets);
+            return s <= 0 ? s : s * factor.applyAsDouble(names[candidate]);
+        };
+    }
+
+    static final class Match {
+        final String name;
+        final double score;
+
+        Match(String name, double score) {
+            this.name = name;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final SkillInterner skills;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private String[] names = new String[16];
+    private int[][] teach = new int[16][];
+    private int[][] learn = new int[16][];
+    private int size;
+    // Per skill ID: members who teach it / want to learn it
+    private final ArrayList<int[]> teachers = new ArrayList<>();
+    private final ArrayList<int[]> learners = new ArrayList<>();
+    private final ArrayList<Integer> teacherCounts = new ArrayList<>();
+    private final ArrayList<Integer> learnerCounts = new ArrayList<>();
+
+    SkillMatchEngine(SkillInterner skills) {
+        this.skills = skills;
+    }
+
+    SkillInterner skills() {
+        return skills;
+    }
+
+    /** Registers a member and returns their index. */
+    int addMember(String name, Collection<String> teaches, Collection<String> wantsToLearn) {
+        int[] t = skills.internAll(teaches);
+        int[] l = skills.internAll(wantsToLearn);
+        lock.writeLock().lock();
+        try {
+            if (size == names.length) {
+                int cap = size * 2;
+                names = Arrays.copyOf(names, cap);
+                teach = Arrays.copyOf(teach, cap);
+                learn = Arrays.copyOf(learn, cap);
+            }
+            int id = size++;
+            names[id] = name;
+            teach[id] = t;
+            learn[id] = l;
+            for (int s : t) append(teachers, teacherCounts, s, id);
+            for (int s : l) append(learners, learnerCounts, s, id);
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try { return size; }
+        finally { lock.readLock().unlock(); }
+    }
+
+    String name(int member) {
+        lock.readLock().lock();
+        try { return names[member]; }
+        finally { lock.readLock().unlock(); }
+    }
+
+    /** Top-k partners for a registered member. */
+    List<Match> topMatches(int member, int k, MatchScorer scorer) {
+        lock.readLock().lock();
+        try {
+            return rank(member, teach[member], learn[member], k, scorer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Top-k partners for an ad-hoc profile (e.g. a visitor who has not registered yet). */
+    List<Match> topMatches(Collection<String> teaches, Collection<String> wantsToLearn, int k, MatchScorer scorer) {
+        int[] t = skills.lookupAll(teaches);
+        int[] l = skills.lookupAll(wantsToLearn);
+        lock.readLock().lock();
+        try {
+            return rank(-1, t, l, k, scorer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock
+    private List<Match> rank(int member, int[] memberTeach, int[] memberLearn, int k, MatchScorer scorer) {
+        if (k <= 0 || size == 0) return Collections.emptyList();
+        int universe = skills.size();
+        long[] teachBits = toBits(memberTeach, universe);
+        long[] learnBits = toBits(memberLearn, universe);
+
+        TopK top = ForkJoinPool.commonPool().invoke(
+                new RankTask(member, teachBits, learnBits, 0, size, k, scorer));
+        ArrayList<Match> out = new ArrayList<>(top.count);
+        for (int i : top.sortedIndexes()) out.add(new Match(names[top.ids[i]], top.scores[i]));
+        return out;
+    }
+
+    private final class RankTask extends RecursiveTask<TopK> {
+        private final int member;
+        private final long[] teachBits, learnBits;
+        private final int from, to, k;
+        private final MatchScorer scorer;
+
+        RankTask(int member, long[] teachBits, long[] learnBits, int from, int to, int k, MatchScorer scorer) {
+            this.member = member;
+            this.teachBits = teachBits;
+            this.learnBits = learnBits;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.scorer = scorer;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                RankTask left = new RankTask(member, teachBits, learnBits, from, mid, k, scorer);
+                left.fork();
+                TopK right = new RankTask(member, teachBits, learnBits, mid, to, k, scorer).compute();
+                return left.join().merge(right);
+            }
+            TopK top = new TopK(k);
+            for (int c = from; c < to; c++) {
+                if (c == member) continue;
+                int gives = countIn(learn[c], teachBits);
+                int gets = countIn(teach[c], learnBits);
+                if (gives == 0 && gets == 0) continue;
+                double s = scorer.score(member, c, gives, gets);
+                if (s > 0) top.offer(c, s);
+            }
+            return top;
+        }
+    }
+
+    /**
+     * Three-way barter cycles starting at a registered member: each entry is
+     * {member, b, c} where the member teaches b, b teaches c and c teaches the member.
+     */
+    List<String[]> barterCycles(int member, int limit) {
+        lock.readLock().lock();
+        try {
+            return cycles(member, teach[member], learn[member], limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Cycles for an ad-hoc profile; the first name in each entry is {@code self}. */
+    List<String[]> barterCycles(String self, Collection<String> teaches, Collection<String> wantsToLearn, int limit) {
+        int[] t = skills.lookupAll(teaches);
+        int[] l = skills.lookupAll(wantsToLearn);
+        lock.readLock().lock();
+        try {
+            List<String[]> out = cycles(-1, t, l, limit);
+            for (String[] c : out) c[0] = self;
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock
+    private List<String[]> cycles(int a, int[] aTeach, int[] aLearn, int limit) {
+        ArrayList<String[]> out = new ArrayList<>();
+        if (limit <= 0 || size == 0) return out;
+
+        // Everyone who can close the cycle by teaching A something
+        long[] closers = new long[(size + 63) >>> 6];
+        for (int s : aLearn) {
+            int[] list = skillList(teachers, s);
+            for (int i = 0, n = skillCount(teacherCounts, s); i < n; i++) closers[list[i] >>> 6] |= 1L << list[i];
+        }
+
+        long[] seenB = new long[closers.length];
+        long[] seenPair = new long[closers.length];
+        int[] pairs = new int[16];
+        int work = 0;
+        for (int s : aTeach) {
+            int[] bs = skillList(learners, s);
+            for (int i = 0, nb = skillCount(learnerCounts, s); i < nb; i++) {
+                int b = bs[i];
+                if (b == a || (seenB[b >>> 6] & (1L << b)) != 0) continue;
+                seenB[b >>> 6] |= 1L << b;
+                int pairCount = 0;
+                for (int bt : teach[b]) {
+                    int[] cs = skillList(learners, bt);
+                    for (int j = 0, nc = skillCount(learnerCounts, bt); j < nc; j++) {
+                        int c = cs[j];
+                        if (++work > MAX_CYCLE_WORK) return out;
+                        if (c == a || c == b || (closers[c >>> 6] & (1L << c)) == 0) continue;
+                        if ((seenPair[c >>> 6] & (1L << c)) != 0) continue;
+                        seenPair[c >>> 6] |= 1L << c;
+                        if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairCount * 2);
+                        pairs[pairCount++] = c;
+                        out.add(new String[] {a >= 0 ? names[a] : null, names[b], names[c]});
+                        if (out.size() >= limit) return out;
+                    }
+                }
+                for (int i2 = 0; i2 < pairCount; i2++) seenPair[pairs[i2] >>> 6] = 0L;
+            }
+        }
+        return out;
+    }
+
+    // ----- Primitive helpers -----
+    private static long[] toBits(int[] ids, int universe) {
+        long[] bits = new long[(universe + 63) >>> 6];
+        for (int id : ids) bits[id >>> 6] |= 1L << id;
+        return bits;
+    }
+
+    private static int countIn(int[] ids, long[] bits) {
+        int c = 0;
+        for (int id : ids) {
+            int w = id >>> 6;
+            if (w < bits.length && (bits[w] & (1L << id)) != 0) c++;
+        }
+        return c;
+    }
+
+    private static void append(ArrayList<int[]> lists, ArrayList<Integer> counts, int skill, int member) {
+        while (lists.size() <= skill) {
+            lists.add(new int[4]);
+            counts.add(0);
+        }
+        int[] list = lists.get(skill);
+        int n = counts.get(skill);
+        if (n == list.length) {
+            list = Arrays.copyOf(list, n * 2);
+            lists.set(skill, list);
+        }
+        list[n] = member;
+        counts.set(skill, n + 1);
+    }
+
+    private static int[] skillList(ArrayList<int[]> lists, int skill) {
+        return skill < lists.size() ? lists.get(skill) : new int[0];
+    }
+
+    private static int skillCount(ArrayList<Integer> counts, int skill) {
+        return skill < counts.size() ? counts.get(skill) : 0;
+    }
+
+    /** Fixed-capacity min-heap of (member, score) kept in primitive arrays. */
+    private static final class TopK {
+        final int[] ids;
+        final double[] scores;
+        int count;
+
+        TopK(int k) {
+            ids = new int[k];
+            scores = new double[k];
+        }
+
+        void offer(int id, double score) {
+            if (count < ids.length) {
+                ids[count] = id;
+                scores[count] = score;
+                siftUp(count++);
+            } else if (score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        TopK merge(TopK other) {
+            for (int i = 0; i < other.count; i++) offer(other.ids[i], other.scores[i]);
+            return this;
+        }
+
+        List<Integer> sortedIndexes() {
+            ArrayList<Integer> idx = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) idx.add(i);
+            idx.sort((x, y) -> Double.compare(scores[y], scores[x]));
+            return idx;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (scores[p] <= scores[i]) break;
+                swap(i, p);
+                i = p;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < count && scores[l] < scores[m]) m = l;
+                if (r < count && scores[r] < scores[m]) m = r;
+                if (m == i) return;
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int t = ids[a]; ids[a] = ids[b]; ids[b] = t;
+            double s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+        }
+    }
+}
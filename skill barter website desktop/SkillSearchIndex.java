@@ -0,0 +1,419 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SkillSearchIndex.java
+ *
+ * In-memory inverted index over users, skills and topics that backs the search dialog.
+ * Terms are kept in a sorted dictionary so a prefix query is a range scan, and typo
+ * tolerance comes from a deletion neighbourhood built over the skill and topic
+ * vocabulary (not the listings or the open-ended set of user names), so it stays
+ * small even with millions of listings.
+ *
+ * Readers never block each other; RegisterDialog adds listings incrementally under a
+ * short write lock. Callers are expected to run search() off the Event Dispatch Thread.
+ */
+class SkillSearchIndex {
+    static final int FIELD_NAME = 1;
+    static final int FIELD_SKILL = 2;
+    static final int FIELD_TOPIC = 4;
+
+    private static final float EXACT = 1.0f;
+    private static final float PREFIX = 0.6f;
+    private static final float FUZZY = 0.4f;
+    private static final int MAX_PREFIX_TERMS = 64;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int SCAN_BUDGET = 1 << 15;
+    private static final long LOOKUP_BUDGET = 1 << 18;
+    private static final int MIN_SCAN = 4096;
+    private static final int MAX_QUERY_TOKENS = 16;
+    // Searches are CPU-bound, so more than one buffer set per core would mostly sit idle
+    private static final int MAX_POOLED_SCRATCH = Runtime.getRuntime().availableProcessors();
+
+    /** One searchable listing: a user together with the skills and topics they offer. */
+    static final class Listing {
+        final int id;
+        final String userName;
+        final String[] skills;
+        final String[] topics;
+
+        Listing(int id, String userName, String[] skills, String[] topics) {
+            this.id = id;
+            this.userName = userName;
+            this.skills = skills;
+            this.topics = topics;
+        }
+
+        @Override
+        public String toString() {
+            return userName + " — " + String.join(", ", skills);
+        }
+    }
+
+    static final class Hit {
+        final Listing listing;
+        final float score;
+
+        Hit(Listing listing, float score) {
+            this.listing = listing;
+            this.score = score;
+        }
+    }
+
+    /** Scales a hit's relevance by something outside the text, such as review scores. Called per candidate, so keep it O(1). */
+    interface Quality {
+        float of(Listing listing);
+    }
+
+    /** Maps a query token that is a skill alias ("js") to the canonical skill name ("JavaScript"), or null. */
+    interface Synonyms {
+        String canonical(String token);
+    }
+
+    /** Growable doc-id list; each doc also carries a bitmask of the fields the term appeared in. */
+    private static final class Postings {
+        int[] docs = new int[4];
+        byte[] fields = new byte[4];
+        int size;
+        boolean fuzzy;
+
+        void add(int doc, int field) {
+            if (size > 0 && docs[size - 1] == doc) {
+                fields[size - 1] |= (byte) field;
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            docs[size] = doc;
+            fields[size] = (byte) field;
+            size++;
+        }
+    }
+
+    /** Scoring buffers, grown with the index and lent to one query at a time (see borrow()). */
+    private static final class Scratch {
+        float[] total = new float[0];
+        float[] best = new float[0];
+        byte[] matched = new byte[0];
+        int[] touched = new int[0];
+        int[] tokenTouched = new int[0];
+
+        void ensure(int n) {
+            if (total.length < n) {
+                int cap = Math.max(n, total.length * 2);
+                total = new float[cap];
+                best = new float[cap];
+                matched = new byte[cap];
+                touched = new int[cap];
+                tokenTouched = new int[cap];
+            }
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ArrayList<Listing> listings = new ArrayList<>();
+    private final HashMap<String, Listing> byName = new HashMap<>(); // newest listing per exact name
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final HashMap<String, List<String>> deletions = new HashMap<>();
+    // Pooled rather than per thread: virtual threads would each build their own n-sized buffers
+    private final ConcurrentLinkedQueue<Scratch> scratch = new ConcurrentLinkedQueue<>();
+    private volatile Quality quality;
+    private volatile Synonyms synonyms;
+
+    /** Sets (or with null, clears) the relevance multiplier applied to every search hit. */
+    void setQuality(Quality quality) {
+        this.quality = quality;
+    }
+
+    /** Sets (or with null, clears) the alias lookup applied to query tokens. */
+    void setSynonyms(Synonyms synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    /** Indexes a new listing and returns it; safe to call while searches are running. */
+    Listing add(String userName, Collection<String> skills, Collection<String> topics) {
+        lock.writeLock().lock();
+        try {
+            Listing l = new Listing(listings.size(), userName,
+                    skills.toArray(new String[0]), topics.toArray(new String[0]));
+            listings.add(l);
+            byName.put(userName, l);
+            indexText(l.id, userName, FIELD_NAME);
+            for (String s : l.skills) indexText(l.id, s, FIELD_SKILL);
+            for (String t : l.topics) indexText(l.id, t, FIELD_TOPIC);
+            return l;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** The newest listing under exactly this name, or null; a hash lookup, not a search. */
+    Listing named(String userName) {
+        lock.readLock().lock();
+        try { return byName.get(userName); }
+        finally { lock.readLock().unlock(); }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try { return listings.size(); }
+        finally { lock.readLock().unlock(); }
+    }
+
+    /** Listings with ids in [offset, offset + limit), in the order they were added. */
+    List<Listing> page(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = Math.min(Math.max(offset, 0), listings.size());
+            int to = Math.min(from + Math.max(limit, 0), listings.size());
+            return new ArrayList<>(listings.subList(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranked search. Every query token is matched exactly, by prefix and (for longer
+     * tokens) within one edit; a listing scores the best match per token weighted by
+     * IDF and field, scaled by the fraction of query tokens it covered.
+     *
+     * Latency is bounded by a posting budget: rare tokens are scanned first, and once
+     * the budget is spent a heavy term only re-scores listings already found (or, if
+     * nothing was found yet, its newest postings). Re-scoring has its own lookup
+     * budget; expansions that would exceed it are dropped.
+     */
+    List<Hit> search(String query, int limit) {
+        List<String> tokens = withSynonyms(tokenize(query));
+        if (tokens.isEmpty() || limit <= 0) return Collections.emptyList();
+        if (tokens.size() > MAX_QUERY_TOKENS) tokens = tokens.subList(0, MAX_QUERY_TOKENS);
+
+        lock.readLock().lock();
+        try {
+            int n = listings.size();
+            Scratch s = borrow(n);
+
+            List<List<Match>> expanded = new ArrayList<>(tokens.size());
+            for (String token : tokens) expanded.add(expand(token, n));
+            expanded.sort(Comparator.comparingLong(SkillSearchIndex::postingCount));
+
+            int touchedCount = 0;
+            int budget = SCAN_BUDGET;
+            long lookups = LOOKUP_BUDGET;
+            for (List<Match> matches : expanded) {
+                int tokenCount = 0;
+                for (Match m : matches) {
+                    Postings p = m.postings;
+                    if (p.size <= budget) {
+                        budget -= p.size;
+                        tokenCount = scan(p, 0, m.weight, s, tokenCount);
+                    } else if (touchedCount + tokenCount > 0) {
+                        budget = 0;
+                        long cost = (long) (touchedCount + tokenCount) * (32 - Integer.numberOfLeadingZeros(p.size));
+                        if (cost > lookups) continue;
+                        lookups -= cost;
+                        tokenCount = rescore(p, m.weight, s, touchedCount, tokenCount);
+                    } else {
+                        int from = Math.max(0, p.size - Math.max(budget, MIN_SCAN));
+                        budget = 0;
+                        tokenCount = scan(p, from, m.weight, s, tokenCount);
+                    }
+                }
+                for (int i = 0; i < tokenCount; i++) {
+                    int doc = s.tokenTouched[i];
+                    if (s.matched[doc] == 0) s.touched[touchedCount++] = doc;
+                    s.total[doc] += s.best[doc];
+                    s.matched[doc]++;
+                    s.best[doc] = 0f;
+                }
+            }
+
+            Quality q = quality;
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(a.score, b.score));
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = s.touched[i];
+                float score = s.total[doc] * s.matched[doc] / tokens.size();
+                if (q != null) score *= q.of(listings.get(doc));
+                s.total[doc] = 0f;
+                s.matched[doc] = 0;
+                if (top.size() < limit) {
+                    top.add(new Hit(listings.get(doc), score));
+                } else if (score > top.peek().score) {
+                    top.poll();
+                    top.add(new Hit(listings.get(doc), score));
+                }
+            }
+            // Only a search that finished has zeroed what it touched, so only then is s reused
+            if (scratch.size() < MAX_POOLED_SCRATCH) scratch.offer(s);
+            ArrayList<Hit> hits = new ArrayList<>(top);
+            hits.sort((a, b) -> Float.compare(b.score, a.score));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Scratch borrow(int n) {
+        Scratch s = scratch.poll();
+        if (s == null) s = new Scratch();
+        s.ensure(n);
+        return s;
+    }
+
+    // Newest postings first, so a truncated scan favours recent listings
+    private static int scan(Postings p, int from, float weight, Scratch s, int tokenCount) {
+        for (int i = p.size - 1; i >= from; i--) {
+            tokenCount = offer(s, p.docs[i], weight * fieldBoost(p.fields[i]), tokenCount);
+        }
+        return tokenCount;
+    }
+
+    // Looks up listings found so far in a long (doc-sorted) posting list instead of scanning it
+    private static int rescore(Postings p, float weight, Scratch s, int touchedCount, int tokenCount) {
+        int known = tokenCount;
+        for (int i = 0; i < touchedCount + known; i++) {
+            int doc = i < touchedCount ? s.touched[i] : s.tokenTouched[i - touchedCount];
+            int at = Arrays.binarySearch(p.docs, 0, p.size, doc);
+            if (at >= 0) tokenCount = offer(s, doc, weight * fieldBoost(p.fields[at]), tokenCount);
+        }
+        return tokenCount;
+    }
+
+    private static int offer(Scratch s, int doc, float v, int tokenCount) {
+        if (s.best[doc] == 0f) s.tokenTouched[tokenCount++] = doc;
+        if (v > s.best[doc]) s.best[doc] = v;
+        return tokenCount;
+    }
+
+    private static long postingCount(List<Match> matches) {
+        long c = 0;
+        for (Match m : matches) c += m.postings.size;
+        return c;
+    }
+
+    // ----- Indexing -----
+    private void indexText(int doc, String text, int field) {
+        for (String token : tokenize(text)) {
+            Postings p = terms.get(token);
+            if (p == null) {
+                p = new Postings();
+                terms.put(token, p);
+            }
+            if (field != FIELD_NAME && !p.fuzzy) {
+                p.fuzzy = true;
+                addDeletions(token);
+            }
+            p.add(doc, field);
+        }
+    }
+
+    private void addDeletions(String term) {
+        if (term.length() < MIN_FUZZY_LENGTH) return;
+        deletions.computeIfAbsent(term, k -> new ArrayList<>(1)).add(term);
+        for (int i = 0; i < term.length(); i++) {
+            String d = term.substring(0, i) + term.substring(i + 1);
+            deletions.computeIfAbsent(d, k -> new ArrayList<>(1)).add(term);
+        }
+    }
+
+    // ----- Query expansion: exact, prefix, then one-edit typos -----
+    private static final class Match {
+        final Postings postings;
+        final float weight;
+
+        Match(Postings postings, float weight) {
+            this.postings = postings;
+            this.weight = weight;
+        }
+    }
+
+    private List<Match> expand(String token, int n) {
+        LinkedHashMap<String, Float> found = new LinkedHashMap<>();
+        if (terms.containsKey(token)) found.put(token, EXACT);
+
+        int taken = 0;
+        for (String t : terms.subMap(token, false, token + Character.MAX_VALUE, false).keySet()) {
+            if (taken++ >= MAX_PREFIX_TERMS) break;
+            found.put(t, PREFIX);
+        }
+
+        if (token.length() >= MIN_FUZZY_LENGTH) {
+            addFuzzy(token, token, found);
+            for (int i = 0; i < token.length(); i++) {
+                addFuzzy(token, token.substring(0, i) + token.substring(i + 1), found);
+            }
+        }
+
+        ArrayList<Match> out = new ArrayList<>(found.size());
+        for (Map.Entry<String, Float> e : found.entrySet()) {
+            Postings p = terms.get(e.getKey());
+            out.add(new Match(p, e.getValue() * idf(p.size, n)));
+        }
+        return out;
+    }
+
+    private void addFuzzy(String token, String key, Map<String, Float> out) {
+        List<String> candidates = deletions.get(key);
+        if (candidates == null) return;
+        for (String c : candidates) {
+            if (!out.containsKey(c) && withinOneEdit(token, c)) out.put(c, FUZZY);
+        }
+    }
+
+    /** True if a and b differ by at most one insertion, deletion, substitution or adjacent swap. */
+    static boolean withinOneEdit(String a, String b) {
+        int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > 1) return false;
+        int i = 0;
+        while (i < la && i < lb && a.charAt(i) == b.charAt(i)) i++;
+        if (i == la || i == lb) return true;
+        if (la == lb) {
+            if (a.regionMatches(i + 1, b, i + 1, la - i - 1)) return true;
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.regionMatches(i + 2, b, i + 2, la - i - 2);
+        }
+        return la > lb ? a.regionMatches(i + 1, b, i, lb - i) : b.regionMatches(i + 1, a, i, la - i);
+    }
+
+    private static float idf(int df, int n) {
+        return (float) Math.log(1.0 + (double) n / (df + 1));
+    }
+
+    private static float fieldBoost(int fields) {
+        if ((fields & FIELD_SKILL) != 0) return 2.0f;
+        if ((fields & FIELD_NAME) != 0) return 1.5f;
+        return 1.0f;
+    }
+
+    // "ml" searches for "machine learning"; tokens that are not aliases are kept as they are
+    private List<String> withSynonyms(List<String> tokens) {
+        Synonyms syn = synonyms;
+        if (syn == null) return tokens;
+        ArrayList<String> out = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            String canonical = syn.canonical(token);
+            if (canonical == null) out.add(token);
+            else out.addAll(tokenize(canonical));
+        }
+        return out;
+    }
+
+    /** Lower-cases and splits on anything that is not a letter, digit, '+' or '#' (keeps "c++", "c#"). */
+    static List<String> tokenize(String text) {
+        ArrayList<String> out = new ArrayList<>();
+        if (text == null) return out;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || c == '+' || c == '#') {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,473 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SkillTaxonomy.java
+ *
+ * The canonical skill list: a {@link SkillInterner} that also resolves aliases ("js",
+ * "JS" and "Javascript" all intern to the ID of "JavaScript") and answers prefix queries
+ * for autocomplete.
+ *
+ * Names and aliases are indexed in a compressed trie stored in flat arrays. Each node
+ * keeps the TOP_K most popular skill IDs below it, so a completion walks at most one node
+ * per typed character, then copies a precomputed list. It does not allocate and does not
+ * lock. Popularity is the number of times a skill was interned, i.e. how many members
+ * teach or want to learn it.
+ *
+ * The trie is an immutable snapshot. New skills and popularity changes mark it stale, and
+ * the next completion schedules a rebuild in the background; until then completions use
+ * the previous snapshot.
+ *
+ * Taxonomy files have one skill per line, "Canonical Name|alias|alias"; '#' starts a comment.
+ */
+final class SkillTaxonomy extends SkillInterner {
+    static final int TOP_K = 8;
+    private static final long REBUILD_DELAY_MILLIS = 1000;
+    private static final int REBUILD_DUTY = 10; // wait at least 10x the last build time, so rebuilds stay under ~10% of a core
+
+    // Guarded by this (the interner's monitor)
+    private final HashMap<String, Integer> aliases = new HashMap<>();
+    private final ArrayList<String> keys = new ArrayList<>(); // canonical form of each name, by ID
+    private int[] uses = new int[64];
+    private volatile long changes; // written under the lock, read by completions without it
+
+    private volatile Trie trie = Trie.EMPTY;
+    private volatile long builtAt;
+    private volatile long buildMillis;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ExecutorService rebuilder = SkillBarterBackend.daemonPool("skill-trie", 1);
+
+    /** A taxonomy with the built-in common skills. */
+    static SkillTaxonomy withDefaults() {
+        SkillTaxonomy t = new SkillTaxonomy();
+        for (String line : DEFAULTS) t.defineLine(line);
+        t.rebuild();
+        return t;
+    }
+
+    // ----- Definitions -----
+    /** Adds a canonical skill and its aliases; an alias that is already a skill name is ignored. */
+    synchronized int define(String name, String... aliasList) {
+        int id = internName(name);
+        for (String alias : aliasList) {
+            String key = canonical(alias);
+            if (key.isEmpty() || super.lookup(alias) >= 0) continue;
+            aliases.putIfAbsent(key, id);
+        }
+        changes++;
+        return id;
+    }
+
+    /** Loads a taxonomy file; returns the number of skills it defined. */
+    int load(Path file) throws IOException {
+        int n = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line; (line = in.readLine()) != null; ) {
+                if (defineLine(line)) n++;
+            }
+        }
+        rebuild();
+        return n;
+    }
+
+    private boolean defineLine(String line) {
+        int hash = line.indexOf('#');
+        if (hash >= 0) line = line.substring(0, hash);
+        String[] parts = line.split("\\|");
+        if (parts[0].trim().isEmpty()) return false;
+        define(parts[0].trim(), Arrays.copyOfRange(parts, 1, parts.length));
+        return true;
+    }
+
+    // ----- Interning -----
+    /** Interns a skill, resolving aliases, and counts one more use of it. */
+    @Override
+    synchronized int intern(String skill) {
+        Integer alias = aliases.get(canonical(skill));
+        int id = alias != null ? alias : internName(skill);
+        if (id >= uses.length) uses = Arrays.copyOf(uses, Math.max(uses.length * 2, id + 1));
+        uses[id]++;
+        changes++;
+        return id;
+    }
+
+    private int internName(String skill) {
+        int id = super.intern(skill);
+        if (id == keys.size()) keys.add(canonical(skill));
+        return id;
+    }
+
+    @Override
+    synchronized int lookup(String skill) {
+        Integer alias = aliases.get(canonical(skill));
+        return alias != null ? alias : super.lookup(skill);
+    }
+
+    /** The canonical name an alias stands for, or null if the text is not an alias. */
+    synchronized String aliasTarget(String text) {
+        Integer id = aliases.get(canonical(text));
+        return id == null ? null : name(id);
+    }
+
+    /**
+     * Replaces known skills and aliases by their canonical names ("java " becomes "Java")
+     * and drops repeats; unknown skills are kept as typed, trimmed. Does not intern.
+     */
+    List<String> canonicalNames(Collection<String> skills) {
+        ArrayList<String> out = new ArrayList<>(skills.size());
+        HashSet<String> seen = new HashSet<>();
+        for (String s : skills) {
+            int id = lookup(s);
+            String name = id >= 0 ? name(id) : s.trim();
+            if (!name.isEmpty() && seen.add(canonical(name))) out.add(name);
+        }
+        return out;
+    }
+
+    // ----- Autocomplete -----
+    /**
+     * Writes up to out.length skill IDs whose name or an alias starts with text[from, to),
+     * most popular first, and returns how many were written. Case and repeated spaces are
+     * ignored, as in {@link #canonical}. Safe to call from any thread; does not allocate.
+     */
+    int complete(CharSequence text, int from, int to, int[] out) {
+        Trie t = trie;
+        if (t.version < changes && rebuildQueued.compareAndSet(false, true)) scheduleRebuild();
+        return t.complete(text, from, to, out);
+    }
+
+    /** Name of an ID returned by {@link #complete}, without taking the interner's lock. */
+    String completionName(int id) {
+        String[] names = trie.names;
+        return id < names.length ? names[id] : name(id);
+    }
+
+    private void scheduleRebuild() {
+        long wait = Math.max(0, builtAt + Math.max(REBUILD_DELAY_MILLIS, REBUILD_DUTY * buildMillis) - System.currentTimeMillis());
+        rebuilder.execute(() -> {
+            try {
+                if (wait > 0) Thread.sleep(wait);
+                rebuild();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            } finally {
+                rebuildQueued.set(false);
+            }
+        });
+    }
+
+    /** Rebuilds the prefix index from the current names, aliases and counts. */
+    void rebuild() {
+        // One build at a time, so an older snapshot never replaces a newer one
+        synchronized (rebuildQueued) {
+            buildSnapshot();
+        }
+    }
+
+    private void buildSnapshot() {
+        String[] names;
+        String[] sortKeys;
+        int[] ids;
+        int[] counts;
+        long version;
+        synchronized (this) {
+            int n = size();
+            names = new String[n];
+            for (int i = 0; i < n; i++) names[i] = name(i);
+            sortKeys = new String[n + aliases.size()];
+            ids = new int[sortKeys.length];
+            for (int i = 0; i < n; i++) {
+                sortKeys[i] = keys.get(i);
+                ids[i] = i;
+            }
+            int k = n;
+            for (Map.Entry<String, Integer> e : aliases.entrySet()) {
+                sortKeys[k] = e.getKey();
+                ids[k++] = e.getValue();
+            }
+            counts = Arrays.copyOf(uses, n);
+            version = changes;
+        }
+        long t0 = System.nanoTime();
+        trie = new Trie.Builder(sortKeys, ids, counts, names, version).build();
+        long nanos = System.nanoTime() - t0;
+        builtAt = System.currentTimeMillis();
+        buildMillis = nanos / 1_000_000;
+        Metrics.histogram("skills.trieBuild").record(nanos);
+    }
+
+    // ----- Trie -----
+    /**
+     * Compressed trie in parallel arrays. Node 0 is the root; a node's children are
+     * contiguous and sorted by the first character of their edge label.
+     */
+    private static final class Trie {
+        static final Trie EMPTY = new Trie(new char[0], new int[] {0}, new int[] {0}, new int[] {0}, new int[] {0},
+                new int[] {0}, new int[] {0}, new int[0], new String[0], -1);
+
+        final char[] labels;
+        final int[] labelStart, labelLength, firstChild, childCount, topStart, topLength;
+        final int[] top;
+        final String[] names;
+        final long version; // the change count this snapshot was built from
+
+        Trie(char[] labels, int[] labelStart, int[] labelLength, int[] firstChild, int[] childCount,
+             int[] topStart, int[] topLength, int[] top, String[] names, long version) {
+            this.labels = labels;
+            this.labelStart = labelStart;
+            this.labelLength = labelLength;
+            this.firstChild = firstChild;
+            this.childCount = childCount;
+            this.topStart = topStart;
+            this.topLength = topLength;
+            this.top = top;
+            this.names = names;
+            this.version = version;
+        }
+
+        int complete(CharSequence text, int from, int to, int[] out) {
+            long at = 0; // label offset << 32 | node
+            boolean started = false, space = false;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = started;
+                    continue;
+                }
+                if (space) {
+                    at = step(at, ' ');
+                    if (at < 0) return 0;
+                    space = false;
+                }
+                started = true;
+                at = step(at, Character.toLowerCase(c));
+                if (at < 0) return 0;
+            }
+            int node = (int) at;
+            int n = Math.min(out.length, topLength[node]);
+            System.arraycopy(top, topStart[node], out, 0, n);
+            return n;
+        }
+
+        // Consumes one character; returns the new position, or -1 if no key continues with it
+        private long step(long at, char c) {
+            int node = (int) at, offset = (int) (at >>> 32);
+            if (offset < labelLength[node]) {
+                return labels[labelStart[node] + offset] == c ? at + (1L << 32) : -1;
+            }
+            int lo = firstChild[node], hi = lo + childCount[node] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char first = labels[labelStart[mid]];
+                if (first < c) lo = mid + 1;
+                else if (first > c) hi = mid - 1;
+                else return 1L << 32 | mid;
+            }
+            return -1;
+        }
+
+        private static final class Builder {
+            private final String[] keys;
+            private final int[] ids;
+            private final int[] counts;
+            private final String[] names;
+            private final long version;
+
+            private final StringBuilder labels = new StringBuilder();
+            private int[] labelStart = new int[1024], labelLength = new int[1024], firstChild = new int[1024],
+                    childCount = new int[1024], topStart = new int[1024], topLength = new int[1024];
+            private int nodes;
+            private int[] top = new int[4096];
+            private int topSize;
+            private final int[] best = new int[TOP_K];
+
+            Builder(String[] keys, int[] ids, int[] counts, String[] names, long version) {
+                // Sort keys with their IDs; a key that is both a name and an alias keeps the name (listed first)
+                Integer[] order = new Integer[keys.length];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.parallelSort(order, (a, b) -> {
+                    int c = keys[a].compareTo(keys[b]);
+                    return c != 0 ? c : Integer.compare(a, b);
+                });
+                String[] k = new String[keys.length];
+                int[] v = new int[keys.length];
+                int n = 0;
+                for (Integer i : order) {
+                    if (keys[i].isEmpty() || (n > 0 && k[n - 1].equals(keys[i]))) continue;
+                    k[n] = keys[i];
+                    v[n++] = ids[i];
+                }
+                this.keys = Arrays.copyOf(k, n);
+                this.ids = Arrays.copyOf(v, n);
+                this.counts = counts;
+                this.names = names;
+                this.version = version;
+            }
+
+            Trie build() {
+                int root = newNode(0, 0);
+                fill(root, 0, keys.length, 0);
+                return new Trie(labels.toString().toCharArray(), Arrays.copyOf(labelStart, nodes), Arrays.copyOf(labelLength, nodes),
+                        Arrays.copyOf(firstChild, nodes), Arrays.copyOf(childCount, nodes), Arrays.copyOf(topStart, nodes),
+                        Arrays.copyOf(topLength, nodes), Arrays.copyOf(top, topSize), names, version);
+            }
+
+            // Keys [lo, hi) all share their first `depth` characters, which this node's path spells
+            private void fill(int node, int lo, int hi, int depth) {
+                int terminal = -1;
+                if (lo < hi && keys[lo].length() == depth) terminal = ids[lo++];
+                // One child per distinct next character; its edge runs to where that group's keys diverge
+                int groups = 0;
+                for (int i = lo; i < hi; groups++) i = groupEnd(i, hi, depth);
+                int first = nodes;
+                for (int g = 0; g < groups; g++) newNode(0, 0);
+                firstChild[node] = first;
+                childCount[node] = groups;
+                int child = first;
+                for (int i = lo; i < hi; child++) {
+                    int end = groupEnd(i, hi, depth);
+                    int split = commonPrefix(keys[i], keys[end - 1], depth);
+                    labelStart[child] = labels.length();
+                    labelLength[child] = split - depth;
+                    labels.append(keys[i], depth, split);
+                    fill(child, i, end, split);
+                    i = end;
+                }
+                collectTop(node, terminal, first, groups);
+            }
+
+            private int groupEnd(int i, int hi, int depth) {
+                char c = keys[i].charAt(depth);
+                int end = i + 1;
+                while (end < hi && keys[end].charAt(depth) == c) end++;
+                return end;
+            }
+
+            private static int commonPrefix(String a, String b, int from) {
+                int n = Math.min(a.length(), b.length()), i = from;
+                while (i < n && a.charAt(i) == b.charAt(i)) i++;
+                return i;
+            }
+
+            // Best TOP_K distinct IDs among this node's own skill and its children's lists
+            private void collectTop(int node, int terminal, int first, int groups) {
+                int n = 0;
+                if (terminal >= 0) n = offer(n, terminal);
+                for (int c = first; c < first + groups; c++) {
+                    for (int j = topStart[c]; j < topStart[c] + topLength[c]; j++) n = offer(n, top[j]);
+                }
+                if (topSize + n > top.length) top = Arrays.copyOf(top, Math.max(top.length * 2, topSize + n));
+                topStart[node] = topSize;
+                topLength[node] = n;
+                System.arraycopy(best, 0, top, topSize, n);
+                topSize += n;
+            }
+
+            // Insertion into a list kept sorted by popularity (then by ID, so older skills win ties)
+            private int offer(int n, int id) {
+                for (int i = 0; i < n; i++) if (best[i] == id) return n;
+                int pos = n;
+                while (pos > 0 && before(id, best[pos - 1])) pos--;
+                if (pos >= TOP_K) return n;
+                int end = Math.min(n, TOP_K - 1);
+                System.arraycopy(best, pos, best, pos + 1, end - pos);
+                best[pos] = id;
+                return Math.min(n + 1, TOP_K);
+            }
+
+            private boolean before(int a, int b) {
+                int ca = a < counts.length ? counts[a] : 0, cb = b < counts.length ? counts[b] : 0;
+                return ca != cb ? ca > cb : a < b;
+            }
+
+            private int newNode(int start, int length) {
+                if (nodes == labelStart.length) {
+                    int cap = nodes * 2;
+                    labelStart = Arrays.copyOf(labelStart, cap);
+                    labelLength = Arrays.copyOf(labelLength, cap);
+                    firstChild = Arrays.copyOf(firstChild, cap);
+                    childCount = Arrays.copyOf(childCount, cap);
+                    topStart = Arrays.copyOf(topStart, cap);
+                    topLength = Arrays.copyOf(topLength, cap);
+                }
+                labelStart[nodes] = start;
+                labelLength[nodes] = length;
+                return nodes++;
+            }
+        }
+    }
+
+    // ----- Built-in skills -----
+    private static final String[] DEFAULTS = {
+            "Java|java se|core java|jdk",
+            "Java Swing|swing",
+            "JavaScript|js|ecmascript|es6",
+            "TypeScript|ts",
+            "Python|py|python3",
+            "C++|cpp|c plus plus",
+            "C#|csharp|c sharp|dotnet|.net",
+            "Go|golang",
+            "Rust|rustlang",
+            "Kotlin",
+            "Swift|ios development",
+            "SQL|mysql|postgres|postgresql|databases",
+            "HTML & CSS|html|css|web design",
+            "React|reactjs|react.js",
+            "Node.js|node|nodejs",
+            "Machine Learning|ml",
+            "Artificial Intelligence|ai",
+            "Data Analysis|data analytics|data science",
+            "Excel|microsoft excel|spreadsheets",
+            "UI Design|ui|user interface design",
+            "UX Design|ux|user experience",
+            "Figma",
+            "Photoshop|adobe photoshop|ps",
+            "Illustrator|adobe illustrator",
+            "Photography|photo|photos",
+            "Lightroom|adobe lightroom",
+            "Video Editing|premiere|final cut",
+            "Drawing|sketching",
+            "Painting|watercolor|acrylics",
+            "3D Modeling|blender|3d",
+            "Guitar|acoustic guitar|electric guitar",
+            "Piano|keyboard",
+            "Singing|vocals|voice",
+            "Music Theory",
+            "Music Production|ableton|fl studio",
+            "Drums|percussion",
+            "English|esl",
+            "Spanish|español|espanol",
+            "French|français|francais",
+            "German|deutsch",
+            "Hindi",
+            "Japanese|nihongo",
+            "Mandarin|chinese",
+            "Public Speaking|speaking",
+            "Writing|creative writing",
+            "Copywriting",
+            "Marketing|digital marketing",
+            "SEO|search engine optimization",
+            "Accounting|bookkeeping",
+            "Personal Finance|budgeting|investing",
+            "Cooking|cuisine",
+            "Baking|pastry",
+            "Yoga",
+            "Fitness|personal training|workout",
+            "Meditation|mindfulness",
+            "Chess",
+            "Knitting|crochet",
+            "Sewing|tailoring",
+            "Woodworking|carpentry",
+            "Gardening",
+            "Calculus|maths|math",
+            "Statistics|stats",
+            "Physics",
+            "Chemistry",
+    };
+}
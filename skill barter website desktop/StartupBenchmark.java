@@ -0,0 +1,81 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
+/**
+ * StartupBenchmark.java
+ *
+ * Measures cold start: time from JVM launch to the first painted frame of MainWindow.
+ *
+ *   java -cp . StartupBenchmark                 one in-process measurement
+ *   java -cp . StartupBenchmark --runs 10 [-- <jvm options>]
+ *                                               10 fresh JVMs, e.g. to compare with and
+ *                                               without -XX:SharedArchiveFile=skillbarter.jsa
+ *
+ * Each measurement prints one line in ms: jvmToMain, window (MainWindow constructor),
+ * mainToPaint and total (JVM start to first paint).
+ * Needs a display; the window closes itself once painted.
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        int runs = 0;
+        List<String> jvmArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--runs")) runs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--")) {
+                jvmArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            }
+        }
+        if (runs > 0) forkRuns(runs, jvmArgs);
+        else measureOnce();
+    }
+
+    private static void measureOnce() {
+        long mainAt = System.currentTimeMillis();
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        SkillBarter_Website_Desktop.installLookAndFeel();
+        SwingUtilities.invokeLater(() -> SkillBarter_Website_Desktop.open(() -> {
+            long paintedAt = System.currentTimeMillis();
+            long window = Metrics.histogram("startup.window").sumNanos() / 1_000_000;
+            System.out.printf("jvmToMain=%d window=%d mainToPaint=%d total=%d%n",
+                    mainAt - jvmStart, window, paintedAt - mainAt, paintedAt - jvmStart);
+            System.exit(0);
+        }));
+    }
+
+    // Each run is a fresh JVM so class loading, JIT and CDS effects are those of a real cold start
+    private static void forkRuns(int runs, List<String> jvmArgs) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        long[] totals = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java);
+            cmd.addAll(jvmArgs);
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(StartupBenchmark.class.getName());
+            Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            String result = null;
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line; (line = r.readLine()) != null; ) {
+                    if (line.startsWith("jvmToMain=")) result = line;
+                }
+            }
+            p.waitFor();
+            if (result == null) throw new IOException("Run " + (i + 1) + " did not report a paint (exit " + p.exitValue() + ")");
+            System.out.println("run " + (i + 1) + ": " + result);
+            totals[i] = Long.parseLong(result.substring(result.indexOf("total=") + 6).trim());
+        }
+        Arrays.sort(totals);
+        System.out.printf("time to first paint over %d runs: min=%d median=%d max=%d ms%n",
+                runs, totals[0], totals[runs / 2], totals[runs - 1]);
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * StartupPreloader.java
+ *
+ * Loads classes the user is likely to need next (dialogs, other cards, backend services)
+ * on a low-priority daemon thread once the first frame is up, so the first click on
+ * Login or Search does not stall on class loading. Classes are loaded but not
+ * initialized, so no Swing static state is touched off the EDT.
+ *
+ * Disable with -Dskillbarter.preload=false (e.g. when measuring a cold AppCDS archive).
+ */
+final class StartupPreloader {
+    private StartupPreloader() {}
+
+    private static final String[] CLASSES = {
+        "LoginDialog", "RegisterDialog", "AuthService", "Scrypt",
+        "SkillBarterBackend", "SkillSearchIndex", "SkillMatchEngine", "SkillInterner", "SkillTaxonomy",
+        "PointsLedger", "SessionScheduler", "HierarchicalTimingWheel",
+        "SkillBarterRepository", "LocalFileRepository",
+        "javax.swing.JOptionPane", "javax.swing.JDialog", "javax.swing.JPasswordField",
+        "javax.swing.JTextArea", "javax.swing.JScrollPane", "javax.swing.JCheckBox",
+        "javax.swing.text.html.HTMLEditorKit", "javax.swing.text.html.parser.ParserDelegator",
+    };
+
+    private static boolean started;
+
+    static synchronized void start() {
+        if (started || !Boolean.parseBoolean(System.getProperty("skillbarter.preload", "true"))) return;
+        started = true;
+        Thread t = new Thread(StartupPreloader::preload, "class-preloader");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private static void preload() {
+        long t0 = System.nanoTime();
+        ClassLoader loader = StartupPreloader.class.getClassLoader();
+        for (String name : CLASSES) {
+            try {
+                Class.forName(name, false, loader);
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                // Optional classes (e.g. a trimmed runtime) are simply skipped
+            }
+        }
+        Metrics.histogram("startup.preload").record(System.nanoTime() - t0);
+    }
+}
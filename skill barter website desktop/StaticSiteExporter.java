@@ -0,0 +1,438 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StaticSiteExporter.java
+ *
+ * Exports every listing as a static website: paginated HTML pages, a landing page with a
+ * client-side search box, and search-index.json for that search.
+ *
+ * Templates are compiled once into literal/placeholder parts. Worker threads each take the
+ * next page number, fetch just that page's listings from the search index and stream the
+ * HTML (and the page's slice of the JSON index) through a small reusable char/byte buffer
+ * straight into a FileChannel, so memory stays flat however many listings there are. The
+ * JSON slices are then joined in page order with channel-to-channel transfers.
+ */
+final class StaticSiteExporter {
+    static final int PAGE_SIZE = 1000;
+    private static final String INDEX_JSON = "search-index.json";
+
+    private static final Metrics.Histogram EXPORT_TIME = Metrics.histogram("export.site");
+
+    /** What an export produced. */
+    static final class Result {
+        final int listings;
+        final int pages;
+        final long bytes;
+        final long millis;
+
+        Result(int listings, int pages, long bytes, long millis) {
+            this.listings = listings;
+            this.pages = pages;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return listings + " listings on " + pages + " pages (" + (bytes >> 10) + " KB) in " + millis + " ms";
+        }
+    }
+
+    // ----- Templates -----
+    /** Fills one placeholder by writing its value (escaped as appropriate) to out. */
+    interface Binder {
+        void bind(String key, Out out) throws IOException;
+    }
+
+    /** Text with {{key}} placeholders, split once into literal and placeholder parts. */
+    static final class Template {
+        private final String[] literals; // literals[i] precedes keys[i]; one more literal than keys
+        private final String[] keys;
+
+        private Template(String[] literals, String[] keys) {
+            this.literals = literals;
+            this.keys = keys;
+        }
+
+        static Template compile(String text) {
+            List<String> literals = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            int from = 0, open;
+            while ((open = text.indexOf("{{", from)) >= 0) {
+                int close = text.indexOf("}}", open);
+                if (close < 0) throw new IllegalArgumentException("Unclosed placeholder at " + open);
+                literals.add(text.substring(from, open));
+                keys.add(text.substring(open + 2, close).trim().intern());
+                from = close + 2;
+            }
+            literals.add(text.substring(from));
+            return new Template(literals.toArray(new String[0]), keys.toArray(new String[0]));
+        }
+
+        void render(Out out, Binder binder) throws IOException {
+            for (int i = 0; i < keys.length; i++) {
+                out.raw(literals[i]);
+                binder.bind(keys[i], out);
+            }
+            out.raw(literals[keys.length]);
+        }
+    }
+
+    private static final Template PAGE = Template.compile(
+            "<!doctype html>\n<html lang=\"en\"><head><meta charset=\"utf-8\">"
+            + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">"
+            + "<title>SkillBarter listings — page {{page}} of {{pages}}</title>"
+            + "<link rel=\"stylesheet\" href=\"style.css\"></head><body>\n"
+            + "<header><a href=\"index.html\">SkillBarter</a><span>Page {{page}} of {{pages}}</span></header>\n"
+            + "<main><ul class=\"listings\">\n{{rows}}</ul></main>\n"
+            + "<nav>{{nav}}</nav>\n"
+            + "<footer>Exported {{date}} · {{total}} listings</footer>\n</body></html>\n");
+
+    private static final Template ROW = Template.compile(
+            "<li id=\"l{{id}}\"><h2>{{name}}</h2><p class=\"skills\">{{skills}}</p><p class=\"topics\">{{topics}}</p><p class=\"rating\">{{rating}}</p></li>\n");
+
+    private static final Template LANDING = Template.compile(
+            "<!doctype html>\n<html lang=\"en\"><head><meta charset=\"utf-8\">"
+            + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">"
+            + "<title>SkillBarter — all listings</title><link rel=\"stylesheet\" href=\"style.css\"></head><body>\n"
+            + "<header><a href=\"index.html\">SkillBarter</a><span>{{total}} listings</span></header>\n"
+            + "<main><h1>Find someone to swap skills with</h1>"
+            + "<input id=\"q\" type=\"search\" placeholder=\"Search names, skills or topics\" autofocus>"
+            + "<ul id=\"hits\" class=\"listings\"></ul>"
+            + "<p><a href=\"page-{{first}}.html\">Browse all {{pages}} pages</a></p></main>\n"
+            + "<footer>Exported {{date}}</footer>\n"
+            + "<script>\nlet data=null;const q=document.getElementById('q'),hits=document.getElementById('hits');\n"
+            + "const esc=s=>s.replace(/[&<>\"]/g,c=>({'&':'&amp;','<':'&lt;','>':'&gt;','\"':'&quot;'}[c]));\n"
+            + "q.addEventListener('input',async()=>{if(!data)data=(await (await fetch('" + INDEX_JSON + "')).json()).listings;\n"
+            + "const t=q.value.trim().toLowerCase();hits.innerHTML='';if(!t)return;let n=0;\n"
+            + "for(const l of data){if((l.n+' '+l.s.join(' ')+' '+l.t.join(' ')).toLowerCase().includes(t)){\n"
+            + "hits.insertAdjacentHTML('beforeend','<li><h2><a href=\"page-'+String(l.p).padStart(5,'0')+'.html#l'+l.i+'\">'+esc(l.n)+'</a></h2><p class=\"skills\">'+esc(l.s.join(', '))+'</p></li>');\n"
+            + "if(++n>=50)break;}}});\n</script>\n</body></html>\n");
+
+    private static final String STYLE =
+            "body{margin:0;font-family:'Segoe UI',sans-serif;background:#0a0a0c;color:#e6e6e6}\n"
+            + "header,footer,nav{display:flex;justify-content:space-between;padding:14px 40px;background:#121216}\n"
+            + "header a{color:#00c8ff;font-weight:bold;text-decoration:none;font-size:1.4em}\n"
+            + "main{padding:20px 40px}input{width:100%;padding:10px;font-size:1.1em}\n"
+            + ".listings{list-style:none;padding:0}.listings li{background:#19191c;border:1px solid #28282d;"
+            + "border-radius:8px;margin:10px 0;padding:12px 18px}\n"
+            + ".listings h2{margin:0;font-size:1.05em;color:#00c8ff}.listings a{color:inherit}.skills{color:#ccc}.topics,.rating{color:#a0a0a0}\n"
+            + "nav a{color:#00c8ff}\n";
+
+    private StaticSiteExporter() {}
+
+    /**
+     * Writes the site into dir using the given number of worker threads; reviews, if given, add
+     * each member's rating. Listings added while the export runs are left for the next export.
+     * Stops early (with InterruptedException) when progress reports cancellation.
+     */
+    static Result export(SkillSearchIndex index, ReviewService reviews, Path dir, int threads, BackgroundTasks.Progress progress)
+            throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        Files.createDirectories(dir);
+        Path shards = Files.createDirectories(dir.resolve(".index-parts"));
+        int total = index.size();
+        int pages = Math.max(1, (total + PAGE_SIZE - 1) / PAGE_SIZE);
+        String date = LocalDate.now().toString();
+        AtomicInteger nextPage = new AtomicInteger();
+        AtomicInteger donePages = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "site-export");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < Math.max(1, threads); w++) {
+                workers.add(pool.submit(() -> {
+                    try (Out out = new Out()) {
+                        for (int p; (p = nextPage.getAndIncrement()) < pages; ) {
+                            if (progress.isCancelled()) throw new InterruptedException("Export cancelled");
+                            List<SkillSearchIndex.Listing> rows = index.page(p * PAGE_SIZE, Math.min(PAGE_SIZE, total - p * PAGE_SIZE));
+                            bytes.addAndGet(writePage(out, dir.resolve(pageFile(p + 1)), p + 1, pages, total, date, rows, reviews));
+                            writeIndexPart(out, shards.resolve(pageFile(p + 1)), p + 1, rows);
+                            int done = donePages.incrementAndGet();
+                            progress.update(done * 100 / pages, "Page " + done + " of " + pages);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : workers) {
+                try {
+                    f.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    if (cause instanceof InterruptedException) throw (InterruptedException) cause;
+                    throw new IOException("Export failed", cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        bytes.addAndGet(joinIndex(shards, dir.resolve(INDEX_JSON), pages));
+        try (Out out = new Out()) {
+            out.open(dir.resolve("index.html"));
+            LANDING.render(out, (key, o) -> {
+                switch (key) {
+                    case "total": o.num(total); break;
+                    case "pages": o.num(pages); break;
+                    case "first": o.raw(pageNumber(1)); break;
+                    case "date": o.raw(date); break;
+                    default: throw new IllegalArgumentException("Unknown placeholder " + key);
+                }
+            });
+            bytes.addAndGet(out.finish());
+            out.open(dir.resolve("style.css"));
+            out.raw(STYLE);
+            bytes.addAndGet(out.finish());
+        }
+        deleteStalePages(dir, pages);
+
+        long nanos = System.nanoTime() - t0;
+        EXPORT_TIME.record(nanos);
+        return new Result(total, pages, bytes.get(), nanos / 1_000_000);
+    }
+
+    static String pageFile(int page) {
+        return "page-" + pageNumber(page) + ".html";
+    }
+
+    private static String pageNumber(int page) {
+        return String.format("%05d", page);
+    }
+
+    private static long writePage(Out out, Path file, int page, int pages, int total, String date,
+            List<SkillSearchIndex.Listing> rows, ReviewService reviews) throws IOException {
+        out.open(file);
+        PAGE.render(out, (key, o) -> {
+            switch (key) {
+                case "page": o.num(page); break;
+                case "pages": o.num(pages); break;
+                case "total": o.num(total); break;
+                case "date": o.raw(date); break;
+                case "rows":
+                    for (SkillSearchIndex.Listing l : rows) {
+                        ROW.render(o, (k, r) -> {
+                            switch (k) {
+                                case "id": r.num(l.id); break;
+                                case "name": r.html(l.userName); break;
+                                case "skills": r.htmlJoined(l.skills); break;
+                                case "topics": r.htmlJoined(l.topics); break;
+                                case "rating":
+                                    ReviewService.Stats stats = reviews == null ? ReviewService.Stats.EMPTY : reviews.listed(l.userName);
+                                    if (stats.count > 0) r.raw(stats.toString());
+                                    break;
+                                default: throw new IllegalArgumentException("Unknown placeholder " + k);
+                            }
+                        });
+                    }
+                    break;
+                case "nav":
+                    if (page > 1) o.raw("<a href=\"").raw(pageFile(1)).raw("\">« First</a><a href=\"").raw(pageFile(page - 1)).raw("\">‹ Previous</a>");
+                    if (page < pages) o.raw("<a href=\"").raw(pageFile(page + 1)).raw("\">Next ›</a><a href=\"").raw(pageFile(pages)).raw("\">Last »</a>");
+                    break;
+                default: throw new IllegalArgumentException("Unknown placeholder " + key);
+            }
+        });
+        return out.finish();
+    }
+
+    // One JSON object per listing, comma-separated; joinIndex wraps the parts into one array
+    private static void writeIndexPart(Out out, Path file, int page, List<SkillSearchIndex.Listing> rows) throws IOException {
+        out.open(file);
+        for (int i = 0; i < rows.size(); i++) {
+            SkillSearchIndex.Listing l = rows.get(i);
+            if (i > 0) out.raw(",\n");
+            out.raw("{\"i\":").num(l.id).raw(",\"p\":").num(page).raw(",\"n\":").json(l.userName)
+               .raw(",\"s\":").jsonArray(l.skills).raw(",\"t\":").jsonArray(l.topics).raw("}");
+        }
+        out.finish();
+    }
+
+    private static long joinIndex(Path shards, Path target, int pages) throws IOException {
+        try (FileChannel dst = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            dst.write(ByteBuffer.wrap("{\"listings\":[\n".getBytes(StandardCharsets.UTF_8)));
+            boolean first = true;
+            for (int p = 1; p <= pages; p++) {
+                Path part = shards.resolve(pageFile(p));
+                try (FileChannel src = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = src.size();
+                    if (size > 0) {
+                        if (!first) dst.write(ByteBuffer.wrap(",\n".getBytes(StandardCharsets.UTF_8)));
+                        first = false;
+                        for (long pos = 0; pos < size; ) pos += src.transferTo(pos, size - pos, dst);
+                    }
+                }
+                Files.delete(part);
+            }
+            dst.write(ByteBuffer.wrap("\n]}\n".getBytes(StandardCharsets.UTF_8)));
+            Files.deleteIfExists(shards);
+            return dst.size();
+        }
+    }
+
+    // Pages left over from an earlier, larger export would otherwise stay linked from search results
+    private static void deleteStalePages(Path dir, int pages) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "page-*.html")) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                try {
+                    if (Integer.parseInt(n.substring(5, n.length() - 5)) > pages) Files.delete(p);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    // ----- Output -----
+    /**
+     * Buffered UTF-8 writer over a FileChannel, reused for every file one worker writes. Text
+     * goes into a char buffer, is encoded into a byte buffer and written when that fills.
+     */
+    static final class Out implements Closeable {
+        private final CharBuffer chars = CharBuffer.allocate(16 * 1024);
+        private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private FileChannel channel;
+        private long written;
+
+        void open(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            written = 0;
+            encoder.reset();
+        }
+
+        Out raw(String s) throws IOException {
+            int from = 0, len = s.length();
+            while (from < len) {
+                if (!chars.hasRemaining()) encode(false);
+                int n = Math.min(chars.remaining(), len - from);
+                chars.put(s, from, from + n);
+                from += n;
+            }
+            return this;
+        }
+
+        Out num(long v) throws IOException {
+            return raw(Long.toString(v));
+        }
+
+        Out html(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '&': raw("&amp;"); break;
+                    case '<': raw("&lt;"); break;
+                    case '>': raw("&gt;"); break;
+                    case '"': raw("&quot;"); break;
+                    case '\'': raw("&#39;"); break;
+                    default: put(c);
+                }
+            }
+            return this;
+        }
+
+        Out htmlJoined(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) raw(", ");
+                html(values[i]);
+            }
+            return this;
+        }
+
+        Out json(String s) throws IOException {
+            put('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    put('\\');
+                    put(c);
+                } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    raw(String.format("\\u%04x", (int) c));
+                } else {
+                    put(c);
+                }
+            }
+            put('"');
+            return this;
+        }
+
+        Out jsonArray(String[] values) throws IOException {
+            put('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) put(',');
+                json(values[i]);
+            }
+            put(']');
+            return this;
+        }
+
+        private void put(char c) throws IOException {
+            if (!chars.hasRemaining()) encode(false);
+            chars.put(c);
+        }
+
+        private void encode(boolean end) throws IOException {
+            chars.flip();
+            while (true) {
+                CoderResult r = encoder.encode(chars, bytes, end);
+                if (r.isOverflow()) {
+                    drainBytes();
+                } else if (r.isError()) {
+                    r.throwException();
+                } else {
+                    break;
+                }
+            }
+            chars.compact();
+            if (end) {
+                while (encoder.flush(bytes).isOverflow()) drainBytes();
+            }
+        }
+
+        private void drainBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) written += channel.write(bytes);
+            bytes.clear();
+        }
+
+        /** Writes out everything buffered, closes the file and returns its size. */
+        long finish() throws IOException {
+            encode(true);
+            drainBytes();
+            channel.close();
+            channel = null;
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) channel.close();
+        }
+    }
+}
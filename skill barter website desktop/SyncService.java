@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * SyncService.java
+ *
+ * Server side of the desktop app's offline cache (see {@link ClientSync}). A client sends the
+ * version vector it got from its last sync and receives, as JSON Lines, only what changed
+ * since: its profile, its top matches, the listings it viewed recently and the messages of
+ * its conversations. The vector itself comes last, so a client that stops halfway keeps
+ * its old vector and simply receives the same changes again.
+ *
+ * The vector has one counter per source of changes:
+ * - "members:NODE:EPOCH" numbers member changes (registrations, imports) on that
+ *   node. Only the last CAPACITY changes are kept and the epoch is new on every start, so a
+ *   client that is too far behind, or last synced with an earlier run, gets everything again.
+ * - "messages:NODE" is the first message log offset the client has not seen.
+ * Counters for other nodes are passed back untouched.
+ */
+final class SyncService {
+    static final int CAPACITY = 4096;
+    static final int MATCHES = 10;
+    static final int MESSAGES = 200;
+
+    private static final Metrics.Histogram DELTA_TIME = Metrics.histogram("sync.delta");
+
+    private final Supplier<String> node;
+    private final SkillBarterRepository repository;
+    private final BiFunction<List<String>, List<String>, List<SkillMatchEngine.Match>> matches;
+    private final Function<String, SkillSearchIndex.Listing> listings;
+    private final Supplier<MessageBroker> messages;
+    private final String epoch = Long.toString(new Random().nextLong() & Long.MAX_VALUE, 36);
+
+    // Change n is kept at n % CAPACITY until it is overwritten
+    private final String[] changedEmails = new String[CAPACITY];
+    private final String[] changedNames = new String[CAPACITY];
+    private long lastChange;
+
+    SyncService(Supplier<String> node, SkillBarterRepository repository,
+                BiFunction<List<String>, List<String>, List<SkillMatchEngine.Match>> matches,
+                Function<String, SkillSearchIndex.Listing> listings, Supplier<MessageBroker> messages) {
+        this.node = node;
+        this.repository = repository;
+        this.matches = matches;
+        this.listings = listings;
+        this.messages = messages;
+    }
+
+    /** Records that the member was created or changed. */
+    synchronized void memberChanged(String email, String name) {
+        int slot = (int) (++lastChange % CAPACITY);
+        changedEmails[slot] = email;
+        changedNames[slot] = name;
+    }
+
+    /** Everything the account's cache is missing since the vector {@code since} (empty on a first sync). */
+    String delta(String email, String since, Collection<String> viewed) throws IOException {
+        long t0 = System.nanoTime();
+        String account = AuthService.canonicalEmail(email), self = node.get();
+        String membersKey = "members:" + self + ":" + epoch, messagesKey = "messages:" + self;
+        Map<String, Long> vector = parseVector(since);
+        vector.keySet().removeIf(k -> k.startsWith("members:" + self + ":") && !k.equals(membersKey));
+        StringBuilder out = new StringBuilder(1024);
+
+        // ----- Members -----
+        Long seen = vector.get(membersKey);
+        Set<String> emails = new HashSet<>(), names = new HashSet<>();
+        long last;
+        boolean full;
+        synchronized (this) {
+            last = lastChange;
+            full = seen == null || seen > last || last - seen > CAPACITY;
+            if (!full) {
+                for (long n = seen + 1; n <= last; n++) {
+                    emails.add(changedEmails[(int) (n % CAPACITY)]);
+                    names.add(changedNames[(int) (n % CAPACITY)]);
+                }
+            }
+        }
+        SkillBarterRepository.User me = repository.findUser(account);
+        if (me != null && (full || emails.contains(account))) {
+            out.append("{\"kind\":\"profile\",\"email\":");
+            ApiServer.quote(out, me.email).append(",\"name\":");
+            ApiServer.quote(out, me.name).append(",\"teaches\":");
+            ApiServer.array(out, me.teaches).append(",\"learns\":");
+            ApiServer.array(out, me.learns).append("}\n");
+        }
+        // Any new member can be a better match
+        if (me != null && (full || last > seen)) {
+            List<SkillMatchEngine.Match> top = matches.apply(me.teaches, me.learns);
+            out.append("{\"kind\":\"matches\",\"count\":").append(top.size()).append("}\n");
+            for (int i = 0; i < top.size(); i++) {
+                out.append("{\"kind\":\"match\",\"rank\":").append(i).append(",\"name\":");
+                ApiServer.quote(out, top.get(i).name).append(",\"score\":").append(top.get(i).score).append("}\n");
+            }
+        }
+        for (String name : viewed) {
+            if (!full && !names.contains(name)) continue;
+            SkillSearchIndex.Listing l = listings.apply(name);
+            if (l == null) continue;
+            out.append("{\"kind\":\"listing\",\"name\":");
+            ApiServer.quote(out, l.userName).append(",\"skills\":");
+            ApiServer.array(out, java.util.Arrays.asList(l.skills)).append(",\"topics\":");
+            ApiServer.array(out, java.util.Arrays.asList(l.topics)).append("}\n");
+        }
+        vector.put(membersKey, last);
+
+        // ----- Messages -----
+        MessageBroker broker = messages.get();
+        long to = broker.nextOffset();
+        for (MessageBroker.Message m : broker.involving(account, vector.getOrDefault(messagesKey, 0L), to, MESSAGES)) {
+            out.append("{\"kind\":\"message\",\"offset\":").append(m.offset).append(",\"at\":").append(m.timestamp).append(",\"conversation\":");
+            ApiServer.quote(out, m.conversation).append(",\"from\":");
+            ApiServer.quote(out, m.sender).append(",\"text\":");
+            ApiServer.quote(out, m.body).append("}\n");
+        }
+        vector.put(messagesKey, to);
+
+        out.append("{\"kind\":\"vector\",\"value\":");
+        ApiServer.quote(out, formatVector(vector)).append("}\n");
+        DELTA_TIME.record(System.nanoTime() - t0);
+        return out.toString();
+    }
+
+    // "key=n,key=n"; malformed entries are dropped, which at worst means a full sync
+    static Map<String, Long> parseVector(String s) {
+        Map<String, Long> vector = new LinkedHashMap<>();
+        if (s == null) return vector;
+        for (String entry : s.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) continue;
+            try {
+                vector.put(entry.substring(0, eq).trim(), Long.parseLong(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException ignored) {
+                // dropped
+            }
+        }
+        return vector;
+    }
+
+    static String formatVector(Map<String, Long> vector) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : vector.entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
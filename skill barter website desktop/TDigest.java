@@ -0,0 +1,157 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * TDigest.java
+ *
+ * Merging t-digest (Dunning &amp; Ertl) for latency percentiles. Values are buffered and
+ * periodically merged into a sorted list of centroids whose size limit shrinks toward the
+ * tails (proportional to q(1 - q)), so p99 and p999 stay accurate with about
+ * 2 x compression centroids. Digests merge by re-adding each other's centroids, which is how
+ * per-minute digests roll up into hours and days.
+ */
+final class TDigest {
+    private final double compression;
+    private double[] mean;
+    private double[] weight;
+    private int centroids;
+    private final double[] bufMean;
+    private final double[] bufWeight;
+    private int buffered;
+    private double total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    TDigest(double compression) {
+        this.compression = compression;
+        int cap = (int) Math.ceil(compression * 2) + 8;
+        this.mean = new double[cap];
+        this.weight = new double[cap];
+        this.bufMean = new double[cap * 4];
+        this.bufWeight = new double[cap * 4];
+    }
+
+    void add(double x) {
+        add(x, 1);
+    }
+
+    void add(double x, double w) {
+        if (Double.isNaN(x) || w <= 0) return;
+        if (buffered == bufMean.length) compress();
+        bufMean[buffered] = x;
+        bufWeight[buffered++] = w;
+        total += w;
+        if (x < min) min = x;
+        if (x > max) max = x;
+    }
+
+    void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) add(other.mean[i], other.weight[i]);
+        if (other.total > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    long count() {
+        return Math.round(total);
+    }
+
+    /** Estimated value at quantile q (0..1); NaN when empty. */
+    double quantile(double q) {
+        compress();
+        if (centroids == 0) return Double.NaN;
+        if (q <= 0) return min;
+        if (q >= 1) return max;
+        double target = q * total;
+        double cum = 0;
+        for (int i = 0; i < centroids; i++) {
+            double center = cum + weight[i] / 2;
+            if (target < center) {
+                // Between the previous centroid's center (or the minimum) and this one
+                double leftValue = i == 0 ? min : mean[i - 1];
+                double leftPos = i == 0 ? 0 : cum - weight[i - 1] / 2;
+                return interpolate(target, leftPos, leftValue, center, mean[i]);
+            }
+            cum += weight[i];
+        }
+        double lastCenter = total - weight[centroids - 1] / 2;
+        return interpolate(target, lastCenter, mean[centroids - 1], total, max);
+    }
+
+    private static double interpolate(double x, double x0, double y0, double x1, double y1) {
+        if (x1 <= x0) return y1;
+        return y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+    }
+
+    // Sorts buffered points together with the centroids and merges neighbours while they fit
+    private void compress() {
+        if (buffered == 0) return;
+        int n = centroids + buffered;
+        double[] m = Arrays.copyOf(mean, n);
+        double[] w = Arrays.copyOf(weight, n);
+        System.arraycopy(bufMean, 0, m, centroids, buffered);
+        System.arraycopy(bufWeight, 0, w, centroids, buffered);
+        buffered = 0;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(m[a], m[b]));
+
+        int out = 0;
+        double soFar = 0;
+        double curMean = m[order[0]], curWeight = w[order[0]];
+        for (int k = 1; k < n; k++) {
+            int i = order[k];
+            double proposed = curWeight + w[i];
+            double q0 = soFar / total, q2 = (soFar + proposed) / total;
+            double limit = 4 * total * Math.min(q0 * (1 - q0), q2 * (1 - q2)) / compression;
+            if (proposed <= limit) {
+                curMean += (m[i] - curMean) * w[i] / proposed;
+                curWeight = proposed;
+            } else {
+                out = emit(out, curMean, curWeight);
+                soFar += curWeight;
+                curMean = m[i];
+                curWeight = w[i];
+            }
+        }
+        centroids = emit(out, curMean, curWeight);
+    }
+
+    private int emit(int out, double m, double w) {
+        if (out == mean.length) {
+            mean = Arrays.copyOf(mean, out * 2);
+            weight = Arrays.copyOf(weight, out * 2);
+        }
+        mean[out] = m;
+        weight[out] = w;
+        return out + 1;
+    }
+
+    void write(DataOutput out) throws IOException {
+        compress();
+        out.writeDouble(compression);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(centroids);
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(mean[i]);
+            out.writeDouble(weight[i]);
+        }
+    }
+
+    static TDigest read(DataInput in) throws IOException {
+        TDigest d = new TDigest(in.readDouble());
+        double lo = in.readDouble(), hi = in.readDouble();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) d.add(in.readDouble(), in.readDouble());
+        if (n > 0) {
+            d.min = lo;
+            d.max = hi;
+        }
+        return d;
+    }
+}
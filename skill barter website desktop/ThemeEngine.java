@@ -0,0 +1,184 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Window;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.JComponent;
+
+/**
+ * ThemeEngine.java
+ *
+ * Named color/font tokens that components bind to, instead of each panel baking in colors.
+ *
+ * A theme is a map from token (e.g. "bg", "text.muted") to a Color or Font. Components bind a
+ * property to a token and get the current value immediately. Switching themes compares the
+ * old and new maps and only touches bindings of tokens whose value changed; the window is then
+ * repainted once. Nothing reinstalls UI delegates, so a switch costs one setter call per
+ * affected property.
+ *
+ * Bindings hold components weakly, so panels that are thrown away do not stay reachable
+ * through the engine. Use from the EDT only.
+ */
+final class ThemeEngine {
+
+    /** Which component property a binding sets. */
+    enum Property {
+        BACKGROUND {
+            @Override
+            void apply(JComponent c, Object value) {
+                c.setBackground((Color) value);
+            }
+        },
+        FOREGROUND {
+            @Override
+            void apply(JComponent c, Object value) {
+                c.setForeground((Color) value);
+            }
+        },
+        FONT {
+            @Override
+            void apply(JComponent c, Object value) {
+                c.setFont((Font) value);
+            }
+        };
+
+        abstract void apply(JComponent c, Object value);
+    }
+
+    static final class Theme {
+        final String name;
+        private final Map<String, Object> tokens;
+
+        Theme(String name, Map<String, Object> tokens) {
+            this.name = name;
+            this.tokens = Collections.unmodifiableMap(new LinkedHashMap<>(tokens));
+        }
+
+        Object get(String token) {
+            Object v = tokens.get(token);
+            if (v == null) throw new IllegalArgumentException("Theme " + name + " has no token " + token);
+            return v;
+        }
+    }
+
+    static final Theme DARK = new Theme("dark", tokens(
+            "bg", UiStyles.BG_DARK,
+            "surface", UiStyles.CARD_DARK,
+            "surface.hover", UiStyles.CARD_HOVER,
+            "footer", UiStyles.FOOTER,
+            "text", UiStyles.TEXT_LIGHT,
+            "text.muted", new Color(204, 204, 204),
+            "text.faint", UiStyles.MUTED_TEXT,
+            "accent", UiStyles.NEON_BLUE));
+
+    static final Theme LIGHT = new Theme("light", tokens(
+            "bg", UiStyles.BG_LIGHT,
+            "surface", UiStyles.CARD_LIGHT,
+            "surface.hover", new Color(236, 236, 242),
+            "footer", new Color(228, 228, 234),
+            "text", UiStyles.TEXT_DARK,
+            "text.muted", new Color(70, 70, 78),
+            "text.faint", new Color(110, 110, 118),
+            "accent", new Color(0, 130, 190)));
+
+    private static Map<String, Object> tokens(Object... pairs) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) m.put((String) pairs[i], pairs[i + 1]);
+        return m;
+    }
+
+    private static final class Binding {
+        final WeakReference<JComponent> component;
+        final Property property;
+
+        Binding(JComponent component, Property property) {
+            this.component = new WeakReference<>(component);
+            this.property = property;
+        }
+    }
+
+    private static final Metrics.Histogram SWITCH_TIME = Metrics.histogram("theme.switch");
+
+    private final Map<String, List<Binding>> bindings = new HashMap<>();
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private Theme theme;
+    private int bindsSincePurge;
+
+    ThemeEngine(Theme initial) {
+        this.theme = initial;
+    }
+
+    Theme theme() {
+        return theme;
+    }
+
+    Color color(String token) {
+        return (Color) theme.get(token);
+    }
+
+    Font font(String token) {
+        return (Font) theme.get(token);
+    }
+
+    /** Sets the property from the token now and whenever the token's value changes. Returns c. */
+    <C extends JComponent> C bind(C c, Property property, String token) {
+        property.apply(c, theme.get(token));
+        bindings.computeIfAbsent(token, t -> new ArrayList<>()).add(new Binding(c, property));
+        if (++bindsSincePurge >= 4096) {
+            bindsSincePurge = 0;
+            for (List<Binding> list : bindings.values()) list.removeIf(b -> b.component.get() == null);
+        }
+        return c;
+    }
+
+    <C extends JComponent> C background(C c, String token) {
+        return bind(c, Property.BACKGROUND, token);
+    }
+
+    <C extends JComponent> C foreground(C c, String token) {
+        return bind(c, Property.FOREGROUND, token);
+    }
+
+    /** Runs after every theme switch, for things that read tokens at paint time (renderers, caches). */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Switches to the given theme, updating only properties whose token changed, then repaints
+     * the window once. Returns the number of properties updated.
+     */
+    int apply(Theme next, Window window) {
+        long t0 = System.nanoTime();
+        Theme previous = theme;
+        theme = next;
+        int updated = 0;
+        for (Map.Entry<String, List<Binding>> e : bindings.entrySet()) {
+            Object value = next.get(e.getKey());
+            if (Objects.equals(value, previous.tokens.get(e.getKey()))) continue;
+            for (Iterator<Binding> it = e.getValue().iterator(); it.hasNext(); ) {
+                Binding b = it.next();
+                JComponent c = b.component.get();
+                if (c == null) {
+                    it.remove();
+                } else {
+                    b.property.apply(c, value);
+                    updated++;
+                }
+            }
+        }
+        for (Runnable l : listeners) l.run();
+        // Setters above only mark regions dirty; RepaintManager coalesces them into this one paint
+        if (window != null) window.repaint();
+        SWITCH_TIME.record(System.nanoTime() - t0);
+        return updated;
+    }
+}
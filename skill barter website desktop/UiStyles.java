@@ -0,0 +1,47 @@
+import java.awt.Color;
+import java.awt.Font;
+import javax.swing.BorderFactory;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * UiStyles.java
+ *
+ * Fonts, colors and borders shared by every panel. Fonts, colors and borders are immutable,
+ * so one instance each is enough; building them per card or per button only adds startup work.
+ */
+final class UiStyles {
+    private UiStyles() {}
+
+    // ----- Colors -----
+    static final Color BG_DARK = new Color(10, 10, 12);
+    static final Color CARD_DARK = new Color(25, 25, 28);
+    static final Color CARD_HOVER = new Color(30, 30, 35);
+    static final Color CARD_EDGE = new Color(40, 40, 45);
+    static final Color FOOTER = new Color(18, 18, 22);
+    static final Color MUTED_TEXT = new Color(160, 160, 160);
+    static final Color TEXT_LIGHT = new Color(230, 230, 230);
+    static final Color NEON_BLUE = new Color(0, 200, 255);
+    static final Color NEON_PURPLE = new Color(170, 0, 255);
+
+    static final Color BG_LIGHT = new Color(245, 245, 248);
+    static final Color CARD_LIGHT = new Color(255, 255, 255);
+    static final Color TEXT_DARK = new Color(30, 30, 30);
+
+    // ----- Fonts -----
+    static final Font HERO = new Font("Segoe UI", Font.BOLD, 36);
+    static final Font PAGE_TITLE = new Font("Segoe UI", Font.BOLD, 34);
+    static final Font SECTION_TITLE = new Font("Segoe UI", Font.BOLD, 32);
+    static final Font HEADING = new Font("Segoe UI Semibold", Font.BOLD, 30);
+    static final Font BRAND = new Font("Segoe UI", Font.BOLD, 28);
+    static final Font CARD_TITLE = new Font("Segoe UI", Font.BOLD, 16);
+    static final Font TEXT = new Font("Segoe UI", Font.PLAIN, 16);
+    static final Font BUTTON = new Font("Segoe UI", Font.BOLD, 14);
+    static final Font SMALL = new Font("Segoe UI", Font.PLAIN, 13);
+    static final Font ICON = new Font("Segoe UI Emoji", Font.PLAIN, 36);
+
+    // ----- Borders -----
+    static final Border CARD_OUTLINE = BorderFactory.createLineBorder(CARD_EDGE, 1, true);
+    static final Border CARD_HOVER_OUTLINE = BorderFactory.createLineBorder(NEON_BLUE, 2, true);
+    static final Border CARD = BorderFactory.createCompoundBorder(CARD_OUTLINE, new EmptyBorder(18, 18, 18, 18));
+}
@@ -0,0 +1,643 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * UserImporter.java
+ *
+ * Bulk account creation from a CSV or JSONL file, for onboarding a whole school or company.
+ *
+ * Input:
+ * - CSV with a header row naming the columns name, email and optionally password,
+ *   password_hash, teaches and learns (skills comma- or semicolon-separated; quote fields
+ *   that contain commas).
+ * - JSONL (.jsonl / .ndjson), one object per line with the same keys; skills may also be
+ *   JSON arrays.
+ *
+ * The file is streamed in chunks of CHUNK_ROWS lines. Chunks are validated in parallel with
+ * the RegisterDialog rules, and skills are mapped to their canonical names in the
+ * {@link SkillTaxonomy}. Then, one chunk at a time and in file order:
+ * - emails already stored or seen earlier in the file are rejected,
+ * - plain passwords are hashed on a bounded pool (rows with a password_hash from another
+ *   install, or no password at all, skip hashing),
+ * - the accounts are stored with one saveUsers() batch,
+ * - and a checkpoint records how far the import got.
+ * Rejected rows go to a .rejects.csv file with their line number and reason.
+ *
+ * Running the same file again resumes after the last checkpoint, unless the file changed.
+ * A chunk stored just before a crash is re-read and its rows are then reported as
+ * duplicates, never stored twice.
+ *
+ * Password hashing dominates: at the default scrypt cost a core hashes about 20 passwords a
+ * second, so large imports should prefer password_hash columns or no passwords.
+ */
+final class UserImporter {
+    static final int CHUNK_ROWS = 1000;
+
+    /** Receives each stored batch, e.g. to make the new members searchable. */
+    interface BatchListener {
+        void stored(List<SkillBarterRepository.User> users) throws IOException;
+    }
+
+    static final class Result {
+        final long lines;
+        final long imported;
+        final long duplicates;
+        final long invalid;
+        final boolean finished;
+        final Path rejects;
+
+        Result(long lines, long imported, long duplicates, long invalid, boolean finished, Path rejects) {
+            this.lines = lines;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+            this.finished = finished;
+            this.rejects = rejects;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d accounts imported, %,d duplicates, %,d invalid rows (%,d lines read)%s",
+                    imported, duplicates, invalid, lines, finished ? "" : "; paused, run again to resume");
+        }
+    }
+
+    private final SkillBarterRepository repository;
+    private final AuthService auth;
+    private final SkillTaxonomy skills;
+    private final int validateThreads;
+    private final int hashThreads;
+    private final Path stateDir;
+
+    UserImporter(SkillBarterRepository repository, AuthService auth, SkillTaxonomy skills, int validateThreads, int hashThreads, Path stateDir) {
+        this.repository = repository;
+        this.auth = auth;
+        this.skills = skills;
+        this.validateThreads = Math.max(1, validateThreads);
+        this.hashThreads = Math.max(1, hashThreads);
+        this.stateDir = stateDir;
+    }
+
+    /** Saved progress for this file, or null if the import has not started (or the file changed since). */
+    Checkpoint checkpoint(Path input) throws IOException {
+        Path file = checkpointFile(input);
+        if (!Files.exists(file)) return null;
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        Checkpoint c = new Checkpoint(p);
+        return c.matches(input) ? c : null;
+    }
+
+    // ----- Import -----
+    Result run(Path input, BatchListener listener, BackgroundTasks.Progress progress) throws IOException, InterruptedException {
+        Files.createDirectories(stateDir);
+        boolean jsonl = isJsonl(input);
+        Checkpoint start = checkpoint(input);
+        Checkpoint at = start != null ? start : Checkpoint.begin(input);
+        Path rejectsFile = rejectsFile(input);
+
+        progress.update(0, start != null ? String.format("Resuming after line %,d…", start.line) : "Loading existing accounts…");
+        LongHashSet seen = new LongHashSet(1 << 16);
+        repository.forEachUser(u -> seen.add(HyperLogLog.hash(u.email)));
+
+        long size = Files.size(input);
+        ExecutorService validators = SkillBarterBackend.daemonPool("import-validate", validateThreads);
+        ExecutorService hashers = SkillBarterBackend.daemonPool("import-hash", hashThreads);
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel rejects = FileChannel.open(rejectsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // A crash may have left rejects from chunks that were never checkpointed
+            rejects.truncate(at.rejectsBytes);
+            rejects.position(at.rejectsBytes);
+            Writer rejectOut = new BufferedWriter(Channels.newWriter(rejects, StandardCharsets.UTF_8.newEncoder(), 1 << 16));
+            if (at.rejectsBytes == 0) {
+                rejectOut.write("line,reason,row\n");
+            }
+
+            LineReader lines = new LineReader(ch, 0);
+            Columns columns = null;
+            if (!jsonl) {
+                String header = lines.next();
+                if (header == null) throw new IOException("The file is empty");
+                columns = Columns.of(parseCsv(stripBom(header)));
+            }
+            if (at.offset > lines.position()) lines = new LineReader(ch, at.offset);
+            else at = at.withOffset(lines.position(), jsonl ? 0 : 1);
+
+            Columns cols = columns;
+            ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+            long lineNo = at.line;
+            while (true) {
+                if (progress.isCancelled()) break;
+                List<String> raw = new ArrayList<>(CHUNK_ROWS);
+                long firstLine = lineNo + 1;
+                for (String line; raw.size() < CHUNK_ROWS && (line = lines.next()) != null; ) raw.add(line);
+                lineNo += raw.size();
+                if (!raw.isEmpty()) {
+                    long end = lines.position(), last = lineNo;
+                    inFlight.add(validators.submit(() -> validate(raw, firstLine, last, end, cols, jsonl)));
+                }
+                // Keep a few chunks validating ahead while the oldest one is stored
+                while (!inFlight.isEmpty() && (inFlight.size() > 2 * validateThreads || raw.isEmpty() || progress.isCancelled())) {
+                    at = commit(await(inFlight.poll()), at, seen, hashers, rejectOut, rejects, listener, input);
+                    progress.update((int) (100 * at.offset / Math.max(1, size)),
+                            String.format("%,d imported, %,d rejected", at.imported, at.duplicates + at.invalid));
+                }
+                if (raw.isEmpty()) break;
+            }
+            rejectOut.flush();
+            boolean finished = !progress.isCancelled() && at.offset >= size;
+            if (finished) Files.deleteIfExists(checkpointFile(input));
+            return new Result(at.line, at.imported, at.duplicates, at.invalid, finished, rejectsFile);
+        } finally {
+            validators.shutdownNow();
+            hashers.shutdownNow();
+        }
+    }
+
+    private static Chunk await(Future<Chunk> f) throws IOException, InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Validation failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // ----- Validation (parallel) -----
+    /** A row that passed validation; password is null when the row had a hash or no password. */
+    private static final class Candidate {
+        final long line;
+        final String email;
+        final String name;
+        final char[] password;
+        final String passwordHash;
+        final List<String> teaches;
+        final List<String> learns;
+        final String raw;
+
+        Candidate(long line, String email, String name, char[] password, String passwordHash, List<String> teaches, List<String> learns, String raw) {
+            this.line = line;
+            this.email = email;
+            this.name = name;
+            this.password = password;
+            this.passwordHash = passwordHash;
+            this.teaches = teaches;
+            this.learns = learns;
+            this.raw = raw;
+        }
+    }
+
+    private static final class Chunk {
+        final List<Object> rows = new ArrayList<>(); // Candidate, or String[] {line, reason, raw}
+        final long lastLine;
+        final long endOffset;
+
+        Chunk(long lastLine, long endOffset) {
+            this.lastLine = lastLine;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private Chunk validate(List<String> raw, long firstLine, long lastLine, long endOffset, Columns columns, boolean jsonl) {
+        Chunk chunk = new Chunk(lastLine, endOffset);
+        long lineNo = firstLine;
+        for (String line : raw) {
+            long n = lineNo++;
+            if (line.trim().isEmpty()) continue;
+            Map<String, String> row;
+            try {
+                row = jsonl ? parseJsonObject(n == 1 ? stripBom(line) : line) : columns.map(parseCsv(line));
+            } catch (IllegalArgumentException e) {
+                chunk.rows.add(new String[] {Long.toString(n), e.getMessage(), line});
+                continue;
+            }
+            String name = row.get("name"), email = row.get("email"), password = row.get("password"), hash = row.get("password_hash");
+            String problem;
+            if (password != null && !password.isEmpty()) problem = AuthService.validateRegistration(name, email, password.toCharArray());
+            else problem = AuthService.validateProfile(name, email);
+            if (problem == null && hash != null && !hash.isEmpty() && !AuthService.isPasswordHash(hash)) problem = "Unsupported password hash.";
+            if (problem != null) {
+                chunk.rows.add(new String[] {Long.toString(n), problem, line});
+                continue;
+            }
+            chunk.rows.add(new Candidate(n, AuthService.canonicalEmail(email), name.trim(),
+                    password == null || password.isEmpty() ? null : password.toCharArray(),
+                    hash == null || hash.isEmpty() ? null : hash,
+                    skills(row.get("teaches")), skills(row.get("learns")), line));
+        }
+        return chunk;
+    }
+
+    // Aliases and spelling variants become the taxonomy's canonical names ("js" -> "JavaScript")
+    private List<String> skills(String text) {
+        return skills.canonicalNames(SkillInterner.parseList(text == null ? null : text.replace(';', ',')));
+    }
+
+    // ----- Store (in file order) -----
+    private Checkpoint commit(Chunk chunk, Checkpoint at, LongHashSet seen, ExecutorService hashers, Writer rejectOut,
+                              FileChannel rejects, BatchListener listener, Path input) throws IOException, InterruptedException {
+        long duplicates = 0, invalid = 0;
+        List<Candidate> accepted = new ArrayList<>(chunk.rows.size());
+        for (Object o : chunk.rows) {
+            if (o instanceof String[]) {
+                String[] r = (String[]) o;
+                reject(rejectOut, r[0], r[1], r[2]);
+                invalid++;
+            } else {
+                Candidate c = (Candidate) o;
+                if (seen.add(HyperLogLog.hash(c.email))) {
+                    accepted.add(c);
+                } else {
+                    reject(rejectOut, Long.toString(c.line), "Duplicate email (already registered or earlier in the file).", c.raw);
+                    if (c.password != null) Arrays.fill(c.password, '\0');
+                    duplicates++;
+                }
+            }
+        }
+
+        List<Callable<String>> hashing = new ArrayList<>(accepted.size());
+        for (Candidate c : accepted) hashing.add(() -> c.password != null ? auth.hashNow(c.password) : c.passwordHash);
+        List<Future<String>> hashes = hashers.invokeAll(hashing);
+        long now = System.currentTimeMillis();
+        List<SkillBarterRepository.User> users = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            Candidate c = accepted.get(i);
+            try {
+                users.add(new SkillBarterRepository.User(c.email, c.name, hashes.get(i).get(), c.teaches, c.learns, now));
+            } catch (ExecutionException e) {
+                throw new IOException("Password hashing failed", e.getCause());
+            }
+        }
+        if (!users.isEmpty()) {
+            repository.saveUsers(users);
+            if (listener != null) listener.stored(users);
+        }
+        Metrics.counter("import.users").add(users.size());
+
+        rejectOut.flush();
+        Checkpoint next = new Checkpoint(at.size, at.modified, chunk.endOffset, chunk.lastLine,
+                at.imported + users.size(), at.duplicates + duplicates, at.invalid + invalid, rejects.position());
+        next.save(checkpointFile(input));
+        return next;
+    }
+
+    private static void reject(Writer out, String line, String reason, String raw) throws IOException {
+        out.write(line);
+        out.write(',');
+        out.write(csvQuote(reason));
+        out.write(',');
+        out.write(csvQuote(raw));
+        out.write('\n');
+    }
+
+    // ----- Checkpoints -----
+    /** How far an import of one file got; stored as a properties file in the state directory. */
+    static final class Checkpoint {
+        final long size;
+        final long modified;
+        final long offset;
+        final long line;
+        final long imported;
+        final long duplicates;
+        final long invalid;
+        final long rejectsBytes;
+
+        Checkpoint(long size, long modified, long offset, long line, long imported, long duplicates, long invalid, long rejectsBytes) {
+            this.size = size;
+            this.modified = modified;
+            this.offset = offset;
+            this.line = line;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+            this.rejectsBytes = rejectsBytes;
+        }
+
+        Checkpoint(Properties p) {
+            this(num(p, "size"), num(p, "modified"), num(p, "offset"), num(p, "line"),
+                    num(p, "imported"), num(p, "duplicates"), num(p, "invalid"), num(p, "rejectsBytes"));
+        }
+
+        static Checkpoint begin(Path input) throws IOException {
+            return new Checkpoint(Files.size(input), Files.getLastModifiedTime(input).toMillis(), 0, 0, 0, 0, 0, 0);
+        }
+
+        Checkpoint withOffset(long offset, long line) {
+            return new Checkpoint(size, modified, offset, line, imported, duplicates, invalid, rejectsBytes);
+        }
+
+        boolean matches(Path input) throws IOException {
+            return Files.size(input) == size && Files.getLastModifiedTime(input).toMillis() == modified;
+        }
+
+        void save(Path file) throws IOException {
+            Properties p = new Properties();
+            p.setProperty("size", Long.toString(size));
+            p.setProperty("modified", Long.toString(modified));
+            p.setProperty("offset", Long.toString(offset));
+            p.setProperty("line", Long.toString(line));
+            p.setProperty("imported", Long.toString(imported));
+            p.setProperty("duplicates", Long.toString(duplicates));
+            p.setProperty("invalid", Long.toString(invalid));
+            p.setProperty("rejectsBytes", Long.toString(rejectsBytes));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                p.store(w, "SkillBarter user import");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static long num(Properties p, String key) {
+            try {
+                return Long.parseLong(p.getProperty(key, "0"));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    private Path checkpointFile(Path input) {
+        return stateDir.resolve(stateName(input) + ".checkpoint");
+    }
+
+    Path rejectsFile(Path input) {
+        return stateDir.resolve(stateName(input) + ".rejects.csv");
+    }
+
+    // File name plus a hash of the full path, so two "users.csv" files do not share state
+    private static String stateName(Path input) {
+        String path = input.toAbsolutePath().normalize().toString();
+        return input.getFileName() + "-" + Long.toHexString(HyperLogLog.hash(path) >>> 32);
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    private static boolean isJsonl(Path input) {
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    // ----- Line reading with byte offsets -----
+    // UTF-8 lines (LF or CRLF) read through a buffer, so a checkpoint can name the exact byte to resume at
+    private static final class LineReader {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private byte[] line = new byte[256];
+        private long position;
+        private boolean eof;
+
+        LineReader(FileChannel ch, long position) throws IOException {
+            this.ch = ch;
+            this.position = position;
+            ch.position(position);
+            buf.flip();
+        }
+
+        long position() {
+            return position;
+        }
+
+        String next() throws IOException {
+            int n = 0;
+            while (true) {
+                if (!buf.hasRemaining()) {
+                    if (eof) break;
+                    buf.clear();
+                    eof = ch.read(buf) < 0;
+                    buf.flip();
+                    if (!buf.hasRemaining()) break;
+                }
+                byte b = buf.get();
+                position++;
+                if (b == '\n') return decode(n);
+                if (n == line.length) line = Arrays.copyOf(line, n * 2);
+                line[n++] = b;
+            }
+            return n == 0 ? null : decode(n);
+        }
+
+        private String decode(int n) {
+            if (n > 0 && line[n - 1] == '\r') n--;
+            return new String(line, 0, n, StandardCharsets.UTF_8);
+        }
+    }
+
+    // ----- CSV -----
+    /** Header positions of the known columns. */
+    private static final class Columns {
+        final String[] names;
+
+        Columns(String[] names) {
+            this.names = names;
+        }
+
+        static Columns of(List<String> header) throws IOException {
+            String[] names = new String[header.size()];
+            boolean name = false, email = false;
+            for (int i = 0; i < names.length; i++) {
+                String h = header.get(i).trim().toLowerCase(Locale.ROOT).replace(' ', '_');
+                if (h.equals("skills")) h = "teaches";
+                if (h.equals("wants") || h.equals("wants_to_learn")) h = "learns";
+                names[i] = h;
+                name |= h.equals("name");
+                email |= h.equals("email");
+            }
+            if (!name || !email) throw new IOException("The CSV header needs name and email columns: " + header);
+            return new Columns(names);
+        }
+
+        Map<String, String> map(List<String> fields) {
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < names.length && i < fields.size(); i++) row.put(names[i], fields.get(i));
+            return row;
+        }
+    }
+
+    /** Splits one CSV line (RFC 4180 quoting, "" for a quote). Quoted line breaks are not supported. */
+    static List<String> parseCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quoted field.");
+        out.add(field.toString());
+        return out;
+    }
+
+    private static String csvQuote(String s) {
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    // ----- JSONL -----
+    /** Reads a flat JSON object; string arrays are joined with commas, other values kept as text. */
+    static Map<String, String> parseJsonObject(String line) {
+        JsonCursor in = new JsonCursor(line);
+        Map<String, String> out = new HashMap<>();
+        in.expect('{');
+        if (!in.peek('}')) {
+            do {
+                String key = in.string().toLowerCase(Locale.ROOT);
+                in.expect(':');
+                out.put(key, in.value());
+            } while (in.next(','));
+        }
+        in.expect('}');
+        if (!in.atEnd()) throw new IllegalArgumentException("Unexpected text after the JSON object.");
+        return out;
+    }
+
+    private static final class JsonCursor {
+        private final String s;
+        private int i;
+
+        JsonCursor(String s) {
+            this.s = s;
+        }
+
+        private void skipSpace() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        boolean peek(char c) {
+            skipSpace();
+            return i < s.length() && s.charAt(i) == c;
+        }
+
+        boolean next(char c) {
+            if (!peek(c)) return false;
+            i++;
+            return true;
+        }
+
+        void expect(char c) {
+            if (!next(c)) throw new IllegalArgumentException("Invalid JSON: expected '" + c + "' at column " + (i + 1) + ".");
+        }
+
+        boolean atEnd() {
+            skipSpace();
+            return i >= s.length();
+        }
+
+        String value() {
+            skipSpace();
+            if (peek('"')) return string();
+            if (next('[')) {
+                StringBuilder joined = new StringBuilder();
+                if (!peek(']')) {
+                    do {
+                        if (joined.length() > 0) joined.append(',');
+                        joined.append(value());
+                    } while (next(','));
+                }
+                expect(']');
+                return joined.toString();
+            }
+            int start = i;
+            while (i < s.length() && ",}] \t".indexOf(s.charAt(i)) < 0) i++;
+            String literal = s.substring(start, i);
+            if (literal.isEmpty()) throw new IllegalArgumentException("Invalid JSON value at column " + (start + 1) + ".");
+            return literal.equals("null") ? null : literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (i < s.length()) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= s.length()) break;
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (i + 4 > s.length()) throw new IllegalArgumentException("Invalid JSON escape.");
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+            throw new IllegalArgumentException("Invalid JSON: unterminated string.");
+        }
+    }
+
+    // ----- Dedupe set -----
+    // Open-addressing set of 64-bit email hashes: 8 bytes per account instead of a String per entry
+    private static final class LongHashSet {
+        private long[] slots;
+        private int size;
+        private boolean hasZero;
+
+        LongHashSet(int capacity) {
+            slots = new long[Integer.highestOneBit(Math.max(16, capacity) - 1) << 1];
+        }
+
+        /** False if the value was already present. */
+        boolean add(long v) {
+            if (v == 0) {
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if (size * 2 >= slots.length) grow();
+            if (!insert(slots, v)) return false;
+            size++;
+            return true;
+        }
+
+        private static boolean insert(long[] table, long v) {
+            int mask = table.length - 1;
+            for (int i = (int) (v ^ (v >>> 32)) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == 0) {
+                    table[i] = v;
+                    return true;
+                }
+                if (table[i] == v) return false;
+            }
+        }
+
+        private void grow() {
+            long[] bigger = new long[slots.length * 2];
+            for (long v : slots) if (v != 0) insert(bigger, v);
+            slots = bigger;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JComponent;
+
+/**
+ * WrapLabel.java
+ *
+ * Plain word-wrapped text for card descriptions. An HTML JLabel re-parses its markup whenever
+ * its foreground or font changes, which dominates a theme switch once there are hundreds of
+ * cards; here a color change is only a repaint. Like JLabel it has no mouse listeners, so
+ * clicks and hovers reach the card underneath.
+ */
+class WrapLabel extends JComponent {
+    private static final Metrics.Histogram PAINT = Metrics.histogram("paint.wrapLabel");
+
+    private final String text;
+    private final int wrapWidth;
+    private List<String> lines;
+    private int linesWidth = -1;
+    private Font linesFont;
+
+    /** wrapWidth is the preferred width in pixels; text wraps to the actual width when narrower. */
+    WrapLabel(String text, int wrapWidth) {
+        this.text = text;
+        this.wrapWidth = wrapWidth;
+        setAlignmentX(LEFT_ALIGNMENT);
+    }
+
+    String getText() {
+        return text;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        Insets in = getInsets();
+        FontMetrics fm = getFontMetrics(getFont());
+        int lineCount = lines(wrapWidth, fm).size();
+        return new Dimension(wrapWidth + in.left + in.right, lineCount * fm.getHeight() + in.top + in.bottom);
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+        Dimension pref = getPreferredSize();
+        return new Dimension(Short.MAX_VALUE, pref.height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long t0 = System.nanoTime();
+        Graphics2D g2 = (Graphics2D) g;
+        Map<?, ?> hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (hints != null) g2.addRenderingHints(hints);
+        Insets in = getInsets();
+        g2.setFont(getFont());
+        g2.setColor(getForeground());
+        FontMetrics fm = g2.getFontMetrics();
+        int y = in.top + fm.getAscent();
+        for (String line : lines(Math.min(wrapWidth, getWidth() - in.left - in.right), fm)) {
+            g2.drawString(line, in.left, y);
+            y += fm.getHeight();
+        }
+        RenderCache.recordPaint(PAINT, "wrapLabel", t0);
+    }
+
+    // Greedy word wrap, cached for the last width and font
+    private List<String> lines(int width, FontMetrics fm) {
+        if (lines != null && width == linesWidth && fm.getFont().equals(linesFont)) return lines;
+        List<String> out = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            if (word.isEmpty()) continue;
+            if (line.length() > 0 && fm.stringWidth(line + " " + word) > width) {
+                out.add(line.toString());
+                line.setLength(0);
+            }
+            if (line.length() > 0) line.append(' ');
+            line.append(word);
+        }
+        if (line.length() > 0) out.add(line.toString());
+        lines = out;
+        linesWidth = width;
+        linesFont = fm.getFont();
+        return out;
+    }
+}